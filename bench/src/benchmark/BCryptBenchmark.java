@@ -0,0 +1,77 @@
+package benchmark;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import seguridad.BCrypt;
+
+/**
+ * Hash y verificacion de claves con {@link BCrypt}, contra la version
+ * anterior ({@link BCryptOriginal}), que copiaba el key schedule y armaba
+ * los textos en StringBuffer en cada hash. No usa la base de datos.
+ * <p>
+ * El costo 4 deja a la vista lo que cuesta todo lo que no es Blowfish; el
+ * 10 es el del login. Para ver los bytes asignados por operacion:
+ * <pre>
+ *     ant benchmark -Dbenchmark.args="BCryptBenchmark -prof gc"
+ * </pre>
+ * Antes de medir se comprueba que las dos versiones den el mismo hash.
+ *
+ * @author franc
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BCryptBenchmark {
+
+    private static final String CLAVE = "caja-vista-al-mar";
+
+    @Param({"4", "10"})
+    public int costo;
+
+    private String sal;
+    private String hash;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        sal = BCrypt.gensalt(costo, new SecureRandom());
+        hash = BCryptOriginal.hashpw(CLAVE, sal);
+        if (!hash.equals(BCrypt.hashpw(CLAVE, sal))) {
+            throw new IllegalStateException("BCrypt no da el mismo hash que la version anterior para " + sal);
+        }
+    }
+
+    @Benchmark
+    public String hashpwOriginal() {
+        return BCryptOriginal.hashpw(CLAVE, sal);
+    }
+
+    @Benchmark
+    public String hashpw() {
+        return BCrypt.hashpw(CLAVE, sal);
+    }
+
+    @Benchmark
+    public boolean checkpwOriginal() {
+        return BCryptOriginal.checkpw(CLAVE, hash);
+    }
+
+    @Benchmark
+    public boolean checkpw() {
+        return BCrypt.checkpw(CLAVE, hash);
+    }
+}
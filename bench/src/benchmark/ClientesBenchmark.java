@@ -0,0 +1,23 @@
+package benchmark;
+
+import java.sql.SQLException;
+import java.util.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import ventas.SaldosDeudores;
+
+/**
+ * Carga de la pantalla Clientes: todos los deudores con su saldo, con
+ * {@link SaldosDeudores#listar}.
+ *
+ * @author franc
+ */
+@BenchmarkMode(Mode.AverageTime)
+public class ClientesBenchmark extends ConexionBenchmark {
+
+    @Benchmark
+    public List<SaldosDeudores.Deudor> cargarClientes() throws SQLException {
+        return SaldosDeudores.listar(conn);
+    }
+}
@@ -0,0 +1,56 @@
+package benchmark;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import ventas.EscritorFacturas;
+
+/**
+ * Ingreso de una factura de proveedor, como Compra al confirmar: cabecera,
+ * resumen del semestre, detalle y suma de stock, con {@link EscritorFacturas}.
+ *
+ * @author franc
+ */
+@BenchmarkMode(Mode.AverageTime)
+public class CompraBenchmark extends ConexionBenchmark {
+
+    // Compartido entre hilos: idFactura es la clave primaria
+    private static final AtomicInteger siguienteFactura = new AtomicInteger();
+
+    @Param({"10", "100"})
+    public int lineas;
+
+    private final EscritorFacturas escritor = new EscritorFacturas();
+    private SplittableRandom rnd;
+
+    @Override
+    protected void preparar() throws SQLException {
+        siguienteFactura.accumulateAndGet(Semilla.maximo(conn, "facturaProveedores", "idFactura"), Math::max);
+        rnd = new SplittableRandom(lineas);
+    }
+
+    @Benchmark
+    public EscritorFacturas.Tiempos ingresar() throws SQLException {
+        LocalDate hoy = LocalDate.now();
+        List<EscritorFacturas.Linea> detalle = new ArrayList<>(lineas);
+        int total = 0;
+        for (int i = 0; i < lineas; i++) {
+            int cajas = 1 + rnd.nextInt(10);
+            int precioCaja = (1 + rnd.nextInt(100)) * 300;
+            total += cajas * precioCaja;
+            detalle.add(new EscritorFacturas.Linea(Semilla.PRIMER_PRODUCTO + rnd.nextInt(escala.productos()),
+                    hoy.plusMonths(6), 12, cajas, precioCaja, cajas * precioCaja));
+        }
+        EscritorFacturas.Factura factura = new EscritorFacturas.Factura(siguienteFactura.incrementAndGet(),
+                Semilla.PRIMER_PROVEEDOR + rnd.nextInt(escala.proveedores()), Semilla.PRIMER_USUARIO,
+                hoy, hoy.plusDays(30), "Transferencia", total, detalle);
+        return escritor.registrar(conn, factura);
+    }
+}
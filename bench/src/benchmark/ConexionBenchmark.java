@@ -0,0 +1,52 @@
+package benchmark;
+
+import datos.ConexionBD;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Base de los benchmarks de base de datos: cada hilo de JMH tiene su
+ * conexion del pool durante toda la corrida, como una pantalla abierta, y
+ * la base de prueba se siembra antes de la primera medicion.
+ *
+ * @author franc
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public abstract class ConexionBenchmark {
+
+    protected Connection conn;
+    protected Semilla.Escala escala;
+
+    @Setup(Level.Trial)
+    public void abrir() throws SQLException {
+        escala = Semilla.preparar();
+        conn = ConexionBD.getConnection();
+        preparar();
+    }
+
+    /**
+     * Datos propios del benchmark, con la conexion ya abierta
+     * @throws SQLException si falla la preparacion
+     */
+    protected void preparar() throws SQLException {
+    }
+
+    @TearDown(Level.Trial)
+    public void cerrar() throws SQLException {
+        conn.close();
+    }
+}
@@ -0,0 +1,62 @@
+package benchmark;
+
+import historial.ModeloBoletas;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Lecturas de HistorialBoletas con {@link ModeloBoletas}: al abrir, la
+ * cuenta y la primera pagina del filtro; al bajar, una pagina lejana
+ * continuando por clave.
+ *
+ * @author franc
+ */
+@BenchmarkMode(Mode.AverageTime)
+public class HistorialBenchmark extends ConexionBenchmark {
+
+    // Paginas que se avanzan para medir una pagina lejana
+    private static final int PAGINAS_ADELANTE = 50;
+
+    private static final Map<String, ModeloBoletas.Filtro> FILTROS = Map.of(
+            "todas", new ModeloBoletas.Filtro(ModeloBoletas.Tipo.TODAS, ""),
+            "fiadas", new ModeloBoletas.Filtro(ModeloBoletas.Tipo.CON_FIANZA, ""),
+            "texto", new ModeloBoletas.Filtro(ModeloBoletas.Tipo.TODAS, "Debito"));
+
+    @Param({"todas", "fiadas", "texto"})
+    public String filtro;
+
+    private ModeloBoletas.Filtro f;
+    private ModeloBoletas.Boleta ultimaLejana;
+
+    @Override
+    protected void preparar() throws SQLException {
+        f = FILTROS.get(filtro);
+        ModeloBoletas.prepararIndices();
+        ModeloBoletas.Boleta ultima = null;
+        for (int i = 0; i < PAGINAS_ADELANTE; i++) {
+            List<ModeloBoletas.Boleta> pagina = ModeloBoletas.leerPagina(conn, f, ultima);
+            if (pagina.isEmpty()) {
+                break;
+            }
+            ultima = pagina.get(pagina.size() - 1);
+        }
+        ultimaLejana = ultima;
+    }
+
+    @Benchmark
+    public void abrirHistorialBoletas(Blackhole bh) throws SQLException {
+        bh.consume(ModeloBoletas.contar(conn, f));
+        bh.consume(ModeloBoletas.leerPagina(conn, f, null));
+    }
+
+    @Benchmark
+    public List<ModeloBoletas.Boleta> paginaLejana() throws SQLException {
+        return ModeloBoletas.leerPagina(conn, f, ultimaLejana);
+    }
+}
@@ -0,0 +1,37 @@
+package benchmark;
+
+import java.sql.SQLException;
+import java.util.SplittableRandom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import ventas.LiquidadorDeudas;
+
+/**
+ * Pago de deuda, como PagarDeudaDialog al procesar: fila de pagoDeudas,
+ * reparto entre las deudas abiertas y recalculo del saldo, con
+ * {@link LiquidadorDeudas#pagar}. Los montos son chicos para que las
+ * deudas sembradas no se acaben durante la corrida.
+ *
+ * @author franc
+ */
+@BenchmarkMode(Mode.AverageTime)
+public class PagoDeudaBenchmark extends ConexionBenchmark {
+
+    @Param({"500", "20000"})
+    public int monto;
+
+    private SplittableRandom rnd;
+
+    @Override
+    protected void preparar() {
+        rnd = new SplittableRandom(monto);
+    }
+
+    @Benchmark
+    public LiquidadorDeudas.Recibo pagar() throws SQLException {
+        return LiquidadorDeudas.pagar(conn, Semilla.PRIMER_DEUDOR + rnd.nextInt(escala.deudores()),
+                Semilla.PRIMER_USUARIO, monto, -1);
+    }
+}
@@ -0,0 +1,377 @@
+package benchmark;
+
+import datos.ConexionBD;
+import datos.ConfiguracionBD;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.logging.Logger;
+import seguridad.BCrypt;
+import ventas.ResumenFacturas;
+import ventas.SaldosDeudores;
+
+/**
+ * Base de datos de prueba para los benchmarks y el generador de carga, con
+ * volumenes parecidos a los de una tienda real (semilla.meses cubre los
+ * años de historial que se quieran).
+ * <p>
+ * Las tablas se copian vacias desde el esquema de la aplicacion
+ * (semilla.origen) con CREATE TABLE ... LIKE, en la base de datos que indica
+ * la configuracion de los benchmarks, y se llenan con datos generados con
+ * una semilla fija: dos corridas sobre la misma escala miden lo mismo. Si la
+ * base ya tiene las boletas pedidas no se vuelve a llenar.
+ * <p>
+ * Las tablas de resumen (saldoDeudores, resumenFacturas, ventasDiario) no
+ * se copian: las crea y las llena la misma aplicacion la primera vez que
+ * se usan, igual que en una caja.
+ *
+ * @author franc
+ */
+public final class Semilla {
+
+    private static final Logger logger = Logger.getLogger(Semilla.class.getName());
+
+    public static final int PRIMER_USUARIO = 11_000_000;
+    public static final int PRIMER_DEUDOR = 12_000_000;
+    public static final int PRIMER_PROVEEDOR = 76_000_000;
+    public static final int PRIMER_PRODUCTO = 1_000;
+    /** Clave de todos los usuarios de prueba */
+    public static final String CLAVE = "benchmark";
+
+    // Stock inicial: los benchmarks de venta descuentan sin reponer
+    private static final int STOCK = 1_000_000_000;
+    private static final int LOTE = 1_000;
+    private static final long SEMILLA_ALEATORIA = 20240601L;
+
+    private static final Set<String> DERIVADAS = Set.of("saldodeudores", "resumenfacturas", "ventasdiario");
+    private static final String[] MEDIOS_PAGO = {"Efectivo", "Debito", "Credito", "Transferencia"};
+
+    /**
+     * Cantidad de filas a generar, leida de las claves semilla.* de la configuracion
+     */
+    public record Escala(int usuarios, int productos, int deudores, int proveedores,
+                         int boletas, int meses, int facturas, double fiado) {
+
+        static Escala leer(ConfiguracionBD cfg) {
+            return new Escala(cfg.entero("semilla.usuarios", 10),
+                    cfg.entero("semilla.productos", 2_000),
+                    cfg.entero("semilla.deudores", 500),
+                    cfg.entero("semilla.proveedores", 50),
+                    cfg.entero("semilla.boletas", 100_000),
+                    cfg.entero("semilla.meses", 24),
+                    cfg.entero("semilla.facturas", 2_000),
+                    Double.parseDouble(cfg.texto("semilla.fiado", "0.15")));
+        }
+    }
+
+    private static Escala escala;
+
+    private Semilla() {
+    }
+
+    /**
+     * Deja lista la base de datos de prueba. Se puede llamar desde cada
+     * benchmark; solo la primera llamada de la JVM trabaja.
+     * @return escala con la que quedo sembrada
+     * @throws SQLException si falla la copia del esquema o la carga, o si la
+     *         configuracion apunta al mismo esquema de la aplicacion
+     */
+    public static synchronized Escala preparar() throws SQLException {
+        if (escala != null) {
+            return escala;
+        }
+        ConfiguracionBD cfg = ConexionBD.getConfiguracion();
+        String origen = cfg.texto("semilla.origen", "vistaalmar");
+        Escala pedida = Escala.leer(cfg);
+        try (Connection conn = ConexionBD.getConnection()) {
+            if (origen.equalsIgnoreCase(conn.getCatalog())) {
+                throw new SQLException("La base de datos de los benchmarks no puede ser " + origen
+                        + "; revise db.nombre en la configuracion");
+            }
+            List<String> tablas = copiarEsquema(conn, origen);
+            if (contar(conn, "boletas") < pedida.boletas()) {
+                vaciar(conn, tablas);
+                sembrar(conn, pedida);
+            }
+        }
+        SaldosDeudores.preparar();
+        ResumenFacturas.preparar();
+        escala = pedida;
+        return escala;
+    }
+
+    private static List<String> copiarEsquema(Connection conn, String origen) throws SQLException {
+        List<String> tablas = new ArrayList<>();
+        try (ResultSet rs = conn.getMetaData().getTables(origen, null, "%", new String[]{"TABLE"})) {
+            while (rs.next()) {
+                String tabla = rs.getString("TABLE_NAME");
+                if (!DERIVADAS.contains(tabla.toLowerCase()) && !tabla.toLowerCase().endsWith("archivo")) {
+                    tablas.add(tabla);
+                }
+            }
+        }
+        if (tablas.isEmpty()) {
+            throw new SQLException("El esquema " + origen + " no tiene tablas para copiar");
+        }
+        try (Statement st = conn.createStatement()) {
+            for (String tabla : tablas) {
+                st.executeUpdate("CREATE TABLE IF NOT EXISTS " + tabla + " LIKE " + origen + "." + tabla);
+            }
+        }
+        return tablas;
+    }
+
+    private static int contar(Connection conn, String tabla) throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM " + tabla)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static void vaciar(Connection conn, List<String> tablas) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("SET FOREIGN_KEY_CHECKS = 0");
+            for (String tabla : tablas) {
+                st.executeUpdate("TRUNCATE TABLE " + tabla);
+            }
+            for (String tabla : DERIVADAS) {
+                st.executeUpdate("DROP TABLE IF EXISTS " + tabla);
+            }
+            st.execute("SET FOREIGN_KEY_CHECKS = 1");
+        }
+    }
+
+    private static void sembrar(Connection conn, Escala e) throws SQLException {
+        long inicio = System.nanoTime();
+        Random rnd = new Random(SEMILLA_ALEATORIA);
+        conn.setAutoCommit(false);
+        try {
+            sembrarUsuarios(conn, e);
+            int[] precios = sembrarProductos(conn, e, rnd);
+            sembrarDeudores(conn, e, rnd);
+            sembrarProveedores(conn, e, rnd);
+            sembrarBoletas(conn, e, precios, rnd);
+            sembrarFacturas(conn, e, precios, rnd);
+            conn.commit();
+        } catch (SQLException ex) {
+            conn.rollback();
+            throw ex;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        logger.info("Base de prueba sembrada en " + (System.nanoTime() - inicio) / 1_000_000 + " ms: " + e);
+    }
+
+    private static void sembrarUsuarios(Connection conn, Escala e) throws SQLException {
+        String hash = BCrypt.hashpw(CLAVE, BCrypt.gensalt());
+        try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO usuarios VALUES (?, ?, ?, ?)")) {
+            for (int i = 0; i < e.usuarios(); i++) {
+                pstmt.setInt(1, PRIMER_USUARIO + i);
+                pstmt.setString(2, "Cajero " + (i + 1));
+                pstmt.setString(3, hash);
+                pstmt.setBoolean(4, i == 0);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    private static int[] sembrarProductos(Connection conn, Escala e, Random rnd) throws SQLException {
+        int[] precios = new int[e.productos()];
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO productos (codProducto, nomProducto, codTipo, precioActual, stock, imgLink, comentarios) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < precios.length; i++) {
+                precios[i] = (1 + rnd.nextInt(200)) * 50;
+                pstmt.setInt(1, PRIMER_PRODUCTO + i);
+                pstmt.setString(2, "Producto " + (i + 1));
+                pstmt.setInt(3, 1 + rnd.nextInt(10));
+                pstmt.setInt(4, precios[i]);
+                pstmt.setInt(5, STOCK);
+                pstmt.setString(6, "");
+                pstmt.setString(7, "");
+                agregar(pstmt, i);
+            }
+            pstmt.executeBatch();
+        }
+        return precios;
+    }
+
+    private static void sembrarDeudores(Connection conn, Escala e, Random rnd) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO deudores (rutDeudor, nomDeudor, telefono) VALUES (?, ?, ?)")) {
+            for (int i = 0; i < e.deudores(); i++) {
+                pstmt.setInt(1, PRIMER_DEUDOR + i);
+                pstmt.setString(2, "Cliente " + (i + 1));
+                pstmt.setInt(3, 900_000_000 + rnd.nextInt(99_999_999));
+                agregar(pstmt, i);
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    private static void sembrarProveedores(Connection conn, Escala e, Random rnd) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO proveedores VALUES (?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < e.proveedores(); i++) {
+                pstmt.setInt(1, PRIMER_PROVEEDOR + i);
+                pstmt.setString(2, "Proveedor " + (i + 1));
+                pstmt.setString(3, "Distribuidora");
+                pstmt.setString(4, "Calle " + (i + 1));
+                pstmt.setString(5, "proveedor" + (i + 1) + "@example.com");
+                pstmt.setInt(6, 220_000_000 + rnd.nextInt(9_999_999));
+                agregar(pstmt, i);
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    /**
+     * Boletas repartidas en los ultimos semilla.meses meses, con 1 a 8
+     * lineas. Una fraccion semilla.fiado son fiadas y tienen su deuda; las
+     * de mas de dos meses quedan casi todas pagadas.
+     */
+    private static void sembrarBoletas(Connection conn, Escala e, int[] precios, Random rnd) throws SQLException {
+        LocalDateTime hasta = LocalDateTime.now().minusDays(1);
+        LocalDateTime desde = hasta.minusMonths(e.meses());
+        long segundos = ChronoUnit.SECONDS.between(desde, hasta);
+        LocalDateTime saldadas = hasta.minusMonths(2);
+
+        try (PreparedStatement boletas = conn.prepareStatement(
+                     "INSERT INTO boletas (idBoleta, rutUsuario, fechaTramite, medioPago, totalPagados, totalFiado) "
+                     + "VALUES (?, ?, ?, ?, ?, ?)");
+             PreparedStatement detalle = conn.prepareStatement(
+                     "INSERT INTO detalleboletaproductos (idBoleta, codProducto, cantidad, cantidadFiado, "
+                     + "precioUnitario, descuento, totalPago, totalFiado, tipoTransaccion) "
+                     + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+             PreparedStatement deudas = conn.prepareStatement(
+                     "INSERT INTO deudas (rutDeudor, idBoleta, fechaDeuda, estaPagado, montoPagado) "
+                     + "VALUES (?, ?, ?, ?, ?)")) {
+            for (int id = 1; id <= e.boletas(); id++) {
+                LocalDateTime fecha = desde.plusSeconds(segundos * id / e.boletas());
+                boolean fiada = rnd.nextDouble() < e.fiado();
+                int lineas = 1 + rnd.nextInt(8);
+                int total = 0;
+                for (int l = 0; l < lineas; l++) {
+                    int producto = rnd.nextInt(precios.length);
+                    int cantidad = 1 + rnd.nextInt(5);
+                    int subtotal = cantidad * precios[producto];
+                    total += subtotal;
+                    detalle.setInt(1, id);
+                    detalle.setInt(2, PRIMER_PRODUCTO + producto);
+                    detalle.setInt(3, cantidad);
+                    detalle.setInt(4, fiada ? cantidad : 0);
+                    detalle.setDouble(5, precios[producto]);
+                    detalle.setDouble(6, 0);
+                    detalle.setDouble(7, fiada ? 0 : subtotal);
+                    detalle.setDouble(8, fiada ? subtotal : 0);
+                    detalle.setString(9, "VENTA");
+                    detalle.addBatch();
+                }
+                boletas.setInt(1, id);
+                boletas.setString(2, String.valueOf(PRIMER_USUARIO + rnd.nextInt(e.usuarios())));
+                boletas.setTimestamp(3, Timestamp.valueOf(fecha));
+                boletas.setString(4, MEDIOS_PAGO[rnd.nextInt(MEDIOS_PAGO.length)]);
+                boletas.setDouble(5, fiada ? 0 : total);
+                boletas.setDouble(6, fiada ? total : 0);
+                boletas.addBatch();
+                if (fiada) {
+                    boolean pagada = fecha.isBefore(saldadas) && rnd.nextInt(10) < 9;
+                    deudas.setString(1, String.valueOf(PRIMER_DEUDOR + rnd.nextInt(e.deudores())));
+                    deudas.setInt(2, id);
+                    deudas.setTimestamp(3, Timestamp.valueOf(fecha));
+                    deudas.setBoolean(4, pagada);
+                    deudas.setInt(5, pagada ? total : 0);
+                    deudas.addBatch();
+                }
+                if (id % LOTE == 0) {
+                    boletas.executeBatch();
+                    detalle.executeBatch();
+                    deudas.executeBatch();
+                    conn.commit();
+                }
+            }
+            boletas.executeBatch();
+            detalle.executeBatch();
+            deudas.executeBatch();
+        }
+    }
+
+    private static void sembrarFacturas(Connection conn, Escala e, int[] precios, Random rnd) throws SQLException {
+        LocalDate hasta = LocalDate.now().minusDays(1);
+        LocalDate desde = hasta.minusMonths(e.meses());
+        long dias = ChronoUnit.DAYS.between(desde, hasta);
+        try (PreparedStatement facturas = conn.prepareStatement(
+                     "INSERT INTO facturaProveedores VALUES (?, ?, ?, ?, ?, ?, ?)");
+             PreparedStatement detalle = conn.prepareStatement(
+                     "INSERT INTO detalleFacturaProductos VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (int id = 1; id <= e.facturas(); id++) {
+                LocalDate fecha = desde.plusDays(dias * id / e.facturas());
+                int total = 0;
+                for (int l = 0; l < 10; l++) {
+                    int producto = rnd.nextInt(precios.length);
+                    int cajas = 1 + rnd.nextInt(10);
+                    int precioCaja = precios[producto] * 12 / 2;
+                    total += cajas * precioCaja;
+                    detalle.setInt(1, id);
+                    detalle.setInt(2, PRIMER_PRODUCTO + producto);
+                    detalle.setDate(3, Date.valueOf(fecha.plusMonths(6)));
+                    detalle.setBoolean(4, false);
+                    detalle.setInt(5, cajas);
+                    detalle.setInt(6, 12);
+                    detalle.setInt(7, precioCaja);
+                    detalle.setFloat(8, 0.19f);
+                    detalle.setInt(9, cajas * precioCaja);
+                    detalle.addBatch();
+                }
+                facturas.setInt(1, id);
+                facturas.setInt(2, PRIMER_PROVEEDOR + rnd.nextInt(e.proveedores()));
+                facturas.setInt(3, PRIMER_USUARIO + rnd.nextInt(e.usuarios()));
+                facturas.setDate(4, Date.valueOf(fecha));
+                facturas.setDate(5, Date.valueOf(fecha.plusDays(30)));
+                facturas.setString(6, MEDIOS_PAGO[rnd.nextInt(MEDIOS_PAGO.length)]);
+                facturas.setInt(7, total);
+                facturas.addBatch();
+                if (id % LOTE == 0) {
+                    facturas.executeBatch();
+                    detalle.executeBatch();
+                    conn.commit();
+                }
+            }
+            facturas.executeBatch();
+            detalle.executeBatch();
+        }
+    }
+
+    private static void agregar(PreparedStatement pstmt, int fila) throws SQLException {
+        pstmt.addBatch();
+        if ((fila + 1) % LOTE == 0) {
+            pstmt.executeBatch();
+        }
+    }
+
+    /**
+     * Mayor valor de una columna entera, para seguir numerando desde ahi
+     * @param conn conexion a usar
+     * @param tabla tabla
+     * @param columna columna entera
+     * @return maximo, o 0 si la tabla esta vacia
+     * @throws SQLException si falla la consulta
+     */
+    public static int maximo(Connection conn, String tabla, String columna) throws SQLException {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COALESCE(MAX(" + columna + "), 0) FROM " + tabla)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+}
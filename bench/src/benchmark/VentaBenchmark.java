@@ -0,0 +1,59 @@
+package benchmark;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import ventas.EscritorBoletas;
+
+/**
+ * Cobro de una boleta, como lo hace VentaFianza al finalizar la venta:
+ * cabecera, detalle, descuento de stock y, si es fiada, deuda y saldo del
+ * deudor, en una transaccion de {@link EscritorBoletas}.
+ *
+ * @author franc
+ */
+@BenchmarkMode(Mode.AverageTime)
+public class VentaBenchmark extends ConexionBenchmark {
+
+    @Param({"1", "8", "40"})
+    public int lineas;
+
+    @Param({"false", "true"})
+    public boolean fiada;
+
+    private final EscritorBoletas escritor = new EscritorBoletas();
+    private SplittableRandom rnd;
+
+    @Override
+    protected void preparar() {
+        rnd = new SplittableRandom(lineas * 31L + (fiada ? 1 : 0));
+    }
+
+    @Benchmark
+    public int cobrar() throws SQLException {
+        return escritor.registrar(conn, armarBoleta()).idBoleta();
+    }
+
+    private EscritorBoletas.Boleta armarBoleta() {
+        List<EscritorBoletas.Linea> detalle = new ArrayList<>(lineas);
+        double total = 0;
+        for (int i = 0; i < lineas; i++) {
+            int precio = (1 + rnd.nextInt(200)) * 50;
+            int cantidad = 1 + rnd.nextInt(3);
+            double subtotal = precio * cantidad;
+            total += subtotal;
+            detalle.add(new EscritorBoletas.Linea(Semilla.PRIMER_PRODUCTO + rnd.nextInt(escala.productos()),
+                    cantidad, fiada ? cantidad : 0, precio, 0.0,
+                    fiada ? 0 : subtotal, fiada ? subtotal : 0, "VENTA"));
+        }
+        String rutDeudor = fiada ? String.valueOf(Semilla.PRIMER_DEUDOR + rnd.nextInt(escala.deudores())) : null;
+        return new EscritorBoletas.Boleta(String.valueOf(Semilla.PRIMER_USUARIO), new Timestamp(System.currentTimeMillis()),
+                "Efectivo", fiada ? 0 : total, fiada ? total : 0, detalle, rutDeudor);
+    }
+}
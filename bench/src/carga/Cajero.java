@@ -0,0 +1,156 @@
+package carga;
+
+import benchmark.Semilla;
+import datos.ConfiguracionBD;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import ventas.EscritorBoletas;
+import ventas.EscritorFacturas;
+import ventas.LiquidadorDeudas;
+
+/**
+ * Cajero virtual: una caja con su propia conexion a MySQL que repite las
+ * transacciones de las pantallas de venta, compra y pago de deuda hasta
+ * que se acaba el tiempo.
+ * <p>
+ * La conexion se abre con DriverManager y no con el pool de la
+ * aplicacion: en una tienda cada caja es un proceso aparte, y compartir
+ * un pool entre los cajeros virtuales mediria esperas que no existen.
+ *
+ * @author franc
+ */
+final class Cajero implements Runnable {
+
+    private static final Logger logger = Logger.getLogger(Cajero.class.getName());
+
+    private final int numero;
+    private final GeneradorCarga.Parametros p;
+    private final Semilla.Escala escala;
+    private final ConfiguracionBD cfg;
+    private final long fin;
+    private final AtomicInteger siguienteFactura;
+    private final Map<Operacion, LongAdder> avance;
+    private final Map<Operacion, Resultados> resultados = new EnumMap<>(Operacion.class);
+    private final SplittableRandom rnd;
+    private final EscritorBoletas boletas = new EscritorBoletas();
+    private final EscritorFacturas facturas = new EscritorFacturas();
+
+    Cajero(int numero, GeneradorCarga.Parametros p, Semilla.Escala escala, ConfiguracionBD cfg, long fin,
+           AtomicInteger siguienteFactura, Map<Operacion, LongAdder> avance) {
+        this.numero = numero;
+        this.p = p;
+        this.escala = escala;
+        this.cfg = cfg;
+        this.fin = fin;
+        this.siguienteFactura = siguienteFactura;
+        this.avance = avance;
+        this.rnd = new SplittableRandom(p.semilla() + numero);
+        for (Operacion op : Operacion.values()) {
+            resultados.put(op, new Resultados());
+        }
+    }
+
+    Map<Operacion, Resultados> getResultados() {
+        return resultados;
+    }
+
+    @Override
+    public void run() {
+        try (Connection conn = DriverManager.getConnection(cfg.getUrl(), cfg.getPropiedadesDriver())) {
+            while (System.nanoTime() < fin) {
+                Operacion op = p.elegir(rnd);
+                long inicio = System.nanoTime();
+                try {
+                    ejecutar(conn, op);
+                    resultados.get(op).confirmada(System.nanoTime() - inicio);
+                    avance.get(op).increment();
+                } catch (SQLException e) {
+                    resultados.get(op).fallida(e);
+                    if (Resultados.clasificar(e) == Resultados.Falla.OTRA) {
+                        logger.log(Level.WARNING, "Cajero " + numero + ": " + op + " fallo", e);
+                    }
+                }
+                if (p.pausaMs() > 0) {
+                    Thread.sleep(rnd.nextLong(p.pausaMs() * 2 + 1));
+                }
+            }
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Cajero " + numero + " no pudo conectarse", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void ejecutar(Connection conn, Operacion op) throws SQLException {
+        switch (op) {
+            case VENTA -> boletas.registrar(conn, boleta(false));
+            case FIADO -> boletas.registrar(conn, boleta(true));
+            case PAGO -> LiquidadorDeudas.pagar(conn, deudor(), usuario(), (1 + rnd.nextInt(40)) * 500, -1);
+            case COMPRA -> facturas.registrar(conn, factura());
+        }
+    }
+
+    /**
+     * Boleta como la arma VentaFianza: de 1 a lineasMaximas productos, los
+     * mas vendidos con mas probabilidad
+     */
+    private EscritorBoletas.Boleta boleta(boolean fiada) {
+        int n = 1 + rnd.nextInt(p.lineasMaximas());
+        List<EscritorBoletas.Linea> lineas = new ArrayList<>(n);
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+            int precio = (1 + rnd.nextInt(200)) * 50;
+            int cantidad = 1 + rnd.nextInt(3);
+            double subtotal = precio * cantidad;
+            total += subtotal;
+            lineas.add(new EscritorBoletas.Linea(producto(), cantidad, fiada ? cantidad : 0, precio, 0.0,
+                    fiada ? 0 : subtotal, fiada ? subtotal : 0, "VENTA"));
+        }
+        return new EscritorBoletas.Boleta(String.valueOf(usuario()), new Timestamp(System.currentTimeMillis()),
+                "Efectivo", fiada ? 0 : total, fiada ? total : 0, lineas, fiada ? String.valueOf(deudor()) : null);
+    }
+
+    private EscritorFacturas.Factura factura() {
+        LocalDate hoy = LocalDate.now();
+        int n = 5 + rnd.nextInt(26);
+        List<EscritorFacturas.Linea> lineas = new ArrayList<>(n);
+        int total = 0;
+        for (int i = 0; i < n; i++) {
+            int cajas = 1 + rnd.nextInt(10);
+            int precioCaja = (1 + rnd.nextInt(100)) * 300;
+            total += cajas * precioCaja;
+            lineas.add(new EscritorFacturas.Linea(producto(), hoy.plusMonths(6), 12, cajas, precioCaja, cajas * precioCaja));
+        }
+        return new EscritorFacturas.Factura(siguienteFactura.incrementAndGet(),
+                Semilla.PRIMER_PROVEEDOR + rnd.nextInt(escala.proveedores()), usuario(),
+                hoy, hoy.plusDays(30), "Transferencia", total, lineas);
+    }
+
+    // Con probabilidad 0.8 se elige entre los productosActivos mas vendidos
+    private int producto() {
+        int activos = Math.min(p.productosActivos(), escala.productos());
+        int i = rnd.nextInt(10) < 8 ? rnd.nextInt(activos) : rnd.nextInt(escala.productos());
+        return Semilla.PRIMER_PRODUCTO + i;
+    }
+
+    // Los deudores que fian y pagan a fin de mes son unos pocos
+    private int deudor() {
+        return Semilla.PRIMER_DEUDOR + rnd.nextInt(Math.min(p.deudoresActivos(), escala.deudores()));
+    }
+
+    private int usuario() {
+        return Semilla.PRIMER_USUARIO + numero % escala.usuarios();
+    }
+}
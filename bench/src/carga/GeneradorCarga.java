@@ -0,0 +1,178 @@
+package carga;
+
+import benchmark.Semilla;
+import datos.ConexionBD;
+import datos.ConfiguracionBD;
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Simula el cierre de mes de una tienda: muchos cajeros que venden, fian,
+ * cobran deudas e ingresan facturas a la vez sobre la misma base de datos.
+ * <p>
+ * Primero siembra la base de prueba con {@link Semilla} (escala en las
+ * claves semilla.* de bench/benchmark.properties), despues lanza un hilo
+ * virtual por {@link Cajero} y al final informa, por operacion, las
+ * transacciones por segundo, los percentiles de latencia y cuantas
+ * terminaron en deadlock, espera de candado agotada o falta de stock.
+ * <p>
+ * Los parametros van como clave=valor:
+ * <pre>
+ * ant carga -Dcarga.args="cajeros=40 segundos=120 venta=60 fiado=20 pago=15 compra=5"
+ * </pre>
+ *
+ * @author franc
+ */
+public final class GeneradorCarga {
+
+    // Cada cuanto se muestra el avance
+    private static final long AVANCE_SEG = 10;
+
+    /**
+     * Parametros de una corrida
+     * @param pesos peso relativo de cada operacion en la mezcla
+     * @param productosActivos productos que reciben la mayor parte de las ventas
+     * @param deudoresActivos deudores entre los que se reparten fiados y pagos
+     * @param pausaMs pausa media entre transacciones de un cajero; 0 es sin pausa
+     */
+    record Parametros(int cajeros, int segundos, Map<Operacion, Integer> pesos, int lineasMaximas,
+                      int productosActivos, int deudoresActivos, long pausaMs, long semilla) {
+
+        static Parametros leer(String[] args) {
+            Map<String, String> valores = new HashMap<>();
+            for (String arg : args) {
+                int igual = arg.indexOf('=');
+                if (igual <= 0) {
+                    throw new IllegalArgumentException("Se esperaba clave=valor: " + arg);
+                }
+                valores.put(arg.substring(0, igual).trim(), arg.substring(igual + 1).trim());
+            }
+            Map<Operacion, Integer> pesos = new EnumMap<>(Operacion.class);
+            pesos.put(Operacion.VENTA, entero(valores, "venta", 60));
+            pesos.put(Operacion.FIADO, entero(valores, "fiado", 20));
+            pesos.put(Operacion.PAGO, entero(valores, "pago", 15));
+            pesos.put(Operacion.COMPRA, entero(valores, "compra", 5));
+            Parametros p = new Parametros(entero(valores, "cajeros", 20), entero(valores, "segundos", 60), pesos,
+                    entero(valores, "lineas", 12), entero(valores, "productosActivos", 200),
+                    entero(valores, "deudoresActivos", 50), entero(valores, "pausaMs", 0),
+                    entero(valores, "semilla", 1));
+            if (!valores.isEmpty()) {
+                throw new IllegalArgumentException("Parametros desconocidos: " + valores.keySet());
+            }
+            if (p.cajeros() <= 0 || p.segundos() <= 0 || p.lineasMaximas() <= 0 || p.total() <= 0) {
+                throw new IllegalArgumentException("cajeros, segundos, lineas y la suma de pesos deben ser mayores que cero");
+            }
+            return p;
+        }
+
+        private static int entero(Map<String, String> valores, String clave, int defecto) {
+            String valor = valores.remove(clave);
+            return valor == null ? defecto : Integer.parseInt(valor);
+        }
+
+        private int total() {
+            int total = 0;
+            for (int peso : pesos.values()) {
+                total += peso;
+            }
+            return total;
+        }
+
+        Operacion elegir(SplittableRandom rnd) {
+            int r = rnd.nextInt(total());
+            for (Map.Entry<Operacion, Integer> e : pesos.entrySet()) {
+                r -= e.getValue();
+                if (r < 0) {
+                    return e.getKey();
+                }
+            }
+            return Operacion.VENTA;
+        }
+    }
+
+    private GeneradorCarga() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Parametros p = Parametros.leer(args);
+        Semilla.Escala escala = Semilla.preparar();
+        ConfiguracionBD cfg = ConexionBD.getConfiguracion();
+        AtomicInteger siguienteFactura;
+        try (Connection conn = ConexionBD.getConnection()) {
+            siguienteFactura = new AtomicInteger(Semilla.maximo(conn, "facturaProveedores", "idFactura"));
+        }
+
+        Map<Operacion, LongAdder> avance = new EnumMap<>(Operacion.class);
+        for (Operacion op : Operacion.values()) {
+            avance.put(op, new LongAdder());
+        }
+        System.out.println("Carga: " + p);
+        long inicio = System.nanoTime();
+        long fin = inicio + TimeUnit.SECONDS.toNanos(p.segundos());
+        List<Cajero> cajeros = new ArrayList<>(p.cajeros());
+        List<Thread> hilos = new ArrayList<>(p.cajeros());
+        for (int i = 0; i < p.cajeros(); i++) {
+            Cajero cajero = new Cajero(i, p, escala, cfg, fin, siguienteFactura, avance);
+            cajeros.add(cajero);
+            hilos.add(Thread.ofVirtual().name("cajero-" + i).start(cajero));
+        }
+
+        for (Thread hilo : hilos) {
+            while (!hilo.join(Duration.ofSeconds(AVANCE_SEG))) {
+                mostrarAvance(inicio, avance);
+            }
+        }
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+
+        Map<Operacion, Resultados> totales = new EnumMap<>(Operacion.class);
+        for (Operacion op : Operacion.values()) {
+            Resultados r = new Resultados();
+            for (Cajero cajero : cajeros) {
+                r.sumar(cajero.getResultados().get(op));
+            }
+            totales.put(op, r);
+        }
+        informar(p, segundos, totales);
+        ConexionBD.cerrarPool();
+    }
+
+    private static void mostrarAvance(long inicio, Map<Operacion, LongAdder> avance) {
+        StringBuilder linea = new StringBuilder(String.format("%4ds", (System.nanoTime() - inicio) / 1_000_000_000L));
+        for (Map.Entry<Operacion, LongAdder> e : avance.entrySet()) {
+            linea.append("  ").append(e.getKey()).append('=').append(e.getValue().sum());
+        }
+        System.out.println(linea);
+    }
+
+    private static void informar(Parametros p, double segundos, Map<Operacion, Resultados> totales) {
+        System.out.println();
+        System.out.printf("%d cajeros durante %.1f s%n", p.cajeros(), segundos);
+        System.out.printf("%-8s %9s %8s %8s %8s %8s %8s %9s %9s %7s %7s%n", "op", "ok", "tps",
+                "p50 ms", "p95 ms", "p99 ms", "max ms", "deadlock", "lockwait", "stock", "otras");
+        int confirmadas = 0;
+        int deadlocks = 0;
+        int esperas = 0;
+        for (Map.Entry<Operacion, Resultados> e : totales.entrySet()) {
+            Resultados r = e.getValue();
+            confirmadas += r.confirmadas();
+            deadlocks += r.fallas(Resultados.Falla.DEADLOCK);
+            esperas += r.fallas(Resultados.Falla.ESPERA_CANDADO);
+            System.out.printf("%-8s %9d %8.1f %8.2f %8.2f %8.2f %8.2f %9d %9d %7d %7d%n", e.getKey(),
+                    r.confirmadas(), r.confirmadas() / segundos,
+                    r.percentilMs(50), r.percentilMs(95), r.percentilMs(99), r.percentilMs(100),
+                    r.fallas(Resultados.Falla.DEADLOCK), r.fallas(Resultados.Falla.ESPERA_CANDADO),
+                    r.fallas(Resultados.Falla.STOCK), r.fallas(Resultados.Falla.OTRA));
+        }
+        System.out.printf("Total: %d transacciones (%.1f/s), %d deadlocks, %d esperas de candado agotadas%n",
+                confirmadas, confirmadas / segundos, deadlocks, esperas);
+    }
+}
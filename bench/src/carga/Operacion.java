@@ -0,0 +1,18 @@
+package carga;
+
+/**
+ * Transacciones que ejecuta un cajero virtual, las mismas que envian las
+ * pantallas de caja.
+ *
+ * @author franc
+ */
+public enum Operacion {
+    /** Venta al contado (Venta, VentaFianza sin fiado) */
+    VENTA,
+    /** Venta fiada: boleta, deuda y saldo del deudor (VentaFianza) */
+    FIADO,
+    /** Pago de deuda repartido entre las deudas abiertas (PagarDeudaDialog) */
+    PAGO,
+    /** Ingreso de factura de proveedor (Compra) */
+    COMPRA
+}
@@ -0,0 +1,94 @@
+package carga;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import ventas.StockInsuficienteException;
+
+/**
+ * Latencias y fallas de una operacion. Cada cajero tiene las suyas, sin
+ * sincronizar; al terminar se juntan con {@link #sumar}.
+ *
+ * @author franc
+ */
+final class Resultados {
+
+    /**
+     * Motivo por el que una transaccion no se confirmo
+     */
+    enum Falla {
+        /** MySQL eligio la transaccion como victima de un deadlock (1213) */
+        DEADLOCK,
+        /** Se agoto innodb_lock_wait_timeout (1205) */
+        ESPERA_CANDADO,
+        /** El UPDATE condicional de stock no alcanzo */
+        STOCK,
+        OTRA
+    }
+
+    private static final int ERROR_DEADLOCK = 1213;
+    private static final int ERROR_ESPERA_CANDADO = 1205;
+
+    private long[] latencias = new long[1024];
+    private int confirmadas;
+    private final Map<Falla, Integer> fallas = new EnumMap<>(Falla.class);
+
+    void confirmada(long nanos) {
+        if (confirmadas == latencias.length) {
+            latencias = Arrays.copyOf(latencias, latencias.length * 2);
+        }
+        latencias[confirmadas++] = nanos;
+    }
+
+    void fallida(SQLException e) {
+        fallas.merge(clasificar(e), 1, Integer::sum);
+    }
+
+    static Falla clasificar(SQLException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof StockInsuficienteException) {
+                return Falla.STOCK;
+            }
+            if (t instanceof SQLException s) {
+                if (s.getErrorCode() == ERROR_DEADLOCK) {
+                    return Falla.DEADLOCK;
+                }
+                if (s.getErrorCode() == ERROR_ESPERA_CANDADO) {
+                    return Falla.ESPERA_CANDADO;
+                }
+            }
+        }
+        return Falla.OTRA;
+    }
+
+    int confirmadas() {
+        return confirmadas;
+    }
+
+    int fallas(Falla falla) {
+        return fallas.getOrDefault(falla, 0);
+    }
+
+    void sumar(Resultados otros) {
+        long[] juntas = Arrays.copyOf(latencias, confirmadas + otros.confirmadas);
+        System.arraycopy(otros.latencias, 0, juntas, confirmadas, otros.confirmadas);
+        latencias = juntas;
+        confirmadas += otros.confirmadas;
+        otros.fallas.forEach((falla, n) -> fallas.merge(falla, n, Integer::sum));
+    }
+
+    /**
+     * Percentil de las latencias confirmadas, en milisegundos. Ordena las
+     * muestras la primera vez; solo se usa al terminar.
+     * @param p percentil entre 0 y 100
+     */
+    double percentilMs(double p) {
+        if (confirmadas == 0) {
+            return 0;
+        }
+        Arrays.sort(latencias, 0, confirmadas);
+        int i = (int) Math.ceil(p / 100.0 * confirmadas) - 1;
+        return latencias[Math.max(0, Math.min(confirmadas - 1, i))] / 1_000_000.0;
+    }
+}
@@ -3,9 +3,13 @@ import java.awt.event.*;
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.sql.*;
+import datos.ConexionBD;
+import ventas.SaldosDeudores;
 import java.util.logging.Logger;
+import pantallas.Marco;
+import pantallas.Pantalla;
 
-public class Clientes extends java.awt.Frame {
+public class Clientes extends java.awt.Frame implements Pantalla {
 
     private Connection conexion;
     private DefaultTableModel modeloDeudores;
@@ -81,30 +85,14 @@ public class Clientes extends java.awt.Frame {
         }
         
         
-        String sql = "SELECT d.rutDeudor, d.nomDeudor, d.telefono, " +
-                     "MIN(deu.fechaDeuda) as primeraDeuda, " +
-                     "SUM(CASE WHEN deu.estaPagado = 0 THEN (b.totalFiado - deu.montoPagado) ELSE 0 END) as deudaTotal " +
-                     "FROM deudores d " +
-                     "LEFT JOIN deudas deu ON d.rutDeudor = deu.rutDeudor " +
-                     "LEFT JOIN boletas b ON deu.idBoleta = b.idBoleta " +
-                     "GROUP BY d.rutDeudor, d.nomDeudor, d.telefono " +
-                     "ORDER BY d.nomDeudor";
-        
-        try (Connection conn = obtenerConexion();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            
-            while (rs.next()) {
-                int rut = rs.getInt("rutDeudor");
-                String nombre = rs.getString("nomDeudor");
-                int telefono = rs.getInt("telefono");
-                Date fecha = rs.getDate("primeraDeuda");
-                int deuda = rs.getInt("deudaTotal");
-                
+        // El saldo de cada deudor se mantiene en saldoDeudores; no se suman sus deudas aqui
+        try (Connection conn = obtenerConexion()) {
+            for (SaldosDeudores.Deudor d : SaldosDeudores.listar(conn)) {
+                Date fecha = d.deudaMasAntigua();
                 String fechaStr = (fecha != null) ? fecha.toString() : "-";
-                String deudaStr = String.format("$%,d", deuda);
+                String deudaStr = String.format("$%,d", d.saldo());
                 
-                modeloDeudores.addRow(new Object[]{rut, nombre, telefono, fechaStr, deudaStr});
+                modeloDeudores.addRow(new Object[]{d.rutDeudor(), d.nombre(), d.telefono(), fechaStr, deudaStr});
             }
             
         } catch (SQLException e) {
@@ -129,11 +117,7 @@ public class Clientes extends java.awt.Frame {
     }
     
     private Connection obtenerConexion() throws SQLException {
-        String url = "jdbc:mysql://localhost:3306/vistaalmar";
-        String user = "root";
-        String password = "";
-        
-        return DriverManager.getConnection(url, user, password);
+        return ConexionBD.getConnection();
     }
     
     private void abrirNuevoDeudor() {
@@ -189,8 +173,9 @@ public class Clientes extends java.awt.Frame {
 
             nombreDeudor = (nombreValue != null) ? nombreValue.toString() : "Cliente sin nombre";
 
-            // Se pasan los permisos al historial (aunque todos pueden ver)
-            HistorialDeuda historial = new HistorialDeuda(rutDeudor, nombreDeudor, this, usuario, permisos);
+            // Se pasan los permisos al historial (aunque todos pueden ver).
+            // Sin ventana padre: Clientes se muestra dentro del marco, que no se oculta
+            HistorialDeuda historial = new HistorialDeuda(rutDeudor, nombreDeudor, null, usuario, permisos);
             historial.setVisible(true);
 
             historial.addWindowListener(new java.awt.event.WindowAdapter() {
@@ -280,46 +265,22 @@ public class Clientes extends java.awt.Frame {
     }
 
     private int obtenerDeudaTotalBD(int rutDeudor) {
-        Connection conn = null;
-        PreparedStatement pstmt = null;
-        ResultSet rs = null;
-        try {
-            conn = obtenerConexion();
-            String query = "SELECT SUM(b.totalFiado - d.montoPagado) as deudaTotal " +
-                          "FROM deudas d " +
-                          "JOIN boletas b ON d.idBoleta = b.idBoleta " +
-                          "WHERE d.rutDeudor = ? " +
-                          "AND (b.totalFiado - d.montoPagado) > 0 " +
-                          "AND d.estaPagado = 0";
-
-            pstmt = conn.prepareStatement(query);
-            pstmt.setInt(1, rutDeudor);
-            rs = pstmt.executeQuery();
-
-            if (rs.next()) {
-                return rs.getInt("deudaTotal");
-            }
-
-            return 0;
-
+        try (Connection conn = obtenerConexion()) {
+            return SaldosDeudores.saldo(conn, rutDeudor);
         } catch (SQLException e) {
             System.err.println("Error al obtener deuda: " + e.getMessage());
             return 0;
-        } finally {
-            try {
-                if (rs != null) rs.close();
-                if (pstmt != null) pstmt.close();
-                if (conn != null) conn.close();
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
         }
     }
     
     private void volverMenuPrincipal() {
-        this.dispose();
-        
-        new MenuPrincipal(usuario, permisos).setVisible(true);
+        Marco.mostrar(MenuPrincipal.class, () -> new MenuPrincipal(usuario, permisos));
+    }
+
+    @Override
+    public void alMostrar() {
+        // Los saldos pudieron cambiar con ventas a credito hechas mientras no estaba a la vista
+        cargarDatosClientes();
     }
     
     private void salirAplicacion() {
@@ -2,17 +2,23 @@
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import catalogo.CatalogoProductos;
+import ventas.EscritorFacturas;
+import catalogo.Producto;
+import auditoria.RegistroAccesos;
+import datos.ConexionBD;
+import datos.EjecutorTransacciones;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.sql.Timestamp;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 import java.sql.ResultSet;
 import java.time.Month;
 import javax.swing.table.DefaultTableModel;
+import java.util.ArrayList;
+import java.util.List;
+import pantallas.Marco;
 /*
  * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
  * Click nbfs://nbhost/SystemFileSystem/Templates/GUIForms/JFrame.java to edit this template
@@ -84,29 +90,23 @@ public class Compra extends javax.swing.JFrame {
     }
     
     public void registrarRetiro(){
-        int valor = Integer.parseInt(usuario);
-        try{
-            LocalDateTime ahora = LocalDateTime.now();
-            Timestamp tiempo = Timestamp.valueOf(ahora);
-            stm=conex.createStatement();
-            stm.executeUpdate("INSERT INTO accessLog (rutUsuario, tipoAccion, fechaAccion) VALUES("+valor+",0,'"+ tiempo +"')");
-            stm.close();
-        }catch(SQLException ex){
-            JOptionPane.showMessageDialog(null, "Error en database: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-        }
-        return;
+        RegistroAccesos.salida(Integer.parseInt(usuario));
     }
     
     public void conectar(){
-        String url="jdbc:mysql://localhost:3306/vistaalmar";
-        String usuario="root";
-        String pass="";
         try{
-            conex=DriverManager.getConnection(url,usuario,pass);
+            conex=ConexionBD.getConnection();
         }catch(Exception ex){
             JOptionPane.showMessageDialog(null,"error en conexion "+ex,"error",1);
         }       
     }
+
+    @Override
+    public void dispose(){
+        ConexionBD.cerrarConexion(conex);
+        conex=null;
+        super.dispose();
+    }
     
     public static boolean isLeapYear(int year) {
         if (year % 400 == 0) {
@@ -561,13 +561,12 @@ public class Compra extends javax.swing.JFrame {
 
     private void btnRegresarActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnRegresarActionPerformed
         registrarRetiro();
-        this.dispose(); 
+        Marco.cerrarSesion();
         new MenuAcceso().setVisible(true);
     }//GEN-LAST:event_btnRegresarActionPerformed
 
     private void btnPrincipalActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnPrincipalActionPerformed
-        this.dispose(); 
-        new MenuPrincipal(usuario, estado).setVisible(true); 
+        Marco.mostrar(MenuPrincipal.class, () -> new MenuPrincipal(usuario, estado));
     }//GEN-LAST:event_btnPrincipalActionPerformed
 
     private void btnSalirActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnSalirActionPerformed
@@ -609,18 +608,8 @@ public class Compra extends javax.swing.JFrame {
             codigoCheck = Integer.parseInt(codigo);
         }
         try{
-            stm = conex.createStatement();
-            ResultSet lista = stm.executeQuery("SELECT codProducto, nomProducto FROM productos WHERE nomProducto LIKE '%" + nombre + "%' OR codProducto = " + codigoCheck);
-            String nombreLista = "";
-            String codigoLista = "";
-            int codigoLista2 = 0;
-            String sentenciaFinal;
-            while(lista.next()){
-                nombreLista = lista.getString("nomProducto");
-                codigoLista2 = lista.getInt("codProducto");
-                codigoLista = String.valueOf(codigoLista2);
-                sentenciaFinal = codigoLista + "-" + nombreLista;
-                cmbBuscar.addItem(sentenciaFinal);
+            for(Producto producto : CatalogoProductos.buscar(nombre, codigoCheck, 0)){
+                cmbBuscar.addItem(producto.codProducto() + "-" + producto.nomProducto());
             }
         }catch(SQLException ex){
             JOptionPane.showMessageDialog(null, "Error en database: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
@@ -788,88 +777,56 @@ public class Compra extends javax.swing.JFrame {
         if(respuesta==1){
             return;
         }
-        try{
-            conex.setAutoCommit(false);
-            
-            int user = Integer.parseInt(usuario);
-            int proveedor = rutProveedor;
-            int factura = numFactura;
-            int totalFinal = Integer.parseInt(lblTotalPrecio.getText());
-            String medio = cmbTipoPago.getSelectedItem().toString();
-            
-            stm = conex.createStatement();
-            stm.executeUpdate("INSERT INTO facturaProveedores VALUES("+ factura +","+ proveedor + ","+ user +",'" + ahora + "','"+ fechaV +"','"+ medio +"',"+ totalFinal +")");
-            stm.close();
-            
-            
-            DefaultTableModel modelo = (DefaultTableModel) tblCarro.getModel();
-            for(int i = 0; i < modelo.getRowCount(); i++){
-                int codigoProducto = Integer.parseInt(modelo.getValueAt(i, 0).toString());
-                
-                String fechaUnida = modelo.getValueAt(i, 4).toString();
-                String[] parts = fechaUnida.split("/", 3);              
-                daily = Integer.parseInt(parts[0]);
-                monthly = Integer.parseInt(parts[1]);
-                yearly = Integer.parseInt(parts[2]);
-                LocalDate fechaProducto = LocalDate.of(yearly, monthly, daily);
-                
-                boolean check = false;
-                
-                int cantidadUnidad = Integer.parseInt(modelo.getValueAt(i,2).toString());
-                
-                int cantidadCaja = Integer.parseInt(modelo.getValueAt(i,3).toString());
-                
-                int precioCaja = Integer.parseInt(modelo.getValueAt(i,5).toString());
-                              
-                float iva = 0.19f;
-                
-                int precioTotal = Integer.parseInt(modelo.getValueAt(i,6).toString());
-                
-                
-                stm = conex.createStatement();
-                
-                stm.executeUpdate("INSERT INTO detalleFacturaProductos VALUES (" + factura + ","+ codigoProducto + ",'"+ fechaProducto + "',"+ check +","+ cantidadCaja +","+ cantidadUnidad +","+ precioCaja +","+ iva +","+ precioTotal +")");
-                
-                stm.close();
-                
-                
-                
-                int agregado = cantidadUnidad * cantidadCaja;
-                
-                stm = conex.createStatement();
-                
-                stm.executeUpdate("UPDATE productos SET stock = stock + " + agregado + " WHERE codProducto = " + codigoProducto);
-                
-                stm.close();
-                
-                
-                         
+        int user = Integer.parseInt(usuario);
+        int proveedor = rutProveedor;
+        int factura = numFactura;
+        int totalFinal = Integer.parseInt(lblTotalPrecio.getText());
+        String medio = cmbTipoPago.getSelectedItem().toString();
+        List<EscritorFacturas.Linea> lineas = new ArrayList<>();
+        DefaultTableModel modelo = (DefaultTableModel) tblCarro.getModel();
+        for(int i = 0; i < modelo.getRowCount(); i++){
+            int codigoProducto = Integer.parseInt(modelo.getValueAt(i, 0).toString());
+            String fechaUnida = modelo.getValueAt(i, 4).toString();
+            String[] parts = fechaUnida.split("/", 3);              
+            daily = Integer.parseInt(parts[0]);
+            monthly = Integer.parseInt(parts[1]);
+            yearly = Integer.parseInt(parts[2]);
+            LocalDate fechaProducto = LocalDate.of(yearly, monthly, daily);
+            int cantidadUnidad = Integer.parseInt(modelo.getValueAt(i,2).toString());
+            int cantidadCaja = Integer.parseInt(modelo.getValueAt(i,3).toString());
+            int precioCaja = Integer.parseInt(modelo.getValueAt(i,5).toString());
+            int precioTotal = Integer.parseInt(modelo.getValueAt(i,6).toString());
+            lineas.add(new EscritorFacturas.Linea(codigoProducto, fechaProducto, cantidadUnidad, cantidadCaja, precioCaja, precioTotal));
+        }
+        
+        // La factura se registra en segundo plano; el boton queda bloqueado porque el numero de factura no se repite
+        btnConfirmar.setEnabled(false);
+        EscritorFacturas.Factura datosFactura = new EscritorFacturas.Factura(factura, proveedor, user, ahora, fechaV, medio, totalFinal, lineas);
+        EjecutorTransacciones.enviar("factura " + factura,
+                (conn, progreso) -> new EscritorFacturas().registrar(conn, datosFactura),
+                new EjecutorTransacciones.Observador<EscritorFacturas.Tiempos>() {
+            @Override
+            public void progreso(String mensaje) {
+                setTitle(mensaje);
             }
-            
-            
-            conex.commit();
-            JOptionPane.showMessageDialog(null, "Factura y Productos Registrados Exitosamente");
-                            
-        }catch(SQLException ex){
-            try {
-                conex.rollback(); 
+
+            @Override
+            public void exito(EscritorFacturas.Tiempos tiempos) {
+                setTitle("");
+                JOptionPane.showMessageDialog(null, "Factura y Productos Registrados Exitosamente");
+            }
+
+            @Override
+            public void error(Exception ex) {
+                setTitle("");
+                btnConfirmar.setEnabled(true);
                 JOptionPane.showMessageDialog(null, "Error en Base de Datos, Operación Revertida: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-            } catch (SQLException rollbackEx) {
-                JOptionPane.showMessageDialog(null, "Error crítico: rollback falló: " + rollbackEx.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-            }    
-        }finally{
-            try{
-                conex.setAutoCommit(true);
-            }catch (SQLException rollbackEx) {
-                JOptionPane.showMessageDialog(null, "Error crítico Revisar Base De Datos" + rollbackEx.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-            }       
-            
-        }
+            }
+        });
     }//GEN-LAST:event_btnConfirmarActionPerformed
 
     private void btnProveedoresActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnProveedoresActionPerformed
-        this.dispose();
-        new Proveedores(usuario,estado).setVisible(true);
+        Marco.mostrar(Proveedores.class, () -> new Proveedores(usuario, estado));
     }//GEN-LAST:event_btnProveedoresActionPerformed
 
     /**
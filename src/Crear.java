@@ -1,7 +1,7 @@
 import javax.swing.JOptionPane;
-import seguridad.BCrypt;
+import seguridad.Autenticacion;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import datos.ConexionBD;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -49,15 +49,19 @@ public class Crear extends javax.swing.JFrame {
         }
     }
     public void conectar(){
-        String url="jdbc:mysql://localhost:3306/vistaalmar";
-        String usuario="root";
-        String pass="";
         try{
-            conex=DriverManager.getConnection(url,usuario,pass);
+            conex=ConexionBD.getConnection();
         }catch(Exception ex){
             JOptionPane.showMessageDialog(null,"error en conexion "+ex,"error",1);
         }       
     }
+
+    @Override
+    public void dispose(){
+        ConexionBD.cerrarConexion(conex);
+        conex=null;
+        super.dispose();
+    }
     /**
      * This method is called from within the constructor to initialize the form.
      * WARNING: Do NOT modify this code. The content of this method is always
@@ -279,7 +283,6 @@ public class Crear extends javax.swing.JFrame {
         String input = txtRut.getText();
         String input2 = txtNombre.getText();
         int valor;
-        String nuevo;
         boolean revisar = !txtRut.getText().trim().isEmpty() && !txtNombre.getText().trim().isEmpty()&& !pswPassword1.getText().trim().isEmpty();
         if (input.matches("\\d+")) {
             if(revisar){
@@ -292,22 +295,33 @@ public class Crear extends javax.swing.JFrame {
                         JOptionPane.showMessageDialog(null, "La contraseña debe ser minimo 6 caracteres", "Error", JOptionPane.ERROR_MESSAGE);
                         return;
                     }
-                    nuevo = BCrypt.hashpw(pswPassword1.getText(), BCrypt.gensalt());
-                    revisar = rdoPuede.isSelected();
-                    
-                    try{
-                           stm=conex.createStatement();
-                           stm.executeUpdate("INSERT INTO usuarios VALUES(" + valor +",'"+ input2 +"','"+ nuevo +"',"+ revisar +")");
-                           JOptionPane.showMessageDialog(null, "Usuario Registrado Exitosamente");
-                           this.dispose();
-                           new MenuAcceso().setVisible(true);
-                    }catch(SQLException ex){
-                        if (ex.getSQLState().equals("23000")) { // SQL state for integrity constraint violation
-                            JOptionPane.showMessageDialog(null, "El RUT ya está registrado.", "Error", JOptionPane.ERROR_MESSAGE);
-                        } else {
-                            JOptionPane.showMessageDialog(null, "Errores En La Base de Datos " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    int rut = valor;
+                    boolean puede = rdoPuede.isSelected();
+                    // BCrypt tarda a proposito; se cifra fuera del EDT
+                    btnConfirmar.setEnabled(false);
+                    Autenticacion.cifrar(pswPassword1.getText(), nuevo -> {
+                        btnConfirmar.setEnabled(true);
+                        if (conex == null) {
+                            return;
                         }
-                    }
+                        if (nuevo == null) {
+                            JOptionPane.showMessageDialog(null, "Hay otras verificaciones en curso. Intente de nuevo en un momento.", "Error", JOptionPane.ERROR_MESSAGE);
+                            return;
+                        }
+                        try{
+                               stm=conex.createStatement();
+                               stm.executeUpdate("INSERT INTO usuarios VALUES(" + rut +",'"+ input2 +"','"+ nuevo +"',"+ puede +")");
+                               JOptionPane.showMessageDialog(null, "Usuario Registrado Exitosamente");
+                               this.dispose();
+                               new MenuAcceso().setVisible(true);
+                        }catch(SQLException ex){
+                            if (ex.getSQLState().equals("23000")) { // SQL state for integrity constraint violation
+                                JOptionPane.showMessageDialog(null, "El RUT ya está registrado.", "Error", JOptionPane.ERROR_MESSAGE);
+                            } else {
+                                JOptionPane.showMessageDialog(null, "Errores En La Base de Datos " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                            }
+                        }
+                    });
                 }
                 else{
                     JOptionPane.showMessageDialog(null, "Contraseñas deben ser iguales" , "Error", JOptionPane.ERROR_MESSAGE);
@@ -333,7 +347,6 @@ public class Crear extends javax.swing.JFrame {
         String input = txtRut.getText();
         String input2 = txtNombre.getText();
         int valor;
-        String nuevo;
         boolean revisar = !txtRut.getText().trim().isEmpty() && !txtNombre.getText().trim().isEmpty()&& !pswPassword1.getText().trim().isEmpty();
         if (input.matches("\\d+")) {
             if(revisar){
@@ -350,21 +363,33 @@ public class Crear extends javax.swing.JFrame {
                         JOptionPane.showMessageDialog(null, "Ingrese de Nuevo Su Nombre", "Error", JOptionPane.ERROR_MESSAGE);
                         return;
                     }
-                    nuevo = BCrypt.hashpw(pswPassword1.getText(), BCrypt.gensalt());
-                    try{
-                           stm=conex.createStatement();
-                           int actualizado = stm.executeUpdate("UPDATE usuarios SET nomUsuario='" + input2 + "',password='"+nuevo+"' WHERE rutUsuario="+valor);
-                           if(actualizado == 0){
-                               JOptionPane.showMessageDialog(null, "Usuario No Existe");
-                           }
-                           else{
-                               JOptionPane.showMessageDialog(null, "Usuario Actualizado Exitosamente");
-                               this.dispose();
-                               new MenuAcceso().setVisible(true);
-                           }     
-                    }catch(SQLException ex){
-                           JOptionPane.showMessageDialog(null, "Error en database: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);                       
-                    }
+                    int rut = valor;
+                    // BCrypt tarda a proposito; se cifra fuera del EDT
+                    btnPassword.setEnabled(false);
+                    Autenticacion.cifrar(pswPassword1.getText(), nuevo -> {
+                        btnPassword.setEnabled(true);
+                        if (conex == null) {
+                            return;
+                        }
+                        if (nuevo == null) {
+                            JOptionPane.showMessageDialog(null, "Hay otras verificaciones en curso. Intente de nuevo en un momento.", "Error", JOptionPane.ERROR_MESSAGE);
+                            return;
+                        }
+                        try{
+                               stm=conex.createStatement();
+                               int actualizado = stm.executeUpdate("UPDATE usuarios SET nomUsuario='" + input2 + "',password='"+nuevo+"' WHERE rutUsuario="+rut);
+                               if(actualizado == 0){
+                                   JOptionPane.showMessageDialog(null, "Usuario No Existe");
+                               }
+                               else{
+                                   JOptionPane.showMessageDialog(null, "Usuario Actualizado Exitosamente");
+                                   this.dispose();
+                                   new MenuAcceso().setVisible(true);
+                               }     
+                        }catch(SQLException ex){
+                               JOptionPane.showMessageDialog(null, "Error en database: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);                       
+                        }
+                    });
                 }
                 else{
                     JOptionPane.showMessageDialog(null, "Contraseñas deben ser iguales" , "Error", JOptionPane.ERROR_MESSAGE);
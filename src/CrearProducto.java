@@ -3,13 +3,14 @@ import java.awt.event.WindowEvent;
 import javax.swing.JOptionPane;
 import seguridad.BCrypt;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import catalogo.CatalogoProductos;
+import auditoria.RegistroAccesos;
+import datos.ConexionBD;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.sql.Timestamp;
-import java.time.LocalDateTime;
 import javax.swing.JFrame;
+import pantallas.Marco;
 /*
  * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
  * Click nbfs://nbhost/SystemFileSystem/Templates/GUIForms/JFrame.java to edit this template
@@ -55,28 +56,22 @@ public class CrearProducto extends javax.swing.JFrame {
     }
     
     public void registrarRetiro(){
-        int valor = Integer.parseInt(usuario);
-        try{
-            LocalDateTime ahora = LocalDateTime.now();
-            Timestamp tiempo = Timestamp.valueOf(ahora);
-            stm=conex.createStatement();
-            stm.executeUpdate("INSERT INTO accessLog (rutUsuario, tipoAccion, fechaAccion) VALUES("+valor+",0,'"+ tiempo +"')");
-            stm.close();
-        }catch(SQLException ex){
-            JOptionPane.showMessageDialog(null, "Error en database: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-        }
-        return;
+        RegistroAccesos.salida(Integer.parseInt(usuario));
     }
     public void conectar(){
-        String url="jdbc:mysql://localhost:3306/vistaalmar";
-        String usuario="root";
-        String pass="";
         try{
-            conex=DriverManager.getConnection(url,usuario,pass);
+            conex=ConexionBD.getConnection();
         }catch(Exception ex){
             JOptionPane.showMessageDialog(null,"error en conexion "+ex,"error",1);
         }       
     }
+
+    @Override
+    public void dispose(){
+        ConexionBD.cerrarConexion(conex);
+        conex=null;
+        super.dispose();
+    }
     
     public void llenarCombo(){
         try{
@@ -386,6 +381,7 @@ public class CrearProducto extends javax.swing.JFrame {
     private void btnRegresarActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnRegresarActionPerformed
         registrarRetiro();
         this.dispose();
+        Marco.cerrarSesion();
         new MenuAcceso().setVisible(true);
     }//GEN-LAST:event_btnRegresarActionPerformed
 
@@ -396,7 +392,7 @@ public class CrearProducto extends javax.swing.JFrame {
 
     private void btnVolverActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnVolverActionPerformed
         this.dispose();
-        new Inventario(usuario,estado).setVisible(true);
+        Marco.mostrar(Inventario.class, () -> new Inventario(usuario, estado));
     }//GEN-LAST:event_btnVolverActionPerformed
 
     private void txtNombreActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_txtNombreActionPerformed
@@ -442,6 +438,7 @@ public class CrearProducto extends javax.swing.JFrame {
                 stm.close();
                 stm=conex.createStatement();
                 stm.executeUpdate("INSERT INTO productos VALUES("+codigo+",'" + nombre + "'," + tipoCodigo + "," + precio + ",0,'"+ input3 +"','" + comentarios + "')");
+                CatalogoProductos.refrescar(codigo);
                 JOptionPane.showMessageDialog(null, "Producto Ingresado");
             }catch(SQLException ex){
                   JOptionPane.showMessageDialog(null, "Error en database: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);               
@@ -2,14 +2,14 @@
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import auditoria.RegistroAccesos;
+import datos.ConexionBD;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.sql.Timestamp;
-import java.time.LocalDateTime;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
+import pantallas.Marco;
 
 /*
  * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
@@ -54,29 +54,23 @@ public class CrearProveedor extends javax.swing.JFrame {
     }
     
     public void registrarRetiro(){
-        int valor = Integer.parseInt(usuario);
-        try{
-            LocalDateTime ahora = LocalDateTime.now();
-            Timestamp tiempo = Timestamp.valueOf(ahora);
-            stm=conex.createStatement();
-            stm.executeUpdate("INSERT INTO accessLog (rutUsuario, tipoAccion, fechaAccion) VALUES("+valor+",0,'"+ tiempo +"')");
-            stm.close();
-        }catch(SQLException ex){
-            JOptionPane.showMessageDialog(null, "Error en database: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-        }
-        return;
+        RegistroAccesos.salida(Integer.parseInt(usuario));
     }
     
     public void conectar(){
-        String url="jdbc:mysql://localhost:3306/vistaalmar";
-        String usuario="root";
-        String pass="";
         try{
-            conex=DriverManager.getConnection(url,usuario,pass);
+            conex=ConexionBD.getConnection();
         }catch(Exception ex){
             JOptionPane.showMessageDialog(null,"error en conexion "+ex,"error",1);
         }       
     }
+
+    @Override
+    public void dispose(){
+        ConexionBD.cerrarConexion(conex);
+        conex=null;
+        super.dispose();
+    }
     /**
      * This method is called from within the constructor to initialize the form.
      * WARNING: Do NOT modify this code. The content of this method is always
@@ -335,12 +329,13 @@ public class CrearProveedor extends javax.swing.JFrame {
     private void btnRegresarActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnRegresarActionPerformed
         registrarRetiro();
         this.dispose();
+        Marco.cerrarSesion();
         new MenuAcceso().setVisible(true);
     }//GEN-LAST:event_btnRegresarActionPerformed
 
     private void btnPrincipalActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnPrincipalActionPerformed
         this.dispose();
-        new MenuPrincipal(usuario,permisos).setVisible(true);
+        Marco.mostrar(MenuPrincipal.class, () -> new MenuPrincipal(usuario, permisos));
     }//GEN-LAST:event_btnPrincipalActionPerformed
 
     private void btnSalirActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnSalirActionPerformed
@@ -389,7 +384,7 @@ public class CrearProveedor extends javax.swing.JFrame {
 
     private void btnProveedorActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnProveedorActionPerformed
         this.dispose();
-        new Proveedores(usuario,permisos).setVisible(true);
+        Marco.mostrar(Proveedores.class, () -> new Proveedores(usuario, permisos));
     }//GEN-LAST:event_btnProveedorActionPerformed
 
     /**
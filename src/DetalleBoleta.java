@@ -1,4 +1,6 @@
 import java.sql.*;
+import datos.ConexionBD;
+import historial.Archivador;
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
 import java.text.SimpleDateFormat;
@@ -6,13 +8,22 @@ public class DetalleBoleta extends javax.swing.JDialog {
 
     private DefaultTableModel modeloDetalles;
     private int idBoleta;
+    private boolean archivada;
     private String usuario;
     private boolean permisos;
     /**
      * Creates new form DetalleBoleta
      */
     public DetalleBoleta(int idBoleta) {
+        this(idBoleta, false);
+    }
+
+    /**
+     * @param archivada si la boleta ya fue movida a las tablas de archivo
+     */
+    public DetalleBoleta(int idBoleta, boolean archivada) {
         this.idBoleta = idBoleta;
+        this.archivada = archivada;
         this.usuario = usuario;
         this.permisos = permisos;
         initComponents();
@@ -31,13 +42,13 @@ public class DetalleBoleta extends javax.swing.JDialog {
         modeloDetalles.setRowCount(0);
         
         String sqlInfo = "SELECT b.*, d.nomDeudor, d.rutDeudor " +
-                        "FROM boletas b " +
+                        "FROM " + (archivada ? Archivador.BOLETAS : "boletas") + " b " +
                         "LEFT JOIN deudas deu ON b.idBoleta = deu.idBoleta " +
                         "LEFT JOIN deudores d ON deu.rutDeudor = d.rutDeudor " +
                         "WHERE b.idBoleta = ?";
         
         String sqlProductos = "SELECT dbp.*, p.nomProducto " +
-                             "FROM detalleboletaproductos dbp " +
+                             "FROM " + (archivada ? Archivador.DETALLE : "detalleboletaproductos") + " dbp " +
                              "JOIN productos p ON dbp.codProducto = p.codProducto " +
                              "WHERE dbp.idBoleta = ?";
         
@@ -112,11 +123,7 @@ public class DetalleBoleta extends javax.swing.JDialog {
     
     
     private Connection obtenerConexion() throws SQLException {
-        String url = "jdbc:mysql://localhost:3306/vistaalmar";
-        String user = "root";
-        String password = "";
-        
-        return DriverManager.getConnection(url, user, password);
+        return ConexionBD.getConnection();
     }
     
     
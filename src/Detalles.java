@@ -1,7 +1,5 @@
 
-import java.awt.Image;
-import java.net.URL;
-import javax.swing.ImageIcon;
+import catalogo.ImagenesProducto;
 import javax.swing.JOptionPane;
 
 /*
@@ -24,21 +22,16 @@ public class Detalles extends javax.swing.JFrame {
         initComponents();
     }
     
-    public Detalles(String comentario, String enlace){
+    // Tamano de lblImage; Inventario precarga la foto con este mismo tamano
+    static final int ANCHO_FOTO = 250;
+    static final int ALTO_FOTO = 293;
+
+    public Detalles(String comentario, String imgLink){
         initComponents();
         lblComentarios.setText(comentario);
         lblImage.setText("");
-        URL imageURL = getClass().getResource(enlace);
-            ImageIcon icon;
-            if(imageURL != null){
-                ImageIcon originalIcon = new ImageIcon(imageURL);
-                Image originalImage = originalIcon.getImage();
-                int labelWidth = lblImage.getWidth();
-                int labelHeight = lblImage.getHeight();
-                Image scaledImage = originalImage.getScaledInstance(labelWidth, labelHeight, Image.SCALE_SMOOTH);
-                ImageIcon scaledIcon = new ImageIcon(scaledImage);
-                lblImage.setIcon(scaledIcon);
-            }
+        // La ventana se abre de inmediato; la foto llega cuando esta escalada
+        ImagenesProducto.mostrar(imgLink, ANCHO_FOTO, ALTO_FOTO, lblImage::setIcon);
     }
     
 
@@ -1,15 +1,27 @@
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import javax.swing.GroupLayout;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
 import javax.swing.JOptionPane;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import auditoria.RegistroAccesos;
+import datos.ConexionBD;
+import historial.ModeloAccesos;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.time.LocalDateTime;
-import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import javax.swing.JFrame;
+import pantallas.Marco;
 /*
  * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
  * Click nbfs://nbhost/SystemFileSystem/Templates/GUIForms/JFrame.java to edit this template
@@ -25,6 +37,12 @@ public class HistorialAcceso extends javax.swing.JFrame {
     private String usuario = "hello";
     private boolean permisos = false;
     private static final java.util.logging.Logger logger = java.util.logging.Logger.getLogger(Usuarios.class.getName());
+    private static final DateTimeFormatter FORMATO_FILTRO = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    private ModeloAccesos modeloAccesos;
+    private JComboBox<String> cmbFiltroUsuario;
+    private JTextField txtDesde;
+    private JTextField txtHasta;
+    private JCheckBox chkArchivados;
 
     /**
      * Creates new form Usuarios
@@ -54,53 +72,109 @@ public class HistorialAcceso extends javax.swing.JFrame {
     }
     
     public void registrarRetiro(){
-        int valor = Integer.parseInt(usuario);
-        try{
-            LocalDateTime ahora = LocalDateTime.now();
-            Timestamp tiempo = Timestamp.valueOf(ahora);
-            stm=conex.createStatement();
-            stm.executeUpdate("INSERT INTO accessLog (rutUsuario, tipoAccion, fechaAccion) VALUES("+valor+",0,'"+ tiempo +"')");
-            stm.close();
-        }catch(SQLException ex){
-            JOptionPane.showMessageDialog(null, "Error en database: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-        }
-        return;
+        RegistroAccesos.salida(Integer.parseInt(usuario));
     }
     
     public void conectar(){
-        String url="jdbc:mysql://localhost:3306/vistaalmar";
-        String usuario="root";
-        String pass="";
         try{
-            conex=DriverManager.getConnection(url,usuario,pass);
+            conex=ConexionBD.getConnection();
         }catch(Exception ex){
             JOptionPane.showMessageDialog(null,"error en conexion "+ex,"error",1);
         }       
     }
+
+    @Override
+    public void dispose(){
+        if (modeloAccesos != null) {
+            modeloAccesos.cerrar();
+        }
+        ConexionBD.cerrarConexion(conex);
+        conex=null;
+        super.dispose();
+    }
     
     
     public void crearTabla(){
+        modeloAccesos = new ModeloAccesos(ex -> JOptionPane.showMessageDialog(null,"error en conexion "+ex,"error",1));
+        tblUsuarios.setModel(modeloAccesos);
+        tblUsuarios.setDefaultEditor(Object.class, null);
+        tblUsuarios.getTableHeader().setReorderingAllowed(false);
+        agregarFiltros();
+        modeloAccesos.cargar(new ModeloAccesos.Filtro(null, null, null));
+    }
+
+    /**
+     * Pone sobre la tabla la barra de filtros por usuario y rango de fechas.
+     * La tabla y la barra comparten el lugar que el formulario le da a scrTabla.
+     */
+    private void agregarFiltros(){
+        cmbFiltroUsuario = new JComboBox<>();
+        cmbFiltroUsuario.addItem("Todos");
         try{
             stm = conex.createStatement();
-            ResultSet lista = stm.executeQuery("SELECT a.rutUsuario, b.nomUsuario, a.tipoAccion, a.fechaAccion FROM accessLog a, usuarios b WHERE a.rutUsuario = b.rutUsuario ORDER BY a.fechaAccion DESC");
-            DefaultTableModel modelo = (DefaultTableModel)tblUsuarios.getModel();
-            modelo.setRowCount(0);
-            String accion;
+            ResultSet lista = stm.executeQuery("SELECT rutUsuario, nomUsuario FROM usuarios ORDER BY nomUsuario");
             while(lista.next()){
-                if(lista.getInt("tipoAccion") == 0){
-                    accion = "Cerrado Sesión";
-                }
-                else{
-                    accion = "Inicio Sesión";
-                }
-                Object data[] = {lista.getString("rutUsuario"), lista.getString("nomUsuario"), accion, lista.getString("fechaAccion")};
-                modelo.addRow(data);
+                cmbFiltroUsuario.addItem(lista.getInt("rutUsuario") + " - " + lista.getString("nomUsuario"));
             }
-            
+            stm.close();
         }catch(Exception ex){
             JOptionPane.showMessageDialog(null,"error en conexion "+ex,"error",1);
         }
+        txtDesde = new JTextField(8);
+        txtHasta = new JTextField(8);
+        txtDesde.setToolTipText("dd/mm/aaaa, vacío para no filtrar");
+        txtHasta.setToolTipText("dd/mm/aaaa, vacío para no filtrar");
+        chkArchivados = new JCheckBox("Archivados");
+        chkArchivados.setToolTipText("Accesos antiguos movidos al archivo de historial");
+        chkArchivados.addActionListener(e -> filtrar());
+        JButton btnFiltrar = new JButton("Filtrar");
+        btnFiltrar.addActionListener(e -> filtrar());
+        txtDesde.addActionListener(e -> filtrar());
+        txtHasta.addActionListener(e -> filtrar());
+
+        JPanel filtros = new JPanel(new FlowLayout(FlowLayout.LEFT, 4, 2));
+        filtros.add(new JLabel("Usuario:"));
+        filtros.add(cmbFiltroUsuario);
+        filtros.add(new JLabel("Desde:"));
+        filtros.add(txtDesde);
+        filtros.add(new JLabel("Hasta:"));
+        filtros.add(txtHasta);
+        filtros.add(chkArchivados);
+        filtros.add(btnFiltrar);
+
+        JPanel contenedor = new JPanel(new BorderLayout());
+        contenedor.setPreferredSize(scrTabla.getPreferredSize());
+        ((GroupLayout) jPanel1.getLayout()).replace(scrTabla, contenedor);
+        contenedor.add(filtros, BorderLayout.NORTH);
+        contenedor.add(scrTabla, BorderLayout.CENTER);
+        jPanel1.revalidate();
+    }
+
+    private void filtrar(){
+        Integer rut = null;
+        if (cmbFiltroUsuario.getSelectedIndex() > 0) {
+            rut = Integer.valueOf(cmbFiltroUsuario.getSelectedItem().toString().split(" - ")[0].trim());
+        }
+        LocalDate desde;
+        LocalDate hasta;
+        try{
+            desde = leerFecha(txtDesde.getText());
+            hasta = leerFecha(txtHasta.getText());
+        }catch(DateTimeParseException ex){
+            JOptionPane.showMessageDialog(this, "Ingrese las fechas como dd/mm/aaaa", "Fecha inválida", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        if (desde != null && hasta != null && desde.isAfter(hasta)) {
+            JOptionPane.showMessageDialog(this, "La fecha inicial es posterior a la final", "Fecha inválida", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        modeloAccesos.cargar(new ModeloAccesos.Filtro(rut, desde, hasta, chkArchivados.isSelected()));
     }
+
+    private static LocalDate leerFecha(String texto){
+        return texto.isBlank() ? null : LocalDate.parse(texto.trim(), FORMATO_FILTRO);
+    }
+
     /**
      * This method is called from within the constructor to initialize the form.
      * WARNING: Do NOT modify this code. The content of this method is always
@@ -226,6 +300,7 @@ public class HistorialAcceso extends javax.swing.JFrame {
     private void btnRegresarActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnRegresarActionPerformed
         registrarRetiro();
         this.dispose();
+        Marco.cerrarSesion();
         new MenuAcceso().setVisible(true);
     }//GEN-LAST:event_btnRegresarActionPerformed
 
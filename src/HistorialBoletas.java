@@ -1,13 +1,21 @@
 import java.sql.*;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import catalogo.CatalogoProductos;
+import datos.ConexionBD;
+import historial.ModeloBoletas;
+import java.util.ArrayList;
+import java.util.List;
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
-import javax.swing.table.TableRowSorter;
+import ventas.SaldosDeudores;
+import pantallas.Marco;
 
 public class HistorialBoletas extends javax.swing.JFrame {
     private Connection conexion;
-    private DefaultTableModel modeloBoletas;
+    private static final int ESPERA_FILTRO_MS = 300;
+    // Ultimo item del combo: boletas movidas al archivo de historial
+    private static final int ITEM_ARCHIVADAS = ModeloBoletas.Tipo.values().length;
+
+    private ModeloBoletas modeloBoletas;
+    private Timer filtroPendiente;
     private String usuario;
     private boolean permisos;
     
@@ -25,15 +33,25 @@ public class HistorialBoletas extends javax.swing.JFrame {
     }
     
     private void inicializarComponentes() {
-        modeloBoletas = (DefaultTableModel) tablaBoletas.getModel();
-        
+        modeloBoletas = new ModeloBoletas(e -> JOptionPane.showMessageDialog(this,
+                "Error al cargar boletas: " + e.getMessage(),
+                "Error de Base de Datos",
+                JOptionPane.ERROR_MESSAGE));
+        // Se ordena y filtra en SQL: la tabla solo tiene en memoria las paginas visibles
+        tablaBoletas.setAutoCreateRowSorter(false);
+        tablaBoletas.setRowSorter(null);
+        tablaBoletas.setModel(modeloBoletas);
+        cmbTipoBoleta.addItem("Boletas Archivadas");
+
         tablaBoletas.setDefaultEditor(Object.class, null);
         tablaBoletas.getTableHeader().setReorderingAllowed(false);
-        tablaBoletas.setAutoCreateRowSorter(true);
-        
-        TableRowSorter<DefaultTableModel> sorter = new TableRowSorter<>(modeloBoletas);
-        tablaBoletas.setRowSorter(sorter);
-        
+
+        modeloBoletas.addTableModelListener(e -> lblTotalBoletas.setText(String.valueOf(modeloBoletas.getRowCount())));
+
+        // Espera a que se deje de escribir antes de volver a consultar
+        filtroPendiente = new Timer(ESPERA_FILTRO_MS, e -> cargarBoletas());
+        filtroPendiente.setRepeats(false);
+
         txtBuscarBoleta.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
             @Override
             public void insertUpdate(javax.swing.event.DocumentEvent e) {
@@ -48,7 +66,7 @@ public class HistorialBoletas extends javax.swing.JFrame {
                 filtrarTabla();
             }
         });
-        
+
         tablaBoletas.addMouseListener(new java.awt.event.MouseAdapter() {
             @Override
             public void mouseClicked(java.awt.event.MouseEvent evt) {
@@ -58,7 +76,7 @@ public class HistorialBoletas extends javax.swing.JFrame {
             }
         });
     }
-    
+
     private void configurarSegunUsuario() {
         setTitle("Historial de Boletas - Usuario: " + usuario);
         
@@ -68,123 +86,55 @@ public class HistorialBoletas extends javax.swing.JFrame {
             btnEliminarBoleta.setBackground(new java.awt.Color(180, 180, 180));
         }
     }    
-  
+
     private void filtrarTabla() {
-        String texto = txtBuscarBoleta.getText().toLowerCase();
-        TableRowSorter<DefaultTableModel> sorter = (TableRowSorter<DefaultTableModel>) tablaBoletas.getRowSorter();
-        
-        if (texto.trim().length() == 0) {
-            sorter.setRowFilter(null);
-        } else {
-            sorter.setRowFilter(RowFilter.regexFilter("(?i)" + texto));
-        }
+        filtroPendiente.restart();
     }
-    
-    private void cargarBoletas() {
-        modeloBoletas.setRowCount(0);
 
+    private void cargarBoletas() {
+        filtroPendiente.stop();
+        ModeloBoletas.Tipo[] tipos = ModeloBoletas.Tipo.values();
         int indexTipo = cmbTipoBoleta.getSelectedIndex();
+        ModeloBoletas.Tipo tipo = indexTipo >= 0 && indexTipo < tipos.length ? tipos[indexTipo] : ModeloBoletas.Tipo.TODAS;
 
-        String regularBoletas = "WHERE b.totalPagados > 0 AND b.totalFiado = 0";
-        String fianzaBoletas = "WHERE b.totalFiado > 0";
-        String perdidaBoletas = "WHERE b.totalPagados < 0";
-        String whereCondition = "";
-
-        switch(indexTipo) {
-            case 0: 
-                whereCondition = "";
-                break;
-            case 1: 
-                whereCondition = regularBoletas;
-                break;
-            case 2: 
-                whereCondition = fianzaBoletas;
-                break;
-            case 3: 
-                whereCondition = perdidaBoletas;
-                break;
-        }
+        modeloBoletas.cargar(new ModeloBoletas.Filtro(tipo, txtBuscarBoleta.getText(), mostrandoArchivadas()));
+    }
 
-        String sql = "SELECT b.idBoleta, b.rutUsuario, b.fechaTramite, " +
-                     "b.medioPago, b.totalPagados, b.totalFiado, " +
-                     "COUNT(dbp.idBoleta) as numProductos " +
-                     "FROM boletas b " +
-                     "LEFT JOIN detalleboletaproductos dbp ON b.idBoleta = dbp.idBoleta ";
+    private boolean mostrandoArchivadas() {
+        return cmbTipoBoleta.getSelectedIndex() == ITEM_ARCHIVADAS;
+    }
 
-        if (!whereCondition.isEmpty()) {
-            sql += whereCondition + " ";
+    /**
+     * Boleta seleccionada, avisando si no hay seleccion o si su pagina aun
+     * no termina de cargarse
+     */
+    private ModeloBoletas.Boleta boletaSeleccionada(String mensajeSinSeleccion) {
+        int filaSeleccionada = tablaBoletas.getSelectedRow();
+        if (filaSeleccionada == -1) {
+            JOptionPane.showMessageDialog(this,
+                mensajeSinSeleccion,
+                "Selección Requerida",
+                JOptionPane.WARNING_MESSAGE);
+            return null;
         }
 
-        sql += "GROUP BY b.idBoleta, b.rutUsuario, b.fechaTramite, b.medioPago, b.totalPagados, b.totalFiado " +
-               "ORDER BY b.fechaTramite DESC";
-
-        try (Connection conn = obtenerConexion();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-
-            SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy HH:mm");
-
-            while (rs.next()) {
-                int idBoleta = rs.getInt("idBoleta");
-                String usuarioBoleta = rs.getString("rutUsuario");
-                Timestamp fecha = rs.getTimestamp("fechaTramite");
-                String medioPago = rs.getString("medioPago");
-                double totalPagado = rs.getDouble("totalPagados");
-                double totalFiado = rs.getDouble("totalFiado");
-                int numProductos = rs.getInt("numProductos");
-
-                String fechaStr = (fecha != null) ? sdf.format(new Date(fecha.getTime())) : "-";
-                String totalVenta = String.format("$%,.0f", totalPagado + totalFiado);
-                String totalPagadoStr = String.format("$%,.0f", totalPagado);
-                String totalFiadoStr = String.format("$%,.0f", totalFiado);
-
-                String tipoBoleta = "";
-                if (totalPagado > 0 && totalFiado == 0) {
-                    tipoBoleta = "Venta Regular";
-                } else if (totalFiado > 0) {
-                    tipoBoleta = "Con Fianza";
-                } else if (totalPagado < 0) {
-                    tipoBoleta = "Destrucción";
-                }
-
-                modeloBoletas.addRow(new Object[]{
-                    idBoleta,
-                    usuarioBoleta,
-                    fechaStr,
-                    medioPago,
-                    totalVenta,
-                    totalPagadoStr,
-                    totalFiadoStr,
-                    numProductos,
-                    tipoBoleta  
-                });
-            }
-
-            lblTotalBoletas.setText(String.valueOf(modeloBoletas.getRowCount()));
-
-        } catch (SQLException e) {
+        ModeloBoletas.Boleta boleta = modeloBoletas.getBoleta(tablaBoletas.convertRowIndexToModel(filaSeleccionada));
+        if (boleta == null) {
             JOptionPane.showMessageDialog(this,
-                "Error al cargar boletas: " + e.getMessage(),
-                "Error de Base de Datos",
-                JOptionPane.ERROR_MESSAGE);
-            e.printStackTrace();
+                "La boleta seleccionada aún se está cargando, intente nuevamente",
+                "Cargando",
+                JOptionPane.INFORMATION_MESSAGE);
         }
+        return boleta;
     }
-    
+
     private void verDetallesBoleta() {
-        int filaSeleccionada = tablaBoletas.getSelectedRow();
-        if (filaSeleccionada == -1) {
-            JOptionPane.showMessageDialog(this,
-                "Por favor seleccione una boleta",
-                "Selección Requerida",
-                JOptionPane.WARNING_MESSAGE);
+        ModeloBoletas.Boleta boleta = boletaSeleccionada("Por favor seleccione una boleta");
+        if (boleta == null) {
             return;
         }
         
-        int modelRow = tablaBoletas.convertRowIndexToModel(filaSeleccionada);
-        int idBoleta = (int) modeloBoletas.getValueAt(modelRow, 0);
-        
-        DetalleBoleta detalle = new DetalleBoleta(idBoleta);
+        DetalleBoleta detalle = new DetalleBoleta(boleta.idBoleta(), mostrandoArchivadas());
         detalle.setVisible(true);
         detalle.setLocationRelativeTo(this);
     }
@@ -199,18 +149,20 @@ public class HistorialBoletas extends javax.swing.JFrame {
             return;
         }
         
-        int filaSeleccionada = tablaBoletas.getSelectedRow();
-        if (filaSeleccionada == -1) {
+        if (mostrandoArchivadas()) {
             JOptionPane.showMessageDialog(this,
-                "Por favor seleccione una boleta para eliminar",
-                "Selección Requerida",
+                "Las boletas archivadas son de períodos cerrados y no se pueden eliminar",
+                "Boleta Archivada",
                 JOptionPane.WARNING_MESSAGE);
             return;
         }
-        
-        int modelRow = tablaBoletas.convertRowIndexToModel(filaSeleccionada);
-        int idBoleta = (int) modeloBoletas.getValueAt(modelRow, 0);
-        String fecha = (String) modeloBoletas.getValueAt(modelRow, 2);
+
+        ModeloBoletas.Boleta boleta = boletaSeleccionada("Por favor seleccione una boleta para eliminar");
+        if (boleta == null) {
+            return;
+        }
+        int idBoleta = boleta.idBoleta();
+        String fecha = boleta.fechaTexto();
         
         int confirmacion = JOptionPane.showConfirmDialog(this,
             "¿Está seguro que desea eliminar la boleta #" + idBoleta + "\n" +
@@ -228,6 +180,8 @@ public class HistorialBoletas extends javax.swing.JFrame {
     private void eliminarBoletaBD(int idBoleta) {
         Connection conn = null;
         try {
+            // Fuera de la transaccion: la primera vez crea y llena saldoDeudores
+            SaldosDeudores.preparar();
             conn = obtenerConexion();
             conn.setAutoCommit(false);
             
@@ -238,10 +192,12 @@ public class HistorialBoletas extends javax.swing.JFrame {
             
             String sqlUpdate = "UPDATE productos SET stock = stock + ? WHERE codProducto = ?";
             PreparedStatement pstmtUpdate = conn.prepareStatement(sqlUpdate);
+            List<Integer> productos = new ArrayList<>();
             
             while (rs.next()) {
                 int codProducto = rs.getInt("codProducto");
                 int cantidad = rs.getInt("cantidad");
+                productos.add(codProducto);
                 
                 pstmtUpdate.setInt(1, cantidad);
                 pstmtUpdate.setInt(2, codProducto);
@@ -257,11 +213,25 @@ public class HistorialBoletas extends javax.swing.JFrame {
             pstmtDetalles.executeUpdate();
             pstmtDetalles.close();
             
+            List<Integer> deudores = new ArrayList<>();
+            PreparedStatement pstmtDeudores = conn.prepareStatement("SELECT rutDeudor FROM deudas WHERE idBoleta = ?");
+            pstmtDeudores.setInt(1, idBoleta);
+            ResultSet rsDeudores = pstmtDeudores.executeQuery();
+            while (rsDeudores.next()) {
+                deudores.add(rsDeudores.getInt("rutDeudor"));
+            }
+            rsDeudores.close();
+            pstmtDeudores.close();
+
             String sqlDeleteDeudas = "DELETE FROM deudas WHERE idBoleta = ?";
             PreparedStatement pstmtDeudas = conn.prepareStatement(sqlDeleteDeudas);
             pstmtDeudas.setInt(1, idBoleta);
             pstmtDeudas.executeUpdate();
             pstmtDeudas.close();
+
+            for (int rutDeudor : deudores) {
+                SaldosDeudores.recalcular(conn, rutDeudor);
+            }
             
             String sqlDeleteBoleta = "DELETE FROM boletas WHERE idBoleta = ?";
             PreparedStatement pstmtBoleta = conn.prepareStatement(sqlDeleteBoleta);
@@ -270,6 +240,7 @@ public class HistorialBoletas extends javax.swing.JFrame {
             pstmtBoleta.close();
             
             conn.commit();
+            CatalogoProductos.refrescarStock(conn, productos);
             
             JOptionPane.showMessageDialog(this,
                 "Boleta #" + idBoleta + " eliminada exitosamente.\n" +
@@ -304,23 +275,26 @@ public class HistorialBoletas extends javax.swing.JFrame {
     }
 
     private void refrescar() {
+        txtBuscarBoleta.setText("");
         cmbTipoBoleta.setSelectedIndex(0);
         cargarBoletas();
-        txtBuscarBoleta.setText("");
     }
     
     private void volverClientes() {
         this.dispose();
-        new VentaFianza(usuario,permisos).setVisible(true);
+        Marco.mostrar(VentaFianza.class, () -> new VentaFianza(usuario, permisos));
     }    
     
     private Connection obtenerConexion() throws SQLException {
-        String url = "jdbc:mysql://localhost:3306/vistaalmar";
-        String user = "root";
-        String password = "";
-        
-        return DriverManager.getConnection(url, user, password);
+        return ConexionBD.getConnection();
     }    
+
+    @Override
+    public void dispose() {
+        filtroPendiente.stop();
+        modeloBoletas.cerrar();
+        super.dispose();
+    }
     
     /**
      * This method is called from within the constructor to initialize the form.
@@ -1,6 +1,8 @@
 import javax.swing.table.DefaultTableModel;
 import javax.swing.JOptionPane;
 import java.sql.*;
+import datos.ConexionBD;
+import ventas.SaldosDeudores;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import javax.swing.event.ListSelectionEvent;
@@ -20,9 +22,6 @@ public class HistorialDeuda extends java.awt.Frame {
     private int filaSeleccionada = -1;
     private int idBoletaSeleccionada = -1;
     
-    private static final String URL = "jdbc:mysql://localhost:3306/vistaalmar";
-    private static final String USUARIO = "root";
-    private static final String PASSWORD = "";    
     
    
     private DefaultTableModel modeloHistorial;
@@ -265,12 +264,10 @@ public class HistorialDeuda extends java.awt.Frame {
 
 
     private void cargarHistorialDeudas() {
-        try {
-            modeloHistorial.setRowCount(0);
-            int deudaTotal = 0;
+        modeloHistorial.setRowCount(0);
 
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            Connection conn = DriverManager.getConnection(URL, USUARIO, PASSWORD);
+        try (Connection conn = ConexionBD.getConnection()) {
+            int deudaTotal = 0;
 
             String sql = "SELECT d.deudaId, d.idBoleta, d.fechaDeuda, d.estaPagado, d.montoPagado, " +
                          "b.totalFiado " +
@@ -321,7 +318,6 @@ public class HistorialDeuda extends java.awt.Frame {
 
             rs.close();
             pstmt.close();
-            conn.close();
 
         } catch (Exception e) {
             JOptionPane.showMessageDialog(this,
@@ -355,15 +351,9 @@ public class HistorialDeuda extends java.awt.Frame {
 
 
     private void cargarDetalleBoleta(int idBoleta) {
-        try {
-            modeloDetalle.setRowCount(0);
+        modeloDetalle.setRowCount(0);
 
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            Connection conn = DriverManager.getConnection(
-                "jdbc:mysql://localhost:3306/vistaalmar", 
-                "root", 
-                ""
-            );
+        try (Connection conn = ConexionBD.getConnection()) {
 
             String sql = "SELECT p.nomProducto, " +
                          "d.cantidad, " +
@@ -407,14 +397,7 @@ public class HistorialDeuda extends java.awt.Frame {
 
             rs.close();
             pstmt.close();
-            conn.close();
 
-        } catch (ClassNotFoundException e) {
-            JOptionPane.showMessageDialog(this,
-                "Error: Driver JDBC no encontrado\n" + e.getMessage(),
-                "Error de Conexión",
-                JOptionPane.ERROR_MESSAGE);
-            cargarDetallePrueba();
         } catch (SQLException e) {
             JOptionPane.showMessageDialog(this,
                 "Error al cargar productos de la boleta:\n" + e.getMessage() +
@@ -503,6 +486,7 @@ public class HistorialDeuda extends java.awt.Frame {
     
     
     private void abrirPagarDeuda() {
+        Connection conn = null;
         try {
             boolean pagoEspecifico = (filaSeleccionada != -1);
 
@@ -510,12 +494,7 @@ public class HistorialDeuda extends java.awt.Frame {
             int deudaEspecifica = 0;
             int idBoletaEspecifica = -1;
 
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            Connection conn = DriverManager.getConnection(
-                "jdbc:mysql://localhost:3306/vistaalmar", 
-                "root", 
-                ""
-            );
+            conn = ConexionBD.getConnection();
 
             if (pagoEspecifico) {
                 idBoletaEspecifica = this.idBoletaSeleccionada;
@@ -573,39 +552,11 @@ public class HistorialDeuda extends java.awt.Frame {
                 if (eleccion == 0) {
                     deudaTotal = deudaEspecifica;
                 } else {
-                    String sqlTotal = "SELECT SUM(b.totalFiado - d.montoPagado) as total " +
-                                    "FROM deudas d " +
-                                    "INNER JOIN boletas b ON d.idBoleta = b.idBoleta " +
-                                    "WHERE d.rutDeudor = ? AND d.estaPagado = 0";
-
-                    PreparedStatement pstmtTotal = conn.prepareStatement(sqlTotal);
-                    pstmtTotal.setInt(1, rutDeudor);
-                    ResultSet rsTotal = pstmtTotal.executeQuery();
-
-                    if (rsTotal.next()) {
-                        deudaTotal = rsTotal.getInt("total");
-                    }
-
-                    rsTotal.close();
-                    pstmtTotal.close();
+                    deudaTotal = SaldosDeudores.saldo(conn, rutDeudor);
                     idBoletaEspecifica = -1; // No pagar boleta específica
                 }
             } else {
-                String sql = "SELECT SUM(b.totalFiado - d.montoPagado) as total " +
-                           "FROM deudas d " +
-                           "INNER JOIN boletas b ON d.idBoleta = b.idBoleta " +
-                           "WHERE d.rutDeudor = ? AND d.estaPagado = 0";
-
-                PreparedStatement pstmt = conn.prepareStatement(sql);
-                pstmt.setInt(1, rutDeudor);
-                ResultSet rs = pstmt.executeQuery();
-
-                if (rs.next()) {
-                    deudaTotal = rs.getInt("total");
-                }
-
-                rs.close();
-                pstmt.close();
+                deudaTotal = SaldosDeudores.saldo(conn, rutDeudor);
             }
 
             conn.close();
@@ -639,6 +590,8 @@ public class HistorialDeuda extends java.awt.Frame {
                 "Error al verificar deudas: " + e.getMessage(),
                 "Error",
                 JOptionPane.ERROR_MESSAGE);
+        } finally {
+            ConexionBD.cerrarConexion(conn);
         }
     }
     
@@ -1,11 +1,16 @@
 
 import java.awt.Color;
 import java.sql.SQLException;
-import java.time.LocalDateTime;
-import java.sql.Timestamp;
 import javax.swing.JOptionPane;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import auditoria.RegistroAccesos;
+import datos.ConexionBD;
+import datos.Consulta;
+import datos.Consultas;
+import historial.ConsultaFacturas;
+import metricas.Medicion;
+import metricas.Metricas;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -13,8 +18,12 @@ import javax.swing.JFrame;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.BorderFactory;
 import javax.swing.JTable;
 import javax.swing.table.DefaultTableModel;
+import pantallas.Marco;
 /*
  * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
  * Click nbfs://nbhost/SystemFileSystem/Templates/GUIForms/JFrame.java to edit this template
@@ -32,6 +41,20 @@ public class HistorialFacturas extends javax.swing.JFrame {
     private boolean permisos = false;
     Connection conex=null;
     Statement stm=null;
+    private static final int TAMANO_PAGINA = 100;
+    private static final Consulta DETALLE_FACTURA = Consultas.registrar("facturas.detalle",
+            "SELECT p.nomProducto, dfp.cantidadUnitaria, dfp.cantidad, dfp.precioCompra, dfp.total, dfp.fechaVencimiento, dfp.detalleRevisado "
+            + "FROM detalleFacturaProductos dfp JOIN productos p ON dfp.codProducto = p.codProducto WHERE dfp.idFactura = ?");
+    private static final Consulta REVISAR_FACTURA = Consultas.registrar("facturas.revisar",
+            "UPDATE detalleFacturaProductos SET detalleRevisado = true WHERE idFactura = ?");
+    private static final Consulta REVISAR_PRODUCTO = Consultas.registrar("facturas.revisarProducto",
+            "UPDATE detalleFacturaProductos dfp JOIN productos p ON dfp.codProducto = p.codProducto "
+            + "SET dfp.detalleRevisado = true WHERE dfp.idFactura = ? AND p.nomProducto = ?");
+    private final List<Integer> rutProveedores = new ArrayList<>();
+    private List<ConsultaFacturas.Semestre> semestres = new ArrayList<>();
+    private ConsultaFacturas.Filtro filtro;
+    private ConsultaFacturas.Factura ultimaFactura;
+    private boolean hayMasFacturas;
     /**
      * Creates new form MainMenu
      */
@@ -47,6 +70,13 @@ public class HistorialFacturas extends javax.swing.JFrame {
         customClose();
         tblFacturas.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
         tblDetalles.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+        // Trae la pagina siguiente cuando se llega al final de la tabla
+        jScrollPane1.getVerticalScrollBar().addAdjustmentListener(e -> {
+            javax.swing.JScrollBar barra = jScrollPane1.getVerticalScrollBar();
+            if(!e.getValueIsAdjusting() && barra.getValue() + barra.getVisibleAmount() >= barra.getMaximum() - tblFacturas.getRowHeight()){
+                cargarPagina();
+            }
+        });
         llenarCombo();
         cmbProveedor.setSelectedIndex(0);
         llenarCombo2();
@@ -87,8 +117,9 @@ public class HistorialFacturas extends javax.swing.JFrame {
     public void llenarCombo(){
         try{
             stm=conex.createStatement();
-            ResultSet fila = stm.executeQuery("SELECT nomEmpresa FROM proveedores ORDER BY nomEmpresa ASC");
+            ResultSet fila = stm.executeQuery("SELECT rutEmpresa, nomEmpresa FROM proveedores ORDER BY nomEmpresa ASC");
             while(fila.next()){
+                rutProveedores.add(fila.getInt("rutEmpresa"));
                 cmbProveedor.addItem(fila.getString("nomEmpresa"));
             }
             stm.close();
@@ -96,67 +127,74 @@ public class HistorialFacturas extends javax.swing.JFrame {
             JOptionPane.showMessageDialog(null, "Error en database: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
         }
     }
-    
+
+    /**
+     * Vuelve a la primera pagina con el semestre y proveedor elegidos. Los
+     * totales salen del resumen; las demas paginas se traen al bajar por la tabla.
+     */
     public void llenarTabla(){
+        DefaultTableModel modelo = (DefaultTableModel) tblFacturas.getModel();
+        modelo.setRowCount(0);
+        int indexProveedor = cmbProveedor.getSelectedIndex();
+        int indexFecha = cmbFecha.getSelectedIndex();
+        // El ultimo item de cmbFecha es "Todo"
+        ConsultaFacturas.Semestre semestre = indexFecha >= 0 && indexFecha < semestres.size() ? semestres.get(indexFecha) : null;
+        Integer rutEmpresa = indexProveedor > 0 ? rutProveedores.get(indexProveedor - 1) : null;
+        filtro = new ConsultaFacturas.Filtro(semestre, rutEmpresa);
+        ultimaFactura = null;
+        hayMasFacturas = true;
+        try{
+            ConsultaFacturas.Totales totales = ConsultaFacturas.totales(conex, filtro);
+            jScrollPane1.setBorder(BorderFactory.createTitledBorder(
+                    totales.facturas() + " facturas - Total $" + String.format("%,d", totales.monto())));
+        }catch(SQLException ex){
+            JOptionPane.showMessageDialog(null, "Error en database: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        cargarPagina();
+    }
+
+    /**
+     * Agrega a la tabla la pagina que sigue a la ultima factura mostrada
+     */
+    private void cargarPagina(){
+        if(!hayMasFacturas || filtro == null){
+            return;
+        }
+        Medicion medicion = Metricas.medir("historial.facturas.pagina");
         try{
+            List<ConsultaFacturas.Factura> facturas = ConsultaFacturas.pagina(conex, filtro, ultimaFactura, TAMANO_PAGINA);
+            hayMasFacturas = facturas.size() == TAMANO_PAGINA;
             DefaultTableModel modelo = (DefaultTableModel) tblFacturas.getModel();
-            modelo.setRowCount(0);
-            stm=conex.createStatement();
-            ResultSet fila;
-            int indexProveedor = cmbProveedor.getSelectedIndex();
-            int indexFecha = cmbFecha.getSelectedIndex();
-            int ultimoElemento = cmbFecha.getItemCount()-1;
-            int yearSelected, semesterSelected;
-            String providerSelected = cmbProveedor.getSelectedItem().toString();
-            if(indexFecha==ultimoElemento && indexProveedor==0){
-                fila = stm.executeQuery("SELECT fp.idFactura, p.nomEmpresa, u.nomUsuario, fp.fechaTramite, fp.fechaVencimiento, fp.medioPago, fp.total FROM facturaProveedores fp JOIN usuarios u ON u.rutUsuario = fp.rutUsuario JOIN proveedores p ON p.rutEmpresa = fp.rutEmpresa ORDER BY fp.fechaTramite DESC");
-            }else if(indexProveedor!=0 && indexFecha==ultimoElemento){
-                fila = stm.executeQuery("SELECT fp.idFactura, p.nomEmpresa, u.nomUsuario, fp.fechaTramite, fp.fechaVencimiento, fp.medioPago, fp.total FROM facturaProveedores fp JOIN usuarios u ON u.rutUsuario = fp.rutUsuario JOIN proveedores p ON p.rutEmpresa = fp.rutEmpresa WHERE p.nomEmpresa = '" + providerSelected + "' ORDER BY fp.fechaTramite DESC");
-            }else{
-                String parts[] = cmbFecha.getSelectedItem().toString().split("-");
-                yearSelected = Integer.parseInt(parts[0]);
-                semesterSelected = Integer.parseInt(parts[1]);
-                if(indexProveedor==0){
-                    if(semesterSelected == 1){
-                        fila = stm.executeQuery("SELECT fp.idFactura, p.nomEmpresa, u.nomUsuario, fp.fechaTramite, fp.fechaVencimiento, fp.medioPago, fp.total FROM facturaProveedores fp JOIN usuarios u ON u.rutUsuario = fp.rutUsuario JOIN proveedores p ON p.rutEmpresa = fp.rutEmpresa WHERE fechaTramite BETWEEN '" + yearSelected + "-01-01' AND '" + yearSelected + "-06-30' ORDER BY fp.fechaTramite DESC");
-                    }
-                    else{
-                        fila = stm.executeQuery("SELECT fp.idFactura, p.nomEmpresa, u.nomUsuario, fp.fechaTramite, fp.fechaVencimiento, fp.medioPago, fp.total FROM facturaProveedores fp JOIN usuarios u ON u.rutUsuario = fp.rutUsuario JOIN proveedores p ON p.rutEmpresa = fp.rutEmpresa WHERE fechaTramite BETWEEN '" + yearSelected + "-07-01' AND '" + yearSelected + "-12-31' ORDER BY fp.fechaTramite DESC");
-                    }
-                }
-                else{
-                    if(semesterSelected == 1){
-                        fila = stm.executeQuery("SELECT fp.idFactura, p.nomEmpresa, u.nomUsuario, fp.fechaTramite, fp.fechaVencimiento, fp.medioPago, fp.total FROM facturaProveedores fp JOIN usuarios u ON u.rutUsuario = fp.rutUsuario JOIN proveedores p ON p.rutEmpresa = fp.rutEmpresa WHERE fechaTramite BETWEEN '" + yearSelected + "-01-01' AND '" + yearSelected + "-06-30' AND p.nomEmpresa = '" + providerSelected + "' ORDER BY fp.fechaTramite DESC");
-                    }
-                    else{
-                        fila = stm.executeQuery("SELECT fp.idFactura, p.nomEmpresa, u.nomUsuario, fp.fechaTramite, fp.fechaVencimiento, fp.medioPago, fp.total FROM facturaProveedores fp JOIN usuarios u ON u.rutUsuario = fp.rutUsuario JOIN proveedores p ON p.rutEmpresa = fp.rutEmpresa WHERE fechaTramite BETWEEN '" + yearSelected + "-07-01' AND '" + yearSelected + "-12-31'  AND p.nomEmpresa = '" + providerSelected + "' ORDER BY fp.fechaTramite DESC");
-                    }
-                }
-            }
-            while(fila.next()){
+            for(ConsultaFacturas.Factura factura : facturas){
                 Object data[] = {
-                    fila.getInt("idFactura"),
-                    fila.getString("nomEmpresa"),
-                    fila.getString("nomUsuario"),
-                    fila.getDate("fechaTramite"),
-                    fila.getString("medioPago"),
-                    fila.getInt("total"),
-                    fila.getDate("fechaVencimiento")
+                    factura.idFactura(),
+                    factura.nomEmpresa(),
+                    factura.nomUsuario(),
+                    factura.fechaTramite(),
+                    factura.medioPago(),
+                    factura.total(),
+                    factura.fechaVencimiento()
                 };
                 modelo.addRow(data);
+                ultimaFactura = factura;
             }
-            stm.close();
         }catch(SQLException ex){
+            medicion.fallo();
+            hayMasFacturas = false;
             JOptionPane.showMessageDialog(null, "Error en database: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }finally{
+            medicion.close();
         }
     }
-    
+
     public void llenarTabla2(int codigo){
         try{
             DefaultTableModel modelo = (DefaultTableModel) tblDetalles.getModel();
             modelo.setRowCount(0);
-            stm = conex.createStatement();
-            ResultSet fila = stm.executeQuery("SELECT p.nomProducto, dfp.cantidadUnitaria, dfp.cantidad, dfp.precioCompra, dfp.total, dfp.fechaVencimiento, dfp.detalleRevisado FROM detalleFacturaProductos dfp JOIN productos p ON dfp.codProducto = p.codProducto WHERE dfp.idFactura = " + codigo);
+            PreparedStatement pst = DETALLE_FACTURA.preparar(conex);
+            pst.setInt(1, codigo);
+            ResultSet fila = pst.executeQuery();
             boolean warning = false;
             while(fila.next()){
                 String estadoProducto;
@@ -185,7 +223,7 @@ public class HistorialFacturas extends javax.swing.JFrame {
                 };
                 modelo.addRow(data);
             }
-            stm.close();
+            pst.close();
             if(warning && rdoSi.isSelected()){
                 JOptionPane.showMessageDialog(null,"Productos Vencidos Sin Revisar", "Advertencia", JOptionPane.WARNING_MESSAGE);
             }
@@ -196,73 +234,45 @@ public class HistorialFacturas extends javax.swing.JFrame {
     
     public void llenarCombo2(){
         try{
-            stm=conex.createStatement();
-            ResultSet fila = stm.executeQuery("SELECT MIN(fechaTramite) AS fechaMin, MAX(fechaTramite) AS fechaMax FROM facturaProveedores");
-            LocalDate fechaMinima = null, fechaMaxima = null;
-            while(fila.next()){
-                fechaMinima = fila.getDate("fechaMin").toLocalDate();
-                fechaMaxima = fila.getDate("fechaMax").toLocalDate();
-            }
-            int yearStart = fechaMinima.getYear();
-            int yearEnd = fechaMaxima.getYear();
-            int semestralStart = fechaMinima.getMonthValue();
-            if(semestralStart <= 6){
-                semestralStart = 1;
-            }else{
-                semestralStart = 2;
-            }
-            int semestralEnd = fechaMaxima.getMonthValue();
-            if(semestralEnd <= 6){
-                semestralEnd = 1;
-            }else{
-                semestralEnd = 2;
-            }
-            boolean status = true;
-            String statement;
-            while(status){
-                statement = String.valueOf(yearEnd) + "-" + String.valueOf(semestralEnd);
-                cmbFecha.addItem(statement);
-                if(yearStart == yearEnd && semestralStart == semestralEnd){
-                    status = false;
-                }
-                else{
-                    if(semestralEnd == 2){
-                        semestralEnd = 1;
-                    }
-                    else{
-                        semestralEnd = 2;
-                        yearEnd = yearEnd-1;
-                    }
-                }
+            semestres = ConsultaFacturas.semestres(conex);
+            for(ConsultaFacturas.Semestre semestre : semestres){
+                cmbFecha.addItem(semestre.toString());
             }
             cmbFecha.addItem("Todo");
-            stm.close();
         }catch(SQLException ex){
             JOptionPane.showMessageDialog(null, "Error en database: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
         }
     }
-    
+
     public void conectar(){
-        String url="jdbc:mysql://localhost:3306/vistaalmar";
-        String usuario="root";
-        String pass="";
         try{
-            conex=DriverManager.getConnection(url,usuario,pass);
+            conex=ConexionBD.getConnection();
         }catch(Exception ex){
             JOptionPane.showMessageDialog(null,"error en conexion "+ex,"error",1);
         }       
     }
+
+    @Override
+    public void dispose(){
+        ConexionBD.cerrarConexion(conex);
+        conex=null;
+        super.dispose();
+    }
     
     public void actualizarRevisado(int codigo, String nombre, boolean todo){
         try{
-            stm=conex.createStatement();
+            PreparedStatement pst;
             if(todo){
-                stm.executeUpdate("UPDATE detalleFacturaProductos SET detalleRevisado = true WHERE idFactura = " + codigo);
+                pst = REVISAR_FACTURA.preparar(conex);
+                pst.setInt(1, codigo);
             }
             else{
-                stm.executeUpdate("UPDATE detalleFacturaProductos dfp JOIN productos p ON dfp.codProducto = p.codProducto SET dfp.detalleRevisado = true WHERE dfp.idFactura = " + codigo + " AND p.nomProducto = '" + nombre + "'");
+                pst = REVISAR_PRODUCTO.preparar(conex);
+                pst.setInt(1, codigo);
+                pst.setString(2, nombre);
             }
-            stm.close();
+            pst.executeUpdate();
+            pst.close();
             JOptionPane.showMessageDialog(null,"Actualizado");
             llenarTabla2(codigo);
         }catch(SQLException ex){
@@ -271,17 +281,7 @@ public class HistorialFacturas extends javax.swing.JFrame {
     }
     
     public void registrarRetiro(){
-        int valor = Integer.parseInt(usuario);
-        try{
-            LocalDateTime ahora = LocalDateTime.now();
-            Timestamp tiempo = Timestamp.valueOf(ahora);
-            stm=conex.createStatement();
-            stm.executeUpdate("INSERT INTO accessLog (rutUsuario, tipoAccion, fechaAccion) VALUES("+valor+",0,'"+ tiempo +"')");
-            stm.close();
-        }catch(SQLException ex){
-            JOptionPane.showMessageDialog(null, "Error en database: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-        }
-        return;
+        RegistroAccesos.salida(Integer.parseInt(usuario));
     }
 
     /**
@@ -602,7 +602,8 @@ public class HistorialFacturas extends javax.swing.JFrame {
     private void btnRegresoActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnRegresoActionPerformed
         registrarRetiro();
         this.dispose();
-        new MenuAcceso().setVisible(true); 
+        Marco.cerrarSesion();
+        new MenuAcceso().setVisible(true);
     }//GEN-LAST:event_btnRegresoActionPerformed
 
     private void btnSalirActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnSalirActionPerformed
@@ -616,7 +617,7 @@ public class HistorialFacturas extends javax.swing.JFrame {
 
     private void btnProveedoresActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnProveedoresActionPerformed
         this.dispose();
-        new Proveedores(usuario,permisos).setVisible(true);
+        Marco.mostrar(Proveedores.class, () -> new Proveedores(usuario, permisos));
     }//GEN-LAST:event_btnProveedoresActionPerformed
 
     private void cmbFechaActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_cmbFechaActionPerformed
@@ -1,7 +1,14 @@
 import javax.swing.JOptionPane;
 import seguridad.BCrypt;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import catalogo.CatalogoProductos;
+import catalogo.ImagenesProducto;
+import catalogo.Producto;
+import auditoria.RegistroAccesos;
+import datos.ConexionBD;
+import datos.Consulta;
+import datos.Consultas;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -11,9 +18,10 @@ import java.awt.Image;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.net.URL;
-import java.time.LocalDateTime;
-import java.sql.Timestamp;
 import javax.swing.JFrame;
+import java.util.List;
+import pantallas.Marco;
+import pantallas.Pantalla;
 /*
  * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
  * Click nbfs://nbhost/SystemFileSystem/Templates/GUIForms/JFrame.java to edit this template
@@ -23,13 +31,34 @@ import javax.swing.JFrame;
  *
  * @author oct88
  */
-public class Inventario extends javax.swing.JFrame {
+public class Inventario extends javax.swing.JFrame implements Pantalla {
+    private static final Consulta VENTAS_DEL_PRODUCTO = Consultas.registrar("productos.contarVentas",
+            "SELECT COUNT(*) FROM detalleBoletaProductos WHERE codProducto = ?");
+    private static final Consulta COMPRAS_DEL_PRODUCTO = Consultas.registrar("productos.contarCompras",
+            "SELECT COUNT(*) FROM detalleFacturaProductos WHERE codProducto = ?");
+    private static final Consulta BORRAR_PRODUCTO = Consultas.registrar("productos.borrar",
+            "DELETE FROM productos WHERE codProducto = ?");
     Connection conex=null;
     Statement stm=null;
     private static final java.util.logging.Logger logger = java.util.logging.Logger.getLogger(Inventario.class.getName());
     private String usuario = "hello";
     private boolean estado = false;
     private boolean busqueda = false;
+    // Cambios del catalogo mientras la pantalla no esta a la vista; se aplican en alMostrar()
+    private final java.util.Set<Integer> cambiados = new java.util.HashSet<>();
+    private boolean recargarTabla = false;
+    // Actualiza las filas de los productos que cambiaron (stock tras una venta, edicion desde otra pantalla)
+    private final CatalogoProductos.Oyente oyenteCatalogo = codigos -> {
+        if(codigos.isEmpty()){
+            recargarTabla = true;
+        }
+        else{
+            cambiados.addAll(codigos);
+        }
+        if(Marco.esActual(this)){
+            aplicarCambios();
+        }
+    };
     /**
      * Creates new form Inventario
      */
@@ -46,6 +75,28 @@ public class Inventario extends javax.swing.JFrame {
         crearTabla();
         customClose();
         tblProductos.setAutoCreateRowSorter(true);
+        tblProductos.getSelectionModel().addListSelectionListener(e -> {
+            if(!e.getValueIsAdjusting()){
+                precargarFoto();
+            }
+        });
+        CatalogoProductos.agregarOyente(oyenteCatalogo);
+    }
+
+    // Deja lista la foto del producto seleccionado para cuando se pidan los detalles
+    private void precargarFoto(){
+        int fila = tblProductos.getSelectedRow();
+        if(fila == -1){
+            return;
+        }
+        try{
+            Producto producto = CatalogoProductos.buscar((int) tblProductos.getValueAt(fila, 0));
+            if(producto != null){
+                ImagenesProducto.precargar(producto.imgLink(), Detalles.ANCHO_FOTO, Detalles.ALTO_FOTO);
+            }
+        }catch(SQLException ex){
+            logger.log(java.util.logging.Level.FINE, "No se pudo precargar la foto", ex);
+        }
     }
     
     public void customClose(){
@@ -60,29 +111,114 @@ public class Inventario extends javax.swing.JFrame {
     }
     
     public void registrarRetiro(){
-        int valor = Integer.parseInt(usuario);
+        RegistroAccesos.salida(Integer.parseInt(usuario));
+    }
+
+    @Override
+    public void alMostrar(){
+        if (conex == null){
+            conectar();
+        }
+        aplicarCambios();
+    }
+
+    private void aplicarCambios(){
+        if(recargarTabla){
+            recargarTabla = false;
+            cambiados.clear();
+            if(busqueda){
+                crearFiltroTabla();
+            }
+            else{
+                crearTabla();
+            }
+        }
+        else if(!cambiados.isEmpty()){
+            actualizarFilas(cambiados);
+            cambiados.clear();
+        }
+    }
+
+    /**
+     * Actualiza, quita o agrega solo las filas de los productos indicados,
+     * sin rearmar la tabla, asi se conserva la seleccion
+     */
+    private void actualizarFilas(java.util.Set<Integer> codigos){
+        DefaultTableModel modelo = (DefaultTableModel) tblProductos.getModel();
+        java.util.Set<Integer> faltan = new java.util.HashSet<>(codigos);
         try{
-            LocalDateTime ahora = LocalDateTime.now();
-            Timestamp tiempo = Timestamp.valueOf(ahora);
-            stm=conex.createStatement();
-            stm.executeUpdate("INSERT INTO accessLog (rutUsuario, tipoAccion, fechaAccion) VALUES("+valor+",0,'"+ tiempo +"')");
-            stm.close();
+            for(int i = modelo.getRowCount() - 1; i >= 0; i--){
+                int codigo = ((Number) modelo.getValueAt(i, 0)).intValue();
+                if(!faltan.remove(codigo)){
+                    continue;
+                }
+                Producto producto = CatalogoProductos.buscar(codigo);
+                if(producto == null || !seMuestra(producto)){
+                    modelo.removeRow(i);
+                    continue;
+                }
+                modelo.setValueAt(producto.nomProducto(), i, 1);
+                modelo.setValueAt(producto.nombreTipo(), i, 2);
+                modelo.setValueAt(producto.precioActual(), i, 3);
+                modelo.setValueAt(producto.stock(), i, 4);
+            }
+            // Productos nuevos, o que ahora pasan el filtro
+            for(int codigo : faltan){
+                Producto producto = CatalogoProductos.buscar(codigo);
+                if(producto != null && seMuestra(producto)){
+                    modelo.addRow(fila(producto));
+                }
+            }
         }catch(SQLException ex){
-            JOptionPane.showMessageDialog(null, "Error en database: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            logger.log(java.util.logging.Level.WARNING, "No se pudo actualizar la tabla de productos", ex);
         }
-        return;
+    }
+
+    // Mismo filtro que llenarTabla: tipo elegido y, si hay busqueda, texto en el nombre
+    private boolean seMuestra(Producto producto){
+        if(producto.nombreTipo() == null){
+            return false;
+        }
+        int index = cmbTipo.getSelectedIndex();
+        if(index > 0 && !cmbTipo.getSelectedItem().toString().equals(producto.nombreTipo())){
+            return false;
+        }
+        String texto = busqueda ? CatalogoProductos.normalizar(txtBuscar.getText()) : "";
+        return texto.isEmpty() || (producto.nomProducto() != null
+                && CatalogoProductos.normalizar(producto.nomProducto()).contains(texto));
+    }
+
+    private Object[] fila(Producto producto){
+        return new Object[]{
+            producto.codProducto(),
+            producto.nomProducto(),
+            producto.nombreTipo(),
+            producto.precioActual(),
+            producto.stock()
+        };
+    }
+
+    @Override
+    public void alOcultar(){
+        ConexionBD.cerrarConexion(conex);
+        conex=null;
     }
     
     public void conectar(){
-        String url="jdbc:mysql://localhost:3306/vistaalmar";
-        String usuario="root";
-        String pass="";
         try{
-            conex=DriverManager.getConnection(url,usuario,pass);
+            conex=ConexionBD.getConnection();
         }catch(Exception ex){
             JOptionPane.showMessageDialog(null,"error en conexion "+ex,"error",1);
         }       
     }
+
+    @Override
+    public void dispose(){
+        CatalogoProductos.quitarOyente(oyenteCatalogo);
+        ConexionBD.cerrarConexion(conex);
+        conex=null;
+        super.dispose();
+    }
     
     public void llenarCombo(){
         try{
@@ -97,83 +233,28 @@ public class Inventario extends javax.swing.JFrame {
     }
     
     public void crearTabla(){
-        try{
-            DefaultTableModel modeloBorrar = (DefaultTableModel) tblProductos.getModel();
-            modeloBorrar.setRowCount(0);
-            stm = conex.createStatement();
-            int index = cmbTipo.getSelectedIndex();
-            ResultSet lista;
-            if(index!=0){
-                String sentencia = cmbTipo.getSelectedItem().toString();
-                lista = stm.executeQuery(
-                "SELECT p.codProducto, p.nomProducto, t.nombreTipo, p.precioActual, p.stock " +
-                "FROM productos p " +
-                "INNER JOIN tipoProductos t ON p.codTipo = t.codTipo " +
-                "WHERE t.nombreTipo = '" + sentencia + "'"
-                 );   
-            }
-            else{
-                lista = stm.executeQuery(
-                "SELECT p.codProducto, p.nomProducto, t.nombreTipo, p.precioActual, p.stock " +
-                "FROM productos p " +
-                "INNER JOIN tipoProductos t ON p.codTipo = t.codTipo"
-            );
-            }
-            DefaultTableModel modelo = (DefaultTableModel) tblProductos.getModel();
-            modelo.setRowCount(0);
-            while (lista.next()) {
-                Object data[] = {
-                    lista.getInt("codProducto"),
-                    lista.getString("nomProducto"),
-                    lista.getString("nombreTipo"),
-                    lista.getInt("precioActual"),
-                    lista.getInt("Stock")
-                };
-                modelo.addRow(data);
-            }
-            
-        }catch(Exception ex){
-            JOptionPane.showMessageDialog(null,"error en conexion "+ex,"error",1);
-        }
+        llenarTabla("");
     }
     
     public void crearFiltroTabla(){
+        llenarTabla(txtBuscar.getText().trim());
+    }
+    
+    private void llenarTabla(String nombre){
         try{
-            DefaultTableModel modeloBorrar = (DefaultTableModel) tblProductos.getModel();
-            modeloBorrar.setRowCount(0);
-            stm = conex.createStatement();
-            int index = cmbTipo.getSelectedIndex();
-            String nombre = txtBuscar.getText().trim();
-            ResultSet lista;
-            if(index!=0){
-                String sentencia = cmbTipo.getSelectedItem().toString();
-                lista = stm.executeQuery(
-                "SELECT p.codProducto, p.nomProducto, t.nombreTipo, p.precioActual, p.stock " +
-                "FROM productos p " +
-                "INNER JOIN tipoProductos t ON p.codTipo = t.codTipo " +
-                "WHERE t.nombreTipo = '" + sentencia + "' AND p.nomProducto LIKE '%" + nombre + "%'"
-                 );   
-            }
-            else{
-                lista = stm.executeQuery(
-                "SELECT p.codProducto, p.nomProducto, t.nombreTipo, p.precioActual, p.stock " +
-                "FROM productos p " +
-                "INNER JOIN tipoProductos t ON p.codTipo = t.codTipo WHERE p.nomProducto LIKE '%" + nombre + "%'"
-            );
-            }
             DefaultTableModel modelo = (DefaultTableModel) tblProductos.getModel();
             modelo.setRowCount(0);
-            while (lista.next()) {
-                Object data[] = {
-                    lista.getInt("codProducto"),
-                    lista.getString("nomProducto"),
-                    lista.getString("nombreTipo"),
-                    lista.getInt("precioActual"),
-                    lista.getInt("Stock")
-                };
-                modelo.addRow(data);
+            int index = cmbTipo.getSelectedIndex();
+            String sentencia = index > 0 ? cmbTipo.getSelectedItem().toString() : null;
+            List<Producto> productos = nombre.isEmpty() ? CatalogoProductos.listar() : CatalogoProductos.buscar(nombre, null, 0);
+            for (Producto producto : productos) {
+                // Igual que el INNER JOIN anterior: sin tipo valido no se muestra
+                if (producto.nombreTipo() == null || (sentencia != null && !sentencia.equals(producto.nombreTipo()))) {
+                    continue;
+                }
+                modelo.addRow(fila(producto));
             }
-            
+
         }catch(Exception ex){
             JOptionPane.showMessageDialog(null,"error en conexion "+ex,"error",1);
         }
@@ -182,18 +263,20 @@ public class Inventario extends javax.swing.JFrame {
     public int confirmarProducto(int codigo){
         int contador=0;
         try{
-                stm=conex.createStatement();
-                ResultSet fila = stm.executeQuery("SELECT COUNT(*) FROM detalleBoletaProductos WHERE codProducto =" + codigo);
+                PreparedStatement pst = VENTAS_DEL_PRODUCTO.preparar(conex);
+                pst.setInt(1, codigo);
+                ResultSet fila = pst.executeQuery();
                 while(fila.next()){
                     contador = contador + fila.getInt(1);
                 }
-                stm.close();
-                stm=conex.createStatement();
-                ResultSet fila2 = stm.executeQuery("SELECT COUNT(*) FROM detalleFacturaProductos WHERE codProducto =" + codigo);
+                pst.close();
+                pst = COMPRAS_DEL_PRODUCTO.preparar(conex);
+                pst.setInt(1, codigo);
+                ResultSet fila2 = pst.executeQuery();
                 while(fila2.next()){
                     contador = contador + fila2.getInt(1);
                 }
-                stm.close();
+                pst.close();
             }catch(SQLException ex){
                   JOptionPane.showMessageDialog(null, "Error en database: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);               
              }
@@ -466,13 +549,12 @@ public class Inventario extends javax.swing.JFrame {
 
     private void btnRegresarActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnRegresarActionPerformed
         registrarRetiro();
-        this.dispose();
+        Marco.cerrarSesion();
         new MenuAcceso().setVisible(true);
     }//GEN-LAST:event_btnRegresarActionPerformed
 
     private void btnPrincipalActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnPrincipalActionPerformed
-        this.dispose();
-        new MenuPrincipal(usuario,estado).setVisible(true);
+        Marco.mostrar(MenuPrincipal.class, () -> new MenuPrincipal(usuario, estado));
     }//GEN-LAST:event_btnPrincipalActionPerformed
 
     private void btnSalirActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnSalirActionPerformed
@@ -481,17 +563,15 @@ public class Inventario extends javax.swing.JFrame {
     }//GEN-LAST:event_btnSalirActionPerformed
 
     private void btnCompraActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnCompraActionPerformed
-        this.dispose();
-        new Proveedores(usuario,estado).setVisible(true);
+        Marco.mostrar(Proveedores.class, () -> new Proveedores(usuario, estado));
     }//GEN-LAST:event_btnCompraActionPerformed
 
     private void btnVentaActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnVentaActionPerformed
-        this.dispose();
-        new VentaFianza(usuario,estado).setVisible(true);
+        Marco.mostrar(VentaFianza.class, () -> new VentaFianza(usuario, estado));
     }//GEN-LAST:event_btnVentaActionPerformed
 
     private void btnCrearActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnCrearActionPerformed
-        this.dispose();
+        Marco.ocultar();
         new CrearProducto(usuario,estado).setVisible(true);
     }//GEN-LAST:event_btnCrearActionPerformed
 
@@ -507,7 +587,7 @@ public class Inventario extends javax.swing.JFrame {
         int selectedRow = tblProductos.getSelectedRow();
         if (selectedRow != -1) {
             int codigo = (int) tblProductos.getValueAt(selectedRow, 0);
-            this.dispose();
+            Marco.ocultar();
             new ModificarProducto(usuario,estado,codigo).setVisible(true);
         } 
         else {
@@ -555,8 +635,11 @@ public class Inventario extends javax.swing.JFrame {
            return;
        }
        try{
-            stm = conex.createStatement();
-            stm.executeUpdate("DELETE FROM productos WHERE codProducto = " + codigo);
+            PreparedStatement pst = BORRAR_PRODUCTO.preparar(conex);
+            pst.setInt(1, codigo);
+            pst.executeUpdate();
+            pst.close();
+            CatalogoProductos.quitar(codigo);
             JOptionPane.showMessageDialog(null,"Producto Borrado");
             if(cmbTipo.getSelectedIndex()==0){
                 crearTabla();
@@ -583,20 +666,19 @@ public class Inventario extends javax.swing.JFrame {
         }
         int fila = tblProductos.getSelectedRow();
             int codProducto = (int) tblProductos.getValueAt(fila, 0);
-            String enlace = "";
+            String imgLink = "";
             String mensaje = "";
             try{
-                stm=conex.createStatement();
-                ResultSet rs = stm.executeQuery("SELECT * FROM productos WHERE codProducto=" + codProducto);
-                while(rs.next()){
-                    mensaje = rs.getString("comentarios");
-                    enlace = "images\\" + rs.getString("imgLink") +".jpg"; 
+                Producto producto = CatalogoProductos.buscar(codProducto);
+                if(producto != null){
+                    mensaje = producto.comentarios();
+                    imgLink = producto.imgLink();
                 }
             }catch(SQLException ex){
                   JOptionPane.showMessageDialog(null, "Error en database: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
                   return;
             }
-            new Detalles(mensaje,enlace).setVisible(true);        
+            new Detalles(mensaje,imgLink).setVisible(true);        
     }//GEN-LAST:event_btnDetallesActionPerformed
 
     /**
@@ -1,12 +1,21 @@
 import javax.swing.JOptionPane;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import auditoria.RegistroAccesos;
+import catalogo.CatalogoProductos;
+import datos.ConexionBD;
+import datos.Consulta;
+import datos.Consultas;
+import historial.Archivador;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import seguridad.BCrypt;
-import java.time.LocalDateTime;
-import java.sql.Timestamp;
+import seguridad.Autenticacion;
+import ventas.DiarioVentas;
+import ventas.ResumenFacturas;
+import ventas.SaldosDeudores;
+import pantallas.Marco;
+import arranque.Arranque;
 
 
 /*
@@ -19,6 +28,8 @@ import java.sql.Timestamp;
  * @author oct88
  */
 public class MenuAcceso extends javax.swing.JFrame {
+    private static final Consulta USUARIO_LOGIN = Consultas.registrar("usuarios.login",
+            "SELECT * FROM usuarios WHERE rutUsuario IN (?, ?)");
     Connection conex=null;
     Statement stm=null;
     private static final java.util.logging.Logger logger = java.util.logging.Logger.getLogger(MenuAcceso.class.getName());
@@ -28,32 +39,30 @@ public class MenuAcceso extends javax.swing.JFrame {
      */
     public MenuAcceso() {
         initComponents();
+        Arranque.marcar("formulario");
         conectar();
+        Arranque.marcar("conexion");
+        Autenticacion.iniciar();
     }
     
     public void registrarAcceso(int valor){
-        try{
-            LocalDateTime ahora = LocalDateTime.now();
-            Timestamp tiempo = Timestamp.valueOf(ahora);
-            stm=conex.createStatement();
-            stm.executeUpdate("INSERT INTO accessLog (rutUsuario, tipoAccion, fechaAccion) VALUES("+valor+",1,'"+ tiempo +"')");
-            stm.close();
-        }catch(SQLException ex){
-            JOptionPane.showMessageDialog(null, "Error en database: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-        }
-        return;
+        RegistroAccesos.entrada(valor);
     }
 
     public void conectar(){
-        String url="jdbc:mysql://localhost:3306/vistaalmar";
-        String usuario="root";
-        String pass="";
         try{
-            conex=DriverManager.getConnection(url,usuario,pass);
+            conex=ConexionBD.getConnection();
         }catch(Exception ex){
             JOptionPane.showMessageDialog(null,"error en conexion "+ex,"error",1);
         }       
     }
+
+    @Override
+    public void dispose(){
+        ConexionBD.cerrarConexion(conex);
+        conex=null;
+        super.dispose();
+    }
     /**
      * This method is called from within the constructor to initialize the form.
      * WARNING: Do NOT modify this code. The content of this method is always
@@ -189,28 +198,45 @@ public class MenuAcceso extends javax.swing.JFrame {
 
     private void btnIngresarActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnIngresarActionPerformed
         try{
-            stm=conex.createStatement();
             String input = txtUsuario.getText();
             String inputPassword = pswPassword.getText(); 
             if(input.matches("\\d+")){
                 int valorReg = Integer.parseInt(input);
                 int valorAdmin =  valorReg * -1;
-                ResultSet lista = stm.executeQuery("SELECT * FROM usuarios WHERE rutUsuario IN (" + valorReg + "," + valorAdmin + ")" );
-                if(lista.next()){                   
-                    String hashedPassword = lista.getString("password");
-                    if(BCrypt.checkpw(inputPassword, hashedPassword)){
-                        int valorObtenido = lista.getInt("rutUsuario");
-                        boolean estado = lista.getBoolean("prestamo");
-                        this.dispose();
-                        registrarAcceso(valorObtenido);
-                        new MenuPrincipal(String.valueOf(valorObtenido), estado).setVisible(true); 
-                    }
-                    else{
-                        JOptionPane.showMessageDialog(null,"Error de Credenciales", "Error", JOptionPane.ERROR_MESSAGE);
+                try(PreparedStatement pst = USUARIO_LOGIN.preparar(conex)){
+                    pst.setInt(1, valorReg);
+                    pst.setInt(2, valorAdmin);
+                    ResultSet lista = pst.executeQuery();
+                    // Sin fila tambien se verifica, para que un RUT inexistente tarde lo mismo
+                    String hashedPassword = null;
+                    int valorObtenido = valorReg;
+                    boolean estado = false;
+                    if(lista.next()){
+                        hashedPassword = lista.getString("password");
+                        valorObtenido = lista.getInt("rutUsuario");
+                        estado = lista.getBoolean("prestamo");
                     }
-                }
-                else{
-                    JOptionPane.showMessageDialog(null,"Error de Credenciales", "Error", JOptionPane.WARNING_MESSAGE);
+                    int rut = valorObtenido;
+                    boolean permisos = estado;
+                    btnIngresar.setEnabled(false);
+                    Autenticacion.verificar(rut, inputPassword, hashedPassword, respuesta -> {
+                        btnIngresar.setEnabled(true);
+                        if(!isDisplayable()){
+                            return;
+                        }
+                        if(!respuesta.aceptada()){
+                            JOptionPane.showMessageDialog(null, respuesta.mensaje(), "Error", JOptionPane.ERROR_MESSAGE);
+                            return;
+                        }
+                        registrarAcceso(rut);
+                        CatalogoProductos.precargar();
+                        Archivador.programar();
+                        ResumenFacturas.programar();
+                        SaldosDeudores.programar();
+                        DiarioVentas.iniciar();
+                        this.dispose();
+                        Marco.mostrar(MenuPrincipal.class, () -> new MenuPrincipal(String.valueOf(rut), permisos));
+                    });
                 }
             }
             else{
@@ -240,6 +266,7 @@ public class MenuAcceso extends javax.swing.JFrame {
      * @param args the command line arguments
      */
     public static void main(String args[]) {
+        Arranque.empezar();
         /* Set the Nimbus look and feel */
         //<editor-fold defaultstate="collapsed" desc=" Look and feel setting code (optional) ">
         /* If Nimbus (introduced in Java SE 6) is not available, stay with the default look and feel.
@@ -256,9 +283,14 @@ public class MenuAcceso extends javax.swing.JFrame {
             logger.log(java.util.logging.Level.SEVERE, null, ex);
         }
         //</editor-fold>
+        Arranque.marcar("aspecto");
 
         /* Create and display the form */
-        java.awt.EventQueue.invokeLater(() -> new MenuAcceso().setVisible(true));
+        java.awt.EventQueue.invokeLater(() -> {
+            MenuAcceso acceso = new MenuAcceso();
+            Arranque.alAbrir(acceso);
+            acceso.setVisible(true);
+        });
     }
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
@@ -1,17 +1,18 @@
 
 import java.awt.Color;
 import java.sql.SQLException;
-import java.time.LocalDateTime;
-import java.sql.Timestamp;
 import javax.swing.JOptionPane;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import auditoria.RegistroAccesos;
+import datos.ConexionBD;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import javax.swing.JFrame;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import pantallas.Marco;
+import pantallas.Pantalla;
 /*
  * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
  * Click nbfs://nbhost/SystemFileSystem/Templates/GUIForms/JFrame.java to edit this template
@@ -21,7 +22,7 @@ import java.awt.event.WindowEvent;
  *
  * @author oct88
  */
-public class MenuPrincipal extends javax.swing.JFrame {
+public class MenuPrincipal extends javax.swing.JFrame implements Pantalla {
     
     private static final java.util.logging.Logger logger = java.util.logging.Logger.getLogger(MenuPrincipal.class.getName());
     
@@ -61,28 +62,35 @@ public class MenuPrincipal extends javax.swing.JFrame {
     }
     
     public void conectar(){
-        String url="jdbc:mysql://localhost:3306/vistaalmar";
-        String usuario="root";
-        String pass="";
         try{
-            conex=DriverManager.getConnection(url,usuario,pass);
+            conex=ConexionBD.getConnection();
         }catch(Exception ex){
             JOptionPane.showMessageDialog(null,"error en conexion "+ex,"error",1);
         }       
     }
+
+    @Override
+    public void dispose(){
+        ConexionBD.cerrarConexion(conex);
+        conex=null;
+        super.dispose();
+    }
     
     public void registrarRetiro(){
-        int valor = Integer.parseInt(usuario);
-        try{
-            LocalDateTime ahora = LocalDateTime.now();
-            Timestamp tiempo = Timestamp.valueOf(ahora);
-            stm=conex.createStatement();
-            stm.executeUpdate("INSERT INTO accessLog (rutUsuario, tipoAccion, fechaAccion) VALUES("+valor+",0,'"+ tiempo +"')");
-            stm.close();
-        }catch(SQLException ex){
-            JOptionPane.showMessageDialog(null, "Error en database: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        RegistroAccesos.salida(Integer.parseInt(usuario));
+    }
+
+    @Override
+    public void alMostrar(){
+        if (conex == null){
+            conectar();
         }
-        return;
+    }
+
+    @Override
+    public void alOcultar(){
+        ConexionBD.cerrarConexion(conex);
+        conex=null;
     }
 
     /**
@@ -261,33 +269,29 @@ public class MenuPrincipal extends javax.swing.JFrame {
 
     private void btnRegresoActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnRegresoActionPerformed
         registrarRetiro();
-        this.dispose();
+        Marco.cerrarSesion();
         new MenuAcceso().setVisible(true); 
     }//GEN-LAST:event_btnRegresoActionPerformed
 
     private void btnAdministradorActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnAdministradorActionPerformed
-        this.dispose(); 
+        Marco.ocultar();
         new Usuarios(usuario,permisos).setVisible(true);
     }//GEN-LAST:event_btnAdministradorActionPerformed
 
     private void btnVentaActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnVentaActionPerformed
-        this.dispose(); 
-        new Venta(usuario,permisos).setVisible(true);
+        Marco.mostrar(Venta.class, () -> new Venta(usuario,permisos));
     }//GEN-LAST:event_btnVentaActionPerformed
 
     private void btnCompraActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnCompraActionPerformed
-        this.dispose(); 
-        new Proveedores(usuario,permisos).setVisible(true);
+        Marco.mostrar(Proveedores.class, () -> new Proveedores(usuario,permisos));
     }//GEN-LAST:event_btnCompraActionPerformed
 
     private void btnInventarioActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnInventarioActionPerformed
-        this.dispose(); 
-        new Inventario(usuario,permisos).setVisible(true);
+        Marco.mostrar(Inventario.class, () -> new Inventario(usuario,permisos));
     }//GEN-LAST:event_btnInventarioActionPerformed
 
     private void btnClientesActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnClientesActionPerformed
-        this.dispose(); 
-        new Clientes(usuario,permisos).setVisible(true);
+        Marco.mostrar(Clientes.class, () -> new Clientes(usuario,permisos));
     }//GEN-LAST:event_btnClientesActionPerformed
 
     private void btnSalirActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnSalirActionPerformed
@@ -3,13 +3,15 @@ import java.awt.event.WindowEvent;
 import javax.swing.JOptionPane;
 import seguridad.BCrypt;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import catalogo.CatalogoProductos;
+import catalogo.Producto;
+import auditoria.RegistroAccesos;
+import datos.ConexionBD;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.sql.Timestamp;
-import java.time.LocalDateTime;
 import javax.swing.JFrame;
+import pantallas.Marco;
 /*
  * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
  * Click nbfs://nbhost/SystemFileSystem/Templates/GUIForms/JFrame.java to edit this template
@@ -57,29 +59,23 @@ public class ModificarProducto extends javax.swing.JFrame {
     }
     
     public void registrarRetiro(){
-        int valor = Integer.parseInt(usuario);
-        try{
-            LocalDateTime ahora = LocalDateTime.now();
-            Timestamp tiempo = Timestamp.valueOf(ahora);
-            stm=conex.createStatement();
-            stm.executeUpdate("INSERT INTO accessLog (rutUsuario, tipoAccion, fechaAccion) VALUES("+valor+",0,'"+ tiempo +"')");
-            stm.close();
-        }catch(SQLException ex){
-            JOptionPane.showMessageDialog(null, "Error en database: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-        }
-        return;
+        RegistroAccesos.salida(Integer.parseInt(usuario));
     }
     
     public void conectar(){
-        String url="jdbc:mysql://localhost:3306/vistaalmar";
-        String usuario="root";
-        String pass="";
         try{
-            conex=DriverManager.getConnection(url,usuario,pass);
+            conex=ConexionBD.getConnection();
         }catch(Exception ex){
             JOptionPane.showMessageDialog(null,"error en conexion "+ex,"error",1);
         }       
     }
+
+    @Override
+    public void dispose(){
+        ConexionBD.cerrarConexion(conex);
+        conex=null;
+        super.dispose();
+    }
     
     public void llenarCombo(){
         try{
@@ -99,24 +95,15 @@ public class ModificarProducto extends javax.swing.JFrame {
     
     public void llenarFormulario(){
         try{
-                int codigoT=0;
-                int precioA;
-                String nombreT;
-                stm=conex.createStatement();
-                ResultSet fila = stm.executeQuery("SELECT * FROM productos WHERE codProducto="+codigoModificar); 
-                while(fila.next()){
-                    txtNombre.setText(fila.getString("nomProducto"));
-                    precioA = fila.getInt("precioActual");
-                    txtPrecio.setText(String.valueOf(precioA));
-                    txtImgLink.setText(fila.getString("imgLink"));
-                    txaComentarios.setText(fila.getString("comentarios"));
-                    codigoT = fila.getInt("codTipo");
+                Producto producto = CatalogoProductos.buscar(codigoModificar);
+                if(producto == null){
+                    return;
                 }
-                stm.close();
-                stm=conex.createStatement();
-                ResultSet crear = stm.executeQuery("SELECT nombreTipo FROM tipoProductos WHERE codTipo="+codigoT);
-                crear.next();
-                nombreT = crear.getString("nombreTipo");
+                txtNombre.setText(producto.nomProducto());
+                txtPrecio.setText(String.valueOf(producto.precioActual()));
+                txtImgLink.setText(producto.imgLink());
+                txaComentarios.setText(producto.comentarios());
+                String nombreT = producto.nombreTipo();
                 for (int i = 0; i < cmbTipo.getItemCount(); i++) {
                 if (cmbTipo.getItemAt(i).equals(nombreT)) {
                     cmbTipo.setSelectedIndex(i);
@@ -348,6 +335,7 @@ public class ModificarProducto extends javax.swing.JFrame {
     private void btnRegresarActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnRegresarActionPerformed
         registrarRetiro();
         this.dispose();
+        Marco.cerrarSesion();
         new MenuAcceso().setVisible(true);
     }//GEN-LAST:event_btnRegresarActionPerformed
 
@@ -358,7 +346,7 @@ public class ModificarProducto extends javax.swing.JFrame {
 
     private void btnVolverActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnVolverActionPerformed
         this.dispose();
-        new Inventario(usuario,estado).setVisible(true);
+        Marco.mostrar(Inventario.class, () -> new Inventario(usuario, estado));
     }//GEN-LAST:event_btnVolverActionPerformed
 
     private void txtNombreActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_txtNombreActionPerformed
@@ -400,6 +388,7 @@ public class ModificarProducto extends javax.swing.JFrame {
                 stm.close();
                 stm=conex.createStatement();
                 stm.executeUpdate("UPDATE productos SET nomProducto='" + nombre + "', codTipo=" + tipoCodigo + ", precioActual=" + precio + ", imgLink='" + input3+"', comentarios='"+comentarios+"' WHERE codProducto=" + codigo);
+                CatalogoProductos.refrescar(codigo);
                 JOptionPane.showMessageDialog(null, "Producto Modificado");
                 llenarFormulario();
             }catch(SQLException ex){
@@ -2,14 +2,15 @@
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import auditoria.RegistroAccesos;
+import datos.ConexionBD;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.sql.Timestamp;
-import java.time.LocalDateTime;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
+import pantallas.Marco;
+import ventas.ResumenFacturas;
 
 /*
  * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
@@ -58,29 +59,23 @@ public class ModificarProveedor extends javax.swing.JFrame {
     }
     
     public void registrarRetiro(){
-        int valor = Integer.parseInt(usuario);
-        try{
-            LocalDateTime ahora = LocalDateTime.now();
-            Timestamp tiempo = Timestamp.valueOf(ahora);
-            stm=conex.createStatement();
-            stm.executeUpdate("INSERT INTO accessLog (rutUsuario, tipoAccion, fechaAccion) VALUES("+valor+",0,'"+ tiempo +"')");
-            stm.close();
-        }catch(SQLException ex){
-            JOptionPane.showMessageDialog(null, "Error en database: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-        }
-        return;
+        RegistroAccesos.salida(Integer.parseInt(usuario));
     }
     
     public void conectar(){
-        String url="jdbc:mysql://localhost:3306/vistaalmar";
-        String usuario="root";
-        String pass="";
         try{
-            conex=DriverManager.getConnection(url,usuario,pass);
+            conex=ConexionBD.getConnection();
         }catch(Exception ex){
             JOptionPane.showMessageDialog(null,"error en conexion "+ex,"error",1);
         }       
     }
+
+    @Override
+    public void dispose(){
+        ConexionBD.cerrarConexion(conex);
+        conex=null;
+        super.dispose();
+    }
     
     public void completarDatos(){
         try{
@@ -132,6 +127,13 @@ public class ModificarProveedor extends javax.swing.JFrame {
             if(respuesta==1){
                 return;
             }
+            // El DDL del resumen no puede correr dentro de la transaccion
+            try{
+                ResumenFacturas.preparar();
+            }catch(SQLException ex){
+                JOptionPane.showMessageDialog(null, "Error en database: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
             conex.setAutoCommit(false);
             stm=conex.createStatement();
             stm.executeUpdate("INSERT INTO proveedores VALUES("+rut+",'" + nombre + "','" + tipo + "','" + direccion + "','" + correo + "'," + telefono + ")");
@@ -139,6 +141,7 @@ public class ModificarProveedor extends javax.swing.JFrame {
             stm=conex.createStatement();
             stm.executeUpdate("UPDATE facturaProveedores SET rutEmpresa = " + rut + " WHERE rutEmpresa = " + proveedorModificar);
             stm.close();
+            ResumenFacturas.cambiarProveedor(conex, proveedorModificar, rut);
             stm=conex.createStatement();
             stm.executeUpdate("DELETE FROM proveedores WHERE rutEmpresa = " + proveedorModificar);
             JOptionPane.showMessageDialog(null, "Proveedor Modificado");
@@ -368,12 +371,13 @@ public class ModificarProveedor extends javax.swing.JFrame {
     private void btnRegresarActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnRegresarActionPerformed
         registrarRetiro();
         this.dispose();
+        Marco.cerrarSesion();
         new MenuAcceso().setVisible(true);
     }//GEN-LAST:event_btnRegresarActionPerformed
 
     private void btnPrincipalActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnPrincipalActionPerformed
         this.dispose();
-        new MenuPrincipal(usuario,permisos).setVisible(true);
+        Marco.mostrar(MenuPrincipal.class, () -> new MenuPrincipal(usuario, permisos));
     }//GEN-LAST:event_btnPrincipalActionPerformed
 
     private void btnSalirActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnSalirActionPerformed
@@ -465,7 +469,7 @@ public class ModificarProveedor extends javax.swing.JFrame {
 
     private void btnProveedorActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnProveedorActionPerformed
         this.dispose();
-        new Proveedores(usuario,permisos).setVisible(true);
+        Marco.mostrar(Proveedores.class, () -> new Proveedores(usuario, permisos));
     }//GEN-LAST:event_btnProveedorActionPerformed
 
     /**
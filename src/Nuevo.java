@@ -1,7 +1,10 @@
 import javax.swing.JOptionPane;
-import seguridad.BCrypt;
+import seguridad.Autenticacion;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import datos.ConexionBD;
+import datos.Consulta;
+import datos.Consultas;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -17,6 +20,8 @@ import java.sql.Statement;
 public class Nuevo extends javax.swing.JFrame {
     Connection conex=null;
     Statement stm=null;
+    private static final Consulta ADMINISTRADOR = Consultas.registrar("usuarios.buscar",
+            "SELECT * FROM usuarios WHERE rutUsuario = ?");
     private static final java.util.logging.Logger logger = java.util.logging.Logger.getLogger(Nuevo.class.getName());
 
     /**
@@ -29,15 +34,19 @@ public class Nuevo extends javax.swing.JFrame {
     }
 
     public void conectar(){
-        String url="jdbc:mysql://localhost:3306/vistaalmar";
-        String usuario="root";
-        String pass="";
         try{
-            conex=DriverManager.getConnection(url,usuario,pass);
+            conex=ConexionBD.getConnection();
         }catch(Exception ex){
             JOptionPane.showMessageDialog(null,"error en conexion "+ex,"error",1);
         }       
     }
+
+    @Override
+    public void dispose(){
+        ConexionBD.cerrarConexion(conex);
+        conex=null;
+        super.dispose();
+    }
     /**
      * This method is called from within the constructor to initialize the form.
      * WARNING: Do NOT modify this code. The content of this method is always
@@ -230,10 +239,23 @@ public class Nuevo extends javax.swing.JFrame {
         if(input.matches("\\d+")){
             try{
             int valor = Integer.parseInt(input) * -1;
-            stm=conex.createStatement();
-            ResultSet lista = stm.executeQuery("SELECT * FROM usuarios WHERE rutUsuario = " + valor);
-            if(lista.next()){
-                if(BCrypt.checkpw(pswPassword.getText(), lista.getString("password") )){
+            PreparedStatement pst = ADMINISTRADOR.preparar(conex);
+            pst.setInt(1, valor);
+            ResultSet lista = pst.executeQuery();
+            boolean existe = lista.next();
+            String password = existe ? lista.getString("password") : null;
+            pst.close();
+            if(existe){
+                btnConfirmar.setEnabled(false);
+                Autenticacion.verificar(valor, pswPassword.getText(), password, respuesta -> {
+                    btnConfirmar.setEnabled(true);
+                    if(!isDisplayable()){
+                        return;
+                    }
+                    if(!respuesta.aceptada()){
+                        JOptionPane.showMessageDialog(null, respuesta.mensaje(), "Error", JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
                     int valor1;
                     int valor2;
                     if(rdoCrear.isSelected()){
@@ -250,8 +272,7 @@ public class Nuevo extends javax.swing.JFrame {
                     }
                     this.dispose();
                     new Crear(valor1,valor2).setVisible(true);
-                }
-                
+                });
             }
             else{
                 JOptionPane.showMessageDialog(null, "Usuario No Existe");
@@ -245,11 +245,7 @@ public class NuevoDeudor extends java.awt.Frame {
         java.sql.PreparedStatement pstmt = null;
         
         try {
-            String url = "jdbc:mysql://localhost:3306/vistaalmar";
-            String usuario = "root";
-            String password = "";
-            
-            conexion = java.sql.DriverManager.getConnection(url, usuario, password);
+            conexion = datos.ConexionBD.getConnection();
             
             String verificarSQL = "SELECT COUNT(*) FROM deudores WHERE rutDeudor = ?";
             pstmt = conexion.prepareStatement(verificarSQL);
@@ -1,13 +1,20 @@
 import javax.swing.*;
 import java.awt.*;
 import java.sql.*;
-import java.time.LocalDateTime;
-import java.util.ArrayList;
+import datos.ConexionBD;
+import datos.EjecutorTransacciones;
+import metricas.Medicion;
+import metricas.Metricas;
+import ventas.LiquidadorDeudas;
+import java.util.List;
 import java.text.NumberFormat;
 import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class PagarDeudaDialog extends java.awt.Frame {
     
+    private static final Logger logger = Logger.getLogger(PagarDeudaDialog.class.getName());
     
     private int rutDeudor;
     private String nombreDeudor;
@@ -18,11 +25,8 @@ public class PagarDeudaDialog extends java.awt.Frame {
     private boolean permisos;
     
     private int idBoletaEspecifica = -1; 
-    
-    private String URL = "jdbc:mysql://localhost:3306/vistaalmar";
-    private String USUARIO = "root";
-    private String PASSWORD = "";
-    
+    // Lineas del recibo que se muestran antes de resumir el resto
+    private static final int MAXIMO_ABONOS_EN_RECIBO = 15;
     
     public PagarDeudaDialog(java.awt.Frame parent, int rutDeudor, String nombreDeudor, int deudaTotal, 
                             String usuario, boolean permisos, int idBoletaEspecifica) {
@@ -257,18 +261,14 @@ public class PagarDeudaDialog extends java.awt.Frame {
 
         try {
 
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            System.out.println("DEBUG: Driver cargado");
-
-            conn = DriverManager.getConnection(URL, USUARIO, PASSWORD);
-            System.out.println("DEBUG: Conexión establecida");
+            conn = ConexionBD.getConnection();
 
             String checkTableQuery = "SHOW TABLES LIKE 'usuarios'";
             stmt = conn.createStatement();
             rs = stmt.executeQuery(checkTableQuery);
 
             if (!rs.next()) {
-                System.out.println("DEBUG: La tabla 'usuarios' NO existe");
+                logger.warning("La tabla usuarios no existe");
                 JOptionPane.showMessageDialog(this,
                     "La tabla 'usuarios' no existe en la base de datos.\n" +
                     "Contacte al administrador del sistema.",
@@ -276,21 +276,9 @@ public class PagarDeudaDialog extends java.awt.Frame {
                     JOptionPane.ERROR_MESSAGE);
                 return;
             }
-            System.out.println("DEBUG: La tabla 'usuarios' existe");
-
-            String checkColumnsQuery = "DESCRIBE usuarios";
-            rs = stmt.executeQuery(checkColumnsQuery);
-            System.out.println("DEBUG: Estructura de la tabla usuarios:");
-            while (rs.next()) {
-                String columna = rs.getString("Field");
-                String tipo = rs.getString("Type");
-                System.out.println("  - " + columna + ": " + tipo);
-            }
             rs.close();
 
             String sql = "SELECT rutUsuario, nomUsuario FROM usuarios ORDER BY nomUsuario";
-            System.out.println("DEBUG: Ejecutando consulta: " + sql);
-
             rs = stmt.executeQuery(sql);
             int contadorUsuarios = 0;
 
@@ -299,12 +287,9 @@ public class PagarDeudaDialog extends java.awt.Frame {
                 String nombreUsuario = rs.getString("nomUsuario");
                 cmbRutCajero.addItem(rutUsuario + " - " + nombreUsuario);
                 contadorUsuarios++;
-                System.out.println("DEBUG: Usuario cargado - RUT: " + rutUsuario + ", Nombre: " + nombreUsuario);
             }
 
             if (contadorUsuarios == 0) {
-                System.out.println("DEBUG: No se encontraron usuarios");
-
                 int respuesta = JOptionPane.showConfirmDialog(this,
                     "No hay usuarios registrados en el sistema.\n" +
                     "¿Desea crear un usuario de prueba automáticamente?",
@@ -318,24 +303,10 @@ public class PagarDeudaDialog extends java.awt.Frame {
                 } else {
                     cmbRutCajero.addItem("NO_HAY_USUARIOS - Contacte al administrador");
                 }
-            } else {
-                System.out.println("DEBUG: Total usuarios cargados: " + contadorUsuarios);
             }
 
-        } catch (ClassNotFoundException e) {
-            System.err.println("ERROR: Driver MySQL no encontrado");
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this,
-                "Error: Driver MySQL no encontrado.\n" +
-                "Asegúrese de tener el conector MySQL agregado al proyecto.",
-                "Error de Driver",
-                JOptionPane.ERROR_MESSAGE);
-
-            cmbRutCajero.addItem("12345678 - Error de conexión");
-
         } catch (SQLException e) {
-            System.err.println("ERROR SQL al cargar usuarios: " + e.getMessage());
-            e.printStackTrace();
+            logger.log(Level.WARNING, "No se pudieron cargar los usuarios", e);
 
             String mensajeError;
             if (e.getMessage().contains("Unknown column")) {
@@ -364,7 +335,7 @@ public class PagarDeudaDialog extends java.awt.Frame {
                 if (stmt != null) stmt.close();
                 if (conn != null) conn.close();
             } catch (SQLException e) {
-                e.printStackTrace();
+                logger.log(Level.FINE, "Error al cerrar la consulta de usuarios", e);
             }
         }
     }
@@ -387,7 +358,7 @@ public class PagarDeudaDialog extends java.awt.Frame {
 
             pstmt.close();
 
-            System.out.println("DEBUG: Usuarios de prueba creados");
+            logger.info("Usuarios de prueba creados");
             JOptionPane.showMessageDialog(this,
                 "Se han creado 2 usuarios de prueba:\n" +
                 "• 12345678 - Administrador\n" +
@@ -397,7 +368,7 @@ public class PagarDeudaDialog extends java.awt.Frame {
                 JOptionPane.INFORMATION_MESSAGE);
 
         } catch (SQLException e) {
-            System.err.println("Error al crear usuarios de prueba: " + e.getMessage());
+            logger.log(Level.WARNING, "No se pudieron crear los usuarios de prueba", e);
             JOptionPane.showMessageDialog(this,
                 "Error al crear usuarios de prueba: " + e.getMessage(),
                 "Error",
@@ -476,13 +447,9 @@ public class PagarDeudaDialog extends java.awt.Frame {
         }
 
         String selectedItem = (String) cmbRutCajero.getSelectedItem();
-        System.out.println("DEBUG: Item seleccionado: " + selectedItem);
-
         String rutUsuarioStr = selectedItem.split(" - ")[0];
         int rutUsuario = Integer.parseInt(rutUsuarioStr);
 
-        System.out.println("DEBUG: RUT Usuario a procesar: " + rutUsuario);
-
         NumberFormat nf = NumberFormat.getInstance(new Locale("es", "CL"));
         if (montoPagar > deudaTotal) {
             int opcion = JOptionPane.showConfirmDialog(this,
@@ -511,208 +478,77 @@ public class PagarDeudaDialog extends java.awt.Frame {
     
 
     private void realizarPago(int montoPagar, int rutUsuario) {
-        Connection conn = null;
-
-        try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            conn = DriverManager.getConnection(URL, USUARIO, PASSWORD);
-            conn.setAutoCommit(false);
-
-            if (!existeUsuarioEnBD(conn, rutUsuario)) {
-                JOptionPane.showMessageDialog(this,
-                    "ERROR: El usuario con RUT " + rutUsuario + " no existe en la base de datos.\n" +
-                    "Por favor seleccione un usuario válido de la lista.",
-                    "Usuario No Encontrado",
-                    JOptionPane.ERROR_MESSAGE);
-                conn.rollback();
-                return;
-            }
-
-            String sqlPago = "INSERT INTO pagoDeudas (rutDeudor, rutUsuario, fechaTramite, totalPagado) VALUES (?, ?, ?, ?)";
-
-            try (PreparedStatement pstmt = conn.prepareStatement(sqlPago)) {
-                pstmt.setInt(1, rutDeudor);
-                pstmt.setInt(2, rutUsuario);
-                pstmt.setTimestamp(3, Timestamp.valueOf(LocalDateTime.now()));
-                pstmt.setInt(4, montoPagar);
-                pstmt.executeUpdate();
-                System.out.println("DEBUG: Pago registrado - rutUsuario: " + rutUsuario);
-            }
-
-            int boletaEspecificaId = obtenerBoletaEspecificaSiExiste();
-
-            if (boletaEspecificaId > 0) {
-                System.out.println("DEBUG: Pagando boleta específica ID: " + boletaEspecificaId);
-                aplicarPagoABoletaEspecifica(conn, boletaEspecificaId, montoPagar);
-            } else {
-                System.out.println("DEBUG: Aplicando pago FIFO");
-                aplicarPagoFIFO(conn, montoPagar);
+        // El pago se registra en segundo plano; se bloquea el boton para no cobrar dos veces
+        btnProcesar.setEnabled(false);
+        // Desde la confirmacion hasta que el pago queda registrado
+        Medicion medicion = Metricas.medir("pago.confirmar");
+        EjecutorTransacciones.enviar("pago de deuda", (conn, progreso) -> LiquidadorDeudas.pagar(conn, rutDeudor, rutUsuario, montoPagar, idBoletaEspecifica),
+                new EjecutorTransacciones.Observador<LiquidadorDeudas.Recibo>() {
+            @Override
+            public void progreso(String mensaje) {
+                setTitle(mensaje);
             }
 
-            conn.commit();
-
-            NumberFormat nf = NumberFormat.getInstance(new Locale("es", "CL"));
-            JOptionPane.showMessageDialog(this,
-                "Pago de $" + nf.format(montoPagar) + " procesado exitosamente",
-                "Pago Exitoso",
-                JOptionPane.INFORMATION_MESSAGE);
-
-            dispose();
-
-        } catch (ClassNotFoundException | SQLException e) {
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
-                }
-            }
-            JOptionPane.showMessageDialog(this,
-                "Error al procesar el pago: " + e.getMessage(),
-                "Error de Base de Datos",
-                JOptionPane.ERROR_MESSAGE);
-            e.printStackTrace();
-        } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true);
-                    conn.close();
-                } catch (SQLException e) {
-                    e.printStackTrace();
+            @Override
+            public void exito(LiquidadorDeudas.Recibo recibo) {
+                medicion.close();
+                setTitle("Pagar Deuda - Usuario: " + usuario);
+                if (recibo == null) {
+                    btnProcesar.setEnabled(true);
+                    JOptionPane.showMessageDialog(PagarDeudaDialog.this,
+                        "ERROR: El usuario con RUT " + rutUsuario + " no existe en la base de datos.\n" +
+                        "Por favor seleccione un usuario válido de la lista.",
+                        "Usuario No Encontrado",
+                        JOptionPane.ERROR_MESSAGE);
+                    return;
                 }
-            }
-        }
-    }
+                JOptionPane.showMessageDialog(PagarDeudaDialog.this,
+                    textoRecibo(recibo),
+                    "Pago Exitoso",
+                    JOptionPane.INFORMATION_MESSAGE);
 
-    private void aplicarPagoABoletaEspecifica(Connection conn, int idBoleta, int montoPagar) throws SQLException {
-        String sqlDeudaEspecifica = "SELECT d.deudaId, b.totalFiado, d.montoPagado " +
-                                   "FROM deudas d " +
-                                   "INNER JOIN boletas b ON d.idBoleta = b.idBoleta " +
-                                   "WHERE d.rutDeudor = ? AND d.idBoleta = ? AND d.estaPagado = 0";
-
-        PreparedStatement pstmt = conn.prepareStatement(sqlDeudaEspecifica);
-        pstmt.setInt(1, rutDeudor);
-        pstmt.setInt(2, idBoleta);
-        ResultSet rs = pstmt.executeQuery();
-
-        if (rs.next()) {
-            int deudaId = rs.getInt("deudaId");
-            int totalFiado = rs.getInt("totalFiado");
-            int montoPagadoActual = rs.getInt("montoPagado");
-            int saldoActual = totalFiado - montoPagadoActual;
-
-            System.out.println("DEBUG: Boleta " + idBoleta + " - Saldo actual: $" + saldoActual);
-
-            if (saldoActual <= 0) {
-                System.out.println("DEBUG: Esta boleta ya está pagada completamente");
-                return;
+                dispose();
             }
 
-            int pagoAplicado = Math.min(montoPagar, saldoActual);
-            int nuevoMontoPagado = montoPagadoActual + pagoAplicado;
-            boolean pagadoCompleto = (nuevoMontoPagado >= totalFiado);
-
-            System.out.println("DEBUG: Aplicando $" + pagoAplicado + " a boleta " + idBoleta);
-
-            String sqlUpdate = "UPDATE deudas SET montoPagado = ?, estaPagado = ? WHERE deudaId = ?";
-            PreparedStatement pstmtUpdate = conn.prepareStatement(sqlUpdate);
-            pstmtUpdate.setInt(1, nuevoMontoPagado);
-            pstmtUpdate.setBoolean(2, pagadoCompleto);
-            pstmtUpdate.setInt(3, deudaId);
-            pstmtUpdate.executeUpdate();
-            pstmtUpdate.close();
-
-            int montoRestante = montoPagar - pagoAplicado;
-
-            if (montoRestante > 0) {
-                System.out.println("DEBUG: Sobra $" + montoRestante + ", aplicando a otras deudas");
-                aplicarPagoFIFO(conn, montoRestante);
+            @Override
+            public void error(Exception e) {
+                medicion.fallo();
+                medicion.close();
+                setTitle("Pagar Deuda - Usuario: " + usuario);
+                btnProcesar.setEnabled(true);
+                JOptionPane.showMessageDialog(PagarDeudaDialog.this,
+                    "Error al procesar el pago: " + e.getMessage(),
+                    "Error de Base de Datos",
+                    JOptionPane.ERROR_MESSAGE);
             }
-        } else {
-            System.out.println("DEBUG: Boleta específica no encontrada o ya pagada");
-            aplicarPagoFIFO(conn, montoPagar);
-        }
-
-        rs.close();
-        pstmt.close();
+        });
     }
 
-    private void aplicarPagoFIFO(Connection conn, int montoPagar) throws SQLException {
-        String sqlDeudas = "SELECT d.deudaId, b.totalFiado, d.montoPagado " +
-                          "FROM deudas d " +
-                          "INNER JOIN boletas b ON d.idBoleta = b.idBoleta " +
-                          "WHERE d.rutDeudor = ? AND d.estaPagado = 0 " +
-                          "ORDER BY d.fechaDeuda ASC";
-
-        ArrayList<DeudaInfo> deudas = new ArrayList<>();
-
-        try (PreparedStatement pstmt = conn.prepareStatement(sqlDeudas)) {
-            pstmt.setInt(1, rutDeudor);
-            ResultSet rs = pstmt.executeQuery();
-
-            while (rs.next()) {
-                DeudaInfo deuda = new DeudaInfo();
-                deuda.deudaId = rs.getInt("deudaId");
-                deuda.totalFiado = rs.getInt("totalFiado");
-                deuda.montoPagado = rs.getInt("montoPagado");
-                deuda.saldo = deuda.totalFiado - deuda.montoPagado;
-                deudas.add(deuda);
-            }
+    /**
+     * Resumen del reparto para mostrar al cajero
+     */
+    private String textoRecibo(LiquidadorDeudas.Recibo recibo) {
+        NumberFormat nf = NumberFormat.getInstance(new Locale("es", "CL"));
+        StringBuilder texto = new StringBuilder("Pago de $" + nf.format(recibo.montoRecibido()) + " procesado exitosamente\n");
+        List<LiquidadorDeudas.Abono> abonos = recibo.abonos();
+        if (!abonos.isEmpty()) {
+            texto.append("\nAbonos (").append(recibo.cerradas().size()).append(" deudas cerradas):\n");
         }
-
-        int montoRestante = montoPagar;
-        String sqlUpdate = "UPDATE deudas SET montoPagado = ?, estaPagado = ? WHERE deudaId = ?";
-
-        for (DeudaInfo deuda : deudas) {
-            if (montoRestante <= 0) break;
-
-            int pagoAplicado = Math.min(montoRestante, deuda.saldo);
-            int nuevoMontoPagado = deuda.montoPagado + pagoAplicado;
-            boolean pagadoCompleto = (nuevoMontoPagado >= deuda.totalFiado);
-
-            try (PreparedStatement pstmt = conn.prepareStatement(sqlUpdate)) {
-                pstmt.setInt(1, nuevoMontoPagado);
-                pstmt.setBoolean(2, pagadoCompleto);
-                pstmt.setInt(3, deuda.deudaId);
-                pstmt.executeUpdate();
-            }
-
-            montoRestante -= pagoAplicado;
+        for (int i = 0; i < abonos.size() && i < MAXIMO_ABONOS_EN_RECIBO; i++) {
+            LiquidadorDeudas.Abono abono = abonos.get(i);
+            texto.append("• Boleta #").append(abono.idBoleta()).append(": $").append(nf.format(abono.monto()));
+            texto.append(abono.cerrada() ? " (pagada)" : " (saldo $" + nf.format(abono.saldoRestante()) + ")");
+            texto.append('\n');
         }
+        if (abonos.size() > MAXIMO_ABONOS_EN_RECIBO) {
+            texto.append("... y ").append(abonos.size() - MAXIMO_ABONOS_EN_RECIBO).append(" boletas más\n");
+        }
+        if (recibo.sobrante() > 0) {
+            texto.append("\nSobrante no aplicado: $").append(nf.format(recibo.sobrante()));
+        }
+        return texto.toString();
     }
 
-    private int obtenerBoletaEspecificaSiExiste() {
-        return idBoletaEspecifica;
-    }
-
-    private boolean existeUsuarioEnBD(Connection conn, int rutUsuario) throws SQLException {
-        try {
-            String query = "SELECT COUNT(*) as count FROM usuarios WHERE rutUsuario = ?";
-            PreparedStatement pstmt = conn.prepareStatement(query);
-            pstmt.setInt(1, rutUsuario);
-            ResultSet rs = pstmt.executeQuery();
-
-            if (rs.next() && rs.getInt("count") > 0) {
-                rs.close();
-                pstmt.close();
-                System.out.println("DEBUG: Usuario encontrado: " + rutUsuario);
-                return true;
-            }
-            rs.close();
-            pstmt.close();
-
-            System.out.println("DEBUG: Usuario NO encontrado - RUT: " + rutUsuario);
-            return false;
-
-        } catch (SQLException e) {
-            System.err.println("Error en existeUsuarioEnBD: " + e.getMessage());
-            throw e;
-        }
-    }  
-    
-    
-    
-    
     /**
      * Exit the Application
      */
@@ -742,12 +578,6 @@ public class PagarDeudaDialog extends java.awt.Frame {
             }
         });
     }
-    private static class DeudaInfo {
-        int deudaId;
-        int totalFiado;
-        int montoPagado;
-        int saldo;
-    }
 
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
@@ -2,17 +2,21 @@
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import auditoria.RegistroAccesos;
+import datos.ConexionBD;
+import datos.Consulta;
+import datos.Consultas;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.sql.Timestamp;
-import java.time.LocalDateTime;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
 import javax.swing.table.DefaultTableModel;
+import pantallas.Marco;
+import pantallas.Pantalla;
 
 /*
  * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
@@ -23,7 +27,15 @@ import javax.swing.table.DefaultTableModel;
  *
  * @author oct88
  */
-public class Proveedores extends javax.swing.JFrame {
+public class Proveedores extends javax.swing.JFrame implements Pantalla {
+    private static final Consulta FACTURAS_DEL_PROVEEDOR = Consultas.registrar("proveedores.contarFacturas",
+            "SELECT COUNT(*) FROM facturaProveedores WHERE rutEmpresa = ?");
+    private static final Consulta FACTURA_EXISTE = Consultas.registrar("facturas.contarPorId",
+            "SELECT COUNT(*) FROM facturaProveedores WHERE idFactura = ?");
+    private static final Consulta BUSCAR_PROVEEDORES = Consultas.registrar("proveedores.buscar",
+            "SELECT * FROM proveedores WHERE nomEmpresa LIKE ?");
+    private static final Consulta BORRAR_PROVEEDOR = Consultas.registrar("proveedores.borrar",
+            "DELETE FROM proveedores WHERE rutEmpresa = ?");
     private String usuario = "hello";
     private boolean permisos = false;
     Connection conex=null;
@@ -93,39 +105,48 @@ public class Proveedores extends javax.swing.JFrame {
     }
     
     public void registrarRetiro(){
-        int valor = Integer.parseInt(usuario);
-        try{
-            LocalDateTime ahora = LocalDateTime.now();
-            Timestamp tiempo = Timestamp.valueOf(ahora);
-            stm=conex.createStatement();
-            stm.executeUpdate("INSERT INTO accessLog (rutUsuario, tipoAccion, fechaAccion) VALUES("+valor+",0,'"+ tiempo +"')");
-            stm.close();
-        }catch(SQLException ex){
-            JOptionPane.showMessageDialog(null, "Error en database: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        RegistroAccesos.salida(Integer.parseInt(usuario));
+    }
+
+    @Override
+    public void alMostrar(){
+        if (conex == null){
+            conectar();
         }
-        return;
+        crearTabla();
+    }
+
+    @Override
+    public void alOcultar(){
+        ConexionBD.cerrarConexion(conex);
+        conex=null;
     }
     
     public void conectar(){
-        String url="jdbc:mysql://localhost:3306/vistaalmar";
-        String usuario="root";
-        String pass="";
         try{
-            conex=DriverManager.getConnection(url,usuario,pass);
+            conex=ConexionBD.getConnection();
         }catch(Exception ex){
             JOptionPane.showMessageDialog(null,"error en conexion "+ex,"error",1);
         }       
     }
+
+    @Override
+    public void dispose(){
+        ConexionBD.cerrarConexion(conex);
+        conex=null;
+        super.dispose();
+    }
     
     public int confirmarProducto(int codigo){
         int contador=0;
         try{
-                stm=conex.createStatement();
-                ResultSet fila = stm.executeQuery("SELECT COUNT(*) FROM facturaProveedores WHERE rutEmpresa = " + codigo);
+                PreparedStatement pst = FACTURAS_DEL_PROVEEDOR.preparar(conex);
+                pst.setInt(1, codigo);
+                ResultSet fila = pst.executeQuery();
                 while(fila.next()){
                     contador = contador + fila.getInt(1);
                 }
-                stm.close();
+                pst.close();
             }catch(SQLException ex){
                   JOptionPane.showMessageDialog(null, "Error en database: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);               
              }
@@ -413,7 +434,7 @@ public class Proveedores extends javax.swing.JFrame {
 
     private void btnRegresarActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnRegresarActionPerformed
         registrarRetiro();
-        this.dispose();
+        Marco.cerrarSesion();
         new MenuAcceso().setVisible(true);
     }//GEN-LAST:event_btnRegresarActionPerformed
 
@@ -423,12 +444,11 @@ public class Proveedores extends javax.swing.JFrame {
     }//GEN-LAST:event_btnSalirActionPerformed
 
     private void btnPrincipalActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnPrincipalActionPerformed
-        this.dispose();
-        new MenuPrincipal(usuario,permisos).setVisible(true);
+        Marco.mostrar(MenuPrincipal.class, () -> new MenuPrincipal(usuario, permisos));
     }//GEN-LAST:event_btnPrincipalActionPerformed
 
     private void btnCrearActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnCrearActionPerformed
-        this.dispose();
+        Marco.ocultar();
         new CrearProveedor(usuario,permisos).setVisible(true);
     }//GEN-LAST:event_btnCrearActionPerformed
 
@@ -446,35 +466,33 @@ public class Proveedores extends javax.swing.JFrame {
         int numeroFactura = Integer.parseInt(numFactura);
         try{
             int conteo = 0;
-            stm = conex.createStatement();
-            ResultSet fila2 = stm.executeQuery("SELECT COUNT(*) FROM facturaProveedores WHERE idFactura = " + numeroFactura );
+            PreparedStatement pst = FACTURA_EXISTE.preparar(conex);
+            pst.setInt(1, numeroFactura);
+            ResultSet fila2 = pst.executeQuery();
             while(fila2.next()){
                  conteo = conteo + fila2.getInt(1);
             }
+            pst.close();
             if(conteo>0){
                 JOptionPane.showMessageDialog(null, "Factura Ya Existe", "Alerta", JOptionPane.WARNING_MESSAGE);
-                stm.close();
                 return;
             }
-            stm.close();
               
         }catch(Exception ex){
             JOptionPane.showMessageDialog(null,"error en conexion "+ex,"error",1);
         }
         int rut = (int) tblProveedores.getValueAt(selectedRow, 0);
         String nombre = tblProveedores.getValueAt(selectedRow,1).toString();
-        this.dispose();
-        new Compra(usuario,permisos,rut,numeroFactura,nombre).setVisible(true);
+        Marco.abrir(new Compra(usuario, permisos, rut, numeroFactura, nombre));
     }//GEN-LAST:event_cmbCompraActionPerformed
 
     private void btnFacturasActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnFacturasActionPerformed
-        this.dispose();
+        Marco.ocultar();
         new HistorialFacturas(usuario,permisos).setVisible(true);
     }//GEN-LAST:event_btnFacturasActionPerformed
 
     private void btnInventarioActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnInventarioActionPerformed
-        this.dispose();
-        new Inventario(usuario,permisos).setVisible(true);
+        Marco.mostrar(Inventario.class, () -> new Inventario(usuario, permisos));
     }//GEN-LAST:event_btnInventarioActionPerformed
 
     private void btnBuscarActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnBuscarActionPerformed
@@ -488,9 +506,10 @@ public class Proveedores extends javax.swing.JFrame {
             try{
                 DefaultTableModel modeloBorrar = (DefaultTableModel) tblProveedores.getModel();
                 modeloBorrar.setRowCount(0);
-                stm = conex.createStatement();
+                PreparedStatement pst = BUSCAR_PROVEEDORES.preparar(conex);
+                pst.setString(1, "%" + buscar + "%");
                 ResultSet lista;
-                lista = stm.executeQuery("SELECT * FROM proveedores WHERE nomEmpresa LIKE '%"+buscar+"%'");
+                lista = pst.executeQuery();
                 DefaultTableModel modelo = (DefaultTableModel) tblProveedores.getModel();
                 modelo.setRowCount(0);
                 String ubicacion;
@@ -511,6 +530,7 @@ public class Proveedores extends javax.swing.JFrame {
                     };
                     modelo.addRow(data);
                 }         
+                pst.close();
             }catch(Exception ex){
                 JOptionPane.showMessageDialog(null,"error en conexion "+ex,"error",1);
             }         
@@ -549,8 +569,10 @@ public class Proveedores extends javax.swing.JFrame {
            return;
        }
        try{
-            stm = conex.createStatement();
-            stm.executeUpdate("DELETE FROM proveedores WHERE rutEmpresa = " + codigo);
+            PreparedStatement pst = BORRAR_PROVEEDOR.preparar(conex);
+            pst.setInt(1, codigo);
+            pst.executeUpdate();
+            pst.close();
             JOptionPane.showMessageDialog(null,"Proveedor Borrado");
             DefaultTableModel model = (DefaultTableModel) tblProveedores.getModel();
             model.setRowCount(0);
@@ -564,7 +586,7 @@ public class Proveedores extends javax.swing.JFrame {
         int selectedRow = tblProveedores.getSelectedRow();
         if (selectedRow != -1) {
             int codigo = (int) tblProveedores.getValueAt(selectedRow, 0);
-            this.dispose();
+            Marco.ocultar();
             new ModificarProducto(usuario,permisos,codigo).setVisible(true);
         } 
         else {
@@ -4,13 +4,14 @@ import java.sql.Statement;
 import java.sql.Connection;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
-import java.sql.DriverManager;
+import auditoria.RegistroAccesos;
+import datos.ConexionBD;
 import java.sql.SQLException;
-import java.sql.Timestamp;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
+import pantallas.Marco;
+import pantallas.Pantalla;
 
 /*
  * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
@@ -21,7 +22,7 @@ import javax.swing.JOptionPane;
  *
  * @author oct88
  */
-public class Venta extends javax.swing.JFrame {
+public class Venta extends javax.swing.JFrame implements Pantalla {
     
     private static final java.util.logging.Logger logger = java.util.logging.Logger.getLogger(Venta.class.getName());
     private String usuario = "hello";
@@ -55,28 +56,35 @@ public class Venta extends javax.swing.JFrame {
     }
     
     public void conectar(){
-        String url="jdbc:mysql://localhost:3306/vistaalmar";
-        String usuario="root";
-        String pass="";
         try{
-            conex=DriverManager.getConnection(url,usuario,pass);
+            conex=ConexionBD.getConnection();
         }catch(Exception ex){
             JOptionPane.showMessageDialog(null,"error en conexion "+ex,"error",1);
         }       
     }
+
+    @Override
+    public void dispose(){
+        ConexionBD.cerrarConexion(conex);
+        conex=null;
+        super.dispose();
+    }
     
     public void registrarRetiro(){
-        int valor = Integer.parseInt(usuario);
-        try{
-            LocalDateTime ahora = LocalDateTime.now();
-            Timestamp tiempo = Timestamp.valueOf(ahora);
-            stm=conex.createStatement();
-            stm.executeUpdate("INSERT INTO accessLog (rutUsuario, tipoAccion, fechaAccion) VALUES("+valor+",0,'"+ tiempo +"')");
-            stm.close();
-        }catch(SQLException ex){
-            JOptionPane.showMessageDialog(null, "Error en database: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        RegistroAccesos.salida(Integer.parseInt(usuario));
+    }
+
+    @Override
+    public void alMostrar(){
+        if (conex == null){
+            conectar();
         }
-        return;
+    }
+
+    @Override
+    public void alOcultar(){
+        ConexionBD.cerrarConexion(conex);
+        conex=null;
     }
     /**
      * This method is called from within the constructor to initialize the form.
@@ -211,13 +219,12 @@ public class Venta extends javax.swing.JFrame {
 
     private void btnRegresarActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnRegresarActionPerformed
         registrarRetiro();
-        this.dispose(); 
+        Marco.cerrarSesion();
         new MenuAcceso().setVisible(true);
     }//GEN-LAST:event_btnRegresarActionPerformed
 
     private void btnPrincipalActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnPrincipalActionPerformed
-        this.dispose(); 
-        new MenuPrincipal(usuario,estado).setVisible(true); 
+        Marco.mostrar(MenuPrincipal.class, () -> new MenuPrincipal(usuario, estado));
     }//GEN-LAST:event_btnPrincipalActionPerformed
 
     private void btnSalirActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnSalirActionPerformed
@@ -226,18 +233,15 @@ public class Venta extends javax.swing.JFrame {
     }//GEN-LAST:event_btnSalirActionPerformed
 
     private void btnInventarioActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnInventarioActionPerformed
-       this.dispose(); 
-       new Inventario(usuario,estado).setVisible(true);
+       Marco.mostrar(Inventario.class, () -> new Inventario(usuario, estado));
     }//GEN-LAST:event_btnInventarioActionPerformed
 
     private void btnCompraActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnCompraActionPerformed
-        this.dispose();
-        new VentaFianza(usuario,estado).setVisible(true);
+        Marco.mostrar(VentaFianza.class, () -> new VentaFianza(usuario, estado));
     }//GEN-LAST:event_btnCompraActionPerformed
 
     private void btnPerdidaActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnPerdidaActionPerformed
-        this.dispose();
-        new VentaPerdida(usuario,estado).setVisible(true);
+        Marco.mostrar(VentaPerdida.class, () -> new VentaPerdida(usuario, estado));
     }//GEN-LAST:event_btnPerdidaActionPerformed
 
     /**
@@ -1,13 +1,27 @@
 import java.sql.*;
+import catalogo.CatalogoProductos;
+import catalogo.Producto;
+import auditoria.RegistroAccesos;
+import datos.ConexionBD;
+import datos.EjecutorTransacciones;
+import metricas.Medicion;
+import metricas.Metricas;
+import ventas.DiarioVentas;
+import ventas.EscritorBoletas;
+import ventas.ReservasStock;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.table.DefaultTableModel;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import pantallas.Marco;
+import pantallas.Pantalla;
 
-public class VentaFianza extends javax.swing.JFrame {
+public class VentaFianza extends javax.swing.JFrame implements Pantalla {
     
     private static final java.util.logging.Logger logger = java.util.logging.Logger.getLogger(VentaFianza.class.getName());
     private String usuario = "hello";
@@ -17,10 +31,15 @@ public class VentaFianza extends javax.swing.JFrame {
     
     private DefaultTableModel modeloTabla;
     private List<ProductoVenta> productosVenta;
+    private long idCarro = ReservasStock.nuevoCarro();
     private double totalVenta = 0;
     private double totalPagado = 0;
     private double totalFiado = 0;
     
+    private static final int MAXIMO_SUGERENCIAS = 8;
+    private final JPopupMenu sugerencias = new JPopupMenu();
+    private boolean completando = false;
+    
     // Clase interna para manejar productos en la venta
     private class ProductoVenta {
         int codProducto;
@@ -53,6 +72,7 @@ public class VentaFianza extends javax.swing.JFrame {
         conectar();
         customClose();
         cargarClientes();
+        mostrarEstado(null);
     }
     
     private void inicializarComponentesVenta() {
@@ -90,9 +110,67 @@ public class VentaFianza extends javax.swing.JFrame {
 
         actualizarTotales();
         actualizarVisibilidadCliente();
+        configurarAutocompletar();
+    }
+    
+    private void configurarAutocompletar() {
+        // La lista no debe quitarle el foco al campo mientras se escribe
+        sugerencias.setFocusable(false);
+        txtBuscar.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                SwingUtilities.invokeLater(() -> mostrarSugerencias());
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                SwingUtilities.invokeLater(() -> mostrarSugerencias());
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+    }
+    
+    private void mostrarSugerencias() {
+        if (completando) {
+            return;
+        }
+        sugerencias.setVisible(false);
+        sugerencias.removeAll();
+        String texto = txtBuscar.getText().trim();
+        if (texto.isEmpty() || !txtBuscar.isShowing()) {
+            return;
+        }
+        List<Producto> encontrados;
+        try {
+            encontrados = CatalogoProductos.sugerir(texto, MAXIMO_SUGERENCIAS);
+        } catch (SQLException ex) {
+            return;
+        }
+        for (Producto producto : encontrados) {
+            JMenuItem item = new JMenuItem(producto.codProducto() + " - " + producto.nomProducto()
+                    + "  (Stock: " + producto.stock() + ")");
+            item.addActionListener(e -> elegirSugerencia(producto));
+            sugerencias.add(item);
+        }
+        if (!encontrados.isEmpty()) {
+            sugerencias.show(txtBuscar, 0, txtBuscar.getHeight());
+        }
+    }
+    
+    private void elegirSugerencia(Producto producto) {
+        completando = true;
+        txtBuscar.setText(String.valueOf(producto.codProducto()));
+        completando = false;
+        buscarProducto();
+        txtCant.requestFocusInWindow();
     }
     
     private void cargarClientes() {
+        // Al volver a la pantalla se recarga la lista sin perder el cliente elegido
+        Object elegido = cmbDeudor.getSelectedItem();
         cmbDeudor.removeAllItems();
         cmbDeudor.addItem("Seleccionar cliente");
         
@@ -111,7 +189,13 @@ public class VentaFianza extends javax.swing.JFrame {
         } catch (SQLException ex) {
             JOptionPane.showMessageDialog(this, "Error al cargar clientes: " + ex.getMessage());
         }
+        if (elegido != null) {
+            cmbDeudor.setSelectedItem(elegido);
+        }
         
+        if (cmbMedioPago.getItemCount() > 0) {
+            return;
+        }
         String[] mediosPago = {"Efectivo", "Tarjeta Débito", "Tarjeta Crédito", "Transferencia"};
         cmbMedioPago.removeAllItems();
         for (String medio : mediosPago) {
@@ -134,23 +218,19 @@ public class VentaFianza extends javax.swing.JFrame {
         }
 
         try {
-            stm = conex.createStatement();
-            String query;
-
-            try {
-                int codigo = Integer.parseInt(busqueda);
-                query = "SELECT codProducto, nomProducto, precioActual, stock FROM productos WHERE codProducto = " + codigo;
-            } catch (NumberFormatException e) {
-                query = "SELECT codProducto, nomProducto, precioActual, stock FROM productos WHERE nomProducto LIKE '%" + busqueda + "%' LIMIT 1";
-            }
-
-            ResultSet rs = stm.executeQuery(query);
+            Producto producto = Metricas.medir("venta.buscar", () -> {
+                try {
+                    return CatalogoProductos.buscar(Integer.parseInt(busqueda));
+                } catch (NumberFormatException e) {
+                    return CatalogoProductos.buscarPorNombre(busqueda);
+                }
+            });
 
-            if (rs.next()) {
-                int codigo = rs.getInt("codProducto");
-                String nombre = rs.getString("nomProducto");
-                double precio = rs.getDouble("precioActual");
-                int stock = rs.getInt("stock");
+            if (producto != null) {
+                int codigo = producto.codProducto();
+                String nombre = producto.nomProducto();
+                double precio = producto.precioActual();
+                int stock = producto.stock();
 
                 lblProductoEncontrado.setText("Producto: " + nombre + " | Stock: " + stock + " | Precio: $" + String.format("%,.0f", precio));
 
@@ -161,9 +241,6 @@ public class VentaFianza extends javax.swing.JFrame {
                 txtBuscar.setToolTipText("");
             }
 
-            rs.close();
-            stm.close();
-
         } catch (SQLException ex) {
             JOptionPane.showMessageDialog(this, "Error al buscar producto: " + ex.getMessage());
             lblProductoEncontrado.setText("Producto: Error");
@@ -184,6 +261,7 @@ public class VentaFianza extends javax.swing.JFrame {
             return;
         }
 
+        Medicion medicion = Metricas.medir("venta.agregar");
         try {
             int cantidad = Integer.parseInt(cantidadStr);
             if (cantidad <= 0) {
@@ -201,19 +279,24 @@ public class VentaFianza extends javax.swing.JFrame {
             int codProducto = Integer.parseInt(partes[0]);
             String nomProducto = partes[1];
             double precioActual = Double.parseDouble(partes[2]);
-            int stock = partes.length > 3 ? Integer.parseInt(partes[3]) : 0;
 
-            if (cantidad > stock) {
+            // Se reserva el total del producto en el carro contra el stock que no reservaron otros carros
+            int enCarro = 0;
+            for (ProductoVenta pv : productosVenta) {
+                if (pv.codProducto == codProducto) {
+                    enCarro = pv.cantidad;
+                }
+            }
+            int disponible = ReservasStock.reservar(idCarro, codProducto, enCarro + cantidad);
+            if (enCarro + cantidad > disponible) {
                 JOptionPane.showMessageDialog(this, 
-                    "Stock insuficiente. Disponible: " + stock + "\n" +
+                    "Stock insuficiente. Disponible: " + Math.max(0, disponible - enCarro) + "\n" +
                     "Producto: " + nomProducto);
                 return;
             }
 
             boolean esFiado = chkFiado.isSelected();
 
-            System.out.println("DEBUG: Estado checkbox fiado: " + esFiado); // Para debug
-
             for (ProductoVenta pv : productosVenta) {
                 if (pv.codProducto == codProducto) {
                     pv.cantidad += cantidad;
@@ -243,7 +326,10 @@ public class VentaFianza extends javax.swing.JFrame {
         } catch (NumberFormatException ex) {
             JOptionPane.showMessageDialog(this, "Ingrese una cantidad válida (número entero)");
         } catch (Exception ex) {
+            medicion.fallo();
             JOptionPane.showMessageDialog(this, "Error: " + ex.getMessage());
+        } finally {
+            medicion.close();
         }
     }
     
@@ -290,7 +376,8 @@ public class VentaFianza extends javax.swing.JFrame {
         int filaSeleccionada = tablaBoleta.getSelectedRow();
         
         if (filaSeleccionada >= 0) {
-            productosVenta.remove(filaSeleccionada);
+            ProductoVenta quitado = productosVenta.remove(filaSeleccionada);
+            ReservasStock.liberar(idCarro, quitado.codProducto);
             actualizarTabla();
             actualizarTotales();
         } else {
@@ -299,28 +386,6 @@ public class VentaFianza extends javax.swing.JFrame {
     }
     
     private void finalizarVenta() {
-        System.out.println("=== DEBUG: FINALIZAR VENTA ===");
-        System.out.println("Productos en venta: " + productosVenta.size());
-        System.out.println("Checkbox fiado seleccionado: " + chkFiado.isSelected());
-        System.out.println("Cliente seleccionado: " + cmbDeudor.getSelectedItem());
-
-        double debugTotalFiado = 0;
-        for (ProductoVenta pv : productosVenta) {
-            System.out.println("  Producto: " + pv.nomProducto + 
-                              ", Fiado: " + pv.fiado + 
-                              ", Subtotal: " + pv.subtotal);
-            if (pv.fiado) {
-                debugTotalFiado += pv.subtotal;
-            }
-        }
-        System.out.println("Total Fiado calculado: " + debugTotalFiado);
-        System.out.println("Total Fiado variable: " + totalFiado);
-        System.out.println("==============================");
-
-        if (productosVenta.isEmpty()) {
-            JOptionPane.showMessageDialog(this, "No hay productos en la boleta");
-            return;
-        }
         if (productosVenta.isEmpty()) {
             JOptionPane.showMessageDialog(this, "No hay productos en la boleta");
             return;
@@ -336,160 +401,124 @@ public class VentaFianza extends javax.swing.JFrame {
             return;
         }
         
-        try {
-            conex.setAutoCommit(false);
-            
-            int idBoleta = insertarBoleta();
-            
-            for (ProductoVenta pv : productosVenta) {
-                insertarDetalleProducto(idBoleta, pv);
-                actualizarStockProducto(pv);
+        EscritorBoletas.Boleta boleta = armarBoleta();
+        logger.fine(() -> "Venta de " + productosVenta.size() + " productos, total " + totalVenta + ", fiado " + totalFiado);
+        String mensaje = "Total Venta: $" + String.format("%,.0f", totalVenta) + "\n" +
+                       "Total Pagado: $" + String.format("%,.0f", totalPagado) + "\n" +
+                       "Total Fiado: $" + String.format("%,.0f", totalFiado);
+        if (chkFiado.isSelected()) {
+            String clienteSeleccionado = cmbDeudor.getSelectedItem().toString();
+            if (clienteSeleccionado.contains(" - ")) {
+                String nombreCliente = clienteSeleccionado.split(" - ")[1];
+                mensaje += "\n\nCliente: " + nombreCliente;
             }
-            
-            if (chkFiado.isSelected() && totalFiado > 0) {
-                registrarDeuda(idBoleta);
+        }
+        String detalleVenta = mensaje;
+        
+        // Se guarda el carro por si el commit falla y hay que reintentar
+        List<ProductoVenta> carro = new ArrayList<>(productosVenta);
+        int deudor = cmbDeudor.getSelectedIndex();
+        boolean fiado = chkFiado.isSelected();
+        
+        // El commit corre en segundo plano; la caja queda libre para el siguiente cliente.
+        // Las reservas del carro vendido se mantienen, sin vencer, hasta que termine.
+        long carroVendido = idCarro;
+        ReservasStock.fijar(carroVendido);
+        idCarro = ReservasStock.nuevoCarro();
+        limpiarVenta();
+        // Desde el clic hasta que la boleta queda en MySQL
+        Medicion cobro = Metricas.medir("venta.cobrar");
+        DiarioVentas.enviar("boleta", boleta, new EjecutorTransacciones.Observador<EscritorBoletas.Resultado>() {
+            @Override
+            public void progreso(String estadoVenta) {
+                mostrarEstado(estadoVenta);
             }
-            
-            conex.commit();
-            
-            String mensaje = "Venta realizada exitosamente!\n\n" +
-                           "N° Boleta: " + idBoleta + "\n" +
-                           "Total Venta: $" + String.format("%,.0f", totalVenta) + "\n" +
-                           "Total Pagado: $" + String.format("%,.0f", totalPagado) + "\n" +
-                           "Total Fiado: $" + String.format("%,.0f", totalFiado);
-            
-            if (chkFiado.isSelected()) {
-                String clienteSeleccionado = cmbDeudor.getSelectedItem().toString();
-                if (clienteSeleccionado.contains(" - ")) {
-                    String nombreCliente = clienteSeleccionado.split(" - ")[1];
-                    mensaje += "\n\nCliente: " + nombreCliente;
-                }
+
+            @Override
+            public void exito(EscritorBoletas.Resultado resultado) {
+                cobro.close();
+                ReservasStock.cerrarCarro(carroVendido);
+                mostrarEstado(null);
+                JOptionPane.showMessageDialog(VentaFianza.this,
+                    "Venta realizada exitosamente!\n\n" +
+                    "N° Boleta: " + resultado.idBoleta() + "\n" + detalleVenta,
+                    "Venta Exitosa", JOptionPane.INFORMATION_MESSAGE);
             }
-            
-            JOptionPane.showMessageDialog(this, mensaje, "Venta Exitosa", JOptionPane.INFORMATION_MESSAGE);
-            
-            limpiarVenta();
-            
-        } catch (SQLException ex) {
-            try {
-                conex.rollback();
-                JOptionPane.showMessageDialog(this, 
-                    "❌ Error al procesar la venta:\n" + ex.getMessage(),
+
+            @Override
+            public void error(Exception ex) {
+                cobro.fallo();
+                cobro.close();
+                ReservasStock.cerrarCarro(carroVendido);
+                mostrarEstado(null);
+                boolean restaurado = restaurarVenta(carro, fiado, deudor);
+                JOptionPane.showMessageDialog(VentaFianza.this, 
+                    "❌ Error al procesar la venta:\n" + ex.getMessage() + "\n\n" + detalleVenta +
+                    (restaurado ? "\n\nLos productos se devolvieron a la boleta para reintentar."
+                                : "\n\nLa venta NO se registró; ingrésela nuevamente."),
                     "Error en Venta",
                     JOptionPane.ERROR_MESSAGE);
-            } catch (SQLException e) {
-                logger.severe("Error en rollback: " + e.getMessage());
-            }
-        } finally {
-            try {
-                conex.setAutoCommit(true);
-            } catch (SQLException e) {
-                logger.severe("Error al restaurar auto-commit: " + e.getMessage());
             }
-        }
+        });
     }
     
-    private int insertarBoleta() throws SQLException {
-        LocalDateTime ahora = LocalDateTime.now();
-        Timestamp tiempo = Timestamp.valueOf(ahora);
-        String medioPago = cmbMedioPago.getSelectedItem().toString();
-        
-        String query = "INSERT INTO boletas (rutUsuario, fechaTramite, medioPago, totalPagados, totalFiado) " +
-                      "VALUES (?, ?, ?, ?, ?)";
-        
-        PreparedStatement pstmt = conex.prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
-        pstmt.setString(1, usuario);
-        pstmt.setTimestamp(2, tiempo);
-        pstmt.setString(3, medioPago);
-        pstmt.setDouble(4, totalPagado);
-        pstmt.setDouble(5, totalFiado);
-        
-        pstmt.executeUpdate();
-        
-        ResultSet rs = pstmt.getGeneratedKeys();
-        int idBoleta = 0;
-        if (rs.next()) {
-            idBoleta = rs.getInt(1);
+    /**
+     * Muestra en el titulo el estado de las ventas en segundo plano
+     * @param estadoVenta mensaje, o null cuando ya no hay ventas pendientes
+     */
+    private void mostrarEstado(String estadoVenta) {
+        if (estadoVenta == null && DiarioVentas.pendientes() > 0) {
+            estadoVenta = "Ventas pendientes: " + DiarioVentas.pendientes();
         }
-        
-        rs.close();
-        pstmt.close();
-        
-        return idBoleta;
+        setTitle(estadoVenta == null ? "Venta - Usuario: " + usuario : "Venta - " + estadoVenta);
     }
     
-    private void insertarDetalleProducto(int idBoleta, ProductoVenta pv) throws SQLException {
-        String query = "INSERT INTO detalleboletaproductos " +
-                      "(idBoleta, codProducto, cantidad, cantidadFiado, precioUnitario, " +
-                      "descuento, totalPago, totalFiado, tipoTransaccion) " +
-                      "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
-
-        PreparedStatement pstmt = conex.prepareStatement(query);
-
-        pstmt.setInt(1, idBoleta);
-
-        pstmt.setInt(2, pv.codProducto);
-
-        pstmt.setInt(3, pv.cantidad);
-
-        int cantidadFiada = pv.fiado ? pv.cantidad : 0;
-        pstmt.setInt(4, cantidadFiada);
-
-        pstmt.setDouble(5, pv.precioActual);
-
-        pstmt.setDouble(6, 0.0);
-
-        double totalPago;
-        double totalFiado;
-
-        if (pv.fiado) {
-            totalPago = 0;              
-            totalFiado = pv.subtotal;   
-        } else {
-            totalPago = pv.subtotal;    
-            totalFiado = 0;            
+    /**
+     * Devuelve a la pantalla el carro de una venta que no se pudo registrar,
+     * siempre que el cajero no haya empezado otra. Solo pasa con las que no
+     * alcanzaron a anotarse en el diario local y fueron directo a la base de
+     * datos, que fallan enseguida: una venta anotada no avisa error, queda
+     * en el diario hasta registrarse.
+     */
+    private boolean restaurarVenta(List<ProductoVenta> carro, boolean fiado, int deudor) {
+        if (!isDisplayable() || !productosVenta.isEmpty()) {
+            return false;
         }
-
-        pstmt.setDouble(7, totalPago);
-        pstmt.setDouble(8, totalFiado);
-
-        pstmt.setString(9, "VENTA");
-
-        pstmt.executeUpdate();
-        pstmt.close();
-    }
-
-    private void registrarDeuda(int idBoleta) throws SQLException {
-        try {
-            String itemSeleccionado = cmbDeudor.getSelectedItem().toString();
-
-            if (itemSeleccionado.equals("Seleccionar cliente")) {
-                throw new SQLException("Debe seleccionar un cliente");
+        productosVenta.addAll(carro);
+        for (ProductoVenta pv : carro) {
+            try {
+                ReservasStock.reservar(idCarro, pv.codProducto, pv.cantidad);
+            } catch (SQLException ex) {
+                // Sin reserva igual se puede reintentar: el commit vuelve a validar el stock
             }
-
-            String rutCliente = itemSeleccionado.split(" - ")[0].trim();
-
-            LocalDateTime ahora = LocalDateTime.now();
-            Timestamp tiempo = Timestamp.valueOf(ahora);
-
-            String query = "INSERT INTO deudas (rutDeudor, idBoleta, fechaDeuda, estaPagado, montoPagado) " +
-                          "VALUES (?, ?, ?, false, 0)";
-
-            PreparedStatement pstmt = conex.prepareStatement(query);
-            pstmt.setString(1, rutCliente);
-            pstmt.setInt(2, idBoleta);
-            pstmt.setTimestamp(3, tiempo);
-
-            pstmt.executeUpdate();
-            pstmt.close();
-
-            System.out.println("DEBUG: Deuda registrada exitosamente");
-
-        } catch (Exception e) {
-            System.err.println("ERROR en registrarDeuda: " + e.getMessage());
-            e.printStackTrace();
-            throw new SQLException("Error al registrar deuda: " + e.getMessage());
         }
+        chkFiado.setSelected(fiado);
+        actualizarVisibilidadCliente();
+        if (deudor < cmbDeudor.getItemCount()) {
+            cmbDeudor.setSelectedIndex(deudor);
+        }
+        actualizarTabla();
+        actualizarTotales();
+        return true;
+    }
+    
+    private EscritorBoletas.Boleta armarBoleta() {
+        List<EscritorBoletas.Linea> lineas = new ArrayList<>();
+        for (ProductoVenta pv : productosVenta) {
+            int cantidadFiada = pv.fiado ? pv.cantidad : 0;
+            double totalPagoLinea = pv.fiado ? 0 : pv.subtotal;
+            double totalFiadoLinea = pv.fiado ? pv.subtotal : 0;
+            lineas.add(new EscritorBoletas.Linea(pv.codProducto, pv.cantidad, cantidadFiada,
+                    pv.precioActual, 0.0, totalPagoLinea, totalFiadoLinea, "VENTA"));
+        }
+        
+        String rutDeudor = null;
+        if (chkFiado.isSelected() && totalFiado > 0) {
+            rutDeudor = cmbDeudor.getSelectedItem().toString().split(" - ")[0].trim();
+        }
+        
+        return new EscritorBoletas.Boleta(usuario, Timestamp.valueOf(LocalDateTime.now()),
+                cmbMedioPago.getSelectedItem().toString(), totalPagado, totalFiado, lineas, rutDeudor);
     }
     
     private void limpiarVenta() {
@@ -519,38 +548,39 @@ public class VentaFianza extends javax.swing.JFrame {
         });
     }
     
-    private void actualizarStockProducto(ProductoVenta pv) throws SQLException {
-        String query = "UPDATE productos SET stock = stock - ? WHERE codProducto = ?";
-        
-        PreparedStatement pstmt = conex.prepareStatement(query);
-        pstmt.setInt(1, pv.cantidad);
-        pstmt.setInt(2, pv.codProducto);
-        
-        pstmt.executeUpdate();
-        pstmt.close();
-    }
-    
     public void conectar(){
-        String url = "jdbc:mysql://localhost:3306/vistaalmar";
-        String user = "root";
-        String pass = "";
         try {
-            conex = DriverManager.getConnection(url, user, pass);
+            conex = ConexionBD.getConnection();
         } catch(SQLException ex) {
             JOptionPane.showMessageDialog(null, "Error en conexión: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
         }       
     }
+
+    @Override
+    public void dispose() {
+        ReservasStock.cerrarCarro(idCarro);
+        ConexionBD.cerrarConexion(conex);
+        conex = null;
+        super.dispose();
+    }
     
     public void registrarRetiro(){
-        try {
-            LocalDateTime ahora = LocalDateTime.now();
-            Timestamp tiempo = Timestamp.valueOf(ahora);
-            stm = conex.createStatement();
-            stm.executeUpdate("INSERT INTO accessLog (rutUsuario, tipoAccion, fechaAccion) VALUES('" + usuario + "',0,'" + tiempo + "')");
-            stm.close();
-        } catch(SQLException ex) {
-            JOptionPane.showMessageDialog(null, "Error en database: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        RegistroAccesos.salida(Integer.parseInt(usuario));
+    }
+
+    @Override
+    public void alMostrar() {
+        if (conex == null) {
+            conectar();
         }
+        cargarClientes();
+        mostrarEstado(null);
+    }
+
+    @Override
+    public void alOcultar() {
+        ConexionBD.cerrarConexion(conex);
+        conex = null;
     }
     /**
      * This method is called from within the constructor to initialize the form.
@@ -933,13 +963,12 @@ public class VentaFianza extends javax.swing.JFrame {
 
     private void btnRegresarActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnRegresarActionPerformed
         registrarRetiro();
-        this.dispose(); 
+        Marco.cerrarSesion();
         new MenuAcceso().setVisible(true);
     }//GEN-LAST:event_btnRegresarActionPerformed
 
     private void btnPrincipalActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnPrincipalActionPerformed
-        this.dispose(); 
-        new MenuPrincipal(usuario,estado).setVisible(true); 
+        Marco.mostrar(MenuPrincipal.class, () -> new MenuPrincipal(usuario, estado));
     }//GEN-LAST:event_btnPrincipalActionPerformed
 
     private void btnSalirActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnSalirActionPerformed
@@ -948,12 +977,11 @@ public class VentaFianza extends javax.swing.JFrame {
     }//GEN-LAST:event_btnSalirActionPerformed
 
     private void btnInventarioActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnInventarioActionPerformed
-       this.dispose(); 
-       new Inventario(usuario,estado).setVisible(true);
+       Marco.mostrar(Inventario.class, () -> new Inventario(usuario, estado));
     }//GEN-LAST:event_btnInventarioActionPerformed
 
     private void jButton1ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButton1ActionPerformed
-       this.dispose(); 
+       Marco.ocultar();
        new HistorialBoletas(usuario,estado).setVisible(true);
     }//GEN-LAST:event_jButton1ActionPerformed
 
@@ -2,17 +2,28 @@
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import catalogo.CatalogoProductos;
+import catalogo.Producto;
+import auditoria.RegistroAccesos;
+import datos.ConexionBD;
+import datos.EjecutorTransacciones;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 import java.sql.ResultSet;
 import java.time.Month;
 import javax.swing.table.DefaultTableModel;
+import java.util.ArrayList;
+import java.util.List;
+import ventas.EscritorBoletas;
+import ventas.DiarioVentas;
+import ventas.ReservasStock;
+import ventas.StockInsuficienteException;
+import pantallas.Marco;
+import pantallas.Pantalla;
 /*
  * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
  * Click nbfs://nbhost/SystemFileSystem/Templates/GUIForms/JFrame.java to edit this template
@@ -22,13 +33,14 @@ import javax.swing.table.DefaultTableModel;
  *
  * @author oct88
  */
-public class VentaPerdida extends javax.swing.JFrame {
+public class VentaPerdida extends javax.swing.JFrame implements Pantalla {
     
     private static final java.util.logging.Logger logger = java.util.logging.Logger.getLogger(Compra.class.getName());
     private String usuario = "hello";
     private boolean estado = false;
     Connection conex=null;
     Statement stm=null;
+    private long idCarro = ReservasStock.nuevoCarro();
     /**
      * Creates new form Compra
      */
@@ -61,47 +73,81 @@ public class VentaPerdida extends javax.swing.JFrame {
     
     
     public void registrarRetiro(){
-        int valor = Integer.parseInt(usuario);
-        try{
-            LocalDateTime ahora = LocalDateTime.now();
-            Timestamp tiempo = Timestamp.valueOf(ahora);
-            stm=conex.createStatement();
-            stm.executeUpdate("INSERT INTO accessLog (rutUsuario, tipoAccion, fechaAccion) VALUES("+valor+",0,'"+ tiempo +"')");
-            stm.close();
-        }catch(SQLException ex){
-            JOptionPane.showMessageDialog(null, "Error en database: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        RegistroAccesos.salida(Integer.parseInt(usuario));
+    }
+
+    @Override
+    public void alMostrar(){
+        if (conex == null){
+            conectar();
         }
-        return;
+    }
+
+    @Override
+    public void alOcultar(){
+        ConexionBD.cerrarConexion(conex);
+        conex=null;
     }
     
     public void conectar(){
-        String url="jdbc:mysql://localhost:3306/vistaalmar";
-        String usuario="root";
-        String pass="";
         try{
-            conex=DriverManager.getConnection(url,usuario,pass);
+            conex=ConexionBD.getConnection();
         }catch(Exception ex){
             JOptionPane.showMessageDialog(null,"error en conexion "+ex,"error",1);
         }       
     }
+
+    @Override
+    public void dispose(){
+        ReservasStock.cerrarCarro(idCarro);
+        ConexionBD.cerrarConexion(conex);
+        conex=null;
+        super.dispose();
+    }
     
+    /**
+     * Muestra en el titulo el estado de las perdidas en segundo plano
+     * @param mensaje aviso, o null cuando ya no hay nada que avisar
+     */
+    private void mostrarEstado(String mensaje) {
+        if (mensaje == null && DiarioVentas.pendientes() > 0) {
+            mensaje = "Ventas pendientes: " + DiarioVentas.pendientes();
+        }
+        setTitle(mensaje == null ? "" : mensaje);
+    }
+
+    /**
+     * Devuelve a la pantalla el carro de una perdida que no se pudo
+     * registrar, si no se empezo otra. Solo pasa con las que no alcanzaron a
+     * anotarse en el diario local y fueron directo a la base de datos.
+     */
+    private boolean restaurarCarro(List<Object[]> carro) {
+        DefaultTableModel modelo = (DefaultTableModel) tblCarro.getModel();
+        if (!isDisplayable() || modelo.getRowCount() > 0) {
+            return false;
+        }
+        for (Object[] fila : carro) {
+            modelo.addRow(fila);
+            try {
+                ReservasStock.reservar(idCarro, Integer.parseInt(fila[0].toString()), Integer.parseInt(fila[2].toString()));
+            } catch (SQLException ex) {
+                // Sin reserva igual se puede reintentar: el registro vuelve a validar el stock
+            }
+        }
+        actualizarTotal();
+        return true;
+    }
+
     boolean checkCantidad(int cantidad, int codigo){
         try{
-            stm = conex.createStatement();
-            ResultSet fila = stm.executeQuery("SELECT stock FROM productos WHERE codProducto=" + codigo);
-            while(fila.next()){
-                int valor = fila.getInt("stock");
-                if(cantidad > valor){
-                    return true;
-                }
-            }
-            return false;
+            // Reserva la cantidad contra el stock que no tienen apartado otros carros
+            return cantidad > ReservasStock.reservar(idCarro, codigo, cantidad);
         }catch(Exception ex){
             JOptionPane.showMessageDialog(null,"error en conexion "+ex,"error",1);
             return false;
         }
     }
-    
+
     public boolean confirmarCodigo(int codigo){
         DefaultTableModel modelo = (DefaultTableModel) tblCarro.getModel();
         if(modelo.getRowCount()==0){
@@ -481,12 +527,13 @@ public class VentaPerdida extends javax.swing.JFrame {
     private void cmbBorrarTodoActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_cmbBorrarTodoActionPerformed
         DefaultTableModel modelo = (DefaultTableModel) tblCarro.getModel();
         modelo.setRowCount(0);
+        ReservasStock.cerrarCarro(idCarro);
+        idCarro = ReservasStock.nuevoCarro();
         actualizarTotal();
     }//GEN-LAST:event_cmbBorrarTodoActionPerformed
 
     private void btnProveedoresActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnProveedoresActionPerformed
-        this.dispose();
-        new Venta(usuario,estado).setVisible(true);
+        Marco.mostrar(Venta.class, () -> new Venta(usuario, estado));
     }//GEN-LAST:event_btnProveedoresActionPerformed
 
     private void cmbBuscarActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_cmbBuscarActionPerformed
@@ -497,15 +544,10 @@ public class VentaPerdida extends javax.swing.JFrame {
             String item = cmbBuscar.getSelectedItem().toString();
             String partes[] = item.split("-");
             int codigo = Integer.parseInt(partes[0]);
-            int precio = 0;
-            int stock = 0;
-            stm = conex.createStatement();
-            ResultSet fila = stm.executeQuery("SELECT precioActual, stock FROM productos WHERE codProducto =" + codigo);
-            if(fila.next()){
-                precio = fila.getInt("precioActual");
-                stock = fila.getInt("Stock");
-                lblPrecio.setText(String.valueOf(precio));
-                lblStock.setText(String.valueOf(stock));
+            Producto producto = CatalogoProductos.buscar(codigo);
+            if(producto != null){
+                lblPrecio.setText(String.valueOf(producto.precioActual()));
+                lblStock.setText(String.valueOf(producto.stock()));
             }
         }catch (SQLException rollbackEx) {
             JOptionPane.showMessageDialog(null, "Error crítico Revisar Base De Datos" + rollbackEx.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
@@ -530,18 +572,8 @@ public class VentaPerdida extends javax.swing.JFrame {
             codigoCheck = Integer.parseInt(codigo);
         }
         try{
-            stm = conex.createStatement();
-            ResultSet lista = stm.executeQuery("SELECT codProducto, nomProducto FROM productos WHERE nomProducto LIKE '%" + nombre + "%' OR codProducto = " + codigoCheck);
-            String nombreLista = "";
-            String codigoLista = "";
-            int codigoLista2 = 0;
-            String sentenciaFinal;
-            while(lista.next()){
-                nombreLista = lista.getString("nomProducto");
-                codigoLista2 = lista.getInt("codProducto");
-                codigoLista = String.valueOf(codigoLista2);
-                sentenciaFinal = codigoLista + "-" + nombreLista;
-                cmbBuscar.addItem(sentenciaFinal);
+            for(Producto producto : CatalogoProductos.buscar(nombre, codigoCheck, 0)){
+                cmbBuscar.addItem(producto.codProducto() + "-" + producto.nomProducto());
             }
             cmbBuscar.setSelectedIndex(0);
         }catch(SQLException ex){
@@ -614,6 +646,7 @@ public class VentaPerdida extends javax.swing.JFrame {
             JOptionPane.showMessageDialog(null, "Seleccione un Item del Carro","Item No Seleccionado", JOptionPane.WARNING_MESSAGE);
         }
         DefaultTableModel modelo = (DefaultTableModel) tblCarro.getModel();
+        ReservasStock.liberar(idCarro, Integer.parseInt(modelo.getValueAt(registro, 0).toString()));
         modelo.removeRow(registro);
         actualizarTotal();
     }//GEN-LAST:event_cmbBorrarActionPerformed
@@ -643,64 +676,68 @@ public class VentaPerdida extends javax.swing.JFrame {
         int totalPago = Integer.parseInt(lblTotalPrecio.getText());
         String medioPagos = "Perdida";
         LocalDate ahora = LocalDate.now();
-        try{
-            conex.setAutoCommit(false);
-            
-            int valor = 0;
-            
-            stm = conex.createStatement();
-            stm.executeUpdate(
-                    "INSERT INTO boletas (rutUsuario, fechaTramite, medioPago, totalPagados, totalFiado) "
-                    + "Values(" + user +", '"+ ahora +"','"+ medioPagos +"'," + totalPago + ",0)", 
-                    Statement.RETURN_GENERATED_KEYS);
-            ResultSet rs = stm.getGeneratedKeys();
-            if (rs.next()) {
-                valor = rs.getInt(1);  
-            }
-            rs.close();
-            stm.close();
-                     
-            DefaultTableModel modelo = (DefaultTableModel) tblCarro.getModel();
-            for(int i = 0; i < modelo.getRowCount(); i++){
-                int codigoProducto = Integer.parseInt(modelo.getValueAt(i, 0).toString());
-                String tipoTransaccion = modelo.getValueAt(i, 5).toString();
-                int cantidadUnitaria = Integer.parseInt(modelo.getValueAt(i, 2).toString());
-                int precioUnitario = Integer.parseInt(modelo.getValueAt(i, 3).toString());
-                int totalProducto = Integer.parseInt(modelo.getValueAt(i, 4).toString());
-                float descuento = -1f;
-                stm = conex.createStatement();
-                stm.executeUpdate(
-                    "INSERT INTO detalleBoletaProductos (idBoleta, codProducto, cantidad, cantidadFiado, precioUnitario, descuento, totalPago, totalFiado, tipoTransaccion) "
-                    + "Values(" + valor +", "+ codigoProducto +","+ cantidadUnitaria +",0," + precioUnitario + "," + descuento + "," + totalProducto + ",0,'" + tipoTransaccion + "')");
-                stm.close();
-                
-                stm = conex.createStatement();
-                
-                stm.executeUpdate("UPDATE productos SET stock = stock - " + cantidadUnitaria + " WHERE codProducto = " + codigoProducto);
-                
-                stm.close();
+        List<EscritorBoletas.Linea> lineas = new ArrayList<>();
+        DefaultTableModel modelo = (DefaultTableModel) tblCarro.getModel();
+        for(int i = 0; i < modelo.getRowCount(); i++){
+            int codigoProducto = Integer.parseInt(modelo.getValueAt(i, 0).toString());
+            String tipoTransaccion = modelo.getValueAt(i, 5).toString();
+            int cantidadUnitaria = Integer.parseInt(modelo.getValueAt(i, 2).toString());
+            int precioUnitario = Integer.parseInt(modelo.getValueAt(i, 3).toString());
+            int totalProducto = Integer.parseInt(modelo.getValueAt(i, 4).toString());
+            float descuento = -1f;
+            lineas.add(new EscritorBoletas.Linea(codigoProducto, cantidadUnitaria, 0, precioUnitario,
+                    descuento, totalProducto, 0, tipoTransaccion));
+        }
+        EscritorBoletas.Boleta boleta = new EscritorBoletas.Boleta(String.valueOf(user),
+                Timestamp.valueOf(ahora.atStartOfDay()), medioPagos, totalPago, 0, lineas, null);
+        
+        // Se guarda el carro por si el registro falla y hay que reintentar
+        List<Object[]> carro = new ArrayList<>();
+        for(int i = 0; i < modelo.getRowCount(); i++){
+            Object[] fila = new Object[modelo.getColumnCount()];
+            for(int j = 0; j < fila.length; j++){
+                fila[j] = modelo.getValueAt(i, j);
             }
-            
-            conex.commit();
-            JOptionPane.showMessageDialog(null, "Perdida Registrada Exitosamente");
-            conex.setAutoCommit(true);
-            this.dispose();
-            new HistorialBoletas(usuario,estado).setVisible(true);
-        }catch(SQLException ex){
-            try {
-                conex.rollback();
-                JOptionPane.showMessageDialog(null, "Error en Base de Datos, Operación Revertida: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-            } catch (SQLException rollbackEx) {
-                JOptionPane.showMessageDialog(null, "Error crítico: rollback falló: " + rollbackEx.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            carro.add(fila);
+        }
+        
+        // El registro corre en segundo plano; una vez en el diario local la pantalla queda
+        // lista para la siguiente perdida. Las reservas del carro se mantienen, sin vencer, hasta que termine.
+        long carroPerdida = idCarro;
+        ReservasStock.fijar(carroPerdida);
+        idCarro = ReservasStock.nuevoCarro();
+        modelo.setRowCount(0);
+        actualizarTotal();
+        DiarioVentas.enviar("perdida", boleta, new EjecutorTransacciones.Observador<EscritorBoletas.Resultado>() {
+            @Override
+            public void progreso(String mensaje) {
+                mostrarEstado(mensaje);
             }
-        }finally{
-            try{
-                conex.setAutoCommit(true);
-            }catch (SQLException rollbackEx) {
-                JOptionPane.showMessageDialog(null, "Error crítico Revisar Base De Datos" + rollbackEx.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+
+            @Override
+            public void exito(EscritorBoletas.Resultado resultado) {
+                ReservasStock.cerrarCarro(carroPerdida);
+                mostrarEstado(null);
+                JOptionPane.showMessageDialog(null, "Perdida Registrada Exitosamente");
+                if(isDisplayable() && tblCarro.getRowCount() == 0 && Marco.esActual(VentaPerdida.this)){
+                    Marco.ocultar();
+                    new HistorialBoletas(usuario,estado).setVisible(true);
+                }
             }
 
-        }
+            @Override
+            public void error(Exception ex) {
+                ReservasStock.cerrarCarro(carroPerdida);
+                mostrarEstado(null);
+                boolean restaurado = restaurarCarro(carro);
+                if(ex instanceof StockInsuficienteException){
+                    JOptionPane.showMessageDialog(null, ex.getMessage() + (restaurado ? "\nCorrija las cantidades del carro." : "\nIngrese la perdida nuevamente."), "Stock Insuficiente", JOptionPane.WARNING_MESSAGE);
+                    return;
+                }
+                JOptionPane.showMessageDialog(null, "Error en Base de Datos, Operación Revertida: " + ex.getMessage()
+                        + (restaurado ? "" : "\nIngrese la perdida nuevamente."), "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        });
     }//GEN-LAST:event_btnConfirmarActionPerformed
 
     private void btnSalirActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnSalirActionPerformed
@@ -709,13 +746,12 @@ public class VentaPerdida extends javax.swing.JFrame {
     }//GEN-LAST:event_btnSalirActionPerformed
 
     private void btnPrincipalActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnPrincipalActionPerformed
-        this.dispose();
-        new MenuPrincipal(usuario, estado).setVisible(true);
+        Marco.mostrar(MenuPrincipal.class, () -> new MenuPrincipal(usuario, estado));
     }//GEN-LAST:event_btnPrincipalActionPerformed
 
     private void btnRegresarActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_btnRegresarActionPerformed
         registrarRetiro();
-        this.dispose();
+        Marco.cerrarSesion();
         new MenuAcceso().setVisible(true);
     }//GEN-LAST:event_btnRegresarActionPerformed
 
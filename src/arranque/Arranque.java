@@ -0,0 +1,130 @@
+package arranque;
+
+import java.awt.EventQueue;
+import java.awt.Frame;
+import java.awt.Window;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import metricas.Metricas;
+
+/**
+ * Tiempo de arranque de la aplicacion, desde main hasta que el login queda
+ * a la vista, y la corrida de entrenamiento de la cache AOT.
+ * <p>
+ * main llama a {@link #empezar()}, marca las etapas con {@link #marcar} y
+ * entrega el login a {@link #alAbrir}; cuando la ventana se abre se escribe
+ * en el registro una linea con el total y lo que tomo cada etapa, y se suma
+ * a la operacion "arranque.login" de {@link Metricas}. Las marcas de despues
+ * (un login nuevo al cerrar sesion) no cuentan.
+ * <p>
+ * Con -Dvistaalmar.entrenar=true es la corrida de entrenamiento de
+ * "ant aot": una vez abierto el login se construyen, sin mostrarlas, las
+ * pantallas que la caja usa en el dia, y la aplicacion se cierra. Asi la
+ * cache AOT trae tambien las clases de esas pantallas y de Swing que solo
+ * se cargan al navegar.
+ *
+ * @author franc
+ */
+public final class Arranque {
+
+    private static final Logger logger = Logger.getLogger(Arranque.class.getName());
+
+    /** Propiedad del sistema que pide la corrida de entrenamiento */
+    public static final String ENTRENAR = "vistaalmar.entrenar";
+
+    // Pantallas que se construyen al entrenar; solo las que tienen un constructor sin consultas
+    private static final String[] PANTALLAS = {
+        "MenuPrincipal", "Venta", "VentaFianza", "VentaPerdida", "Inventario", "Proveedores", "Compra",
+        "CrearProducto", "ModificarProducto", "CrearProveedor", "ModificarProveedor", "HistorialFacturas",
+        "Usuarios", "HistorialAcceso", "Deudas", "NuevoDeudor", "Detalles"
+    };
+
+    private static long inicio;
+    private static long anterior;
+    private static final Map<String, Long> etapas = new LinkedHashMap<>();
+    private static boolean terminado = true;
+
+    private Arranque() {
+    }
+
+    /**
+     * Primera linea de main
+     */
+    public static synchronized void empezar() {
+        inicio = System.nanoTime();
+        anterior = inicio;
+        terminado = false;
+    }
+
+    /**
+     * Anota el fin de una etapa del arranque
+     * @param etapa nombre corto, por ejemplo "aspecto"
+     */
+    public static synchronized void marcar(String etapa) {
+        if (terminado) {
+            return;
+        }
+        long ahora = System.nanoTime();
+        etapas.merge(etapa, ahora - anterior, Long::sum);
+        anterior = ahora;
+    }
+
+    /**
+     * Termina la medicion cuando la ventana de login se abre y atiende
+     * eventos
+     * @param login ventana de login, antes de hacerla visible
+     */
+    public static void alAbrir(Window login) {
+        login.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowOpened(WindowEvent e) {
+                login.removeWindowListener(this);
+                // Lo que queda en la cola (el primer pintado) es parte del arranque
+                EventQueue.invokeLater(Arranque::terminar);
+            }
+        });
+    }
+
+    private static void terminar() {
+        long total;
+        StringBuilder detalle = new StringBuilder();
+        synchronized (Arranque.class) {
+            if (terminado) {
+                return;
+            }
+            marcar("login");
+            terminado = true;
+            total = anterior - inicio;
+            etapas.forEach((etapa, nanos) -> detalle.append(detalle.length() == 0 ? "" : ", ")
+                    .append(etapa).append(' ').append(TimeUnit.NANOSECONDS.toMillis(nanos)));
+        }
+        long jvm = ManagementFactory.getRuntimeMXBean().getUptime();
+        logger.info("Arranque: login a la vista en " + TimeUnit.NANOSECONDS.toMillis(total) + " ms desde main, "
+                + jvm + " ms desde que partio la JVM (" + detalle + ")");
+        Metricas.registrar("arranque.login", total, false);
+
+        if (Boolean.getBoolean(ENTRENAR)) {
+            entrenar();
+            logger.info("Entrenamiento terminado");
+            System.exit(0);
+        }
+    }
+
+    private static void entrenar() {
+        for (String nombre : PANTALLAS) {
+            try {
+                Frame pantalla = (Frame) Class.forName(nombre).getDeclaredConstructor().newInstance();
+                pantalla.pack();
+                pantalla.dispose();
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                logger.log(Level.WARNING, "No se pudo construir " + nombre + " al entrenar", e);
+            }
+        }
+    }
+}
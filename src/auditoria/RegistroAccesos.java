@@ -0,0 +1,275 @@
+package auditoria;
+
+import datos.ConexionBD;
+import datos.ConfiguracionBD;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Registro de entradas y salidas de usuarios en la tabla accessLog, sin
+ * esperar a la base de datos.
+ * <p>
+ * Las pantallas solo dejan el evento en una cola acotada y siguen; un hilo
+ * de fondo la vacia y escribe los eventos en lotes de hasta
+ * auditoria.lote filas. Al cerrar la aplicacion, el cierre del pool de
+ * {@link ConexionBD} (que corre en un shutdown hook) espera a que se
+ * escriba lo que quede en la cola, asi el System.exit que sigue a cada
+ * registro de salida ya no pierde filas.
+ * <p>
+ * Si MySQL no responde, o la cola esta llena, los eventos se agregan a un
+ * archivo local de pendientes (auditoria.archivoPendientes) y se envian a
+ * la base de datos con el siguiente lote que se pueda escribir.
+ *
+ * @author franc
+ */
+public final class RegistroAccesos {
+
+    private static final Logger logger = Logger.getLogger(RegistroAccesos.class.getName());
+
+    /** tipoAccion de un inicio de sesion */
+    public static final int ENTRADA = 1;
+    /** tipoAccion de un cierre de sesion o de la aplicacion */
+    public static final int SALIDA = 0;
+
+    private static final String SQL_INSERTAR =
+            "INSERT INTO accessLog (rutUsuario, tipoAccion, fechaAccion) VALUES (?, ?, ?)";
+
+    private static final int CAPACIDAD_POR_DEFECTO = 10_000;
+    private static final int LOTE_POR_DEFECTO = 200;
+    // Pausa antes de reintentar despues de una falla de la base de datos
+    private static final long ESPERA_REINTENTO_MS = 30_000;
+
+    /**
+     * Fila de accessLog
+     */
+    public record Evento(int rutUsuario, int tipoAccion, Timestamp fecha) {
+
+        String aLinea() {
+            return rutUsuario + ";" + tipoAccion + ";" + fecha.getTime();
+        }
+
+        static Evento deLinea(String linea) {
+            String[] partes = linea.split(";");
+            return new Evento(Integer.parseInt(partes[0]), Integer.parseInt(partes[1]),
+                    new Timestamp(Long.parseLong(partes[2])));
+        }
+    }
+
+    private static final BlockingQueue<Evento> cola;
+    private static final int lote;
+    private static final Path archivoPendientes;
+    // Serializa el uso del archivo de pendientes entre el hilo de fondo y quien registra con la cola llena
+    private static final Object candadoArchivo = new Object();
+    private static final Thread escritor;
+
+    static {
+        int capacidad = CAPACIDAD_POR_DEFECTO;
+        int tamanoLote = LOTE_POR_DEFECTO;
+        String archivo = Paths.get(System.getProperty("user.home"), ".vistaalmar", "accessLog-pendientes.txt").toString();
+        try {
+            ConfiguracionBD cfg = ConexionBD.getConfiguracion();
+            capacidad = cfg.entero("auditoria.capacidad", capacidad);
+            tamanoLote = cfg.entero("auditoria.lote", tamanoLote);
+            archivo = cfg.texto("auditoria.archivoPendientes", archivo);
+        } catch (SQLException | IllegalArgumentException e) {
+            logger.log(Level.WARNING, "Se usa la configuracion de auditoria por defecto", e);
+        }
+        cola = new ArrayBlockingQueue<>(capacidad);
+        lote = tamanoLote;
+        archivoPendientes = Paths.get(archivo);
+
+        escritor = new Thread(RegistroAccesos::escribirEnFondo, "registro-accesos");
+        escritor.setDaemon(true);
+        escritor.start();
+        ConexionBD.registrarAntesDeCerrar(RegistroAccesos::terminar);
+    }
+
+    private RegistroAccesos() {
+    }
+
+    /**
+     * Registra un inicio de sesion
+     * @param rutUsuario usuario que entra
+     */
+    public static void entrada(int rutUsuario) {
+        registrar(new Evento(rutUsuario, ENTRADA, new Timestamp(System.currentTimeMillis())));
+    }
+
+    /**
+     * Registra un cierre de sesion
+     * @param rutUsuario usuario que sale
+     */
+    public static void salida(int rutUsuario) {
+        registrar(new Evento(rutUsuario, SALIDA, new Timestamp(System.currentTimeMillis())));
+    }
+
+    /**
+     * Deja el evento en la cola y vuelve de inmediato. Si la cola esta
+     * llena el evento va directo al archivo de pendientes.
+     * @param evento fila a escribir
+     */
+    public static void registrar(Evento evento) {
+        if (!cola.offer(evento)) {
+            logger.warning("Cola de accessLog llena; el evento se guarda en " + archivoPendientes);
+            guardarPendientes(List.of(evento));
+        }
+    }
+
+    /**
+     * Eventos que esperan en memoria
+     * @return tamano de la cola
+     */
+    public static int pendientes() {
+        return cola.size();
+    }
+
+    private static void escribirEnFondo() {
+        List<Evento> eventos = new ArrayList<>(lote);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                eventos.add(cola.take());
+                cola.drainTo(eventos, lote - 1);
+                // Si falla, el lote ya quedo en el archivo de pendientes
+                boolean escrito = escribir(eventos);
+                eventos.clear();
+                if (!escrito) {
+                    Thread.sleep(ESPERA_REINTENTO_MS);
+                }
+            } catch (InterruptedException e) {
+                // terminar() escribe lo que quede en la cola
+                return;
+            }
+        }
+    }
+
+    /**
+     * Escribe primero lo pendiente en el archivo y despues el lote. Si la
+     * base de datos falla, el lote queda en el archivo.
+     * @return true si todo quedo en accessLog
+     */
+    private static boolean escribir(List<Evento> eventos) {
+        synchronized (candadoArchivo) {
+            try (Connection conn = ConexionBD.getConnection()) {
+                List<Evento> anteriores = leerPendientes();
+                if (!anteriores.isEmpty()) {
+                    insertar(conn, anteriores);
+                    Files.deleteIfExists(archivoPendientes);
+                    logger.info(anteriores.size() + " eventos de accessLog pendientes enviados a la base de datos");
+                }
+                insertar(conn, eventos);
+                return true;
+            } catch (SQLException | IOException e) {
+                logger.log(Level.WARNING, "No se pudo escribir en accessLog; " + eventos.size()
+                        + " eventos quedan en " + archivoPendientes, e);
+                guardarPendientes(eventos);
+                return false;
+            }
+        }
+    }
+
+    private static void insertar(Connection conn, List<Evento> eventos) throws SQLException {
+        boolean autoCommitPrevio = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (PreparedStatement pstmt = conn.prepareStatement(SQL_INSERTAR)) {
+            for (int i = 0; i < eventos.size(); i++) {
+                Evento evento = eventos.get(i);
+                pstmt.setInt(1, evento.rutUsuario());
+                pstmt.setInt(2, evento.tipoAccion());
+                pstmt.setTimestamp(3, evento.fecha());
+                pstmt.addBatch();
+                if ((i + 1) % lote == 0) {
+                    pstmt.executeBatch();
+                }
+            }
+            pstmt.executeBatch();
+            conn.commit();
+        } catch (SQLException e) {
+            try {
+                conn.rollback();
+            } catch (SQLException ex) {
+                e.addSuppressed(ex);
+            }
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommitPrevio);
+        }
+    }
+
+    private static List<Evento> leerPendientes() throws IOException {
+        List<Evento> eventos = new ArrayList<>();
+        if (!Files.exists(archivoPendientes)) {
+            return eventos;
+        }
+        for (String linea : Files.readAllLines(archivoPendientes, StandardCharsets.UTF_8)) {
+            if (linea.isBlank()) {
+                continue;
+            }
+            try {
+                eventos.add(Evento.deLinea(linea.trim()));
+            } catch (RuntimeException e) {
+                logger.warning("Linea invalida en " + archivoPendientes + ": " + linea);
+            }
+        }
+        return eventos;
+    }
+
+    /**
+     * Agrega los eventos al archivo de pendientes y fuerza la escritura a disco
+     */
+    private static void guardarPendientes(List<Evento> eventos) {
+        if (eventos.isEmpty()) {
+            return;
+        }
+        synchronized (candadoArchivo) {
+            try {
+                Path carpeta = archivoPendientes.toAbsolutePath().getParent();
+                if (carpeta != null) {
+                    Files.createDirectories(carpeta);
+                }
+                try (BufferedWriter out = Files.newBufferedWriter(archivoPendientes, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.DSYNC)) {
+                    for (Evento evento : eventos) {
+                        out.write(evento.aLinea());
+                        out.newLine();
+                    }
+                }
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Se perdieron " + eventos.size() + " eventos de accessLog", e);
+            }
+        }
+    }
+
+    /**
+     * Detiene el hilo de fondo y escribe lo que quede en la cola. Se llama
+     * desde el cierre del pool, antes de cerrar las conexiones.
+     */
+    private static void terminar() {
+        escritor.interrupt();
+        try {
+            escritor.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Evento> restantes = new ArrayList<>();
+        cola.drainTo(restantes);
+        if (!restantes.isEmpty()) {
+            escribir(restantes);
+        }
+    }
+}
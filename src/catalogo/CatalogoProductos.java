@@ -0,0 +1,382 @@
+package catalogo;
+
+import datos.ConexionBD;
+import datos.Consulta;
+import datos.Consultas;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+
+/**
+ * Copia en memoria de la tabla productos, compartida por todas las pantallas.
+ * <p>
+ * Se carga una vez al iniciar sesion y despues se mantiene al dia de forma
+ * incremental: las pantallas que crean, modifican o borran productos avisan
+ * con {@link #refrescar(int)} o {@link #quitar(int)}, y las transacciones de
+ * boletas y facturas releen el stock de los productos que tocaron con
+ * {@link #refrescarStock(Connection, Collection)} despues del commit. Asi
+ * las busquedas durante una venta no van a la base de datos.
+ * <p>
+ * Los productos se guardan por codigo y ademas en un {@link IndiceBusqueda}
+ * de trigramas y prefijos sobre el nombre normalizado (minusculas y sin
+ * tildes, igual que compara MySQL), para buscar sin recorrer todo el catalogo.
+ *
+ * @author franc
+ */
+public final class CatalogoProductos {
+
+    private static final Logger logger = Logger.getLogger(CatalogoProductos.class.getName());
+
+    private static final String SQL_PRODUCTOS =
+            "SELECT p.codProducto, p.nomProducto, p.codTipo, t.nombreTipo, p.precioActual, p.stock, " +
+            "p.imgLink, p.comentarios FROM productos p LEFT JOIN tipoProductos t ON p.codTipo = t.codTipo";
+
+    private static final Consulta PRODUCTO = Consultas.registrar("productos.leer",
+            SQL_PRODUCTOS + " WHERE p.codProducto = ?");
+
+    /**
+     * Recibe en el EDT los codigos de productos que cambiaron. Un conjunto
+     * vacio indica que se recargo el catalogo completo.
+     */
+    @FunctionalInterface
+    public interface Oyente {
+        void catalogoCambiado(Set<Integer> codigos);
+    }
+
+    /**
+     * Productos por codigo, mas el indice de texto sobre nombres y codigos
+     */
+    private record Indice(ConcurrentSkipListMap<Integer, Producto> porCodigo, IndiceBusqueda texto) {
+
+        Indice() {
+            this(new ConcurrentSkipListMap<>(), new IndiceBusqueda());
+        }
+
+        // Tambien reemplaza: el producto nunca falta entre la version anterior y la nueva
+        void agregar(Producto p) {
+            porCodigo.put(p.codProducto(), p);
+            texto.agregar(p.codProducto(), normalizar(p.nomProducto() == null ? "" : p.nomProducto()));
+        }
+
+        void quitar(int codigo) {
+            porCodigo.remove(codigo);
+            texto.quitar(codigo);
+        }
+    }
+
+    // Se reemplaza completo al recargar, asi las busquedas nunca ven un catalogo a medias
+    private static volatile Indice indice = new Indice();
+    private static final List<Oyente> oyentes = new CopyOnWriteArrayList<>();
+    private static volatile boolean cargado;
+    // Productos cuyo stock no se pudo releer despues de un commit
+    private static final Set<Integer> stockPendiente = ConcurrentHashMap.newKeySet();
+    private static final AtomicBoolean reintentandoStock = new AtomicBoolean();
+    private static final long ESPERA_REINTENTO_MS = 5_000;
+
+    private CatalogoProductos() {
+    }
+
+    /**
+     * Inicia la carga del catalogo en un hilo virtual, para no demorar el login
+     */
+    public static void precargar() {
+        Thread.ofVirtual().name("carga-catalogo").start(() -> {
+            try {
+                asegurarCargado();
+            } catch (SQLException e) {
+                logger.log(Level.WARNING, "No se pudo precargar el catálogo de productos", e);
+            }
+        });
+    }
+
+    /**
+     * Lee todos los productos de la base de datos y reemplaza el contenido actual
+     * @throws SQLException si falla la consulta
+     */
+    public static synchronized void recargar() throws SQLException {
+        long inicio = System.nanoTime();
+        Indice nuevo = new Indice();
+        try (Connection conn = ConexionBD.getConnection();
+             Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery(SQL_PRODUCTOS)) {
+            while (rs.next()) {
+                nuevo.agregar(leer(rs));
+            }
+        }
+        indice = nuevo;
+        cargado = true;
+        logger.info("Catálogo cargado: " + nuevo.porCodigo().size() + " productos en "
+                + (System.nanoTime() - inicio) / 1_000_000 + " ms");
+        notificar(Set.of());
+    }
+
+    private static void asegurarCargado() throws SQLException {
+        if (!cargado) {
+            synchronized (CatalogoProductos.class) {
+                if (!cargado) {
+                    recargar();
+                }
+            }
+        }
+    }
+
+    /**
+     * Busca un producto por su codigo
+     * @param codigo codProducto
+     * @return el producto, o null si no existe
+     * @throws SQLException si el catalogo aun no estaba cargado y fallo la carga
+     */
+    public static Producto buscar(int codigo) throws SQLException {
+        asegurarCargado();
+        return indice.porCodigo().get(codigo);
+    }
+
+    /**
+     * Producto mas relevante para el texto, segun {@link #sugerir(String, int)}
+     * @param texto parte del nombre o del codigo
+     * @return el producto, o null si ninguno coincide
+     * @throws SQLException si el catalogo aun no estaba cargado y fallo la carga
+     */
+    public static Producto buscarPorNombre(String texto) throws SQLException {
+        List<Producto> encontrados = sugerir(texto, 1);
+        return encontrados.isEmpty() ? null : encontrados.get(0);
+    }
+
+    /**
+     * Productos cuyo nombre contiene el texto o cuyo codigo es el indicado,
+     * ordenados por nombre (equivale a LIKE '%texto%' OR codProducto = codigo)
+     * @param texto parte del nombre; null o vacio no filtra por nombre
+     * @param codigo codigo exacto a incluir, o null
+     * @param limite maximo de resultados; 0 sin limite
+     * @return lista nueva, nunca null
+     * @throws SQLException si el catalogo aun no estaba cargado y fallo la carga
+     */
+    public static List<Producto> buscar(String texto, Integer codigo, int limite) throws SQLException {
+        asegurarCargado();
+        Indice actual = indice;
+        String buscado = texto == null ? "" : normalizar(texto);
+        Set<Integer> codigos = buscado.isEmpty() && codigo != null ? new TreeSet<>() : actual.texto().contienen(buscado);
+        if (codigo != null) {
+            codigos.add(codigo);
+        }
+        List<Producto> encontrados = new ArrayList<>(codigos.size());
+        for (int c : codigos) {
+            Producto p = actual.porCodigo().get(c);
+            if (p != null) {
+                encontrados.add(p);
+            }
+        }
+        encontrados.sort(Comparator.comparing(CatalogoProductos::claveNombre));
+        return limite > 0 && encontrados.size() > limite ? new ArrayList<>(encontrados.subList(0, limite)) : encontrados;
+    }
+
+    /**
+     * Sugerencias para autocompletar, la mas relevante primero. Cada palabra
+     * escrita debe aparecer en el nombre (o ser el comienzo del codigo); pesa
+     * mas un codigo exacto, luego un nombre que empieza con la consulta, luego
+     * una palabra que empieza con ella y al final una subcadena cualquiera.
+     * @param consulta texto escrito por el usuario
+     * @param limite maximo de resultados
+     * @return lista nueva, nunca null
+     * @throws SQLException si el catalogo aun no estaba cargado y fallo la carga
+     */
+    public static List<Producto> sugerir(String consulta, int limite) throws SQLException {
+        asegurarCargado();
+        Indice actual = indice;
+        List<Producto> sugeridos = new ArrayList<>();
+        if (consulta == null || consulta.isBlank()) {
+            return sugeridos;
+        }
+        IntFunction<String> nombreDe = c -> {
+            Producto p = actual.porCodigo().get(c);
+            return p == null ? null : p.nomProducto();
+        };
+        for (IndiceBusqueda.Coincidencia coincidencia : actual.texto().sugerir(normalizar(consulta), limite, nombreDe)) {
+            Producto p = actual.porCodigo().get(coincidencia.codigo());
+            if (p != null) {
+                sugeridos.add(p);
+            }
+        }
+        return sugeridos;
+    }
+
+    /**
+     * Todos los productos, ordenados por codigo
+     * @return lista nueva con el contenido actual
+     * @throws SQLException si el catalogo aun no estaba cargado y fallo la carga
+     */
+    public static List<Producto> listar() throws SQLException {
+        asegurarCargado();
+        return new ArrayList<>(indice.porCodigo().values());
+    }
+
+    /**
+     * Vuelve a leer un producto despues de crearlo o modificarlo
+     * @param codigo codProducto
+     * @throws SQLException si falla la consulta
+     */
+    public static void refrescar(int codigo) throws SQLException {
+        if (!cargado) {
+            return;
+        }
+        try (Connection conn = ConexionBD.getConnection();
+             PreparedStatement pstmt = PRODUCTO.preparar(conn)) {
+            pstmt.setInt(1, codigo);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                Producto leido = rs.next() ? leer(rs) : null;
+                synchronized (CatalogoProductos.class) {
+                    if (leido == null) {
+                        indice.quitar(codigo);
+                    } else {
+                        indice.agregar(leido);
+                    }
+                }
+            }
+        }
+        notificar(Set.of(codigo));
+    }
+
+    /**
+     * Quita un producto borrado de la base de datos
+     * @param codigo codProducto
+     */
+    public static void quitar(int codigo) {
+        synchronized (CatalogoProductos.class) {
+            indice.quitar(codigo);
+        }
+        notificar(Set.of(codigo));
+    }
+
+    /**
+     * Relee el stock de los productos indicados. Se llama despues del commit
+     * de una boleta o factura, con la misma conexion, fuera del EDT. Si la
+     * consulta falla no se propaga el error (la transaccion ya se confirmo):
+     * el catalogo sigue con el stock anterior y esos productos se releen en
+     * segundo plano cada {@value #ESPERA_REINTENTO_MS} ms hasta lograrlo.
+     * @param conn conexion ya confirmada
+     * @param codigos productos cuyo stock cambio
+     */
+    public static void refrescarStock(Connection conn, Collection<Integer> codigos) {
+        if (!cargado || codigos.isEmpty()) {
+            return;
+        }
+        Set<Integer> unicos = new TreeSet<>(codigos);
+        try {
+            leerStock(conn, unicos);
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "No se pudo refrescar el stock del catálogo; se reintentará en segundo plano", e);
+            stockPendiente.addAll(unicos);
+            if (reintentandoStock.compareAndSet(false, true)) {
+                Thread.ofVirtual().name("stock-catalogo").start(CatalogoProductos::reintentarStock);
+            }
+            return;
+        }
+        notificar(unicos);
+    }
+
+    private static void leerStock(Connection conn, Set<Integer> codigos) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT codProducto, stock FROM productos WHERE codProducto IN (");
+        for (int i = 0; i < codigos.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(')');
+        try (PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+            int p = 1;
+            for (int codigo : codigos) {
+                pstmt.setInt(p++, codigo);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                Indice actual = indice;
+                while (rs.next()) {
+                    int stock = rs.getInt("stock");
+                    actual.porCodigo().computeIfPresent(rs.getInt("codProducto"), (c, producto) -> producto.conStock(stock));
+                }
+            }
+        }
+    }
+
+    // Hilo de fondo: relee el stock pendiente hasta que no quede nada
+    private static void reintentarStock() {
+        do {
+            try {
+                while (!stockPendiente.isEmpty()) {
+                    Thread.sleep(ESPERA_REINTENTO_MS);
+                    Set<Integer> codigos = new TreeSet<>(stockPendiente);
+                    try (Connection conn = ConexionBD.getConnection()) {
+                        leerStock(conn, codigos);
+                        stockPendiente.removeAll(codigos);
+                        notificar(codigos);
+                    } catch (SQLException e) {
+                        logger.log(Level.FINE, "El stock del catálogo sigue sin poder releerse", e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                reintentandoStock.set(false);
+            }
+            // Lo que se agrego justo despues de vaciar el conjunto
+        } while (!stockPendiente.isEmpty() && reintentandoStock.compareAndSet(false, true));
+    }
+
+    /**
+     * Registra un oyente de cambios. Las pantallas deben quitarlo al cerrarse.
+     * @param oyente recibe los avisos en el EDT
+     */
+    public static void agregarOyente(Oyente oyente) {
+        oyentes.add(oyente);
+    }
+
+    public static void quitarOyente(Oyente oyente) {
+        oyentes.remove(oyente);
+    }
+
+    private static Producto leer(ResultSet rs) throws SQLException {
+        return new Producto(rs.getInt("codProducto"), rs.getString("nomProducto"), rs.getInt("codTipo"),
+                rs.getString("nombreTipo"), rs.getInt("precioActual"), rs.getInt("stock"),
+                rs.getString("imgLink"), rs.getString("comentarios"));
+    }
+
+    private static String claveNombre(Producto p) {
+        return normalizar(p.nomProducto() == null ? "" : p.nomProducto()) + '\0' + p.codProducto();
+    }
+
+    /**
+     * Pasa a minusculas y quita tildes, para comparar como lo hace MySQL
+     * @param texto texto original
+     * @return texto normalizado
+     */
+    public static String normalizar(String texto) {
+        String sinTildes = Normalizer.normalize(texto.trim(), Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        return sinTildes.toLowerCase(Locale.ROOT);
+    }
+
+    private static void notificar(Set<Integer> codigos) {
+        if (oyentes.isEmpty()) {
+            return;
+        }
+        SwingUtilities.invokeLater(() -> {
+            for (Oyente oyente : oyentes) {
+                oyente.catalogoCambiado(codigos);
+            }
+        });
+    }
+}
@@ -0,0 +1,287 @@
+package catalogo;
+
+import datos.ConexionBD;
+import datos.ConfiguracionBD;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.ImageIcon;
+import javax.swing.SwingUtilities;
+import metricas.Metricas;
+
+/**
+ * Fotos de productos ya escaladas al tamano en que se muestran.
+ * <p>
+ * Las fotos son las del jar, images/&lt;imgLink&gt;.jpg. Leerlas y
+ * escalarlas se hace en hilos aparte, nunca en el EDT: el JPEG se decodifica
+ * ya reducido (submuestreo del lector, sin pasar por la foto completa) y se
+ * termina de achicar en pasos de a la mitad con interpolacion bilineal, que
+ * da la misma calidad que SCALE_SMOOTH en una fraccion del tiempo.
+ * <p>
+ * Las miniaturas quedan en memoria, las menos usadas primero en salir,
+ * hasta imagenes.memoriaMb. Con imagenes.disco tambien se guardan en
+ * imagenes.carpeta, asi la primera vez que se abre una foto despues de
+ * reiniciar tampoco hay que decodificar la original; una miniatura en disco
+ * mas antigua que su foto se vuelve a crear. Si dos pantallas piden la misma
+ * miniatura a la vez se escala una sola vez.
+ *
+ * @author franc
+ */
+public final class ImagenesProducto {
+
+    private static final Logger logger = Logger.getLogger(ImagenesProducto.class.getName());
+
+    private static final String CARPETA_JAR = "/images/";
+
+    private record Clave(String imgLink, int ancho, int alto) {
+
+        long bytes() {
+            return (long) ancho * alto * 4;
+        }
+    }
+
+    private static final long maximoBytes;
+    private static final Path carpeta;
+    private static final ExecutorService escaladores;
+
+    // LinkedHashMap por orden de acceso: el primero es el menos usado
+    private static final LinkedHashMap<Clave, ImageIcon> miniaturas = new LinkedHashMap<>(64, 0.75f, true);
+    private static long bytesEnMemoria;
+    private static final Map<Clave, CompletableFuture<ImageIcon>> enCurso = new HashMap<>();
+
+    static {
+        int memoriaMb = 16;
+        boolean disco = true;
+        String rutaCarpeta = Paths.get(System.getProperty("user.home"), ".vistaalmar", "miniaturas").toString();
+        int hilos = Math.min(2, Runtime.getRuntime().availableProcessors());
+        try {
+            ConfiguracionBD cfg = ConexionBD.getConfiguracion();
+            memoriaMb = cfg.entero("imagenes.memoriaMb", memoriaMb);
+            disco = cfg.booleano("imagenes.disco", disco);
+            rutaCarpeta = cfg.texto("imagenes.carpeta", rutaCarpeta);
+            hilos = cfg.entero("imagenes.hilos", hilos);
+        } catch (SQLException | IllegalArgumentException e) {
+            logger.log(Level.WARNING, "Se usa la configuracion de imagenes por defecto", e);
+        }
+        maximoBytes = Math.max(1, memoriaMb) * 1024L * 1024L;
+        carpeta = disco ? Paths.get(rutaCarpeta) : null;
+        escaladores = Executors.newFixedThreadPool(Math.max(1, hilos),
+                Thread.ofPlatform().name("imagenes-", 0).daemon().factory());
+    }
+
+    private ImagenesProducto() {
+    }
+
+    /**
+     * Entrega la foto de un producto escalada para caber en ancho x alto,
+     * sin deformarla. Si ya esta en memoria se entrega antes de volver;
+     * si no, se prepara en segundo plano y se entrega despues. Solo desde el
+     * EDT.
+     * @param imgLink imgLink del producto
+     * @param ancho ancho disponible en pixeles
+     * @param alto alto disponible en pixeles
+     * @param alTerminar recibe en el EDT la miniatura, o null si el producto
+     *        no tiene foto o no se pudo leer
+     */
+    public static void mostrar(String imgLink, int ancho, int alto, Consumer<ImageIcon> alTerminar) {
+        if (imgLink == null || imgLink.isBlank() || ancho <= 0 || alto <= 0) {
+            alTerminar.accept(null);
+            return;
+        }
+        Clave clave = new Clave(imgLink.trim(), ancho, alto);
+        ImageIcon enMemoria;
+        synchronized (miniaturas) {
+            enMemoria = miniaturas.get(clave);
+        }
+        if (enMemoria != null) {
+            Metricas.contar("imagenes.memoria");
+            alTerminar.accept(enMemoria);
+            return;
+        }
+        preparar(clave).thenAccept(icono -> SwingUtilities.invokeLater(() -> alTerminar.accept(icono)));
+    }
+
+    /**
+     * Prepara en segundo plano la miniatura de un producto para que
+     * {@link #mostrar} la encuentre lista, por ejemplo al seleccionarlo en
+     * una tabla
+     * @param imgLink imgLink del producto
+     * @param ancho ancho disponible en pixeles
+     * @param alto alto disponible en pixeles
+     */
+    public static void precargar(String imgLink, int ancho, int alto) {
+        if (imgLink != null && !imgLink.isBlank() && ancho > 0 && alto > 0) {
+            preparar(new Clave(imgLink.trim(), ancho, alto));
+        }
+    }
+
+    private static CompletableFuture<ImageIcon> preparar(Clave clave) {
+        synchronized (miniaturas) {
+            ImageIcon enMemoria = miniaturas.get(clave);
+            if (enMemoria != null) {
+                return CompletableFuture.completedFuture(enMemoria);
+            }
+            CompletableFuture<ImageIcon> pedida = enCurso.get(clave);
+            if (pedida == null) {
+                pedida = CompletableFuture.supplyAsync(() -> crear(clave), escaladores);
+                enCurso.put(clave, pedida);
+                pedida.whenComplete((icono, error) -> guardar(clave, icono));
+            }
+            return pedida;
+        }
+    }
+
+    private static void guardar(Clave clave, ImageIcon icono) {
+        synchronized (miniaturas) {
+            enCurso.remove(clave);
+            if (icono == null) {
+                // Sin foto: se vuelve a intentar la proxima vez, por si la agregan
+                return;
+            }
+            if (miniaturas.put(clave, icono) == null) {
+                bytesEnMemoria += clave.bytes();
+            }
+            Iterator<Clave> claves = miniaturas.keySet().iterator();
+            while (bytesEnMemoria > maximoBytes && claves.hasNext()) {
+                Clave vieja = claves.next();
+                if (vieja.equals(clave)) {
+                    break;
+                }
+                claves.remove();
+                bytesEnMemoria -= vieja.bytes();
+            }
+        }
+    }
+
+    // En un hilo de escaladores
+    private static ImageIcon crear(Clave clave) {
+        URL foto = ImagenesProducto.class.getResource(CARPETA_JAR + clave.imgLink() + ".jpg");
+        if (foto == null) {
+            return null;
+        }
+        try {
+            long modificada = fechaFoto(foto);
+            Path enDisco = carpeta == null ? null : carpeta.resolve(nombreEnDisco(clave));
+            if (enDisco != null && Files.isRegularFile(enDisco)
+                    && Files.getLastModifiedTime(enDisco).toMillis() >= modificada) {
+                BufferedImage guardada = ImageIO.read(enDisco.toFile());
+                if (guardada != null) {
+                    Metricas.contar("imagenes.disco");
+                    return new ImageIcon(guardada);
+                }
+            }
+            BufferedImage miniatura = Metricas.medir("imagenes.escalar", () -> escalar(foto, clave.ancho(), clave.alto()));
+            if (miniatura == null) {
+                return null;
+            }
+            if (enDisco != null) {
+                escribir(miniatura, enDisco);
+            }
+            return new ImageIcon(miniatura);
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "No se pudo leer la imagen " + foto, e);
+            return null;
+        }
+    }
+
+    private static long fechaFoto(URL foto) {
+        try {
+            URLConnection conexion = foto.openConnection();
+            conexion.setUseCaches(false);
+            return conexion.getLastModified();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Lee la foto ya reducida a no menos del doble del tamano final y la
+     * termina de achicar por mitades
+     */
+    private static BufferedImage escalar(URL foto, int ancho, int alto) throws IOException {
+        BufferedImage imagen;
+        try (ImageInputStream entrada = ImageIO.createImageInputStream(foto.openStream())) {
+            Iterator<ImageReader> lectores = ImageIO.getImageReaders(entrada);
+            if (!lectores.hasNext()) {
+                return null;
+            }
+            ImageReader lector = lectores.next();
+            try {
+                lector.setInput(entrada, true, true);
+                int original = Math.min(lector.getWidth(0) / ancho, lector.getHeight(0) / alto);
+                ImageReadParam parametros = lector.getDefaultReadParam();
+                int paso = Math.max(1, original / 2);
+                parametros.setSourceSubsampling(paso, paso, 0, 0);
+                imagen = lector.read(0, parametros);
+            } finally {
+                lector.dispose();
+            }
+        }
+
+        double escala = Math.min(1.0, Math.min((double) ancho / imagen.getWidth(), (double) alto / imagen.getHeight()));
+        int anchoFinal = Math.max(1, (int) Math.round(imagen.getWidth() * escala));
+        int altoFinal = Math.max(1, (int) Math.round(imagen.getHeight() * escala));
+        int tipo = imagen.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+
+        int w = imagen.getWidth();
+        int h = imagen.getHeight();
+        do {
+            w = Math.max(anchoFinal, w / 2);
+            h = Math.max(altoFinal, h / 2);
+            BufferedImage menor = new BufferedImage(w, h, tipo);
+            Graphics2D g = menor.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(imagen, 0, 0, w, h, null);
+            } finally {
+                g.dispose();
+            }
+            imagen = menor;
+        } while (w != anchoFinal || h != altoFinal);
+        return imagen;
+    }
+
+    private static String nombreEnDisco(Clave clave) {
+        String limpio = clave.imgLink().replaceAll("[^A-Za-z0-9_-]", "_");
+        return limpio + "-" + Integer.toHexString(clave.imgLink().hashCode()) + "-" + clave.ancho() + "x" + clave.alto() + ".png";
+    }
+
+    // Se escribe aparte y se mueve, para que otra caja o un corte no deje una miniatura a medias
+    private static void escribir(BufferedImage miniatura, Path destino) {
+        try {
+            Files.createDirectories(destino.getParent());
+            Path temporal = Files.createTempFile(destino.getParent(), "miniatura", ".tmp");
+            try {
+                ImageIO.write(miniatura, "png", temporal.toFile());
+                Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporal);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.FINE, "No se pudo guardar la miniatura " + destino, e);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package catalogo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.IntFunction;
+
+/**
+ * Indice de texto sobre nombres y codigos de productos.
+ * <p>
+ * Cada nombre normalizado se parte en trigramas ("coca" da "coc" y "oca")
+ * y se guarda, por trigrama, el conjunto de codigos que lo contienen. Una
+ * busqueda por subcadena intersecta los conjuntos de los trigramas de la
+ * consulta, empezando por el mas chico, y solo verifica esos candidatos en
+ * vez de recorrer todo el catalogo.
+ * <p>
+ * Para autocompletar se usa ademas un indice de prefijos de palabras, que
+ * funciona como un trie sobre un mapa ordenado: "co" encuentra "coca cola"
+ * y "agua con gas" sin recorrer el resto. Los codigos tienen su propio mapa
+ * ordenado para buscar por prefijo numerico.
+ * <p>
+ * Las modificaciones las serializa {@link CatalogoProductos}; las lecturas
+ * pueden ocurrir en paralelo.
+ *
+ * @author franc
+ */
+final class IndiceBusqueda {
+
+    private static final int N = 3;
+
+    // Puntajes de relevancia, de mayor a menor
+    private static final int CODIGO_EXACTO = 1000;
+    private static final int CODIGO_PREFIJO = 500;
+    private static final int NOMBRE_EXACTO = 400;
+    private static final int NOMBRE_PREFIJO = 300;
+    private static final int PALABRA_PREFIJO = 200;
+    private static final int CONTIENE = 100;
+
+    /**
+     * Producto encontrado con su puntaje
+     */
+    record Coincidencia(int codigo, int puntaje) {
+    }
+
+    private final Map<String, Set<Integer>> trigramas = new ConcurrentHashMap<>();
+    // Clave: palabra normalizada + '\0' + codigo
+    private final ConcurrentSkipListMap<String, Integer> palabras = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<String, Integer> codigos = new ConcurrentSkipListMap<>();
+    private final Map<Integer, String> nombres = new ConcurrentHashMap<>();
+
+    /**
+     * Agrega un producto o reemplaza su nombre. Primero se agregan las
+     * entradas nuevas y despues se quitan las que ya no corresponden, asi
+     * una busqueda en paralelo nunca deja de encontrar el producto.
+     */
+    void agregar(int codigo, String nombreNormalizado) {
+        Set<String> gramas = trigramasDe(nombreNormalizado);
+        Set<String> palabrasNuevas = palabrasDe(nombreNormalizado);
+        codigos.put(String.valueOf(codigo), codigo);
+        for (String grama : gramas) {
+            trigramas.computeIfAbsent(grama, g -> ConcurrentHashMap.newKeySet()).add(codigo);
+        }
+        for (String palabra : palabrasNuevas) {
+            palabras.put(palabra + '\0' + codigo, codigo);
+        }
+        String anterior = nombres.put(codigo, nombreNormalizado);
+        if (anterior == null || anterior.equals(nombreNormalizado)) {
+            return;
+        }
+        for (String grama : trigramasDe(anterior)) {
+            if (!gramas.contains(grama)) {
+                quitarDeTrigrama(grama, codigo);
+            }
+        }
+        for (String palabra : palabrasDe(anterior)) {
+            if (!palabrasNuevas.contains(palabra)) {
+                palabras.remove(palabra + '\0' + codigo);
+            }
+        }
+    }
+
+    void quitar(int codigo) {
+        String nombre = nombres.remove(codigo);
+        if (nombre == null) {
+            return;
+        }
+        codigos.remove(String.valueOf(codigo));
+        for (String grama : trigramasDe(nombre)) {
+            quitarDeTrigrama(grama, codigo);
+        }
+        for (String palabra : palabrasDe(nombre)) {
+            palabras.remove(palabra + '\0' + codigo);
+        }
+    }
+
+    private void quitarDeTrigrama(String grama, int codigo) {
+        Set<Integer> conjunto = trigramas.get(grama);
+        if (conjunto != null) {
+            conjunto.remove(codigo);
+            if (conjunto.isEmpty()) {
+                trigramas.remove(grama, conjunto);
+            }
+        }
+    }
+
+    /**
+     * Codigos cuyo nombre contiene el texto, sin orden
+     * @param texto consulta ya normalizada
+     * @return conjunto nuevo
+     */
+    Set<Integer> contienen(String texto) {
+        if (texto.isEmpty()) {
+            return new HashSet<>(nombres.keySet());
+        }
+        Set<Integer> resultado = new HashSet<>();
+        for (int codigo : candidatos(texto)) {
+            String nombre = nombres.get(codigo);
+            if (nombre != null && nombre.contains(texto)) {
+                resultado.add(codigo);
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Busqueda para autocompletar. Cada palabra de la consulta debe aparecer
+     * en el nombre, o coincidir con el comienzo del codigo; los resultados
+     * se ordenan por relevancia y, a igual puntaje, por nombre mas corto.
+     * @param consulta texto normalizado
+     * @param limite maximo de resultados
+     * @param nombreDe nombre original de cada codigo, para desempatar
+     * @return coincidencias ordenadas, la mejor primero
+     */
+    List<Coincidencia> sugerir(String consulta, int limite, IntFunction<String> nombreDe) {
+        String[] terminos = consulta.trim().split("\\s+");
+        if (terminos.length == 0 || terminos[0].isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<Integer, Integer> puntajes = null;
+        for (String termino : terminos) {
+            Map<Integer, Integer> delTermino = puntuar(termino);
+            if (puntajes == null) {
+                puntajes = delTermino;
+            } else {
+                puntajes.keySet().retainAll(delTermino.keySet());
+                for (Map.Entry<Integer, Integer> e : puntajes.entrySet()) {
+                    e.setValue(e.getValue() + delTermino.get(e.getKey()));
+                }
+            }
+            if (puntajes.isEmpty()) {
+                return Collections.emptyList();
+            }
+        }
+        // La consulta completa igual al nombre vale mas que sus palabras por separado
+        String completa = String.join(" ", terminos);
+        List<Coincidencia> lista = new ArrayList<>(puntajes.size());
+        for (Map.Entry<Integer, Integer> e : puntajes.entrySet()) {
+            int puntaje = e.getValue();
+            if (completa.equals(nombres.get(e.getKey()))) {
+                puntaje += NOMBRE_EXACTO;
+            }
+            lista.add(new Coincidencia(e.getKey(), puntaje));
+        }
+        Comparator<Coincidencia> orden = Comparator.comparingInt(Coincidencia::puntaje).reversed()
+                .thenComparingInt(c -> largo(nombreDe.apply(c.codigo())))
+                .thenComparing(c -> String.valueOf(nombreDe.apply(c.codigo())));
+        lista.sort(orden);
+        return lista.size() > limite ? new ArrayList<>(lista.subList(0, limite)) : lista;
+    }
+
+    private Map<Integer, Integer> puntuar(String termino) {
+        Map<Integer, Integer> puntajes = new HashMap<>();
+        if (termino.chars().allMatch(Character::isDigit)) {
+            for (int codigo : codigos.subMap(termino, true, termino + Character.MAX_VALUE, false).values()) {
+                puntajes.merge(codigo, termino.equals(String.valueOf(codigo)) ? CODIGO_EXACTO : CODIGO_PREFIJO, Math::max);
+            }
+        }
+        for (int codigo : palabras.subMap(termino, true, termino + Character.MAX_VALUE, false).values()) {
+            String nombre = nombres.get(codigo);
+            int puntaje = nombre != null && nombre.startsWith(termino) ? NOMBRE_PREFIJO : PALABRA_PREFIJO;
+            puntajes.merge(codigo, puntaje, Math::max);
+        }
+        // Subcadenas en medio de una palabra: solo con trigramas, las consultas cortas ya se cubrieron
+        if (termino.length() >= N) {
+            for (int codigo : contienen(termino)) {
+                puntajes.merge(codigo, CONTIENE, Math::max);
+            }
+        }
+        return puntajes;
+    }
+
+    /**
+     * Candidatos para una subcadena: interseccion de los trigramas de la
+     * consulta. Si la consulta es mas corta que un trigrama no hay nada que
+     * intersectar y se recorren los nombres.
+     */
+    private Set<Integer> candidatos(String texto) {
+        if (texto.length() < N) {
+            Set<Integer> todos = new HashSet<>();
+            for (Map.Entry<Integer, String> e : nombres.entrySet()) {
+                if (e.getValue().contains(texto)) {
+                    todos.add(e.getKey());
+                }
+            }
+            return todos;
+        }
+        List<Set<Integer>> conjuntos = new ArrayList<>();
+        for (String grama : trigramasDe(texto)) {
+            Set<Integer> conjunto = trigramas.get(grama);
+            if (conjunto == null) {
+                return Collections.emptySet();
+            }
+            conjuntos.add(conjunto);
+        }
+        conjuntos.sort(Comparator.comparingInt(Set::size));
+        Set<Integer> resultado = new HashSet<>(conjuntos.get(0));
+        for (int i = 1; i < conjuntos.size() && !resultado.isEmpty(); i++) {
+            resultado.retainAll(conjuntos.get(i));
+        }
+        return resultado;
+    }
+
+    private static Set<String> trigramasDe(String texto) {
+        Set<String> gramas = new HashSet<>();
+        for (int i = 0; i + N <= texto.length(); i++) {
+            gramas.add(texto.substring(i, i + N));
+        }
+        return gramas;
+    }
+
+    private static Set<String> palabrasDe(String texto) {
+        Set<String> resultado = new HashSet<>();
+        for (String palabra : texto.split("[^\\p{L}\\p{N}]+")) {
+            if (!palabra.isEmpty()) {
+                resultado.add(palabra);
+            }
+        }
+        return resultado;
+    }
+
+    private static int largo(String texto) {
+        return texto == null ? 0 : texto.length();
+    }
+}
@@ -0,0 +1,19 @@
+package catalogo;
+
+/**
+ * Fila de la tabla productos junto al nombre de su tipo
+ *
+ * @author franc
+ */
+public record Producto(int codProducto, String nomProducto, int codTipo, String nombreTipo,
+                       int precioActual, int stock, String imgLink, String comentarios) {
+
+    /**
+     * Copia del producto con otro stock
+     * @param nuevoStock stock a asignar
+     * @return Producto nuevo; los registros son inmutables
+     */
+    public Producto conStock(int nuevoStock) {
+        return new Producto(codProducto, nomProducto, codTipo, nombreTipo, precioActual, nuevoStock, imgLink, comentarios);
+    }
+}
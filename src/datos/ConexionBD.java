@@ -0,0 +1,211 @@
+package datos;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+/**
+ *
+ * @author franc
+ */
+public class ConexionBD {
+
+    private static final Logger logger = Logger.getLogger(ConexionBD.class.getName());
+
+    // Driver de MySQL
+    private static final String DRIVER = "com.mysql.cj.jdbc.Driver";
+
+    // Los parámetros de conexión se leen de basedatos.properties (ver ConfiguracionBD)
+    private static volatile ConfiguracionBD config;
+    private static volatile PoolConexiones pool;
+    private static ScheduledExecutorService vigilante;
+    // Tareas que deben terminar antes de cerrar el pool (transacciones en cola, etc.)
+    private static final List<Runnable> antesDeCerrar = new CopyOnWriteArrayList<>();
+
+    private static PoolConexiones obtenerPool() throws SQLException {
+        PoolConexiones actual = pool;
+        if (actual != null) {
+            return actual;
+        }
+        synchronized (ConexionBD.class) {
+            if (pool == null) {
+                try {
+                    // Cargar el driver de MySQL
+                    Class.forName(DRIVER);
+                } catch (ClassNotFoundException e) {
+                    throw new SQLException("Driver MySQL no encontrado: " + e.getMessage());
+                }
+                try {
+                    config = ConfiguracionBD.cargar();
+                } catch (IOException | IllegalArgumentException e) {
+                    throw new SQLException("Error al leer la configuración de base de datos: " + e.getMessage(), e);
+                }
+                pool = crearPool(config);
+                Runtime.getRuntime().addShutdownHook(new Thread(ConexionBD::cerrarPool, "cierre-pool-conexiones"));
+                iniciarVigilante(config.getRevisionSeg());
+            }
+            return pool;
+        }
+    }
+
+    private static PoolConexiones crearPool(ConfiguracionBD cfg) {
+        return new PoolConexiones(cfg.getUrl(), cfg.getPropiedadesDriver(),
+                cfg.getMinimoLibres(), cfg.getMaximoLibres(), cfg.getMaximoTotal(),
+                cfg.getEsperaMaximaMs(), cfg.getUmbralFugaMs());
+    }
+
+    private static void iniciarVigilante(long segundos) {
+        if (segundos <= 0) {
+            return;
+        }
+        vigilante = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "vigilante-configuracion-bd");
+            t.setDaemon(true);
+            return t;
+        });
+        vigilante.scheduleWithFixedDelay(() -> {
+            ConfiguracionBD actual = config;
+            if (actual != null && actual.archivoModificado()) {
+                recargarConfiguracion();
+            }
+        }, segundos, segundos, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Vuelve a leer basedatos.properties y las variables de entorno. Si algo
+     * cambió se crea un pool nuevo; las conexiones del pool anterior que estén
+     * en uso se cierran cuando las pantallas las devuelven.
+     * @return true si se aplicó una configuración distinta
+     */
+    public static synchronized boolean recargarConfiguracion() {
+        ConfiguracionBD nueva;
+        try {
+            nueva = ConfiguracionBD.cargar();
+        } catch (IOException | IllegalArgumentException e) {
+            logger.log(Level.WARNING, "Configuración inválida, se mantiene la anterior", e);
+            return false;
+        }
+        ConfiguracionBD anterior = config;
+        config = nueva;
+        if (pool == null || nueva.equals(anterior)) {
+            return false;
+        }
+        PoolConexiones viejo = pool;
+        pool = crearPool(nueva);
+        viejo.cerrar();
+        logger.info("Configuración de base de datos recargada desde " + nueva.getArchivo());
+        return true;
+    }
+
+    /**
+     * Obtiene la configuración vigente
+     * @return ConfiguracionBD cargada al iniciar o en la última recarga
+     * @throws SQLException si no se pudo leer la configuración
+     */
+    public static ConfiguracionBD getConfiguracion() throws SQLException {
+        obtenerPool();
+        return config;
+    }
+
+    /**
+     * Obtiene una conexión del pool. Al cerrarla vuelve al pool.
+     * @return Connection objeto de conexión
+     * @throws SQLException si hay error al conectar
+     */
+    public static Connection getConnection() throws SQLException {
+        while (true) {
+            PoolConexiones actual = obtenerPool();
+            try {
+                return actual.getConnection();
+            } catch (SQLException e) {
+                // Si el pool fue reemplazado por una recarga mientras se esperaba, reintentar con el nuevo
+                if (actual == pool) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Obtiene el DataSource con pool que respalda a getConnection()
+     * @return DataSource vigente (cambia si se recarga la configuración)
+     * @throws SQLException si no se pudo cargar el driver
+     */
+    public static DataSource getDataSource() throws SQLException {
+        return obtenerPool();
+    }
+
+    /**
+     * Prueba la conexión a la base de datos
+     * @return true si la conexión es exitosa, false en caso contrario
+     */
+    public static boolean probarConexion() {
+        try (Connection conn = getConnection()) {
+            return conn != null && !conn.isClosed();
+        } catch (SQLException e) {
+            System.err.println("Error al probar conexión: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Devuelve una conexión al pool de manera segura
+     * @param conn la conexión a cerrar
+     */
+    public static void cerrarConexion(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                System.err.println("Error al cerrar conexión: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Obtiene las métricas actuales del pool
+     * @return EstadisticasPool, o null si el pool aún no se ha creado
+     */
+    public static EstadisticasPool getEstadisticas() {
+        PoolConexiones actual = pool;
+        return actual != null ? actual.getEstadisticas() : null;
+    }
+
+    /**
+     * Registra una tarea que cerrarPool() ejecuta antes de cerrar las
+     * conexiones, para vaciar colas que todavía necesitan la base de datos
+     * @param tarea se ejecuta una sola vez, en el orden de registro
+     */
+    public static void registrarAntesDeCerrar(Runnable tarea) {
+        antesDeCerrar.add(tarea);
+    }
+
+    /**
+     * Cierra todas las conexiones físicas del pool
+     */
+    public static void cerrarPool() {
+        for (Runnable tarea : antesDeCerrar) {
+            antesDeCerrar.remove(tarea);
+            try {
+                tarea.run();
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Error al vaciar tareas pendientes", e);
+            }
+        }
+        ScheduledExecutorService v = vigilante;
+        if (v != null) {
+            v.shutdownNow();
+        }
+        PoolConexiones actual = pool;
+        if (actual != null) {
+            actual.cerrar();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package datos;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * Configuracion de base de datos leida de basedatos.properties.
+ * <p>
+ * El orden de precedencia es: valores empaquetados en el jar, luego el
+ * archivo externo (si existe) y por ultimo las variables de entorno
+ * VISTAALMAR_*. Cada instancia es inmutable; para recargar se crea otra
+ * con {@link #cargar()}.
+ *
+ * @author franc
+ */
+public final class ConfiguracionBD {
+
+    public static final String ARCHIVO_POR_DEFECTO = "basedatos.properties";
+    private static final String RECURSO_DEFECTO = "/datos/basedatos.properties";
+    private static final String PROPIEDAD_RUTA = "vistaalmar.config";
+    private static final String PREFIJO_ENTORNO = "VISTAALMAR_";
+    private static final String PREFIJO_DRIVER = "driver.";
+
+    private final Properties valores;
+    private final Path archivo;
+    private final long modificacionArchivo;
+
+    private ConfiguracionBD(Properties valores, Path archivo, long modificacionArchivo) {
+        this.valores = valores;
+        this.archivo = archivo;
+        this.modificacionArchivo = modificacionArchivo;
+    }
+
+    /**
+     * Lee la configuracion actual desde el jar, el archivo externo y el entorno
+     * @return ConfiguracionBD con los valores combinados
+     * @throws IOException si el archivo externo existe pero no se puede leer
+     */
+    public static ConfiguracionBD cargar() throws IOException {
+        Properties valores = new Properties();
+        try (InputStream in = ConfiguracionBD.class.getResourceAsStream(RECURSO_DEFECTO)) {
+            if (in != null) {
+                valores.load(in);
+            }
+        }
+
+        Path archivo = rutaArchivo();
+        long modificacion = 0;
+        if (Files.isRegularFile(archivo)) {
+            modificacion = Files.getLastModifiedTime(archivo).toMillis();
+            try (Reader in = Files.newBufferedReader(archivo, StandardCharsets.UTF_8)) {
+                valores.load(in);
+            }
+        }
+
+        for (String clave : valores.stringPropertyNames()) {
+            String entorno = System.getenv(PREFIJO_ENTORNO + clave.toUpperCase().replace('.', '_'));
+            if (entorno != null) {
+                valores.setProperty(clave, entorno);
+            }
+        }
+
+        ConfiguracionBD config = new ConfiguracionBD(valores, archivo, modificacion);
+        config.validar();
+        return config;
+    }
+
+    private static Path rutaArchivo() {
+        String ruta = System.getProperty(PROPIEDAD_RUTA);
+        if (ruta == null || ruta.isBlank()) {
+            ruta = System.getenv(PREFIJO_ENTORNO + "CONFIG");
+        }
+        if (ruta == null || ruta.isBlank()) {
+            ruta = ARCHIVO_POR_DEFECTO;
+        }
+        return Paths.get(ruta).toAbsolutePath();
+    }
+
+    private void validar() {
+        int min = getMinimoLibres();
+        int maxLibres = getMaximoLibres();
+        int max = getMaximoTotal();
+        if (max <= 0 || min < 0 || min > maxLibres || maxLibres > max) {
+            throw new IllegalArgumentException("Tamaños de pool inválidos en " + archivo
+                    + ": minimoLibres=" + min + " maximoLibres=" + maxLibres + " maximoTotal=" + max);
+        }
+    }
+
+    /**
+     * Indica si el archivo externo cambio desde que se leyo esta configuracion
+     * @return true si fue creado, modificado o eliminado
+     */
+    public boolean archivoModificado() {
+        try {
+            long actual = Files.isRegularFile(archivo) ? Files.getLastModifiedTime(archivo).toMillis() : 0;
+            return actual != modificacionArchivo;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public String getUrl() {
+        String url = valores.getProperty("db.url", "").trim();
+        if (!url.isEmpty()) {
+            return url;
+        }
+        return "jdbc:mysql://" + texto("db.host", "localhost") + ":" + entero("db.puerto", 3306)
+                + "/" + texto("db.nombre", "vistaalmar");
+    }
+
+    public String getUsuario() {
+        return texto("db.usuario", "root");
+    }
+
+    /**
+     * Propiedades para DriverManager: credenciales mas todas las claves driver.*
+     * @return Properties nuevas en cada llamada
+     */
+    public Properties getPropiedadesDriver() {
+        Properties props = new Properties();
+        props.setProperty("user", getUsuario());
+        props.setProperty("password", valores.getProperty("db.password", ""));
+        for (String clave : valores.stringPropertyNames()) {
+            if (clave.startsWith(PREFIJO_DRIVER)) {
+                props.setProperty(clave.substring(PREFIJO_DRIVER.length()), valores.getProperty(clave).trim());
+            }
+        }
+        return props;
+    }
+
+    public int getMinimoLibres() {
+        return entero("pool.minimoLibres", 2);
+    }
+
+    public int getMaximoLibres() {
+        return entero("pool.maximoLibres", 5);
+    }
+
+    public int getMaximoTotal() {
+        return entero("pool.maximoTotal", 10);
+    }
+
+    public long getEsperaMaximaMs() {
+        return largo("pool.esperaMaximaMs", 5000);
+    }
+
+    public long getUmbralFugaMs() {
+        return largo("pool.umbralFugaMs", 30 * 60 * 1000);
+    }
+
+    public long getRevisionSeg() {
+        return largo("config.revisionSeg", 10);
+    }
+
+    public Path getArchivo() {
+        return archivo;
+    }
+
+    /**
+     * Lee una clave arbitraria, para que otros modulos guarden sus ajustes en el mismo archivo
+     * @param clave nombre de la propiedad
+     * @param defecto valor si no esta definida
+     * @return el valor sin espacios al inicio ni al final
+     */
+    public String texto(String clave, String defecto) {
+        String valor = valores.getProperty(clave);
+        return valor == null ? defecto : valor.trim();
+    }
+
+    public int entero(String clave, int defecto) {
+        return (int) largo(clave, defecto);
+    }
+
+    public long largo(String clave, long defecto) {
+        String valor = valores.getProperty(clave);
+        if (valor == null || valor.isBlank()) {
+            return defecto;
+        }
+        try {
+            return Long.parseLong(valor.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Valor inválido para " + clave + ": " + valor);
+        }
+    }
+
+    public boolean booleano(String clave, boolean defecto) {
+        String valor = valores.getProperty(clave);
+        return valor == null || valor.isBlank() ? defecto : Boolean.parseBoolean(valor.trim());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ConfiguracionBD otra && valores.equals(otra.valores);
+    }
+
+    @Override
+    public int hashCode() {
+        return valores.hashCode();
+    }
+}
@@ -0,0 +1,97 @@
+package datos;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import metricas.Metricas;
+
+/**
+ * Sentencia SQL con nombre, registrada en {@link Consultas}.
+ * <p>
+ * {@link #preparar(Connection)} entrega un PreparedStatement que se usa y se
+ * cierra como cualquier otro. Con una conexion del pool, la sentencia queda
+ * preparada en esa conexion fisica: al cerrarla solo se limpian sus
+ * parametros, y la siguiente llamada sobre la misma conexion la reutiliza
+ * sin volver a enviarla a MySQL. Cada consulta cuenta sus ejecuciones y el
+ * tiempo que tomaron, y las suma a {@link Metricas} como "sql.&lt;nombre&gt;".
+ *
+ * @author franc
+ */
+public final class Consulta {
+
+    private final String nombre;
+    private final String sql;
+    private final boolean clavesGeneradas;
+
+    private final LongAdder ejecuciones = new LongAdder();
+    private final LongAdder preparaciones = new LongAdder();
+    private final LongAdder reusos = new LongAdder();
+    private final LongAdder nanosTotal = new LongAdder();
+    private final AtomicLong nanosMaximo = new AtomicLong();
+
+    Consulta(String nombre, String sql, boolean clavesGeneradas) {
+        this.nombre = nombre;
+        this.sql = sql;
+        this.clavesGeneradas = clavesGeneradas;
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * Sentencia lista para fijar parametros. Debe cerrarse, igual que un
+     * PreparedStatement comun.
+     * @param conn conexion a usar; si no es del pool, la sentencia se
+     *        prepara y se cierra como siempre
+     * @return PreparedStatement de esta consulta
+     * @throws SQLException si falla la preparacion
+     */
+    public PreparedStatement preparar(Connection conn) throws SQLException {
+        if (conn.isWrapperFor(SentenciasConexion.class)) {
+            return conn.unwrap(SentenciasConexion.class).preparar(this, conn);
+        }
+        return SentenciasConexion.sinCache(this, conn);
+    }
+
+    /**
+     * Foto de los contadores
+     * @return EstadisticasConsulta con ejecuciones, preparaciones y tiempos
+     */
+    public EstadisticasConsulta getEstadisticas() {
+        long n = ejecuciones.sum();
+        double promedioMs = n == 0 ? 0 : nanosTotal.sum() / (double) n / 1_000_000.0;
+        return new EstadisticasConsulta(nombre, n, preparaciones.sum(), reusos.sum(),
+                promedioMs, nanosMaximo.get() / 1_000_000.0);
+    }
+
+    PreparedStatement crear(Connection fisica) throws SQLException {
+        preparaciones.increment();
+        return clavesGeneradas
+                ? fisica.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+                : fisica.prepareStatement(sql);
+    }
+
+    void reusada() {
+        reusos.increment();
+    }
+
+    void ejecutada(long nanos, boolean fallo) {
+        ejecuciones.increment();
+        nanosTotal.add(nanos);
+        nanosMaximo.accumulateAndGet(nanos, Math::max);
+        Metricas.sentencia(nombre, sql, nanos, fallo);
+    }
+
+    @Override
+    public String toString() {
+        return nombre;
+    }
+}
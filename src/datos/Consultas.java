@@ -0,0 +1,85 @@
+package datos;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.logging.Logger;
+
+/**
+ * Registro central de las sentencias SQL con nombre de la aplicacion.
+ * <p>
+ * Cada clase registra sus sentencias fijas una vez, en un campo static, y
+ * las usa con {@link Consulta#preparar}:
+ * <pre>
+ * private static final Consulta SALDO = Consultas.registrar("deudores.saldo",
+ *         "SELECT saldo FROM saldoDeudores WHERE rutDeudor = ?");
+ * ...
+ * try (PreparedStatement pstmt = SALDO.preparar(conn)) { ... }
+ * </pre>
+ * Las sentencias quedan preparadas en cada conexion fisica del pool y se
+ * reutilizan entre prestamos. Los contadores de todas las consultas se
+ * escriben en el registro al cerrar la aplicacion.
+ *
+ * @author franc
+ */
+public final class Consultas {
+
+    private static final Logger logger = Logger.getLogger(Consultas.class.getName());
+
+    private static final Map<String, Consulta> registradas = new ConcurrentSkipListMap<>();
+
+    static {
+        ConexionBD.registrarAntesDeCerrar(Consultas::registrarEstadisticas);
+    }
+
+    private Consultas() {
+    }
+
+    /**
+     * Registra una sentencia con nombre
+     * @param nombre nombre unico, por convencion "area.accion"
+     * @param sql SQL con parametros "?"
+     * @return Consulta a usar con preparar()
+     * @throws IllegalArgumentException si el nombre ya esta registrado con otro SQL
+     */
+    public static Consulta registrar(String nombre, String sql) {
+        return registrar(nombre, sql, false);
+    }
+
+    /**
+     * Registra una sentencia con nombre
+     * @param nombre nombre unico, por convencion "area.accion"
+     * @param sql SQL con parametros "?"
+     * @param clavesGeneradas si el INSERT debe devolver las claves generadas
+     * @return Consulta a usar con preparar()
+     * @throws IllegalArgumentException si el nombre ya esta registrado con otro SQL
+     */
+    public static Consulta registrar(String nombre, String sql, boolean clavesGeneradas) {
+        Consulta consulta = registradas.computeIfAbsent(nombre, n -> new Consulta(n, sql, clavesGeneradas));
+        if (!consulta.getSql().equals(sql)) {
+            throw new IllegalArgumentException("La consulta " + nombre + " ya está registrada con otro SQL");
+        }
+        return consulta;
+    }
+
+    /**
+     * Contadores de todas las consultas registradas, por nombre
+     * @return lista de EstadisticasConsulta
+     */
+    public static List<EstadisticasConsulta> getEstadisticas() {
+        List<EstadisticasConsulta> estadisticas = new ArrayList<>(registradas.size());
+        for (Consulta consulta : registradas.values()) {
+            estadisticas.add(consulta.getEstadisticas());
+        }
+        return estadisticas;
+    }
+
+    private static void registrarEstadisticas() {
+        for (EstadisticasConsulta e : getEstadisticas()) {
+            if (e.ejecuciones() > 0) {
+                logger.info(e.toString());
+            }
+        }
+    }
+}
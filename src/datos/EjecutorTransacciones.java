@@ -0,0 +1,151 @@
+package datos;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+import metricas.Metricas;
+
+/**
+ * Ejecuta las transacciones de caja (ventas, perdidas, facturas y pagos de
+ * deuda) fuera del hilo de eventos de Swing.
+ * <p>
+ * Las tareas se procesan de a una, en el orden en que se enviaron, en un
+ * hilo virtual. Asi la pantalla queda libre para armar el carro del
+ * siguiente cliente mientras se confirma el anterior, y las boletas quedan
+ * en la base de datos en el mismo orden en que se cobraron. Cada tarea pide
+ * su propia conexion al pool: la de la pantalla no se comparte entre hilos
+ * y la ventana puede cerrarse antes de que termine el commit.
+ * <p>
+ * Los avisos de progreso, exito y error se entregan siempre en el EDT. El
+ * tiempo en cola y el de ejecucion se suman a {@link Metricas} como
+ * "transacciones.cola" y "transacciones.ejecucion".
+ *
+ * @author franc
+ */
+public final class EjecutorTransacciones {
+
+    private static final Logger logger = Logger.getLogger(EjecutorTransacciones.class.getName());
+
+    // Tiempo que se espera al cerrar la aplicacion para que terminen las tareas en cola
+    private static final long ESPERA_CIERRE_SEG = 30;
+
+    /**
+     * Trabajo a ejecutar dentro de una conexion del pool
+     * @param <T> tipo del resultado
+     */
+    @FunctionalInterface
+    public interface Transaccion<T> {
+        T ejecutar(Connection conn, Consumer<String> progreso) throws SQLException;
+    }
+
+    /**
+     * Recibe en el EDT el avance y el desenlace de una transaccion
+     * @param <T> tipo del resultado
+     */
+    public interface Observador<T> {
+
+        default void progreso(String mensaje) {
+        }
+
+        void exito(T resultado);
+
+        void error(Exception e);
+    }
+
+    private static final ExecutorService hilo =
+            Executors.newSingleThreadExecutor(Thread.ofVirtual().name("transacciones-", 0).factory());
+    private static final AtomicInteger pendientes = new AtomicInteger();
+
+    static {
+        ConexionBD.registrarAntesDeCerrar(EjecutorTransacciones::terminar);
+    }
+
+    private EjecutorTransacciones() {
+    }
+
+    /**
+     * Encola una transaccion. Vuelve de inmediato; el observador se entera
+     * del resultado en el EDT.
+     * @param <T> tipo del resultado
+     * @param nombre descripcion corta para el registro y los avisos ("Boleta", "Factura 120", ...)
+     * @param transaccion trabajo a ejecutar con una conexion propia
+     * @param observador destinatario de los avisos
+     * @return Future para quien necesite esperar el resultado fuera del EDT
+     */
+    public static <T> Future<T> enviar(String nombre, Transaccion<T> transaccion, Observador<T> observador) {
+        int enCola = pendientes.incrementAndGet();
+        if (enCola > 1) {
+            avisar(() -> observador.progreso(nombre + " en cola (" + (enCola - 1) + " antes)"));
+        }
+        long enviada = System.nanoTime();
+        try {
+            return hilo.submit(() -> procesar(nombre, transaccion, observador, enviada));
+        } catch (RuntimeException e) {
+            pendientes.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private static <T> T procesar(String nombre, Transaccion<T> transaccion, Observador<T> observador,
+                                  long enviada) throws Exception {
+        long inicio = System.nanoTime();
+        Metricas.registrar("transacciones.cola", inicio - enviada, false);
+        boolean fallo = true;
+        try (Connection conn = ConexionBD.getConnection()) {
+            avisar(() -> observador.progreso("Registrando " + nombre + "..."));
+            T resultado = transaccion.ejecutar(conn, mensaje -> avisar(() -> observador.progreso(mensaje)));
+            logger.fine(() -> nombre + " confirmada en " + (System.nanoTime() - inicio) / 1_000_000 + " ms");
+            fallo = false;
+            avisar(() -> observador.exito(resultado));
+            return resultado;
+        } catch (Exception e) {
+            logger.log(Level.WARNING, nombre + " no se pudo registrar", e);
+            avisar(() -> observador.error(e));
+            throw e;
+        } finally {
+            Metricas.registrar("transacciones.ejecucion", System.nanoTime() - inicio, fallo);
+            pendientes.decrementAndGet();
+        }
+    }
+
+    private static void avisar(Runnable aviso) {
+        SwingUtilities.invokeLater(() -> {
+            try {
+                aviso.run();
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Error en aviso de transacción", e);
+            }
+        });
+    }
+
+    /**
+     * Cantidad de transacciones enviadas que aun no terminan
+     * @return tareas en cola mas la que se esta ejecutando
+     */
+    public static int pendientes() {
+        return pendientes.get();
+    }
+
+    private static void terminar() {
+        hilo.shutdown();
+        try {
+            int restantes = pendientes.get();
+            if (restantes > 0) {
+                logger.info("Esperando " + restantes + " transacciones antes de cerrar");
+            }
+            if (!hilo.awaitTermination(ESPERA_CIERRE_SEG, TimeUnit.SECONDS)) {
+                logger.severe("Quedaron " + pendientes.get() + " transacciones sin registrar al cerrar");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package datos;
+
+/**
+ * Foto de los contadores de una {@link Consulta} en un instante dado.
+ *
+ * @author franc
+ */
+public record EstadisticasConsulta(
+        String nombre,
+        long ejecuciones,
+        long preparaciones,
+        long reusos,
+        double promedioMs,
+        double maximoMs) {
+
+    @Override
+    public String toString() {
+        return String.format("%s: ejecuciones=%d preparaciones=%d reusos=%d tiempo(prom=%.2fms max=%.2fms)",
+                nombre, ejecuciones, preparaciones, reusos, promedioMs, maximoMs);
+    }
+}
@@ -0,0 +1,28 @@
+package datos;
+
+/**
+ * Foto de las metricas de {@link PoolConexiones} en un instante dado.
+ *
+ * @author franc
+ */
+public record EstadisticasPool(
+        int activas,
+        int libres,
+        int total,
+        long prestamos,
+        double esperaPromedioMs,
+        double esperaMaximaMs,
+        long agotados,
+        long validacionesFallidas,
+        long fugasDetectadas,
+        long creadas,
+        long destruidas) {
+
+    @Override
+    public String toString() {
+        return String.format("activas=%d libres=%d total=%d prestamos=%d espera(prom=%.2fms max=%.2fms) "
+                + "agotados=%d validacionesFallidas=%d fugas=%d creadas=%d destruidas=%d",
+                activas, libres, total, prestamos, esperaPromedioMs, esperaMaximaMs,
+                agotados, validacionesFallidas, fugasDetectadas, creadas, destruidas);
+    }
+}
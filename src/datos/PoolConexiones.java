@@ -0,0 +1,472 @@
+package datos;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+import metricas.Metricas;
+
+/**
+ * Pool de conexiones JDBC. Mantiene conexiones fisicas abiertas para que
+ * las pantallas no paguen el handshake TCP + autenticacion de MySQL cada
+ * vez que se abren.
+ * <p>
+ * Las conexiones entregadas son envoltorios: al llamar {@code close()} la
+ * conexion vuelve al pool en vez de cerrarse. Las sentencias que se crean
+ * sobre ellas se miden con {@link SentenciaMedida}.
+ *
+ * @author franc
+ */
+public class PoolConexiones implements DataSource {
+
+    private static final Logger logger = Logger.getLogger(PoolConexiones.class.getName());
+
+    // Una conexion usada hace menos de esto no se vuelve a validar al prestarla
+    private static final long VENTANA_SIN_VALIDAR_MS = 500;
+    private static final int TIMEOUT_VALIDACION_SEG = 2;
+    private static final long PERIODO_MANTENIMIENTO_SEG = 30;
+
+    private final String url;
+    private final Properties propiedades;
+    private final int minimoLibres;
+    private final int maximoLibres;
+    private final int maximoTotal;
+    private final long esperaMaximaMs;
+    private final long umbralFugaMs;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition disponible = lock.newCondition();
+    private final Deque<ConexionFisica> libres = new ArrayDeque<>();
+    private final Set<Prestamo> prestadas = ConcurrentHashMap.newKeySet();
+    private int total = 0;
+    private boolean cerrado = false;
+
+    private final LongAdder prestamos = new LongAdder();
+    private final LongAdder esperaTotalNanos = new LongAdder();
+    private final AtomicLong esperaMaximaNanos = new AtomicLong();
+    private final LongAdder agotados = new LongAdder();
+    private final LongAdder validacionesFallidas = new LongAdder();
+    private final LongAdder fugasDetectadas = new LongAdder();
+    private final LongAdder creadas = new LongAdder();
+    private final LongAdder destruidas = new LongAdder();
+
+    private final ScheduledExecutorService mantenimiento;
+
+    public PoolConexiones(String url, Properties propiedades,
+                          int minimoLibres, int maximoLibres, int maximoTotal,
+                          long esperaMaximaMs, long umbralFugaMs) {
+        if (maximoTotal <= 0 || minimoLibres < 0 || minimoLibres > maximoLibres || maximoLibres > maximoTotal) {
+            throw new IllegalArgumentException("Tamaños de pool inválidos: min=" + minimoLibres
+                    + " maxLibres=" + maximoLibres + " max=" + maximoTotal);
+        }
+        this.url = url;
+        this.propiedades = propiedades;
+        this.minimoLibres = minimoLibres;
+        this.maximoLibres = maximoLibres;
+        this.maximoTotal = maximoTotal;
+        this.esperaMaximaMs = esperaMaximaMs;
+        this.umbralFugaMs = umbralFugaMs;
+
+        mantenimiento = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "pool-conexiones-mantenimiento");
+            t.setDaemon(true);
+            return t;
+        });
+        // El primer ciclo precalienta las conexiones minimas sin bloquear a quien creo el pool
+        mantenimiento.scheduleWithFixedDelay(this::mantener, 0, PERIODO_MANTENIMIENTO_SEG, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Presta una conexion del pool, esperando como maximo el tiempo
+     * configurado si todas estan ocupadas.
+     * @return Connection que vuelve al pool al cerrarse
+     * @throws SQLException si no se pudo abrir o se agoto el tiempo de espera
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        long inicio = System.nanoTime();
+        long limite = inicio + TimeUnit.MILLISECONDS.toNanos(esperaMaximaMs);
+
+        while (true) {
+            ConexionFisica fisica;
+            boolean crear = false;
+
+            lock.lock();
+            try {
+                while (true) {
+                    if (cerrado) {
+                        throw new SQLException("El pool de conexiones está cerrado");
+                    }
+                    fisica = libres.pollFirst();
+                    if (fisica != null) {
+                        break;
+                    }
+                    if (total < maximoTotal) {
+                        total++;
+                        crear = true;
+                        break;
+                    }
+                    long restante = limite - System.nanoTime();
+                    if (restante <= 0) {
+                        agotados.increment();
+                        throw new SQLTimeoutException("No hay conexiones disponibles después de "
+                                + esperaMaximaMs + " ms (activas: " + prestadas.size() + ")");
+                    }
+                    try {
+                        disponible.awaitNanos(restante);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrumpido esperando una conexión", e);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (crear) {
+                fisica = crearFisica();
+            } else if (!validar(fisica)) {
+                validacionesFallidas.increment();
+                destruir(fisica);
+                continue;
+            }
+
+            long espera = System.nanoTime() - inicio;
+            prestamos.increment();
+            esperaTotalNanos.add(espera);
+            esperaMaximaNanos.accumulateAndGet(espera, Math::max);
+            Metricas.registrar("pool.prestamo", espera, false);
+            return envolver(fisica);
+        }
+    }
+
+    private ConexionFisica crearFisica() throws SQLException {
+        try {
+            Connection conn = DriverManager.getConnection(url, propiedades);
+            creadas.increment();
+            return new ConexionFisica(conn);
+        } catch (SQLException e) {
+            lock.lock();
+            try {
+                total--;
+                disponible.signal();
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+    }
+
+    private boolean validar(ConexionFisica fisica) {
+        if (System.currentTimeMillis() - fisica.ultimoUso < VENTANA_SIN_VALIDAR_MS) {
+            return true;
+        }
+        try {
+            return fisica.conn.isValid(TIMEOUT_VALIDACION_SEG);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void destruir(ConexionFisica fisica) {
+        try {
+            fisica.conn.close();
+        } catch (SQLException e) {
+            logger.log(Level.FINE, "Error al cerrar conexión física", e);
+        }
+        destruidas.increment();
+        lock.lock();
+        try {
+            total--;
+            disponible.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Connection envolver(ConexionFisica fisica) {
+        Prestamo prestamo = new Prestamo(fisica, umbralFugaMs > 0
+                ? new Exception("Conexión prestada aquí") : null);
+        prestadas.add(prestamo);
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, prestamo);
+    }
+
+    private void devolver(Prestamo prestamo) {
+        prestadas.remove(prestamo);
+        ConexionFisica fisica = prestamo.fisica;
+        fisica.sentencias.liberarTodas();
+        boolean sana;
+        try {
+            // Una pantalla que dejo una transaccion abierta no debe contaminar al siguiente
+            if (!fisica.conn.getAutoCommit()) {
+                fisica.conn.rollback();
+                fisica.conn.setAutoCommit(true);
+            }
+            sana = !fisica.conn.isClosed();
+        } catch (SQLException e) {
+            sana = false;
+        }
+
+        if (!sana) {
+            destruir(fisica);
+            return;
+        }
+
+        fisica.ultimoUso = System.currentTimeMillis();
+        lock.lock();
+        try {
+            if (!cerrado && libres.size() < maximoLibres) {
+                libres.offerFirst(fisica);
+                disponible.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        destruir(fisica);
+    }
+
+    private void mantener() {
+        try {
+            detectarFugas();
+            rellenarMinimo();
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Error en mantenimiento del pool", e);
+        }
+    }
+
+    private void detectarFugas() {
+        if (umbralFugaMs <= 0) {
+            return;
+        }
+        long ahora = System.currentTimeMillis();
+        for (Prestamo prestamo : prestadas) {
+            if (!prestamo.reportado && ahora - prestamo.desde > umbralFugaMs) {
+                prestamo.reportado = true;
+                fugasDetectadas.increment();
+                logger.log(Level.WARNING, "Posible fuga: conexión prestada hace "
+                        + (ahora - prestamo.desde) / 1000 + " s sin devolverse", prestamo.origen);
+            }
+        }
+    }
+
+    private void rellenarMinimo() {
+        while (true) {
+            lock.lock();
+            try {
+                if (cerrado || libres.size() >= minimoLibres || total >= maximoTotal) {
+                    return;
+                }
+                total++;
+            } finally {
+                lock.unlock();
+            }
+            ConexionFisica fisica;
+            try {
+                fisica = crearFisica();
+            } catch (SQLException e) {
+                logger.fine("No se pudo precalentar conexión: " + e.getMessage());
+                return;
+            }
+            lock.lock();
+            try {
+                if (cerrado) {
+                    total--;
+                } else {
+                    libres.offerFirst(fisica);
+                    disponible.signal();
+                    fisica = null;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (fisica != null) {
+                try {
+                    fisica.conn.close();
+                } catch (SQLException e) {
+                    logger.log(Level.FINE, "Error al cerrar conexión física", e);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Cierra todas las conexiones libres y rechaza nuevos prestamos. Las
+     * conexiones prestadas se cierran fisicamente cuando se devuelven.
+     */
+    public void cerrar() {
+        Deque<ConexionFisica> aCerrar;
+        lock.lock();
+        try {
+            if (cerrado) {
+                return;
+            }
+            cerrado = true;
+            aCerrar = new ArrayDeque<>(libres);
+            libres.clear();
+            disponible.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        mantenimiento.shutdownNow();
+        for (ConexionFisica fisica : aCerrar) {
+            destruir(fisica);
+        }
+    }
+
+    /**
+     * Obtiene una foto de las metricas del pool
+     * @return EstadisticasPool con activas, libres y tiempos de espera
+     */
+    public EstadisticasPool getEstadisticas() {
+        int numLibres;
+        int numTotal;
+        lock.lock();
+        try {
+            numLibres = libres.size();
+            numTotal = total;
+        } finally {
+            lock.unlock();
+        }
+        long numPrestamos = prestamos.sum();
+        double esperaPromedioMs = numPrestamos == 0 ? 0
+                : esperaTotalNanos.sum() / (double) numPrestamos / 1_000_000.0;
+        return new EstadisticasPool(prestadas.size(), numLibres, numTotal, numPrestamos,
+                esperaPromedioMs, esperaMaximaNanos.get() / 1_000_000.0,
+                agotados.sum(), validacionesFallidas.sum(), fugasDetectadas.sum(),
+                creadas.sum(), destruidas.sum());
+    }
+
+    @Override
+    public Connection getConnection(String usuario, String clave) throws SQLException {
+        throw new SQLFeatureNotSupportedException("El pool usa credenciales fijas");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return 0;
+    }
+
+    @Override
+    public Logger getParentLogger() {
+        return logger;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("No es un envoltorio de " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    private static class ConexionFisica {
+        final Connection conn;
+        // Sentencias de Consulta preparadas en esta conexion; se liberan al cerrarla
+        final SentenciasConexion sentencias;
+        volatile long ultimoUso = System.currentTimeMillis();
+
+        ConexionFisica(Connection conn) {
+            this.conn = conn;
+            this.sentencias = new SentenciasConexion(conn);
+        }
+    }
+
+    // Cada prestamo es el InvocationHandler del proxy entregado a la pantalla
+    private class Prestamo implements InvocationHandler {
+        final ConexionFisica fisica;
+        final Exception origen;
+        final long desde = System.currentTimeMillis();
+        final AtomicBoolean devuelta = new AtomicBoolean(false);
+        volatile boolean reportado = false;
+
+        Prestamo(ConexionFisica fisica, Exception origen) {
+            this.fisica = fisica;
+            this.origen = origen;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (devuelta.compareAndSet(false, true)) {
+                        devolver(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return devuelta.get() || fisica.conn.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "ConexionPool[" + fisica.conn + "]";
+                default:
+                    break;
+            }
+            if (devuelta.get()) {
+                throw new SQLException("La conexión ya fue devuelta al pool");
+            }
+            // Consulta.preparar llega a las sentencias de la conexion fisica con unwrap
+            if (method.getName().equals("isWrapperFor") && args[0] == SentenciasConexion.class) {
+                return true;
+            }
+            if (method.getName().equals("unwrap") && args[0] == SentenciasConexion.class) {
+                return fisica.sentencias;
+            }
+            try {
+                Object resultado = method.invoke(fisica.conn, args);
+                if (resultado instanceof Statement sentencia) {
+                    String sql = method.getName().startsWith("prepare") ? (String) args[0] : null;
+                    return SentenciaMedida.envolver(method.getReturnType(), sentencia, (Connection) proxy, sql);
+                }
+                return resultado;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
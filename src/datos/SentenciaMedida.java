@@ -0,0 +1,79 @@
+package datos;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import metricas.Metricas;
+
+/**
+ * Envoltorio de las sentencias que las pantallas crean directo sobre una
+ * conexion del pool (createStatement, prepareStatement y prepareCall sin
+ * pasar por {@link Consulta}). Mide cada execute y lo suma a {@link Metricas}
+ * como "sql.{@value #NOMBRE}", con el SQL para la lista de consultas lentas.
+ *
+ * @author franc
+ */
+final class SentenciaMedida implements InvocationHandler {
+
+    static final String NOMBRE = "directa";
+
+    private final Statement sentencia;
+    private final Connection prestada;
+    // SQL de prepareStatement/prepareCall; null para createStatement
+    private final String sql;
+
+    private SentenciaMedida(Statement sentencia, Connection prestada, String sql) {
+        this.sentencia = sentencia;
+        this.prestada = prestada;
+        this.sql = sql;
+    }
+
+    /**
+     * @param tipo interfaz que devolvio la conexion (Statement, PreparedStatement o CallableStatement)
+     * @param sentencia sentencia del driver
+     * @param prestada conexion del pool que se devuelve en getConnection()
+     * @param sql SQL con que se preparo, o null
+     */
+    static Object envolver(Class<?> tipo, Statement sentencia, Connection prestada, String sql) {
+        return Proxy.newProxyInstance(tipo.getClassLoader(), new Class<?>[]{tipo},
+                new SentenciaMedida(sentencia, prestada, sql));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String nombre = method.getName();
+        switch (nombre) {
+            case "getConnection":
+                return prestada;
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                break;
+        }
+        if (!nombre.startsWith("execute")) {
+            try {
+                return method.invoke(sentencia, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+        long inicio = System.nanoTime();
+        boolean fallo = true;
+        try {
+            Object resultado = method.invoke(sentencia, args);
+            fallo = false;
+            return resultado;
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        } finally {
+            String texto = sql != null ? sql
+                    : args != null && args.length > 0 && args[0] instanceof String s ? s : "(lote)";
+            Metricas.sentencia(NOMBRE, texto, System.nanoTime() - inicio, fallo);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package datos;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sentencias de {@link Consulta} ya preparadas en una conexion fisica del
+ * pool. Vive mientras vive la conexion fisica; al cerrarse esta, MySQL
+ * libera las sentencias.
+ * <p>
+ * Cada sentencia se entrega envuelta: al cerrar el envoltorio se limpian los
+ * parametros y la sentencia queda libre para el siguiente uso. Si la misma
+ * consulta se pide mientras su sentencia esta en uso (por ejemplo, dentro
+ * del recorrido de su propio ResultSet), se prepara otra que se cierra de
+ * verdad al terminar.
+ *
+ * @author franc
+ */
+final class SentenciasConexion {
+
+    private static final Logger logger = Logger.getLogger(SentenciasConexion.class.getName());
+
+    private final Connection fisica;
+    private final Map<Consulta, Entrada> preparadas = new HashMap<>();
+
+    SentenciasConexion(Connection fisica) {
+        this.fisica = fisica;
+    }
+
+    private static class Entrada {
+        final PreparedStatement sentencia;
+        // Cambia con cada prestamo, asi un envoltorio viejo no libera el uso de otro
+        int uso;
+        boolean ocupada;
+
+        Entrada(PreparedStatement sentencia) {
+            this.sentencia = sentencia;
+        }
+    }
+
+    /**
+     * Sentencia de la consulta para quien tiene prestada esta conexion
+     * @param prestada conexion del pool que se devuelve en getConnection()
+     */
+    synchronized PreparedStatement preparar(Consulta consulta, Connection prestada) throws SQLException {
+        Entrada entrada = preparadas.get(consulta);
+        if (entrada != null && entrada.sentencia.isClosed()) {
+            preparadas.remove(consulta);
+            entrada = null;
+        }
+        if (entrada == null) {
+            entrada = new Entrada(consulta.crear(fisica));
+            preparadas.put(consulta, entrada);
+        } else if (entrada.ocupada) {
+            return envolver(consulta, consulta.crear(fisica), prestada, null, null, 0);
+        } else {
+            consulta.reusada();
+        }
+        entrada.ocupada = true;
+        entrada.uso++;
+        return envolver(consulta, entrada.sentencia, prestada, this, entrada, entrada.uso);
+    }
+
+    /**
+     * Sentencia de una conexion fuera del pool: solo cuenta ejecuciones
+     */
+    static PreparedStatement sinCache(Consulta consulta, Connection conn) throws SQLException {
+        return envolver(consulta, consulta.crear(conn), conn, null, null, 0);
+    }
+
+    /**
+     * Marca libres todas las sentencias. Se llama cuando la conexion vuelve
+     * al pool, por si alguna pantalla no cerro las suyas.
+     */
+    synchronized void liberarTodas() {
+        for (Entrada entrada : preparadas.values()) {
+            if (entrada.ocupada) {
+                entrada.ocupada = false;
+                entrada.uso++;
+                limpiar(entrada.sentencia);
+            }
+        }
+    }
+
+    private synchronized void liberar(Entrada entrada, int uso) {
+        if (entrada.uso == uso && entrada.ocupada) {
+            entrada.ocupada = false;
+            if (!limpiar(entrada.sentencia)) {
+                preparadas.values().remove(entrada);
+            }
+        }
+    }
+
+    private static boolean limpiar(PreparedStatement sentencia) {
+        try {
+            sentencia.clearParameters();
+            sentencia.clearBatch();
+            return true;
+        } catch (SQLException e) {
+            logger.log(Level.FINE, "Sentencia descartada", e);
+            try {
+                sentencia.close();
+            } catch (SQLException ex) {
+                logger.log(Level.FINE, "Error al cerrar sentencia", ex);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * @param duena cache al que vuelve la sentencia, o null si se cierra al terminar
+     */
+    private static PreparedStatement envolver(Consulta consulta, PreparedStatement sentencia, Connection prestada,
+                                              SentenciasConexion duena, Entrada entrada, int uso) {
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                new Uso(consulta, sentencia, prestada, duena, entrada, uso));
+    }
+
+    // InvocationHandler de cada sentencia entregada
+    private static class Uso implements InvocationHandler {
+        final Consulta consulta;
+        final PreparedStatement sentencia;
+        final Connection prestada;
+        final SentenciasConexion duena;
+        final Entrada entrada;
+        final int uso;
+        boolean cerrada;
+
+        Uso(Consulta consulta, PreparedStatement sentencia, Connection prestada, SentenciasConexion duena,
+            Entrada entrada, int uso) {
+            this.consulta = consulta;
+            this.sentencia = sentencia;
+            this.prestada = prestada;
+            this.duena = duena;
+            this.entrada = entrada;
+            this.uso = uso;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String nombre = method.getName();
+            switch (nombre) {
+                case "close":
+                    if (!cerrada) {
+                        cerrada = true;
+                        if (duena != null) {
+                            duena.liberar(entrada, uso);
+                        } else {
+                            sentencia.close();
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return cerrada || sentencia.isClosed();
+                case "getConnection":
+                    return prestada;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Sentencia[" + consulta.getNombre() + "]";
+                default:
+                    break;
+            }
+            if (cerrada) {
+                throw new SQLException("La sentencia " + consulta.getNombre() + " ya fue cerrada");
+            }
+            boolean ejecucion = nombre.startsWith("execute");
+            long inicio = ejecucion ? System.nanoTime() : 0;
+            boolean fallo = true;
+            try {
+                Object resultado = method.invoke(sentencia, args);
+                fallo = false;
+                return resultado;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                if (ejecucion) {
+                    consulta.ejecutada(System.nanoTime() - inicio, fallo);
+                }
+            }
+        }
+    }
+}
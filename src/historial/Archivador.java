@@ -0,0 +1,246 @@
+package historial;
+
+import datos.ConexionBD;
+import datos.ConfiguracionBD;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Traslada el historial cerrado a tablas de archivo para que las tablas de
+ * uso diario se mantengan chicas.
+ * <p>
+ * Se archivan:
+ * <ul>
+ * <li>los registros de accessLog con mas de archivo.accesosDias dias, a
+ * {@value #ACCESOS}</li>
+ * <li>las boletas con mas de archivo.boletasMeses meses que no tienen
+ * deudas, junto con su detalle, a {@value #BOLETAS} y {@value #DETALLE}.
+ * Las boletas fiadas se quedan: el historial de deudas y el saldo de los
+ * deudores siguen leyendolas desde boletas.</li>
+ * </ul>
+ * Las tablas de archivo se crean con CREATE TABLE ... LIKE, con las mismas
+ * columnas e indices. Antes de archivar se asegura el indice de accessLog
+ * por fecha, sin el cual cada bloque recorreria la tabla entera. Se mueve por bloques de archivo.lote filas, cada
+ * bloque en su propia transaccion (INSERT ... SELECT y DELETE), asi nunca se
+ * bloquean las tablas por mucho tiempo. Un candado con nombre de MySQL evita
+ * que dos cajas archiven a la vez.
+ * <p>
+ * Las pantallas de historial consultan el archivo solo cuando el usuario
+ * lo pide.
+ *
+ * @author franc
+ */
+public final class Archivador {
+
+    private static final Logger logger = Logger.getLogger(Archivador.class.getName());
+
+    public static final String ACCESOS = "accessLogArchivo";
+    public static final String BOLETAS = "boletasArchivo";
+    public static final String DETALLE = "detalleBoletaProductosArchivo";
+
+    private static final String CANDADO = "vistaalmar.archivador";
+
+    /**
+     * Filas movidas en una pasada
+     */
+    public record Resumen(int accesos, int boletas, int detalles) {
+    }
+
+    private static volatile boolean tablasCreadas;
+
+    private Archivador() {
+    }
+
+    /**
+     * Archiva en un hilo virtual, si archivo.activo lo permite. Se llama
+     * despues del login y no demora la apertura del menu.
+     */
+    public static void programar() {
+        Thread.ofVirtual().name("archivador").start(() -> {
+            try {
+                if (ConexionBD.getConfiguracion().booleano("archivo.activo", true)) {
+                    archivar();
+                }
+            } catch (SQLException | RuntimeException e) {
+                logger.log(Level.WARNING, "No se pudo archivar el historial", e);
+            }
+        });
+    }
+
+    /**
+     * Mueve al archivo todo lo que cumple la antiguedad configurada
+     * @return filas movidas; ceros si otra caja estaba archivando
+     * @throws SQLException si falla un bloque; los bloques anteriores quedan confirmados
+     */
+    public static Resumen archivar() throws SQLException {
+        ConfiguracionBD cfg = ConexionBD.getConfiguracion();
+        int lote = cfg.entero("archivo.lote", 1000);
+        LocalDateTime ahora = LocalDateTime.now();
+        Timestamp corteAccesos = Timestamp.valueOf(ahora.minusDays(cfg.entero("archivo.accesosDias", 90)));
+        Timestamp corteBoletas = Timestamp.valueOf(ahora.minusMonths(cfg.entero("archivo.boletasMeses", 12)));
+
+        prepararTablas();
+        ModeloAccesos.prepararIndices();
+        try (Connection conn = ConexionBD.getConnection()) {
+            if (!tomarCandado(conn)) {
+                logger.info("Otra caja está archivando; se omite");
+                return new Resumen(0, 0, 0);
+            }
+            try {
+                long inicio = System.nanoTime();
+                int accesos = archivarAccesos(conn, corteAccesos, lote);
+                int[] boletas = archivarBoletas(conn, corteBoletas, lote);
+                Resumen resumen = new Resumen(accesos, boletas[0], boletas[1]);
+                if (accesos + boletas[0] > 0) {
+                    logger.info("Archivado: " + resumen + " en " + (System.nanoTime() - inicio) / 1_000_000 + " ms");
+                }
+                return resumen;
+            } finally {
+                soltarCandado(conn);
+            }
+        }
+    }
+
+    /**
+     * Crea las tablas de archivo si faltan. Usa una conexion propia porque
+     * el DDL confirma cualquier transaccion abierta.
+     * @throws SQLException si falla la creacion
+     */
+    public static void prepararTablas() throws SQLException {
+        if (tablasCreadas) {
+            return;
+        }
+        try (Connection conn = ConexionBD.getConnection();
+             Statement st = conn.createStatement()) {
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS " + ACCESOS + " LIKE accessLog");
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS " + BOLETAS + " LIKE boletas");
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS " + DETALLE + " LIKE detalleboletaproductos");
+        }
+        tablasCreadas = true;
+    }
+
+    /**
+     * Bloques de accessLog hasta la fecha limite de cada uno. accessLog no
+     * tiene clave propia, asi que el bloque llega hasta la fecha de su fila
+     * numero lote e incluye las demas filas con esa misma fecha. Cada limite
+     * recorre solo lote entradas del indice de fechaAccion que crea
+     * {@link ModeloAccesos#prepararIndices}, no la tabla completa.
+     */
+    private static int archivarAccesos(Connection conn, Timestamp corte, int lote) throws SQLException {
+        String sqlLimite = "SELECT MAX(fechaAccion) FROM (SELECT fechaAccion FROM accessLog " +
+                           "WHERE fechaAccion < ? ORDER BY fechaAccion LIMIT ?) t";
+        int movidas = 0;
+        while (true) {
+            Timestamp limite;
+            try (PreparedStatement pstmt = conn.prepareStatement(sqlLimite)) {
+                pstmt.setTimestamp(1, corte);
+                pstmt.setInt(2, lote);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    limite = rs.next() ? rs.getTimestamp(1) : null;
+                }
+            }
+            if (limite == null) {
+                return movidas;
+            }
+            movidas += mover(conn, "accessLog", ACCESOS, "fechaAccion <= ?", List.of(limite), null, null);
+        }
+    }
+
+    /**
+     * Bloques de boletas sin deudas, por idBoleta
+     * @return boletas y lineas de detalle movidas
+     */
+    private static int[] archivarBoletas(Connection conn, Timestamp corte, int lote) throws SQLException {
+        String sqlIds = "SELECT b.idBoleta FROM boletas b WHERE b.fechaTramite < ? " +
+                        "AND NOT EXISTS (SELECT 1 FROM deudas d WHERE d.idBoleta = b.idBoleta) " +
+                        "ORDER BY b.idBoleta LIMIT ?";
+        int boletas = 0;
+        int detalles = 0;
+        while (true) {
+            List<Object> ids = new ArrayList<>();
+            try (PreparedStatement pstmt = conn.prepareStatement(sqlIds)) {
+                pstmt.setTimestamp(1, corte);
+                pstmt.setInt(2, lote);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        ids.add(rs.getInt(1));
+                    }
+                }
+            }
+            if (ids.isEmpty()) {
+                return new int[]{boletas, detalles};
+            }
+            String enLista = "idBoleta IN (" + "?, ".repeat(ids.size() - 1) + "?)";
+            int[] movidas = new int[1];
+            // El detalle primero, y la boleta en la misma transaccion
+            boletas += mover(conn, "boletas", BOLETAS, enLista, ids, "detalleboletaproductos", movidas);
+            detalles += movidas[0];
+        }
+    }
+
+    /**
+     * Copia al archivo y borra del original las filas que cumplen la
+     * condicion, en una transaccion. Si se indica una tabla dependiente, sus
+     * filas con la misma condicion se mueven antes a {@link #DETALLE}.
+     * @return filas movidas de la tabla principal
+     */
+    private static int mover(Connection conn, String origen, String destino, String condicion, List<Object> valores,
+                             String dependiente, int[] movidasDependiente) throws SQLException {
+        conn.setAutoCommit(false);
+        try {
+            if (dependiente != null) {
+                ejecutar(conn, "INSERT INTO " + DETALLE + " SELECT * FROM " + dependiente + " WHERE " + condicion, valores);
+                movidasDependiente[0] = ejecutar(conn, "DELETE FROM " + dependiente + " WHERE " + condicion, valores);
+            }
+            ejecutar(conn, "INSERT INTO " + destino + " SELECT * FROM " + origen + " WHERE " + condicion, valores);
+            int movidas = ejecutar(conn, "DELETE FROM " + origen + " WHERE " + condicion, valores);
+            conn.commit();
+            return movidas;
+        } catch (SQLException e) {
+            try {
+                conn.rollback();
+            } catch (SQLException ex) {
+                e.addSuppressed(ex);
+            }
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private static int ejecutar(Connection conn, String sql, List<Object> valores) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < valores.size(); i++) {
+                pstmt.setObject(i + 1, valores.get(i));
+            }
+            return pstmt.executeUpdate();
+        }
+    }
+
+    private static boolean tomarCandado(Connection conn) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT GET_LOCK(?, 0)")) {
+            pstmt.setString(1, CANDADO);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    private static void soltarCandado(Connection conn) {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            pstmt.setString(1, CANDADO);
+            pstmt.executeQuery().close();
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "No se pudo soltar el candado del archivador", e);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package historial;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import ventas.ResumenFacturas;
+
+/**
+ * Consultas del historial de facturas de proveedores.
+ * <p>
+ * Los semestres del combo y los totales por filtro salen de la tabla
+ * resumenFacturas ({@link ResumenFacturas}), que tiene una fila por semestre
+ * y proveedor. Las facturas se leen de a paginas con paginacion por clave
+ * sobre (fechaTramite, idFactura), del mas reciente al mas antiguo. Cada
+ * pagina se resuelve primero sobre el indice de facturaProveedores, y solo
+ * sus filas se cruzan con usuarios y proveedores.
+ *
+ * @author franc
+ */
+public final class ConsultaFacturas {
+
+    private static final String SQL_SEMESTRES =
+            "SELECT DISTINCT anio, semestre FROM resumenFacturas ORDER BY anio DESC, semestre DESC";
+
+    /**
+     * Mitad de un año: 1 de enero a junio, 2 de julio a diciembre
+     */
+    public record Semestre(int anio, int semestre) {
+
+        public LocalDate desde() {
+            return LocalDate.of(anio, semestre == 1 ? 1 : 7, 1);
+        }
+
+        /**
+         * Primer dia del semestre siguiente (excluido)
+         */
+        public LocalDate hasta() {
+            return desde().plusMonths(6);
+        }
+
+        @Override
+        public String toString() {
+            return anio + "-" + semestre;
+        }
+    }
+
+    /**
+     * Facturas a mostrar; un campo null no filtra
+     */
+    public record Filtro(Semestre semestre, Integer rutEmpresa) {
+    }
+
+    /**
+     * Cantidad y monto de las facturas de un filtro
+     */
+    public record Totales(int facturas, long monto) {
+    }
+
+    /**
+     * Fila del historial, con los nombres del proveedor y del usuario
+     */
+    public record Factura(int idFactura, String nomEmpresa, String nomUsuario, Date fechaTramite,
+                          Date fechaVencimiento, String medioPago, int total) {
+    }
+
+    private ConsultaFacturas() {
+    }
+
+    /**
+     * Semestres con facturas, del mas reciente al mas antiguo
+     * @param conn conexion a usar
+     * @return lista vacia si no hay facturas
+     * @throws SQLException si falla la consulta
+     */
+    public static List<Semestre> semestres(Connection conn) throws SQLException {
+        ResumenFacturas.preparar();
+        List<Semestre> semestres = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(SQL_SEMESTRES);
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                semestres.add(new Semestre(rs.getInt("anio"), rs.getInt("semestre")));
+            }
+        }
+        return semestres;
+    }
+
+    /**
+     * Totales del filtro, sumados desde el resumen
+     * @param conn conexion a usar
+     * @param f semestre y proveedor
+     * @return Totales, en cero si no hay facturas
+     * @throws SQLException si falla la consulta
+     */
+    public static Totales totales(Connection conn, Filtro f) throws SQLException {
+        ResumenFacturas.preparar();
+        StringBuilder sql = new StringBuilder(
+                "SELECT COALESCE(SUM(facturas), 0), COALESCE(SUM(total), 0) FROM resumenFacturas WHERE 1 = 1");
+        if (f.semestre() != null) {
+            sql.append(" AND anio = ? AND semestre = ?");
+        }
+        if (f.rutEmpresa() != null) {
+            sql.append(" AND rutEmpresa = ?");
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+            int p = 1;
+            if (f.semestre() != null) {
+                pstmt.setInt(p++, f.semestre().anio());
+                pstmt.setInt(p++, f.semestre().semestre());
+            }
+            if (f.rutEmpresa() != null) {
+                pstmt.setInt(p, f.rutEmpresa());
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? new Totales(rs.getInt(1), rs.getLong(2)) : new Totales(0, 0);
+            }
+        }
+    }
+
+    /**
+     * Pagina de facturas que sigue a desde
+     * @param conn conexion a usar
+     * @param f semestre y proveedor
+     * @param desde ultima factura de la pagina anterior, o null para la primera
+     * @param tamano filas por pagina
+     * @return hasta tamano facturas; menos si no quedan mas
+     * @throws SQLException si falla la consulta
+     */
+    public static List<Factura> pagina(Connection conn, Filtro f, Factura desde, int tamano) throws SQLException {
+        StringBuilder filtro = new StringBuilder();
+        if (f.semestre() != null) {
+            filtro.append(" AND fechaTramite >= ? AND fechaTramite < ?");
+        }
+        if (f.rutEmpresa() != null) {
+            filtro.append(" AND rutEmpresa = ?");
+        }
+        if (desde != null) {
+            filtro.append(" AND (fechaTramite, idFactura) < (?, ?)");
+        }
+        String sql = "SELECT fp.idFactura, p.nomEmpresa, u.nomUsuario, fp.fechaTramite, fp.fechaVencimiento, fp.medioPago, fp.total " +
+                     "FROM (SELECT idFactura, rutEmpresa, rutUsuario, fechaTramite, fechaVencimiento, medioPago, total " +
+                     "FROM facturaProveedores WHERE 1 = 1" + filtro +
+                     " ORDER BY fechaTramite DESC, idFactura DESC LIMIT ?) fp " +
+                     "JOIN usuarios u ON u.rutUsuario = fp.rutUsuario " +
+                     "JOIN proveedores p ON p.rutEmpresa = fp.rutEmpresa " +
+                     "ORDER BY fp.fechaTramite DESC, fp.idFactura DESC";
+
+        List<Factura> facturas = new ArrayList<>(tamano);
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int p = 1;
+            if (f.semestre() != null) {
+                pstmt.setDate(p++, Date.valueOf(f.semestre().desde()));
+                pstmt.setDate(p++, Date.valueOf(f.semestre().hasta()));
+            }
+            if (f.rutEmpresa() != null) {
+                pstmt.setInt(p++, f.rutEmpresa());
+            }
+            if (desde != null) {
+                pstmt.setDate(p++, desde.fechaTramite());
+                pstmt.setInt(p++, desde.idFactura());
+            }
+            pstmt.setInt(p, tamano);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    facturas.add(new Factura(rs.getInt("idFactura"), rs.getString("nomEmpresa"),
+                            rs.getString("nomUsuario"), rs.getDate("fechaTramite"), rs.getDate("fechaVencimiento"),
+                            rs.getString("medioPago"), rs.getInt("total")));
+                }
+            }
+        }
+        return facturas;
+    }
+}
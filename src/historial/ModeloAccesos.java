@@ -0,0 +1,313 @@
+package historial;
+
+import datos.ConexionBD;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+import metricas.Medicion;
+import metricas.Metricas;
+
+/**
+ * Modelo de tabla para accessLog que trae las filas de a bloques a medida
+ * que el usuario baja por la tabla.
+ * <p>
+ * Cada bloque continua desde la ultima fila mostrada con paginacion por
+ * clave sobre (fechaAccion, rutUsuario, tipoAccion), del mas reciente al mas
+ * antiguo, y trae como mucho {@value #TAMANO_BLOQUE} filas. El usuario y el
+ * rango de fechas se filtran en el WHERE. Cuando la tabla pinta una de las
+ * ultimas filas cargadas se pide el bloque siguiente en segundo plano.
+ * El indice {@value #INDICE_FECHA} sobre esas tres columnas lo crea
+ * {@link #prepararIndices} en accessLog y en la tabla de archivo.
+ * <p>
+ * accessLog no tiene clave propia y puede tener eventos identicos (mismo
+ * usuario, accion y segundo). Por eso cada bloque empieza en la ultima
+ * clave mostrada, incluida, y se salta tantas filas con esa clave como las
+ * que ya estaban al final de la tabla.
+ * <p>
+ * El estado del modelo solo se toca en el EDT.
+ *
+ * @author franc
+ */
+public class ModeloAccesos extends AbstractTableModel {
+
+    private static final Logger logger = Logger.getLogger(ModeloAccesos.class.getName());
+
+    private static final int TAMANO_BLOQUE = 100;
+    // Filas antes del final a partir de las cuales se pide el siguiente bloque
+    private static final int UMBRAL = 30;
+
+    private static final String[] COLUMNAS = {"Rut Usuario", "Nombre Usuario", "Acción", "Fecha"};
+
+    private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final String INDICE_FECHA = "idxAccessLogFecha";
+
+    private static volatile boolean indicesCreados;
+
+    /**
+     * Filtro de la consulta; cualquier campo null no filtra
+     * @param desde primer dia incluido
+     * @param hasta ultimo dia incluido
+     * @param archivados si se lee lo movido por {@link Archivador} en vez de accessLog
+     */
+    public record Filtro(Integer rutUsuario, LocalDate desde, LocalDate hasta, boolean archivados) {
+
+        public Filtro(Integer rutUsuario, LocalDate desde, LocalDate hasta) {
+            this(rutUsuario, desde, hasta, false);
+        }
+    }
+
+    /**
+     * Fila de accessLog con el nombre del usuario
+     */
+    public record Acceso(int rutUsuario, String nomUsuario, int tipoAccion, Timestamp fecha) {
+
+        public String accion() {
+            return tipoAccion == 0 ? "Cerrado Sesión" : "Inicio Sesión";
+        }
+
+        boolean mismaClave(Acceso otro) {
+            return rutUsuario == otro.rutUsuario && tipoAccion == otro.tipoAccion && Objects.equals(fecha, otro.fecha);
+        }
+    }
+
+    private final ExecutorService consultas =
+            Executors.newSingleThreadExecutor(Thread.ofVirtual().name("historial-accesos").factory());
+    private final Consumer<SQLException> alFallar;
+
+    private final List<Acceso> filas = new ArrayList<>();
+    private Filtro filtro = new Filtro(null, null, null);
+    private boolean cargando;
+    private boolean hayMas;
+    private int generacion;
+
+    /**
+     * @param alFallar recibe en el EDT el error de una consulta
+     */
+    public ModeloAccesos(Consumer<SQLException> alFallar) {
+        this.alFallar = alFallar;
+    }
+
+    /**
+     * Descarta lo cargado y pide el primer bloque con otro filtro. Solo desde el EDT.
+     * @param nuevoFiltro usuario y fechas
+     */
+    public void cargar(Filtro nuevoFiltro) {
+        filtro = nuevoFiltro;
+        generacion++;
+        filas.clear();
+        cargando = false;
+        hayMas = true;
+        fireTableDataChanged();
+        cargarMas();
+    }
+
+    /**
+     * Pide el bloque siguiente si no hay uno en camino
+     */
+    public void cargarMas() {
+        if (cargando || !hayMas) {
+            return;
+        }
+        cargando = true;
+        int gen = generacion;
+        Filtro f = filtro;
+        Acceso ultima = filas.isEmpty() ? null : filas.get(filas.size() - 1);
+        // Filas del final con la misma clave que la ultima; el bloque siguiente las vuelve a traer
+        int repetidas = 0;
+        while (ultima != null && repetidas < filas.size() && filas.get(filas.size() - 1 - repetidas).mismaClave(ultima)) {
+            repetidas++;
+        }
+        int saltar = repetidas;
+        consultas.execute(() -> {
+            Medicion medicion = Metricas.medir("historial.accesos.bloque");
+            try {
+                prepararIndices();
+                List<Acceso> bloque = leerBloque(f, ultima, saltar);
+                SwingUtilities.invokeLater(() -> {
+                    if (gen != generacion) {
+                        return;
+                    }
+                    cargando = false;
+                    hayMas = bloque.size() == TAMANO_BLOQUE;
+                    if (!bloque.isEmpty()) {
+                        int primera = filas.size();
+                        filas.addAll(bloque);
+                        fireTableRowsInserted(primera, filas.size() - 1);
+                    }
+                });
+            } catch (SQLException e) {
+                medicion.fallo();
+                logger.log(Level.WARNING, "No se pudo leer accessLog", e);
+                SwingUtilities.invokeLater(() -> {
+                    if (gen == generacion) {
+                        // No se reintenta solo; un nuevo cargar() vuelve a empezar
+                        cargando = false;
+                        hayMas = false;
+                        alFallar.accept(e);
+                    }
+                });
+            } finally {
+                medicion.close();
+            }
+        });
+    }
+
+    /**
+     * Detiene el hilo de consultas; se llama al cerrar la pantalla
+     */
+    public void cerrar() {
+        generacion++;
+        hayMas = false;
+        consultas.shutdown();
+    }
+
+    @Override
+    public int getRowCount() {
+        return filas.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNAS.length;
+    }
+
+    @Override
+    public String getColumnName(int columna) {
+        return COLUMNAS[columna];
+    }
+
+    @Override
+    public Object getValueAt(int fila, int columna) {
+        if (fila >= filas.size() - UMBRAL) {
+            cargarMas();
+        }
+        Acceso a = filas.get(fila);
+        switch (columna) {
+            case 0: return String.valueOf(a.rutUsuario());
+            case 1: return a.nomUsuario();
+            case 2: return a.accion();
+            default: return a.fecha() == null ? "" : a.fecha().toLocalDateTime().format(FORMATO_FECHA);
+        }
+    }
+
+    /**
+     * Crea el indice {@value #INDICE_FECHA} en accessLog y en
+     * {@link Archivador#ACCESOS} si todavia no lo tienen. Si la tabla de
+     * archivo aun no existe, el Archivador la crea despues con LIKE accessLog
+     * y hereda el indice. Usa una conexion propia porque el DDL confirmaria
+     * cualquier transaccion abierta.
+     * @throws SQLException si falla la creacion
+     */
+    public static void prepararIndices() throws SQLException {
+        if (indicesCreados) {
+            return;
+        }
+        synchronized (ModeloAccesos.class) {
+            if (indicesCreados) {
+                return;
+            }
+            try (Connection conn = ConexionBD.getConnection();
+                 Statement st = conn.createStatement()) {
+                DatabaseMetaData meta = conn.getMetaData();
+                for (String tabla : List.of("accessLog", Archivador.ACCESOS)) {
+                    try (ResultSet rs = meta.getTables(conn.getCatalog(), null, tabla, null)) {
+                        if (!rs.next()) {
+                            continue;
+                        }
+                    }
+                    Set<String> indices = new HashSet<>();
+                    try (ResultSet rs = meta.getIndexInfo(conn.getCatalog(), null, tabla, false, true)) {
+                        while (rs.next()) {
+                            if (rs.getString("INDEX_NAME") != null) {
+                                indices.add(rs.getString("INDEX_NAME").toLowerCase());
+                            }
+                        }
+                    }
+                    if (!indices.contains(INDICE_FECHA.toLowerCase())) {
+                        st.executeUpdate("CREATE INDEX " + INDICE_FECHA + " ON " + tabla + " (fechaAccion, rutUsuario, tipoAccion)");
+                        logger.info("Indice " + INDICE_FECHA + " creado en " + tabla);
+                    }
+                }
+            }
+            indicesCreados = true;
+        }
+    }
+
+    /**
+     * Bloque siguiente a desde, incluidas las filas con su misma clave
+     * @param saltar filas con la clave de desde que ya se mostraron
+     */
+    private static List<Acceso> leerBloque(Filtro f, Acceso desde, int saltar) throws SQLException {
+        StringBuilder sql = new StringBuilder(
+                "SELECT a.rutUsuario, u.nomUsuario, a.tipoAccion, a.fechaAccion " +
+                "FROM " + (f.archivados() ? Archivador.ACCESOS : "accessLog") + " a INNER JOIN usuarios u ON a.rutUsuario = u.rutUsuario WHERE 1 = 1");
+        if (f.rutUsuario() != null) {
+            sql.append(" AND a.rutUsuario = ?");
+        }
+        if (f.desde() != null) {
+            sql.append(" AND a.fechaAccion >= ?");
+        }
+        if (f.hasta() != null) {
+            sql.append(" AND a.fechaAccion < ?");
+        }
+        if (desde != null) {
+            sql.append(" AND (a.fechaAccion < ? OR (a.fechaAccion = ? AND (a.rutUsuario < ?"
+                    + " OR (a.rutUsuario = ? AND a.tipoAccion <= ?))))");
+        }
+        sql.append(" ORDER BY a.fechaAccion DESC, a.rutUsuario DESC, a.tipoAccion DESC LIMIT ?");
+
+        List<Acceso> bloque = new ArrayList<>(TAMANO_BLOQUE);
+        try (Connection conn = ConexionBD.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+            int p = 1;
+            if (f.rutUsuario() != null) {
+                pstmt.setInt(p++, f.rutUsuario());
+            }
+            if (f.desde() != null) {
+                pstmt.setTimestamp(p++, Timestamp.valueOf(f.desde().atStartOfDay()));
+            }
+            if (f.hasta() != null) {
+                pstmt.setTimestamp(p++, Timestamp.valueOf(f.hasta().plusDays(1).atStartOfDay()));
+            }
+            if (desde != null) {
+                pstmt.setTimestamp(p++, desde.fecha());
+                pstmt.setTimestamp(p++, desde.fecha());
+                pstmt.setInt(p++, desde.rutUsuario());
+                pstmt.setInt(p++, desde.rutUsuario());
+                pstmt.setInt(p++, desde.tipoAccion());
+            }
+            pstmt.setInt(p, TAMANO_BLOQUE + saltar);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                int leidas = 0;
+                while (rs.next()) {
+                    if (leidas++ < saltar) {
+                        // Ya estaba al final de la tabla
+                        continue;
+                    }
+                    bloque.add(new Acceso(rs.getInt("rutUsuario"), rs.getString("nomUsuario"),
+                            rs.getInt("tipoAccion"), rs.getTimestamp("fechaAccion")));
+                }
+            }
+        }
+        return bloque;
+    }
+}
@@ -0,0 +1,489 @@
+package historial;
+
+import datos.ConexionBD;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+import metricas.Medicion;
+import metricas.Metricas;
+
+/**
+ * Modelo de tabla para el historial de boletas que lee la base de datos por
+ * paginas, a medida que la tabla las muestra.
+ * <p>
+ * Las paginas se piden con paginacion por clave sobre (fechaTramite,
+ * idBoleta), del mas reciente al mas antiguo: cada pagina continua desde la
+ * ultima fila de la anterior, asi MySQL recorre el indice desde ese punto en
+ * vez de saltar filas con OFFSET. Si el usuario arrastra la barra hasta una
+ * pagina lejana, su punto de partida se busca una sola vez con una consulta
+ * que solo lee las claves, y queda guardado para las siguientes. El indice
+ * {@value #INDICE_FECHA} sobre (fechaTramite, idBoleta) lo crea
+ * {@link #prepararIndices} en boletas y en la tabla de archivo, si no existe.
+ * <p>
+ * En memoria se conservan las ultimas {@value #MAXIMO_PAGINAS} paginas
+ * usadas. Cuando la tabla muestra la segunda mitad de una pagina se pide la
+ * siguiente en segundo plano. El filtro por tipo y el texto de busqueda van
+ * en el WHERE de la consulta.
+ * <p>
+ * El estado del modelo solo se toca en el EDT; las consultas corren en un
+ * hilo virtual propio y entregan sus resultados con invokeLater.
+ *
+ * @author franc
+ */
+public class ModeloBoletas extends AbstractTableModel {
+
+    private static final Logger logger = Logger.getLogger(ModeloBoletas.class.getName());
+
+    private static final int TAMANO_PAGINA = 200;
+    private static final int MAXIMO_PAGINAS = 10;
+
+    private static final String[] COLUMNAS = {
+        "N° Boleta", "Rut Usuario", "Fecha", "Medio de pago", "Total Venta",
+        "Total Pagado", "Total Fiado", "Productos", "Tipo"
+    };
+
+    private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+
+    private static final String ORDEN = " ORDER BY b.fechaTramite DESC, b.idBoleta DESC";
+    private static final String DESPUES_DE = " AND (b.fechaTramite < ? OR (b.fechaTramite = ? AND b.idBoleta < ?))";
+
+    private static final String INDICE_FECHA = "idxBoletasFecha";
+
+    private static volatile boolean indicesCreados;
+
+    /**
+     * Tipos de boleta del combo de HistorialBoletas, en el mismo orden
+     */
+    public enum Tipo {
+        TODAS("1 = 1"),
+        REGULARES("b.totalPagados > 0 AND b.totalFiado = 0"),
+        CON_FIANZA("b.totalFiado > 0"),
+        PERDIDAS("b.totalPagados < 0");
+
+        private final String condicion;
+
+        Tipo(String condicion) {
+            this.condicion = condicion;
+        }
+    }
+
+    /**
+     * Boletas a mostrar: un tipo y, opcionalmente, un texto que debe
+     * aparecer en el numero, el rut, la fecha o el medio de pago
+     * @param archivadas si se leen las boletas movidas por {@link Archivador}
+     *        en vez de las de uso diario
+     */
+    public record Filtro(Tipo tipo, String texto, boolean archivadas) {
+
+        public Filtro {
+            texto = texto == null ? "" : texto.trim();
+        }
+
+        public Filtro(Tipo tipo, String texto) {
+            this(tipo, texto, false);
+        }
+
+        String boletas() {
+            return archivadas ? Archivador.BOLETAS : "boletas";
+        }
+
+        String detalle() {
+            return archivadas ? Archivador.DETALLE : "detalleboletaproductos";
+        }
+    }
+
+    /**
+     * Fila de la tabla boletas con la cantidad de productos de su detalle
+     */
+    public record Boleta(int idBoleta, String rutUsuario, Timestamp fecha, String medioPago,
+                         double totalPagado, double totalFiado, int numProductos) {
+
+        public String tipo() {
+            if (totalPagado > 0 && totalFiado == 0) {
+                return "Venta Regular";
+            } else if (totalFiado > 0) {
+                return "Con Fianza";
+            } else if (totalPagado < 0) {
+                return "Destrucción";
+            }
+            return "";
+        }
+
+        public String fechaTexto() {
+            return fecha == null ? "-" : fecha.toLocalDateTime().format(FORMATO_FECHA);
+        }
+    }
+
+    /**
+     * Ultima fila de una pagina, desde donde empieza la siguiente
+     */
+    private record Clave(Timestamp fecha, int idBoleta) {
+    }
+
+    private final ExecutorService consultas =
+            Executors.newSingleThreadExecutor(Thread.ofVirtual().name("historial-boletas").factory());
+    private final Consumer<SQLException> alFallar;
+
+    private final Map<Integer, List<Boleta>> paginas = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<Boleta>> eldest) {
+            return size() > MAXIMO_PAGINAS;
+        }
+    };
+    // Clave desde la que empieza cada pagina ya conocida; la pagina 0 no la necesita
+    private final TreeMap<Integer, Clave> inicios = new TreeMap<>();
+    private final Set<Integer> pedidas = new HashSet<>();
+
+    private Filtro filtro = new Filtro(Tipo.TODAS, "");
+    private int total;
+    private boolean fallo;
+    // Se lee desde el hilo de consultas para descartar pedidos de un filtro anterior
+    private volatile int generacion;
+    // Ultima pagina que pidio la tabla; las pedidas muy lejos de ella ya no se cargan
+    private volatile int paginaVisible;
+
+    /**
+     * @param alFallar recibe en el EDT el error de una consulta; despues de un
+     *        error el modelo no vuelve a consultar hasta el proximo {@link #cargar}
+     */
+    public ModeloBoletas(Consumer<SQLException> alFallar) {
+        this.alFallar = alFallar;
+    }
+
+    /**
+     * Descarta lo cargado y vuelve a contar las boletas con otro filtro. Solo
+     * desde el EDT.
+     * @param nuevoFiltro tipo y texto a aplicar
+     */
+    public void cargar(Filtro nuevoFiltro) {
+        filtro = nuevoFiltro;
+        int gen = ++generacion;
+        paginas.clear();
+        inicios.clear();
+        pedidas.clear();
+        fallo = false;
+        total = 0;
+        paginaVisible = 0;
+        fireTableDataChanged();
+
+        pedidas.add(0);
+        consultas.execute(() -> {
+            Medicion medicion = Metricas.medir("historial.boletas.cargar");
+            try (Connection conn = ConexionBD.getConnection()) {
+                prepararIndices();
+                int cuenta = contar(conn, nuevoFiltro);
+                List<Boleta> primera = cuenta == 0 ? List.of() : leerPagina(conn, nuevoFiltro, (Clave) null);
+                SwingUtilities.invokeLater(() -> {
+                    if (gen == generacion) {
+                        total = cuenta;
+                        pedidas.remove(0);
+                        guardarPagina(0, primera);
+                        fireTableDataChanged();
+                    }
+                });
+            } catch (SQLException e) {
+                medicion.fallo();
+                fallar(gen, e);
+            } finally {
+                medicion.close();
+            }
+        });
+    }
+
+    /**
+     * Boleta de una fila, si su pagina ya esta en memoria
+     * @param fila indice en el modelo
+     * @return la boleta, o null si todavia se esta cargando
+     */
+    public Boleta getBoleta(int fila) {
+        List<Boleta> pagina = paginas.get(fila / TAMANO_PAGINA);
+        int posicion = fila % TAMANO_PAGINA;
+        return pagina == null || posicion >= pagina.size() ? null : pagina.get(posicion);
+    }
+
+    /**
+     * Detiene el hilo de consultas; se llama al cerrar la pantalla
+     */
+    public void cerrar() {
+        generacion++;
+        fallo = true;
+        consultas.shutdown();
+    }
+
+    @Override
+    public int getRowCount() {
+        return total;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNAS.length;
+    }
+
+    @Override
+    public String getColumnName(int columna) {
+        return COLUMNAS[columna];
+    }
+
+    @Override
+    public Object getValueAt(int fila, int columna) {
+        int numPagina = fila / TAMANO_PAGINA;
+        List<Boleta> pagina = paginas.get(numPagina);
+        if (pagina == null) {
+            pedir(numPagina);
+            return columna == 0 ? "Cargando..." : null;
+        }
+        int posicion = fila % TAMANO_PAGINA;
+        if (posicion >= TAMANO_PAGINA / 2 && !paginas.containsKey(numPagina + 1)) {
+            pedir(numPagina + 1);
+        }
+        if (posicion >= pagina.size()) {
+            return null;
+        }
+        Boleta b = pagina.get(posicion);
+        switch (columna) {
+            case 0: return b.idBoleta();
+            case 1: return b.rutUsuario();
+            case 2: return b.fechaTexto();
+            case 3: return b.medioPago();
+            case 4: return String.format("$%,.0f", b.totalPagado() + b.totalFiado());
+            case 5: return String.format("$%,.0f", b.totalPagado());
+            case 6: return String.format("$%,.0f", b.totalFiado());
+            case 7: return b.numProductos();
+            default: return b.tipo();
+        }
+    }
+
+    private void pedir(int numPagina) {
+        if (fallo || numPagina * TAMANO_PAGINA >= total) {
+            return;
+        }
+        paginaVisible = numPagina;
+        if (!pedidas.add(numPagina)) {
+            return;
+        }
+        int gen = generacion;
+        Filtro f = filtro;
+        Map.Entry<Integer, Clave> conocido = inicios.floorEntry(numPagina);
+        int desde = conocido == null ? 0 : conocido.getKey();
+        Clave clave = conocido == null ? null : conocido.getValue();
+
+        consultas.execute(() -> {
+            if (gen != generacion || Math.abs(numPagina - paginaVisible) > MAXIMO_PAGINAS) {
+                // La tabla ya se movio a otra parte; se volvera a pedir si hace falta
+                SwingUtilities.invokeLater(() -> {
+                    if (gen == generacion) {
+                        pedidas.remove(numPagina);
+                    }
+                });
+                return;
+            }
+            Medicion medicion = Metricas.medir("historial.boletas.pagina");
+            try (Connection conn = ConexionBD.getConnection()) {
+                Clave inicio = desde == numPagina ? clave
+                        : buscarInicio(conn, f, clave, (numPagina - desde) * TAMANO_PAGINA - 1);
+                List<Boleta> filas = numPagina > 0 && inicio == null ? List.of() : leerPagina(conn, f, inicio);
+                SwingUtilities.invokeLater(() -> {
+                    if (gen != generacion) {
+                        return;
+                    }
+                    pedidas.remove(numPagina);
+                    if (inicio != null) {
+                        inicios.put(numPagina, inicio);
+                    }
+                    guardarPagina(numPagina, filas);
+                    int primera = numPagina * TAMANO_PAGINA;
+                    if (filas.size() < TAMANO_PAGINA && primera + filas.size() < total) {
+                        // Se borraron boletas desde que se contaron
+                        total = primera + filas.size();
+                        fireTableDataChanged();
+                    } else {
+                        fireTableRowsUpdated(primera, Math.min(primera + TAMANO_PAGINA, total) - 1);
+                    }
+                });
+            } catch (SQLException e) {
+                medicion.fallo();
+                fallar(gen, e);
+            } finally {
+                medicion.close();
+            }
+        });
+    }
+
+    private void guardarPagina(int numPagina, List<Boleta> filas) {
+        paginas.put(numPagina, filas);
+        if (filas.size() == TAMANO_PAGINA) {
+            Boleta ultima = filas.get(filas.size() - 1);
+            inicios.put(numPagina + 1, new Clave(ultima.fecha(), ultima.idBoleta()));
+        }
+    }
+
+    private void fallar(int gen, SQLException e) {
+        logger.log(Level.WARNING, "No se pudo leer el historial de boletas", e);
+        SwingUtilities.invokeLater(() -> {
+            if (gen == generacion && !fallo) {
+                fallo = true;
+                pedidas.clear();
+                alFallar.accept(e);
+            }
+        });
+    }
+
+    /**
+     * Crea el indice {@value #INDICE_FECHA} en boletas y en
+     * {@link Archivador#BOLETAS} si todavia no lo tienen. Si la tabla de
+     * archivo aun no existe, el Archivador la crea despues con LIKE boletas y
+     * hereda el indice. Usa una conexion propia porque el DDL confirmaria
+     * cualquier transaccion abierta.
+     * @throws SQLException si falla la creacion
+     */
+    public static void prepararIndices() throws SQLException {
+        if (indicesCreados) {
+            return;
+        }
+        synchronized (ModeloBoletas.class) {
+            if (indicesCreados) {
+                return;
+            }
+            try (Connection conn = ConexionBD.getConnection();
+                 Statement st = conn.createStatement()) {
+                DatabaseMetaData meta = conn.getMetaData();
+                for (String tabla : List.of("boletas", Archivador.BOLETAS)) {
+                    try (ResultSet rs = meta.getTables(conn.getCatalog(), null, tabla, null)) {
+                        if (!rs.next()) {
+                            continue;
+                        }
+                    }
+                    Set<String> indices = new HashSet<>();
+                    try (ResultSet rs = meta.getIndexInfo(conn.getCatalog(), null, tabla, false, true)) {
+                        while (rs.next()) {
+                            if (rs.getString("INDEX_NAME") != null) {
+                                indices.add(rs.getString("INDEX_NAME").toLowerCase());
+                            }
+                        }
+                    }
+                    if (!indices.contains(INDICE_FECHA.toLowerCase())) {
+                        st.executeUpdate("CREATE INDEX " + INDICE_FECHA + " ON " + tabla + " (fechaTramite, idBoleta)");
+                        logger.info("Indice " + INDICE_FECHA + " creado en " + tabla);
+                    }
+                }
+            }
+            indicesCreados = true;
+        }
+    }
+
+    /**
+     * Cantidad de boletas que cumplen el filtro
+     * @param conn conexion a usar
+     * @param f filtro
+     * @return total de filas
+     * @throws SQLException si falla la consulta
+     */
+    public static int contar(Connection conn, Filtro f) throws SQLException {
+        String sql = "SELECT COUNT(*) FROM " + f.boletas() + " b WHERE " + condicion(f);
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            fijarFiltro(pstmt, f, 1);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Clave de la fila que esta saltos filas despues de desde, leyendo solo
+     * las columnas del indice
+     */
+    private static Clave buscarInicio(Connection conn, Filtro f, Clave desde, int saltos) throws SQLException {
+        String sql = "SELECT b.fechaTramite, b.idBoleta FROM " + f.boletas() + " b WHERE " + condicion(f)
+                + (desde == null ? "" : DESPUES_DE) + ORDEN + " LIMIT 1 OFFSET ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int p = fijarFiltro(pstmt, f, 1);
+            p = fijarClave(pstmt, desde, p);
+            pstmt.setInt(p, saltos);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? new Clave(rs.getTimestamp(1), rs.getInt(2)) : null;
+            }
+        }
+    }
+
+    /**
+     * Pagina de boletas, de la mas reciente a la mas antigua, sin pasar por
+     * la tabla. La usan las pruebas de rendimiento.
+     * @param conn conexion a usar
+     * @param f filtro
+     * @param despuesDe ultima boleta de la pagina anterior, o null para la primera
+     * @return hasta {@value #TAMANO_PAGINA} boletas
+     * @throws SQLException si falla la consulta
+     */
+    public static List<Boleta> leerPagina(Connection conn, Filtro f, Boleta despuesDe) throws SQLException {
+        return leerPagina(conn, f, despuesDe == null ? null : new Clave(despuesDe.fecha(), despuesDe.idBoleta()));
+    }
+
+    private static List<Boleta> leerPagina(Connection conn, Filtro f, Clave desde) throws SQLException {
+        // El detalle se cuenta solo para las boletas de la pagina, no para toda la tabla
+        String sql = "SELECT b.idBoleta, b.rutUsuario, b.fechaTramite, b.medioPago, b.totalPagados, b.totalFiado, "
+                + "(SELECT COUNT(*) FROM " + f.detalle() + " dbp WHERE dbp.idBoleta = b.idBoleta) AS numProductos "
+                + "FROM " + f.boletas() + " b WHERE " + condicion(f) + (desde == null ? "" : DESPUES_DE) + ORDEN + " LIMIT ?";
+        List<Boleta> filas = new ArrayList<>(TAMANO_PAGINA);
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int p = fijarFiltro(pstmt, f, 1);
+            p = fijarClave(pstmt, desde, p);
+            pstmt.setInt(p, TAMANO_PAGINA);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    filas.add(new Boleta(rs.getInt("idBoleta"), rs.getString("rutUsuario"),
+                            rs.getTimestamp("fechaTramite"), rs.getString("medioPago"),
+                            rs.getDouble("totalPagados"), rs.getDouble("totalFiado"), rs.getInt("numProductos")));
+                }
+            }
+        }
+        return filas;
+    }
+
+    private static String condicion(Filtro f) {
+        String sql = f.tipo().condicion;
+        if (!f.texto().isEmpty()) {
+            sql += " AND (CAST(b.idBoleta AS CHAR) LIKE ? OR CAST(b.rutUsuario AS CHAR) LIKE ?"
+                    + " OR b.medioPago LIKE ? OR DATE_FORMAT(b.fechaTramite, '%d/%m/%Y %H:%i') LIKE ?)";
+        }
+        return sql;
+    }
+
+    private static int fijarFiltro(PreparedStatement pstmt, Filtro f, int p) throws SQLException {
+        if (!f.texto().isEmpty()) {
+            String patron = "%" + f.texto().replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+            for (int i = 0; i < 4; i++) {
+                pstmt.setString(p++, patron);
+            }
+        }
+        return p;
+    }
+
+    private static int fijarClave(PreparedStatement pstmt, Clave clave, int p) throws SQLException {
+        if (clave != null) {
+            pstmt.setTimestamp(p++, clave.fecha());
+            pstmt.setTimestamp(p++, clave.fecha());
+            pstmt.setInt(p++, clave.idBoleta());
+        }
+        return p;
+    }
+}
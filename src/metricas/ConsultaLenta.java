@@ -0,0 +1,21 @@
+package metricas;
+
+import java.time.LocalDateTime;
+
+/**
+ * Sentencia SQL que tardo mas que metricas.consultaLentaMs
+ *
+ * @author franc
+ */
+public record ConsultaLenta(
+        LocalDateTime fecha,
+        String nombre,
+        String sql,
+        double ms,
+        String hilo) {
+
+    @Override
+    public String toString() {
+        return String.format("%s %s %.1fms [%s] %s", fecha, nombre, ms, hilo, sql);
+    }
+}
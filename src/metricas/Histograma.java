@@ -0,0 +1,131 @@
+package metricas;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latencias con cubetas log-lineales, al estilo de
+ * HdrHistogram.
+ * <p>
+ * Cada potencia de 2 se divide en {@value #SUBCUBETAS} cubetas iguales, asi
+ * el error de cualquier percentil es menor a 1,6% del valor, sea de
+ * microsegundos o de minutos. Los valores se guardan en nanosegundos hasta
+ * una hora; lo que pase de eso cuenta como una hora. Registrar es un
+ * incremento atomico, sin candados ni memoria nueva, y se puede hacer desde
+ * cualquier hilo.
+ *
+ * @author franc
+ */
+public final class Histograma {
+
+    private static final int BITS_SUBCUBETA = 6;
+    private static final int SUBCUBETAS = 1 << BITS_SUBCUBETA;
+    private static final long MAXIMO = TimeUnit.HOURS.toNanos(1);
+    private static final int CUBETAS = indice(MAXIMO) + 1;
+
+    private final AtomicLongArray cuentas = new AtomicLongArray(CUBETAS);
+    private final LongAdder sumaNanos = new LongAdder();
+
+    /**
+     * Suma una medicion
+     * @param nanos duracion en nanosegundos
+     */
+    public void registrar(long nanos) {
+        long valor = Math.max(0, Math.min(nanos, MAXIMO));
+        cuentas.incrementAndGet(indice(valor));
+        sumaNanos.add(valor);
+    }
+
+    /**
+     * Copia de las cuentas en este instante. Las mediciones que llegan
+     * mientras se copia pueden quedar o no; nunca a medias.
+     * @return Foto con las cuentas acumuladas desde que se creo el histograma
+     */
+    public Foto foto() {
+        long[] copia = new long[CUBETAS];
+        long total = 0;
+        for (int i = 0; i < CUBETAS; i++) {
+            copia[i] = cuentas.get(i);
+            total += copia[i];
+        }
+        return new Foto(copia, total, sumaNanos.sum());
+    }
+
+    /**
+     * Foto sin mediciones, para restar la primera vez
+     * @return Foto en cero
+     */
+    public static Foto vacia() {
+        return new Foto(new long[CUBETAS], 0, 0);
+    }
+
+    static int indice(long valor) {
+        if (valor < 2 * SUBCUBETAS) {
+            return (int) valor;
+        }
+        int exponente = 63 - Long.numberOfLeadingZeros(valor) - BITS_SUBCUBETA;
+        return (exponente + 1) * SUBCUBETAS + (int) (valor >>> exponente) - SUBCUBETAS;
+    }
+
+    // Mayor valor que cae en la cubeta
+    static long limite(int indice) {
+        if (indice < 2 * SUBCUBETAS) {
+            return indice;
+        }
+        int exponente = indice / SUBCUBETAS - 1;
+        long mantisa = indice % SUBCUBETAS + SUBCUBETAS;
+        return ((mantisa + 1) << exponente) - 1;
+    }
+
+    /**
+     * Cuentas de un histograma en un instante dado
+     */
+    public record Foto(long[] cuentas, long total, long sumaNanos) {
+
+        /**
+         * Mediciones que llegaron despues de otra foto del mismo histograma
+         * @param anterior foto tomada antes
+         * @return Foto con la diferencia
+         */
+        public Foto menos(Foto anterior) {
+            long[] diferencia = new long[cuentas.length];
+            for (int i = 0; i < cuentas.length; i++) {
+                diferencia[i] = cuentas[i] - anterior.cuentas[i];
+            }
+            return new Foto(diferencia, total - anterior.total, sumaNanos - anterior.sumaNanos);
+        }
+
+        /**
+         * @param percentil entre 0 y 100, por ejemplo 99.9
+         * @return valor bajo el cual queda ese porcentaje de las mediciones, en ms
+         */
+        public double percentilMs(double percentil) {
+            if (total == 0) {
+                return 0;
+            }
+            long objetivo = Math.max(1, (long) Math.ceil(percentil / 100.0 * total));
+            long acumulado = 0;
+            for (int i = 0; i < cuentas.length; i++) {
+                acumulado += cuentas[i];
+                if (acumulado >= objetivo) {
+                    return limite(i) / 1_000_000.0;
+                }
+            }
+            return maximoMs();
+        }
+
+        public double maximoMs() {
+            for (int i = cuentas.length - 1; i >= 0; i--) {
+                if (cuentas[i] > 0) {
+                    return limite(i) / 1_000_000.0;
+                }
+            }
+            return 0;
+        }
+
+        public double promedioMs() {
+            return total == 0 ? 0 : sumaNanos / (double) total / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package metricas;
+
+/**
+ * Cronometro de una operacion; al cerrarse suma su duracion al histograma
+ * de la operacion. Si el trabajo cabe en una lambda es mas simple
+ * {@link Metricas#medir(String, Metricas.Tarea)}; si no, se cierra en un
+ * finally y se marca el error en el catch:
+ * <pre>
+ * Medicion medicion = Metricas.medir("venta.buscar");
+ * try {
+ *     ...
+ * } catch (SQLException e) {
+ *     medicion.fallo();
+ *     ...
+ * } finally {
+ *     medicion.close();
+ * }
+ * </pre>
+ * Para operaciones que terminan en otro hilo o en otro evento (por ejemplo
+ * el cobro, que se confirma en segundo plano) se guarda la Medicion y se
+ * cierra cuando llega el resultado.
+ *
+ * @author franc
+ */
+public final class Medicion implements AutoCloseable {
+
+    private final String nombre;
+    private final long inicio = System.nanoTime();
+    private boolean fallo;
+    private boolean cerrada;
+
+    Medicion(String nombre) {
+        this.nombre = nombre;
+    }
+
+    /**
+     * Cuenta la operacion como error al cerrarse
+     */
+    public void fallo() {
+        fallo = true;
+    }
+
+    @Override
+    public void close() {
+        if (!cerrada) {
+            cerrada = true;
+            Metricas.registrar(nombre, System.nanoTime() - inicio, fallo);
+        }
+    }
+}
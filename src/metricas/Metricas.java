@@ -0,0 +1,338 @@
+package metricas;
+
+import datos.ConexionBD;
+import datos.ConfiguracionBD;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Tiempos, contadores y consultas lentas de la aplicacion.
+ * <p>
+ * Cada operacion con nombre ("venta.buscar", "pago.confirmar", ...) tiene un
+ * {@link Histograma} de latencias y un contador de errores. Las sentencias
+ * SQL se miden solas: las de {@link datos.Consultas} con el nombre de la
+ * consulta ("sql.deudores.saldo") y las demas de las conexiones del pool
+ * juntas en "sql.directa". Toda sentencia que pasa de
+ * metricas.consultaLentaMs se anota con su SQL en una lista de las ultimas
+ * metricas.consultasLentas.
+ * <p>
+ * Lo medido se escribe en el registro cada metricas.volcadoMinutos (solo lo
+ * del intervalo) y al cerrar la aplicacion, y se publica por JMX bajo el
+ * dominio "vistaalmar" para verlo en vivo con jconsole o VisualVM. El
+ * volcado y la publicacion empiezan con la primera medicion, que en la
+ * practica es la consulta del login.
+ *
+ * @author franc
+ */
+public final class Metricas {
+
+    private static final Logger logger = Logger.getLogger(Metricas.class.getName());
+
+    private static final String DOMINIO = "vistaalmar";
+
+    private static final Map<String, Operacion> operaciones = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> contadores = new ConcurrentHashMap<>();
+
+    private static final boolean activas;
+    private static final int volcadoMinutos;
+    private static final boolean conJmx;
+    private static volatile long consultaLentaNanos;
+
+    // Ultimas consultas lentas, en anillo
+    private static final ConsultaLenta[] lentas;
+    private static int siguienteLenta;
+    private static long totalLentas;
+
+    private static volatile MBeanServer servidor;
+
+    static {
+        boolean activo = true;
+        int minutos = 5;
+        boolean jmx = true;
+        long lentaMs = 250;
+        int guardadas = 50;
+        try {
+            ConfiguracionBD cfg = ConexionBD.getConfiguracion();
+            activo = cfg.booleano("metricas.activo", activo);
+            minutos = cfg.entero("metricas.volcadoMinutos", minutos);
+            jmx = cfg.booleano("metricas.jmx", jmx);
+            lentaMs = cfg.largo("metricas.consultaLentaMs", lentaMs);
+            guardadas = cfg.entero("metricas.consultasLentas", guardadas);
+        } catch (SQLException | IllegalArgumentException e) {
+            logger.log(Level.WARNING, "Se usa la configuracion de metricas por defecto", e);
+        }
+        activas = activo;
+        volcadoMinutos = minutos;
+        conJmx = jmx;
+        consultaLentaNanos = TimeUnit.MILLISECONDS.toNanos(lentaMs);
+        lentas = new ConsultaLenta[Math.max(1, guardadas)];
+
+        if (activas) {
+            Thread volcador = new Thread(Metricas::volcarEnFondo, "metricas");
+            volcador.setDaemon(true);
+            volcador.start();
+            ConexionBD.registrarAntesDeCerrar(Metricas::volcar);
+        }
+    }
+
+    private Metricas() {
+    }
+
+    /**
+     * Empieza a medir una operacion
+     * @param nombre nombre de la operacion, por convencion "area.accion"
+     * @return Medicion que se cierra al terminar
+     */
+    public static Medicion medir(String nombre) {
+        return new Medicion(nombre);
+    }
+
+    /**
+     * Trabajo medido por {@link #medir(String, Tarea)}
+     * @param <T> resultado
+     * @param <E> excepcion que puede lanzar
+     */
+    @FunctionalInterface
+    public interface Tarea<T, E extends Exception> {
+        T ejecutar() throws E;
+    }
+
+    /**
+     * Mide una tarea que termina en el mismo hilo; si lanza una excepcion
+     * se cuenta como error
+     * @param nombre nombre de la operacion, por convencion "area.accion"
+     * @param tarea trabajo a medir
+     * @return lo que devuelve la tarea
+     * @throws E la excepcion de la tarea
+     */
+    public static <T, E extends Exception> T medir(String nombre, Tarea<T, E> tarea) throws E {
+        Medicion medicion = medir(nombre);
+        try {
+            return tarea.ejecutar();
+        } catch (Exception | Error e) {
+            medicion.fallo();
+            throw e;
+        } finally {
+            medicion.close();
+        }
+    }
+
+    /**
+     * Suma una duracion ya medida
+     * @param nombre nombre de la operacion
+     * @param nanos duracion en nanosegundos
+     * @param fallo si la operacion termino en error
+     */
+    public static void registrar(String nombre, long nanos, boolean fallo) {
+        if (activas) {
+            operacion(nombre).registrar(nanos, fallo);
+        }
+    }
+
+    /**
+     * Suma uno a un contador
+     * @param nombre nombre del contador
+     */
+    public static void contar(String nombre) {
+        contar(nombre, 1);
+    }
+
+    /**
+     * Suma a un contador
+     * @param nombre nombre del contador
+     * @param cantidad cantidad a sumar
+     */
+    public static void contar(String nombre, long cantidad) {
+        if (activas) {
+            contadores.computeIfAbsent(nombre, n -> new LongAdder()).add(cantidad);
+        }
+    }
+
+    /**
+     * Suma la ejecucion de una sentencia SQL a "sql.&lt;nombre&gt;" y la anota
+     * si fue lenta
+     * @param nombre nombre de la consulta, o "directa" si no tiene
+     * @param sql texto de la sentencia
+     * @param nanos duracion en nanosegundos
+     * @param fallo si la sentencia lanzo una excepcion
+     */
+    public static void sentencia(String nombre, String sql, long nanos, boolean fallo) {
+        if (!activas) {
+            return;
+        }
+        operacion("sql." + nombre).registrar(nanos, fallo);
+        if (nanos >= consultaLentaNanos) {
+            ConsultaLenta lenta = new ConsultaLenta(LocalDateTime.now(), nombre, sql, nanos / 1_000_000.0,
+                    Thread.currentThread().getName());
+            synchronized (lentas) {
+                lentas[siguienteLenta] = lenta;
+                siguienteLenta = (siguienteLenta + 1) % lentas.length;
+                totalLentas++;
+            }
+            logger.warning("Consulta lenta: " + lenta);
+        }
+    }
+
+    /**
+     * Ultimas consultas lentas, de la mas antigua a la mas reciente
+     * @return lista de ConsultaLenta
+     */
+    public static List<ConsultaLenta> getConsultasLentas() {
+        List<ConsultaLenta> lista = new ArrayList<>(lentas.length);
+        synchronized (lentas) {
+            for (int i = 0; i < lentas.length; i++) {
+                ConsultaLenta lenta = lentas[(siguienteLenta + i) % lentas.length];
+                if (lenta != null) {
+                    lista.add(lenta);
+                }
+            }
+        }
+        return lista;
+    }
+
+    /**
+     * Valores actuales de los contadores, por nombre
+     * @return mapa ordenado por nombre
+     */
+    public static Map<String, Long> getContadores() {
+        Map<String, Long> valores = new TreeMap<>();
+        contadores.forEach((nombre, contador) -> valores.put(nombre, contador.sum()));
+        return valores;
+    }
+
+    /**
+     * Escribe en el registro, por operacion, lo medido desde el volcado
+     * anterior, y los contadores acumulados
+     */
+    public static void volcar() {
+        List<String> lineas = new ArrayList<>();
+        for (Operacion op : new TreeMap<>(operaciones).values()) {
+            String linea = op.volcar();
+            if (linea != null) {
+                lineas.add(linea);
+            }
+        }
+        if (lineas.isEmpty()) {
+            return;
+        }
+        StringBuilder texto = new StringBuilder("Metricas:");
+        for (String linea : lineas) {
+            texto.append("\n  ").append(linea);
+        }
+        Map<String, Long> valores = getContadores();
+        if (!valores.isEmpty()) {
+            texto.append("\n  contadores: ").append(valores);
+        }
+        long lentasHastaAhora;
+        synchronized (lentas) {
+            lentasHastaAhora = totalLentas;
+        }
+        if (lentasHastaAhora > 0) {
+            texto.append("\n  consultas lentas: ").append(lentasHastaAhora);
+        }
+        logger.info(texto.toString());
+    }
+
+    private static Operacion operacion(String nombre) {
+        Operacion op = operaciones.get(nombre);
+        if (op == null) {
+            Operacion nueva = new Operacion(nombre);
+            op = operaciones.putIfAbsent(nombre, nueva);
+            if (op == null) {
+                op = nueva;
+                publicar(nueva);
+            }
+        }
+        return op;
+    }
+
+    private static void volcarEnFondo() {
+        if (conJmx) {
+            try {
+                MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+                mbs.registerMBean(new Vista(), new ObjectName(DOMINIO + ":type=Metricas"));
+                servidor = mbs;
+                // Las que se crearon antes de tener servidor
+                operaciones.values().forEach(Metricas::publicar);
+            } catch (JMException | RuntimeException e) {
+                logger.log(Level.WARNING, "No se pudieron publicar las metricas por JMX", e);
+            }
+        }
+        if (volcadoMinutos <= 0) {
+            return;
+        }
+        while (true) {
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(volcadoMinutos));
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                volcar();
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "No se pudieron volcar las metricas", e);
+            }
+        }
+    }
+
+    private static void publicar(Operacion op) {
+        MBeanServer mbs = servidor;
+        if (mbs == null) {
+            return;
+        }
+        try {
+            mbs.registerMBean(op, new ObjectName(DOMINIO + ":type=Operacion,name=" + ObjectName.quote(op.getNombre())));
+        } catch (InstanceAlreadyExistsException e) {
+            // La publico el otro hilo
+        } catch (JMException | RuntimeException e) {
+            logger.log(Level.FINE, "No se pudo publicar " + op.getNombre() + " por JMX", e);
+        }
+    }
+
+    // Implementacion de MetricasMXBean sobre los campos static
+    private static class Vista implements MetricasMXBean {
+
+        @Override
+        public Map<String, Long> getContadores() {
+            return Metricas.getContadores();
+        }
+
+        @Override
+        public List<String> getConsultasLentas() {
+            List<String> textos = new ArrayList<>();
+            for (ConsultaLenta lenta : Metricas.getConsultasLentas()) {
+                textos.add(lenta.toString());
+            }
+            return textos;
+        }
+
+        @Override
+        public long getConsultaLentaMs() {
+            return TimeUnit.NANOSECONDS.toMillis(consultaLentaNanos);
+        }
+
+        @Override
+        public void setConsultaLentaMs(long ms) {
+            consultaLentaNanos = TimeUnit.MILLISECONDS.toNanos(ms);
+        }
+
+        @Override
+        public void volcar() {
+            Metricas.volcar();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package metricas;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Vista JMX del conjunto de metricas, publicada como vistaalmar:type=Metricas
+ *
+ * @author franc
+ */
+public interface MetricasMXBean {
+
+    Map<String, Long> getContadores();
+
+    List<String> getConsultasLentas();
+
+    long getConsultaLentaMs();
+
+    void setConsultaLentaMs(long ms);
+
+    /**
+     * Escribe en el registro lo medido desde el volcado anterior
+     */
+    void volcar();
+}
@@ -0,0 +1,94 @@
+package metricas;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tiempos y errores de una operacion con nombre, por ejemplo
+ * "venta.buscar" o "sql.deudores.saldo".
+ *
+ * @author franc
+ */
+final class Operacion implements OperacionMXBean {
+
+    private final String nombre;
+    private final Histograma tiempos = new Histograma();
+    private final LongAdder errores = new LongAdder();
+
+    // Lo que ya se escribio en el registro; solo lo toca quien vuelca
+    private Histograma.Foto volcada = Histograma.vacia();
+    private long erroresVolcados;
+
+    Operacion(String nombre) {
+        this.nombre = nombre;
+    }
+
+    String getNombre() {
+        return nombre;
+    }
+
+    void registrar(long nanos, boolean fallo) {
+        tiempos.registrar(nanos);
+        if (fallo) {
+            errores.increment();
+        }
+    }
+
+    /**
+     * Resumen de lo medido desde el volcado anterior
+     * @return linea para el registro, o null si no hubo mediciones
+     */
+    synchronized String volcar() {
+        Histograma.Foto actual = tiempos.foto();
+        Histograma.Foto intervalo = actual.menos(volcada);
+        long erroresActuales = errores.sum();
+        long erroresIntervalo = erroresActuales - erroresVolcados;
+        volcada = actual;
+        erroresVolcados = erroresActuales;
+        if (intervalo.total() == 0) {
+            return null;
+        }
+        return String.format("%s: n=%d errores=%d prom=%.2fms p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms",
+                nombre, intervalo.total(), erroresIntervalo, intervalo.promedioMs(), intervalo.percentilMs(50),
+                intervalo.percentilMs(90), intervalo.percentilMs(99), intervalo.maximoMs());
+    }
+
+    @Override
+    public long getCuenta() {
+        return tiempos.foto().total();
+    }
+
+    @Override
+    public long getErrores() {
+        return errores.sum();
+    }
+
+    @Override
+    public double getPromedioMs() {
+        return tiempos.foto().promedioMs();
+    }
+
+    @Override
+    public double getP50Ms() {
+        return tiempos.foto().percentilMs(50);
+    }
+
+    @Override
+    public double getP90Ms() {
+        return tiempos.foto().percentilMs(90);
+    }
+
+    @Override
+    public double getP99Ms() {
+        return tiempos.foto().percentilMs(99);
+    }
+
+    @Override
+    public double getP999Ms() {
+        return tiempos.foto().percentilMs(99.9);
+    }
+
+    @Override
+    public double getMaximoMs() {
+        return tiempos.foto().maximoMs();
+    }
+}
@@ -0,0 +1,27 @@
+package metricas;
+
+/**
+ * Vista JMX de una operacion medida. Cada operacion se publica como
+ * vistaalmar:type=Operacion,name=&lt;nombre&gt;; los valores son acumulados
+ * desde que se abrio la aplicacion.
+ *
+ * @author franc
+ */
+public interface OperacionMXBean {
+
+    long getCuenta();
+
+    long getErrores();
+
+    double getPromedioMs();
+
+    double getP50Ms();
+
+    double getP90Ms();
+
+    double getP99Ms();
+
+    double getP999Ms();
+
+    double getMaximoMs();
+}
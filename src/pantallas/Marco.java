@@ -0,0 +1,212 @@
+package pantallas;
+
+import java.awt.Container;
+import java.awt.Frame;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.awt.event.WindowListener;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import javax.swing.JFrame;
+import javax.swing.JPanel;
+import javax.swing.RootPaneContainer;
+import javax.swing.WindowConstants;
+import metricas.Metricas;
+
+/**
+ * Ventana unica de la sesion. Las pantallas principales se muestran dentro
+ * de ella en vez de abrir y cerrar un JFrame por cada boton.
+ * <p>
+ * Cada pantalla sigue siendo el formulario de NetBeans de siempre, pero su
+ * frame nunca se hace visible: el marco toma su contenido (el content pane
+ * de un JFrame, o el panel unico de un Frame de AWT) y lo pone en la
+ * ventana. Hay dos tipos:
+ * <ul>
+ * <li>{@link #mostrar}: la pantalla se crea la primera vez y queda guardada
+ * por clase hasta {@link #cerrarSesion()}; volver a ella no reconstruye el
+ * formulario ni vuelve a consultar lo que ya tenia. Si implementa
+ * {@link Pantalla} se le avisa al ocultarse y al volver.</li>
+ * <li>{@link #abrir}: pantalla de un solo uso (por ejemplo la compra de una
+ * factura); se cierra con dispose() cuando otra la reemplaza.</li>
+ * </ul>
+ * Las ventanas que no estan en el marco (formularios de alta y edicion,
+ * historiales) siguen abriendose aparte: quien las abre llama antes a
+ * {@link #ocultar()}, y ellas vuelven con {@link #mostrar}.
+ * <p>
+ * Solo desde el EDT.
+ *
+ * @author franc
+ */
+public final class Marco {
+
+    private static final Map<Class<?>, Frame> guardadas = new LinkedHashMap<>();
+    // El contenido sale del frame al pasarlo a la ventana, asi que se recuerda aqui
+    private static final Map<Frame, Container> contenidos = new HashMap<>();
+    private static JFrame ventana;
+    private static Frame actual;
+    private static Frame deUnUso;
+
+    // Refleja en la ventana los setTitle que la pantalla actual hace sobre su propio frame
+    private static final PropertyChangeListener titulo = e -> {
+        if (e.getSource() == actual) {
+            ventana.setTitle((String) e.getNewValue());
+        }
+    };
+
+    private Marco() {
+    }
+
+    /**
+     * Muestra la pantalla guardada de una clase, o la crea si es la primera
+     * vez en la sesion
+     * @param <T> clase de la pantalla
+     * @param tipo clase de la pantalla
+     * @param crear constructor con el usuario y los permisos de la sesion
+     * @return la pantalla que quedo a la vista
+     */
+    public static <T extends Frame> T mostrar(Class<T> tipo, Supplier<T> crear) {
+        return Metricas.medir("pantalla." + tipo.getSimpleName(), () -> {
+            Frame pantalla = guardadas.get(tipo);
+            boolean nueva = pantalla == null || !pantalla.isDisplayable();
+            if (nueva) {
+                if (pantalla != null) {
+                    contenidos.remove(pantalla);
+                }
+                pantalla = crear.get();
+                pantalla.addPropertyChangeListener("title", titulo);
+                guardadas.put(tipo, pantalla);
+            }
+            if (pantalla != actual || !ventana.isVisible()) {
+                poner(pantalla);
+                if (!nueva && pantalla instanceof Pantalla p) {
+                    p.alMostrar();
+                }
+            }
+            ventana.setVisible(true);
+            return tipo.cast(pantalla);
+        });
+    }
+
+    /**
+     * Muestra una pantalla que no se guarda; se cierra al reemplazarla
+     * @param pantalla formulario recien creado
+     */
+    public static void abrir(Frame pantalla) {
+        pantalla.addPropertyChangeListener("title", titulo);
+        poner(pantalla);
+        deUnUso = pantalla;
+        ventana.setVisible(true);
+    }
+
+    /**
+     * Oculta la ventana para abrir otra aparte. La pantalla actual queda
+     * guardada y se le avisa con {@link Pantalla#alOcultar()}.
+     */
+    public static void ocultar() {
+        dejar();
+        if (ventana != null) {
+            ventana.setVisible(false);
+        }
+    }
+
+    /**
+     * Descarta todas las pantallas guardadas (cada una con su dispose()) y
+     * oculta la ventana. Se llama al cerrar sesion y antes de entrar con otro
+     * usuario.
+     */
+    public static void cerrarSesion() {
+        ocultar();
+        if (ventana != null) {
+            ventana.setContentPane(new JPanel());
+        }
+        List<Frame> pantallas = new ArrayList<>(guardadas.values());
+        guardadas.clear();
+        for (Frame pantalla : pantallas) {
+            descartar(pantalla);
+        }
+    }
+
+    /**
+     * @param pantalla pantalla a consultar
+     * @return true si es la que esta a la vista en la ventana
+     */
+    public static boolean esActual(Frame pantalla) {
+        return pantalla == actual && ventana != null && ventana.isVisible();
+    }
+
+    private static void poner(Frame pantalla) {
+        if (ventana == null) {
+            crearVentana();
+        }
+        if (pantalla != actual) {
+            dejar();
+        }
+        actual = pantalla;
+        ventana.setContentPane(contenido(pantalla));
+        ventana.setTitle(pantalla.getTitle());
+        ventana.setIconImages(pantalla.getIconImages());
+        ventana.setResizable(pantalla.isResizable());
+        ventana.pack();
+        ventana.setLocationRelativeTo(null);
+    }
+
+    // Saca de la vista la pantalla actual
+    private static void dejar() {
+        Frame anterior = actual;
+        actual = null;
+        if (anterior == null) {
+            return;
+        }
+        if (anterior == deUnUso) {
+            deUnUso = null;
+            descartar(anterior);
+        } else if (anterior instanceof Pantalla p) {
+            p.alOcultar();
+        }
+    }
+
+    private static Container contenido(Frame pantalla) {
+        return contenidos.computeIfAbsent(pantalla, p -> p instanceof RootPaneContainer contenedor
+                ? contenedor.getContentPane()
+                // Frame de AWT de NetBeans: un solo panel que ocupa todo el frame
+                : (Container) p.getComponent(0));
+    }
+
+    private static void descartar(Frame pantalla) {
+        pantalla.removePropertyChangeListener("title", titulo);
+        contenidos.remove(pantalla);
+        pantalla.dispose();
+    }
+
+    private static void crearVentana() {
+        ventana = new JFrame();
+        ventana.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
+        ventana.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                cerrarVentana();
+            }
+        });
+    }
+
+    /**
+     * La X de la ventana hace lo que hacia la X del frame de la pantalla
+     * actual: registrar la salida y terminar
+     */
+    private static void cerrarVentana() {
+        Frame pantalla = actual;
+        WindowListener[] oyentes = pantalla == null ? new WindowListener[0] : pantalla.getWindowListeners();
+        if (oyentes.length == 0) {
+            System.exit(0);
+        }
+        WindowEvent cierre = new WindowEvent(pantalla, WindowEvent.WINDOW_CLOSING);
+        for (WindowListener oyente : oyentes) {
+            oyente.windowClosing(cierre);
+        }
+    }
+}
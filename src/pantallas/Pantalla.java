@@ -0,0 +1,29 @@
+package pantallas;
+
+/**
+ * Pantalla que {@link Marco} guarda en memoria entre visitas.
+ * <p>
+ * La pantalla se construye una sola vez por sesion y conserva lo que tenia
+ * (el carro, los filtros, la tabla cargada). Mientras esta oculta no debe
+ * retener una conexion del pool: la devuelve en {@link #alOcultar()} y pide
+ * otra en {@link #alMostrar()}, que sale de una conexion fisica ya abierta
+ * y con sus sentencias preparadas.
+ *
+ * @author franc
+ */
+public interface Pantalla {
+
+    /**
+     * Se llama cada vez que la pantalla vuelve a mostrarse, no la primera.
+     * Es el lugar para recargar solo lo que pudo cambiar mientras estuvo
+     * oculta.
+     */
+    default void alMostrar() {
+    }
+
+    /**
+     * Se llama cuando otra pantalla la reemplaza o el marco se oculta
+     */
+    default void alOcultar() {
+    }
+}
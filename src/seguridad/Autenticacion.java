@@ -0,0 +1,371 @@
+package seguridad;
+
+import datos.ConexionBD;
+import datos.ConfiguracionBD;
+import datos.Consulta;
+import datos.Consultas;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+import metricas.Medicion;
+import metricas.Metricas;
+
+/**
+ * Verificacion de contrasenas fuera del EDT.
+ * <p>
+ * Cada BCrypt.checkpw cuesta del orden de cien milisegundos de CPU a
+ * proposito, asi que las verificaciones corren en auth.hilos hilos con una
+ * cola de auth.cola pedidos; lo que no cabe se rechaza de inmediato en vez
+ * de acumularse. Por RUT se cuentan los intentos fallidos: despues de
+ * auth.intentos seguidos el RUT queda bloqueado auth.bloqueoSeg segundos, y
+ * el bloqueo se duplica con cada fallo siguiente. Un RUT bloqueado se
+ * responde sin calcular nada, y un RUT que no existe cuesta lo mismo que
+ * uno que existe, para no delatar cuales son validos: se compara contra un
+ * hash ficticio con el menor costo guardado en usuarios, que es el de los
+ * hashes antiguos mientras quede alguno.
+ * <p>
+ * El costo de BCrypt (log2 de las rondas) se calibra al iniciar en esta
+ * caja: el mayor que deja una verificacion bajo auth.objetivoMs, nunca
+ * menos de auth.costoMinimo. auth.costo lo fija a mano. Cuando una
+ * contrasena correcta esta guardada con un costo menor, despues del login
+ * se vuelve a cifrar con el actual y se actualiza en usuarios. Las
+ * contrasenas nuevas tambien se cifran en los hilos de verificacion.
+ *
+ * @author franc
+ */
+public final class Autenticacion {
+
+    private static final Logger logger = Logger.getLogger(Autenticacion.class.getName());
+
+    private static final Consulta CAMBIAR_HASH = Consultas.registrar("usuarios.recifrar",
+            "UPDATE usuarios SET password = ? WHERE rutUsuario = ? AND password = ?");
+
+    // Hashes $2a$NN$...: el costo son los caracteres 5 y 6
+    private static final Consulta COSTO_GUARDADO = Consultas.registrar("usuarios.costoMinimo",
+            "SELECT MIN(CAST(SUBSTRING(password, 5, 2) AS UNSIGNED)) FROM usuarios WHERE password LIKE '$2_$__$%'");
+
+    private static final int COSTO_POR_DEFECTO = 10;
+    private static final long BLOQUEO_MAXIMO_SEG = TimeUnit.MINUTES.toSeconds(15);
+    // Sobre este numero de RUT con fallos se descartan los que ya no estan bloqueados
+    private static final int MAXIMO_RUT_VIGILADOS = 1000;
+
+    /**
+     * Resultado de una verificacion
+     */
+    public enum Estado {
+        ACEPTADA, RECHAZADA, BLOQUEADA, OCUPADA
+    }
+
+    /**
+     * @param estado resultado
+     * @param esperaSeg si esta BLOQUEADA, segundos que faltan para poder reintentar
+     */
+    public record Respuesta(Estado estado, long esperaSeg) {
+
+        public boolean aceptada() {
+            return estado == Estado.ACEPTADA;
+        }
+
+        /**
+         * @return mensaje para el cajero, o null si fue aceptada
+         */
+        public String mensaje() {
+            return switch (estado) {
+                case ACEPTADA -> null;
+                case RECHAZADA -> "Error de Credenciales";
+                case BLOQUEADA -> "Demasiados intentos fallidos. Intente de nuevo en " + esperaSeg + " segundos.";
+                case OCUPADA -> "Hay otras verificaciones en curso. Intente de nuevo en un momento.";
+            };
+        }
+    }
+
+    // Fallos seguidos de un RUT; se modifica con el candado del objeto
+    private static final class Intentos {
+        int fallidos;
+        long bloqueadoHasta;
+    }
+
+    private static final Map<Integer, Intentos> intentos = new ConcurrentHashMap<>();
+
+    private static final ThreadPoolExecutor verificadores;
+    private static final int maximoIntentos;
+    private static final long bloqueoSeg;
+    private static final long objetivoMs;
+    private static final int costoMinimo;
+    private static final int costoMaximo;
+    private static final boolean calibrar;
+    private static volatile int costo;
+    private static volatile String hashFicticio;
+    private static volatile int costoFicticio;
+    private static volatile boolean iniciado;
+
+    static {
+        int hilos = 2;
+        int cola = 8;
+        int maximo = 5;
+        long bloqueo = 30;
+        long objetivo = 250;
+        int minimo = COSTO_POR_DEFECTO;
+        int maximoCosto = 16;
+        int fijo = 0;
+        try {
+            ConfiguracionBD cfg = ConexionBD.getConfiguracion();
+            hilos = cfg.entero("auth.hilos", hilos);
+            cola = cfg.entero("auth.cola", cola);
+            maximo = cfg.entero("auth.intentos", maximo);
+            bloqueo = cfg.largo("auth.bloqueoSeg", bloqueo);
+            objetivo = cfg.largo("auth.objetivoMs", objetivo);
+            minimo = cfg.entero("auth.costoMinimo", minimo);
+            maximoCosto = cfg.entero("auth.costoMaximo", maximoCosto);
+            fijo = cfg.entero("auth.costo", fijo);
+        } catch (SQLException | IllegalArgumentException e) {
+            logger.log(Level.WARNING, "Se usa la configuracion de autenticacion por defecto", e);
+        }
+        maximoIntentos = Math.max(1, maximo);
+        bloqueoSeg = Math.max(1, bloqueo);
+        objetivoMs = Math.max(1, objetivo);
+        costoMinimo = Math.max(4, minimo);
+        costoMaximo = Math.min(30, Math.max(costoMinimo, maximoCosto));
+        costo = fijo > 0 ? Math.min(30, Math.max(4, fijo)) : Math.max(costoMinimo, COSTO_POR_DEFECTO);
+
+        verificadores = new ThreadPoolExecutor(Math.max(1, hilos), Math.max(1, hilos), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, cola)),
+                Thread.ofPlatform().name("autenticacion-", 0).daemon().factory());
+        calibrar = fijo <= 0;
+    }
+
+    private Autenticacion() {
+    }
+
+    /**
+     * Encarga a los verificadores la calibracion y el hash ficticio, una sola
+     * vez. Se llama al abrir el login, asi corre mientras el cajero escribe
+     * su contrasena; verificar y cifrar lo llaman por si no se hizo.
+     */
+    public static void iniciar() {
+        if (iniciado) {
+            return;
+        }
+        synchronized (Autenticacion.class) {
+            if (!iniciado) {
+                // La cola esta vacia al abrir el login; si no cabe se intenta en la proxima llamada
+                verificadores.execute(() -> preparar(calibrar));
+                iniciado = true;
+            }
+        }
+    }
+
+    /**
+     * Verifica una contrasena en segundo plano. Solo desde el EDT.
+     * @param rut rutUsuario de la fila encontrada, o el RUT ingresado si no
+     *        se encontro ninguna; los intentos se cuentan por su valor absoluto
+     * @param clave contrasena ingresada
+     * @param hash password guardado, o null si el usuario no existe
+     * @param alTerminar recibe la respuesta en el EDT
+     */
+    public static void verificar(int rut, String clave, String hash, Consumer<Respuesta> alTerminar) {
+        long espera = esperaBloqueo(rut);
+        if (espera > 0) {
+            Metricas.contar("auth.bloqueada");
+            alTerminar.accept(new Respuesta(Estado.BLOQUEADA, espera));
+            return;
+        }
+        try {
+            iniciar();
+            verificadores.execute(() -> {
+                boolean correcta = Metricas.medir("auth.verificar", () -> comprobar(clave, hash));
+                Respuesta respuesta = anotar(rut, correcta);
+                SwingUtilities.invokeLater(() -> alTerminar.accept(respuesta));
+                if (correcta && costoDe(hash) < costo && recifrar(rut, clave, hash)) {
+                    prepararFicticio();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Metricas.contar("auth.ocupada");
+            alTerminar.accept(new Respuesta(Estado.OCUPADA, 0));
+        }
+    }
+
+    /**
+     * Cifra una contrasena nueva con el costo calibrado, en segundo plano.
+     * Solo desde el EDT.
+     * @param clave contrasena en texto plano
+     * @param alTerminar recibe en el EDT el hash para guardar en
+     *        usuarios.password, o null si los verificadores estan ocupados
+     */
+    public static void cifrar(String clave, Consumer<String> alTerminar) {
+        try {
+            iniciar();
+            verificadores.execute(() -> {
+                String hash = Metricas.medir("auth.cifrar", () -> cifrar(clave));
+                SwingUtilities.invokeLater(() -> alTerminar.accept(hash));
+            });
+        } catch (RejectedExecutionException e) {
+            Metricas.contar("auth.ocupada");
+            alTerminar.accept(null);
+        }
+    }
+
+    /**
+     * @return log2 de las rondas con que se cifran las contrasenas nuevas
+     */
+    public static int getCosto() {
+        return costo;
+    }
+
+    private static String cifrar(String clave) {
+        return BCrypt.hashpw(clave, BCrypt.gensalt(costo));
+    }
+
+    private static boolean comprobar(String clave, String hash) {
+        if (hash == null || costoDe(hash) < 0) {
+            // Mismo trabajo que con un usuario real; antes de calibrar basta con cifrar la clave
+            String ficticio = hashFicticio;
+            if (ficticio != null) {
+                BCrypt.checkpw(clave, ficticio);
+            } else {
+                cifrar(clave);
+            }
+            return false;
+        }
+        try {
+            return BCrypt.checkpw(clave, hash);
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.WARNING, "Hash de contrasena invalido en usuarios", e);
+            return false;
+        }
+    }
+
+    private static long esperaBloqueo(int rut) {
+        Intentos i = intentos.get(Math.abs(rut));
+        if (i == null) {
+            return 0;
+        }
+        synchronized (i) {
+            long restante = i.bloqueadoHasta - System.currentTimeMillis();
+            return restante <= 0 ? 0 : TimeUnit.MILLISECONDS.toSeconds(restante + 999);
+        }
+    }
+
+    private static Respuesta anotar(int rut, boolean correcta) {
+        Integer clave = Math.abs(rut);
+        if (correcta) {
+            intentos.remove(clave);
+            return new Respuesta(Estado.ACEPTADA, 0);
+        }
+        if (intentos.size() > MAXIMO_RUT_VIGILADOS) {
+            long ahora = System.currentTimeMillis();
+            intentos.values().removeIf(i -> {
+                synchronized (i) {
+                    return i.bloqueadoHasta < ahora;
+                }
+            });
+        }
+        Intentos i = intentos.computeIfAbsent(clave, r -> new Intentos());
+        synchronized (i) {
+            i.fallidos++;
+            if (i.fallidos >= maximoIntentos) {
+                int exceso = Math.min(i.fallidos - maximoIntentos, 20);
+                long segundos = Math.min(BLOQUEO_MAXIMO_SEG, bloqueoSeg << exceso);
+                i.bloqueadoHasta = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(segundos);
+                Metricas.contar("auth.bloqueos");
+                logger.warning("RUT " + clave + " bloqueado " + segundos + " s tras " + i.fallidos + " intentos fallidos");
+            }
+        }
+        return new Respuesta(Estado.RECHAZADA, 0);
+    }
+
+    // Costo de un hash $2a$NN$..., o -1 si no tiene ese formato
+    private static int costoDe(String hash) {
+        if (hash == null || !hash.startsWith("$2")) {
+            return -1;
+        }
+        int inicio = hash.charAt(2) == '$' ? 3 : 4;
+        if (hash.length() < inicio + 3 || hash.charAt(inicio + 2) != '$') {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(hash.substring(inicio, inicio + 2));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return si se actualizo el hash guardado
+     */
+    private static boolean recifrar(int rut, String clave, String hashAnterior) {
+        Medicion medicion = Metricas.medir("auth.recifrar");
+        try (Connection conn = ConexionBD.getConnection();
+             PreparedStatement pst = CAMBIAR_HASH.preparar(conn)) {
+            pst.setString(1, cifrar(clave));
+            pst.setInt(2, rut);
+            pst.setString(3, hashAnterior);
+            if (pst.executeUpdate() == 1) {
+                logger.info("Contrasena del usuario " + rut + " recifrada con costo " + costo);
+                return true;
+            }
+        } catch (SQLException e) {
+            medicion.fallo();
+            logger.log(Level.WARNING, "No se pudo recifrar la contrasena del usuario " + rut, e);
+        } finally {
+            medicion.close();
+        }
+        return false;
+    }
+
+    /**
+     * Primera tarea de los verificadores: mide BCrypt en esta caja y deja
+     * listo el hash para los usuarios que no existen
+     */
+    private static void preparar(boolean calibrar) {
+        // La primera corrida paga la carga de clases y el JIT; no se mide
+        BCrypt.hashpw("calibracion", BCrypt.gensalt(4));
+        if (calibrar) {
+            long inicio = System.nanoTime();
+            BCrypt.hashpw("calibracion", BCrypt.gensalt(COSTO_POR_DEFECTO));
+            double ms = Math.max(0.001, (System.nanoTime() - inicio) / 1_000_000.0);
+            // Cada punto de costo duplica el trabajo
+            int calibrado = COSTO_POR_DEFECTO + (int) Math.floor(Math.log(objetivoMs / ms) / Math.log(2));
+            costo = Math.max(costoMinimo, Math.min(costoMaximo, calibrado));
+            logger.info(String.format("Costo de BCrypt calibrado en %d (costo %d tarda %.0f ms en esta caja, objetivo %d ms)",
+                    costo, COSTO_POR_DEFECTO, ms, objetivoMs));
+        }
+        prepararFicticio();
+    }
+
+    /**
+     * Rehace el hash ficticio si cambio el menor costo guardado en usuarios.
+     * Sin hashes guardados se usa el costo actual; si no se puede leer, el
+     * costo por defecto, que es el de los hashes antiguos.
+     */
+    private static void prepararFicticio() {
+        int guardado = costo;
+        try (Connection conn = ConexionBD.getConnection();
+             PreparedStatement pst = COSTO_GUARDADO.preparar(conn);
+             ResultSet rs = pst.executeQuery()) {
+            if (rs.next() && rs.getInt(1) > 0) {
+                guardado = rs.getInt(1);
+            }
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "No se pudo leer el costo de las contrasenas guardadas", e);
+            guardado = COSTO_POR_DEFECTO;
+        }
+        guardado = Math.min(30, Math.max(4, guardado));
+        if (hashFicticio == null || guardado != costoFicticio) {
+            hashFicticio = BCrypt.hashpw("usuario inexistente", BCrypt.gensalt(guardado));
+            costoFicticio = guardado;
+        }
+    }
+}
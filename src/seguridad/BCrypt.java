@@ -14,8 +14,8 @@
 
 package seguridad;
 
-import java.io.UnsupportedEncodingException;
 import java.security.SecureRandom;
+import java.util.Arrays;
 
 /**
  * BCrypt implements OpenBSD-style Blowfish password hashing using
@@ -56,6 +56,13 @@ import java.security.SecureRandom;
  * The amount of work increases exponentially (2**log_rounds), so 
  * each increment is twice as much work. The default log_rounds is
  * 10, and the valid range is 4 to 30.
+ * <p>
+ * hashpw() and checkpw() run on an engine kept per thread: the
+ * key schedule, salt, password and output buffers are allocated
+ * once and reset for each hash, the salt and hash are encoded
+ * straight into a char array, and checkpw() compares it with the
+ * stored hash in constant time without building a String. The
+ * hashes are the same as those of jBCrypt 0.2.
  *
  * @author Damien Miller
  * @version 0.2
@@ -374,6 +381,21 @@ public class BCrypt {
 	private int P[];
 	private int S[];
 
+	// Engine of the static methods, one per thread so that the key
+	// schedule and the buffers below are allocated once and reused
+	private static final ThreadLocal<BCrypt> engines =
+	    ThreadLocal.withInitial(BCrypt::new);
+
+	// Working buffers of the engine
+	private final int lr[] = new int[2];
+	private final int cdata[] = new int[bf_crypt_ciphertext.length];
+	private final int key_words[] = new int[BLOWFISH_NUM_ROUNDS + 2];
+	private final int salt_words[] = new int[BLOWFISH_NUM_ROUNDS + 2];
+	private final byte saltb[] = new byte[BCRYPT_SALT_LEN];
+	private final byte hashb[] = new byte[bf_crypt_ciphertext.length * 4];
+	private final char encoded[] = new char[60];
+	private byte passwordb[] = new byte[64];
+
 	/**
 	 * Encode a byte array using bcrypt's slightly-modified base64
 	 * encoding scheme. Note that this is *not* compatible with
@@ -381,13 +403,14 @@ public class BCrypt {
 	 *
 	 * @param d	the byte array to encode
 	 * @param len	the number of bytes to encode
-	 * @return	base64-encoded string
+	 * @param rs	the array to write the encoded characters to
+	 * @param pos	the position in rs of the first character
+	 * @return	the position in rs after the last character
 	 * @exception IllegalArgumentException if the length is invalid
 	 */
-	private static String encode_base64(byte d[], int len)
+	private static int encode_base64(byte d[], int len, char rs[], int pos)
 		throws IllegalArgumentException {
 		int off = 0;
-		StringBuffer rs = new StringBuffer();
 		int c1, c2;
 
 		if (len <= 0 || len > d.length)
@@ -395,26 +418,26 @@ public class BCrypt {
 
 		while (off < len) {
 			c1 = d[off++] & 0xff;
-			rs.append(base64_code[(c1 >> 2) & 0x3f]);
+			rs[pos++] = base64_code[(c1 >> 2) & 0x3f];
 			c1 = (c1 & 0x03) << 4;
 			if (off >= len) {
-				rs.append(base64_code[c1 & 0x3f]);
+				rs[pos++] = base64_code[c1 & 0x3f];
 				break;
 			}
 			c2 = d[off++] & 0xff;
 			c1 |= (c2 >> 4) & 0x0f;
-			rs.append(base64_code[c1 & 0x3f]);
+			rs[pos++] = base64_code[c1 & 0x3f];
 			c1 = (c2 & 0x0f) << 2;
 			if (off >= len) {
-				rs.append(base64_code[c1 & 0x3f]);
+				rs[pos++] = base64_code[c1 & 0x3f];
 				break;
 			}
 			c2 = d[off++] & 0xff;
 			c1 |= (c2 >> 6) & 0x03;
-			rs.append(base64_code[c1 & 0x3f]);
-			rs.append(base64_code[c2 & 0x3f]);
+			rs[pos++] = base64_code[c1 & 0x3f];
+			rs[pos++] = base64_code[c2 & 0x3f];
 		}
-		return rs.toString();
+		return pos;
 	}
 
 	/**
@@ -430,24 +453,21 @@ public class BCrypt {
 	}
 
 	/**
-	 * Decode a string encoded using bcrypt's base64 scheme to a
-	 * byte array. Note that this is *not* compatible with
+	 * Decode part of a string encoded using bcrypt's base64 scheme
+	 * into a byte array. Note that this is *not* compatible with
 	 * the standard MIME-base64 encoding.
 	 * @param s	the string to decode
-	 * @param maxolen	the maximum number of bytes to decode
-	 * @return	an array containing the decoded bytes
-	 * @throws IllegalArgumentException if maxolen is invalid
+	 * @param off	the position in s of the first character
+	 * @param slen	the position in s after the last character
+	 * @param ret	the array to decode into; at most ret.length
+	 * bytes are decoded
+	 * @return	the number of bytes decoded
 	 */
-	private static byte[] decode_base64(String s, int maxolen)
-		throws IllegalArgumentException {
-		StringBuffer rs = new StringBuffer();
-		int off = 0, slen = s.length(), olen = 0;
-		byte ret[];
+	private static int decode_base64(String s, int off, int slen,
+	    byte ret[]) {
+		int olen = 0, maxolen = ret.length;
 		byte c1, c2, c3, c4, o;
 
-		if (maxolen <= 0)
-			throw new IllegalArgumentException ("Invalid maxolen");
-
 		while (off < slen - 1 && olen < maxolen) {
 			c1 = char64(s.charAt(off++));
 			c2 = char64(s.charAt(off++));
@@ -455,28 +475,23 @@ public class BCrypt {
 				break;
 			o = (byte)(c1 << 2);
 			o |= (c2 & 0x30) >> 4;
-			rs.append((char)o);
-			if (++olen >= maxolen || off >= slen)
+			ret[olen++] = o;
+			if (olen >= maxolen || off >= slen)
 				break;
 			c3 = char64(s.charAt(off++));
 			if (c3 == -1)
 				break;
 			o = (byte)((c2 & 0x0f) << 4);
 			o |= (c3 & 0x3c) >> 2;
-			rs.append((char)o);
-			if (++olen >= maxolen || off >= slen)
+			ret[olen++] = o;
+			if (olen >= maxolen || off >= slen)
 				break;
 			c4 = char64(s.charAt(off++));
 			o = (byte)((c3 & 0x03) << 6);
 			o |= c4;
-			rs.append((char)o);
-			++olen;
+			ret[olen++] = o;
 		}
-
-		ret = new byte[olen];
-		for (off = 0; off < olen; off++)
-			ret[off] = (byte)rs.charAt(off);
-		return ret;
+		return olen;
 	}
 
 	/**
@@ -530,11 +545,37 @@ public class BCrypt {
 	}
 
 	/**
-	 * Initialise the Blowfish key schedule
+	 * Initialise the Blowfish key schedule, reusing the arrays of
+	 * a previous hash
 	 */
 	private void init_key() {
-		P = (int[])P_orig.clone();
-		S = (int[])S_orig.clone();
+		if (P == null) {
+			P = new int[P_orig.length];
+			S = new int[S_orig.length];
+		}
+		System.arraycopy(P_orig, 0, P, 0, P_orig.length);
+		System.arraycopy(S_orig, 0, S, 0, S_orig.length);
+	}
+
+	/**
+	 * Extract as many words of key material as fit in words,
+	 * cycling through data from its start; the same words
+	 * streamtoword would return on each key() call
+	 * @param data	the array to extract the data from
+	 * @param len	the number of bytes of data in use
+	 * @param words	the array to fill
+	 */
+	private static void towords(byte data[], int len, int words[]) {
+		int i, j, word, off = 0;
+
+		for (i = 0; i < words.length; i++) {
+			word = 0;
+			for (j = 0; j < 4; j++) {
+				word = (word << 8) | (data[off] & 0xff);
+				off = (off + 1) % len;
+			}
+			words[i] = word;
+		}
 	}
 
 	/**
@@ -641,19 +682,125 @@ public class BCrypt {
 	}
 
 	/**
-	 * Hash a password using the OpenBSD bcrypt scheme
+	 * Key the Blowfish cipher with words already extracted by
+	 * towords()
+	 * @param words	an array containing the key, one word per
+	 * entry of P
+	 */
+	private void key(int words[]) {
+		int i;
+		int lr[] = this.lr;
+		int plen = P.length, slen = S.length;
+
+		for (i = 0; i < plen; i++)
+			P[i] = P[i] ^ words[i];
+
+		lr[0] = 0;
+		lr[1] = 0;
+		for (i = 0; i < plen; i += 2) {
+			encipher(lr, 0);
+			P[i] = lr[0];
+			P[i + 1] = lr[1];
+		}
+
+		for (i = 0; i < slen; i += 2) {
+			encipher(lr, 0);
+			S[i] = lr[0];
+			S[i + 1] = lr[1];
+		}
+	}
+
+	/**
+	 * The "enhanced key schedule" step of ekskey(byte[], byte[]),
+	 * with the salt and password already extracted by towords()
+	 * @param data	salt information; the salt is 16 bytes long,
+	 * so its stream repeats every 4 words
+	 * @param key	password information
+	 */
+	private void ekskey(int data[], int key[]) {
+		int i, doff = 0;
+		int lr[] = this.lr;
+		int plen = P.length, slen = S.length;
+
+		for (i = 0; i < plen; i++)
+			P[i] = P[i] ^ key[i];
+
+		lr[0] = 0;
+		lr[1] = 0;
+		for (i = 0; i < plen; i += 2) {
+			lr[0] ^= data[doff];
+			lr[1] ^= data[doff + 1];
+			doff = (doff + 2) & 3;
+			encipher(lr, 0);
+			P[i] = lr[0];
+			P[i + 1] = lr[1];
+		}
+
+		for (i = 0; i < slen; i += 2) {
+			lr[0] ^= data[doff];
+			lr[1] ^= data[doff + 1];
+			doff = (doff + 2) & 3;
+			encipher(lr, 0);
+			S[i] = lr[0];
+			S[i + 1] = lr[1];
+		}
+	}
+
+	/**
+	 * Encode a password as UTF-8 into passwordb, growing it if
+	 * needed. Gives the same bytes as String.getBytes("UTF-8"),
+	 * including '?' for unpaired surrogates.
+	 * @param password	the password to encode
+	 * @param nul	whether to append a NUL byte, as revision 'a'
+	 * hashes do
+	 * @return	the number of bytes written
+	 */
+	private int encode_utf8(String password, boolean nul) {
+		int i, cp, len = password.length(), off = 0;
+		char c;
+
+		if (passwordb.length < len * 3 + 1)
+			passwordb = new byte[len * 3 + 1];
+		byte b[] = passwordb;
+
+		for (i = 0; i < len; i++) {
+			c = password.charAt(i);
+			if (c < 0x80) {
+				b[off++] = (byte)c;
+			} else if (c < 0x800) {
+				b[off++] = (byte)(0xc0 | (c >> 6));
+				b[off++] = (byte)(0x80 | (c & 0x3f));
+			} else if (Character.isHighSurrogate(c) && i + 1 < len
+			    && Character.isLowSurrogate(password.charAt(i + 1))) {
+				cp = Character.toCodePoint(c, password.charAt(++i));
+				b[off++] = (byte)(0xf0 | (cp >> 18));
+				b[off++] = (byte)(0x80 | ((cp >> 12) & 0x3f));
+				b[off++] = (byte)(0x80 | ((cp >> 6) & 0x3f));
+				b[off++] = (byte)(0x80 | (cp & 0x3f));
+			} else if (Character.isSurrogate(c)) {
+				b[off++] = (byte)'?';
+			} else {
+				b[off++] = (byte)(0xe0 | (c >> 12));
+				b[off++] = (byte)(0x80 | ((c >> 6) & 0x3f));
+				b[off++] = (byte)(0x80 | (c & 0x3f));
+			}
+		}
+		if (nul)
+			b[off++] = 0;
+		return off;
+	}
+
+	/**
+	 * Hash a password with this engine's buffers, leaving the
+	 * complete hash (as hashpw() returns it) in encoded
 	 * @param password	the password to hash
-	 * @param salt	the salt to hash with (perhaps generated
-	 * using BCrypt.gensalt)
-	 * @return	the hashed password
+	 * @param salt	the salt to hash with, or a previous hash
+	 * @return	the number of characters of the hash in encoded
 	 */
-	public static String hashpw(String password, String salt) {
-		BCrypt B;
-		String real_salt;
-		byte passwordb[], saltb[], hashed[];
+	private int crypt(String password, String salt) {
 		char minor = (char)0;
-		int rounds, off = 0;
-		StringBuffer rs = new StringBuffer();
+		int rounds, off = 0, plen, slen, i, j, pos;
+		int clen = cdata.length;
 
 		if (salt.charAt(0) != '$' || salt.charAt(1) != '2')
 			throw new IllegalArgumentException ("Invalid salt version");
@@ -669,37 +816,75 @@ public class BCrypt {
 		// Extract number of rounds
 		if (salt.charAt(off + 2) > '$')
 			throw new IllegalArgumentException ("Missing salt rounds");
-		rounds = Integer.parseInt(salt.substring(off, off + 2));
+		rounds = Integer.parseInt(salt, off, off + 2, 10);
+
+		if (salt.length() < off + 25)
+			throw new IllegalArgumentException ("Invalid salt length");
+		slen = decode_base64(salt, off + 3, off + 25, saltb);
+
+		if (rounds < 4 || rounds > 30)
+			throw new IllegalArgumentException ("Bad number of rounds");
+		if (slen != BCRYPT_SALT_LEN)
+			throw new IllegalArgumentException ("Bad salt length");
 
-		real_salt = salt.substring(off + 3, off + 25);
+		plen = encode_utf8(password, minor >= 'a');
 		try {
-			passwordb = (password + (minor >= 'a' ? "\000" : "")).getBytes("UTF-8");
-		} catch (UnsupportedEncodingException uee) {
-			throw new AssertionError("UTF-8 is not supported");
+			towords(passwordb, plen, key_words);
+			towords(saltb, slen, salt_words);
+
+			init_key();
+			ekskey(salt_words, key_words);
+			for (i = 1 << rounds; i != 0; i--) {
+				key(key_words);
+				key(salt_words);
+			}
+		} finally {
+			Arrays.fill(passwordb, 0, plen, (byte)0);
+			Arrays.fill(key_words, 0);
 		}
 
-		saltb = decode_base64(real_salt, BCRYPT_SALT_LEN);
+		System.arraycopy(bf_crypt_ciphertext, 0, cdata, 0, clen);
+		for (i = 0; i < 64; i++) {
+			for (j = 0; j < (clen >> 1); j++)
+				encipher(cdata, j << 1);
+		}
 
-		B = new BCrypt();
-		hashed = B.crypt_raw(passwordb, saltb, rounds,
-		    (int[])bf_crypt_ciphertext.clone());
+		for (i = 0, j = 0; i < clen; i++) {
+			hashb[j++] = (byte)((cdata[i] >> 24) & 0xff);
+			hashb[j++] = (byte)((cdata[i] >> 16) & 0xff);
+			hashb[j++] = (byte)((cdata[i] >> 8) & 0xff);
+			hashb[j++] = (byte)(cdata[i] & 0xff);
+		}
 
-		rs.append("$2");
+		pos = 0;
+		encoded[pos++] = '$';
+		encoded[pos++] = '2';
 		if (minor >= 'a')
-			rs.append(minor);
-		rs.append("$");
-		if (rounds < 10)
-			rs.append("0");
-		if (rounds > 30) {
-			throw new IllegalArgumentException(
-			    "rounds exceeds maximum (30)");
-		}
-		rs.append(Integer.toString(rounds));
-		rs.append("$");
-		rs.append(encode_base64(saltb, saltb.length));
-		rs.append(encode_base64(hashed,
-		    bf_crypt_ciphertext.length * 4 - 1));
-		return rs.toString();
+			encoded[pos++] = minor;
+		encoded[pos++] = '$';
+		encoded[pos++] = (char)('0' + rounds / 10);
+		encoded[pos++] = (char)('0' + rounds % 10);
+		encoded[pos++] = '$';
+		pos = encode_base64(saltb, saltb.length, encoded, pos);
+		return encode_base64(hashb, clen * 4 - 1, encoded, pos);
+	}
+
+	/**
+	 * Hash a password using the OpenBSD bcrypt scheme
+	 * @param password	the password to hash
+	 * @param salt	the salt to hash with (perhaps generated
+	 * using BCrypt.gensalt)
+	 * @return	the hashed password
+	 */
+	public static String hashpw(String password, String salt) {
+		BCrypt B = engines.get();
+		return new String(B.encoded, 0, B.crypt(password, salt));
+	}
+
+	// Used by gensalt(int); created on first use, since seeding it
+	// can take a while
+	private static final class DefaultRandom {
+		static final SecureRandom random = new SecureRandom();
 	}
 
 	/**
@@ -711,8 +896,9 @@ public class BCrypt {
 	 * @return	an encoded salt value
 	 */
 	public static String gensalt(int log_rounds, SecureRandom random) {
-		StringBuffer rs = new StringBuffer();
+		StringBuilder rs = new StringBuilder(29);
 		byte rnd[] = new byte[BCRYPT_SALT_LEN];
+		char enc[] = new char[22];
 
 		random.nextBytes(rnd);
 
@@ -723,9 +909,9 @@ public class BCrypt {
 			throw new IllegalArgumentException(
 			    "log_rounds exceeds maximum (30)");
 		}
-		rs.append(Integer.toString(log_rounds));
+		rs.append(log_rounds);
 		rs.append("$");
-		rs.append(encode_base64(rnd, rnd.length));
+		rs.append(enc, 0, encode_base64(rnd, rnd.length, enc, 0));
 		return rs.toString();
 	}
 
@@ -737,7 +923,7 @@ public class BCrypt {
 	 * @return	an encoded salt value
 	 */
 	public static String gensalt(int log_rounds) {
-		return gensalt(log_rounds, new SecureRandom());
+		return gensalt(log_rounds, DefaultRandom.random);
 	}
 
 	/**
@@ -752,26 +938,23 @@ public class BCrypt {
 
 	/**
 	 * Check that a plaintext password matches a previously hashed
-	 * one
+	 * one. The comparison takes the same time wherever the hashes
+	 * differ, and allocates nothing once the thread has hashed a
+	 * password of that length.
 	 * @param plaintext	the plaintext password to verify
 	 * @param hashed	the previously-hashed password
 	 * @return	true if the passwords match, false otherwise
 	 */
 	public static boolean checkpw(String plaintext, String hashed) {
-		byte hashed_bytes[];
-		byte try_bytes[];
-		try {
-			String try_pw = hashpw(plaintext, hashed);
-			hashed_bytes = hashed.getBytes("UTF-8");
-			try_bytes = try_pw.getBytes("UTF-8");
-		} catch (UnsupportedEncodingException uee) {
-			return false;
-		}
-		if (hashed_bytes.length != try_bytes.length)
+		BCrypt B = engines.get();
+		int len = B.crypt(plaintext, hashed);
+		char try_pw[] = B.encoded;
+
+		if (hashed.length() != len)
 			return false;
-		byte ret = 0;
-		for (int i = 0; i < try_bytes.length; i++)
-			ret |= hashed_bytes[i] ^ try_bytes[i];
+		int ret = 0;
+		for (int i = 0; i < len; i++)
+			ret |= hashed.charAt(i) ^ try_pw[i];
 		return ret == 0;
 	}
 }
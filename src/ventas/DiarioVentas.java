@@ -0,0 +1,841 @@
+package ventas;
+
+import datos.ConexionBD;
+import datos.ConfiguracionBD;
+import datos.Consulta;
+import datos.Consultas;
+import datos.EjecutorTransacciones;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLSyntaxErrorException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import javax.swing.SwingUtilities;
+import metricas.Medicion;
+import metricas.Metricas;
+
+/**
+ * Diario local de ventas: las boletas se confirman primero en un archivo
+ * de la caja y un hilo de fondo las registra en MySQL.
+ * <p>
+ * El diario es un archivo de solo agregado mapeado en memoria
+ * (diario.archivo, de diario.tamanoMb MB). Cada entrada guarda la boleta
+ * completa (cabecera, lineas y rut del deudor, de donde salen el detalle,
+ * el descuento de stock y la deuda) con una clave de idempotencia y un
+ * CRC32. Cobrar solo copia la entrada al mapa, asi la caja no espera a la
+ * red y sigue vendiendo aunque MySQL no responda.
+ * <p>
+ * El replicador aplica las entradas de a una, en orden, con
+ * {@link EscritorBoletas}. La clave se inserta en ventasDiario en la misma
+ * transaccion que la boleta: si la aplicacion se cae despues del commit y
+ * antes de marcar la entrada, al volver se reconoce la clave y la boleta
+ * no se duplica. Si MySQL no responde, la entrada se reintenta cada
+ * {@value #ESPERA_REINTENTO_MS} ms sin saltarse ninguna.
+ * <p>
+ * Al aplicar una venta el stock se descuenta con la misma condicion
+ * "stock >= cantidad" que sin diario, que es lo que impide que dos cajas
+ * vendan las mismas unidades. Cada entrada recuerda si se confirmo cuando
+ * el replicador ya sabia que no habia conexion: con
+ * diario.stockSinConexion=true esas ventas, cuya mercaderia ya salio de la
+ * tienda sin que se pudiera consultar el stock, se descuentan aunque no
+ * alcance y lo que quede negativo se anota en el registro. Con false (por
+ * defecto) se tratan como las demas. Las que no alcanzan el stock y las
+ * que MySQL rechaza por los datos (producto o deudor borrado) no se
+ * pierden: pasan a diario-detenidas.dat junto al diario, siguen contando
+ * como pendientes y se reintentan cada {@value #ESPERA_DETENIDAS_MS} ms
+ * hasta que entren, por ejemplo despues de que el encargado ingrese la
+ * compra o vuelva a crear el producto. Solo se descartan si alguien borra ese archivo. El
+ * observador de una venta anotada nunca recibe error(): mientras este
+ * detenida recibe avisos de progreso.
+ * <p>
+ * Una entrada danada (largo o CRC invalidos, por ejemplo tras un corte de
+ * luz sin diario.forzarDisco) se copia tal cual a diario-danadas.dat y se
+ * sigue con la siguiente entrada valida.
+ * <p>
+ * Con diario.activo=false, o si el archivo no se puede abrir, las boletas
+ * van directo a {@link EjecutorTransacciones} como antes.
+ *
+ * @author franc
+ */
+public final class DiarioVentas {
+
+    private static final Logger logger = Logger.getLogger(DiarioVentas.class.getName());
+
+    private static final int MAGICO = 0x56414D44;
+    private static final int VERSION = 2;
+    // Cabecera: magico, version y, en un solo long, inicio de lo pendiente
+    // (32 bits altos) y fin de lo escrito (32 bits bajos). Se escriben con
+    // un solo putLong alineado, asi una caida no deja uno sin el otro.
+    private static final int POS_POSICIONES = 8;
+    private static final int CABECERA = 32;
+    // Version 1: las dos posiciones en longs separados
+    private static final int VERSION_1 = 1;
+    private static final int POS_ESCRITO_1 = 16;
+    // Largo y CRC de cada entrada
+    private static final int PREFIJO = 8;
+
+    private static final int TAMANO_MB_POR_DEFECTO = 64;
+    private static final long ESPERA_REINTENTO_MS = 10_000;
+    private static final long ESPERA_DETENIDAS_MS = 5 * 60_000;
+    private static final long ESPERA_CIERRE_SEG = 30;
+    // Dias que se guardan las claves aplicadas en ventasDiario
+    private static final int DIAS_CLAVES = 30;
+
+    private static final String SQL_CREAR =
+            "CREATE TABLE IF NOT EXISTS ventasDiario (" +
+            "clave CHAR(36) NOT NULL PRIMARY KEY, " +
+            "idBoleta INT NOT NULL, " +
+            "fechaAplicada TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)";
+
+    private static final Consulta BUSCAR = Consultas.registrar("diario.buscar",
+            "SELECT idBoleta FROM ventasDiario WHERE clave = ?");
+
+    private static final Consulta MARCAR = Consultas.registrar("diario.marcar",
+            "INSERT INTO ventasDiario (clave, idBoleta) VALUES (?, ?)");
+
+    /**
+     * Entrada leida del diario: si se confirmo sin conexion, los datos tal
+     * como estan en el archivo y su tamano total, con el prefijo
+     */
+    private record Entrada(UUID clave, EscritorBoletas.Boleta boleta, boolean sinConexion, byte[] datos, int tamano) {
+    }
+
+    private static final Object candado = new Object();
+    private static final Map<UUID, EjecutorTransacciones.Observador<EscritorBoletas.Resultado>> observadores =
+            new ConcurrentHashMap<>();
+
+    // Todo lo siguiente se fija en iniciar(), con el candado tomado
+    private static volatile boolean iniciado;
+    private static MappedByteBuffer mapa;
+    private static Path archivoDetenidas;
+    private static Path archivoDanadas;
+    private static boolean forzarDisco;
+    private static boolean stockSinConexion;
+    // Lo deja el replicador: si el ultimo intento de aplicar fallo por falta de conexion
+    private static volatile boolean sinConexion;
+    private static Thread replicador;
+    private static int pendientes;
+    // Rechazadas por MySQL, en el orden en que se detuvieron
+    private static final List<Entrada> detenidas = new ArrayList<>();
+    private static boolean cerrando;
+    private static volatile boolean preparada;
+
+    private DiarioVentas() {
+    }
+
+    /**
+     * Abre el diario y arranca el replicador, para que las ventas que
+     * quedaron de una sesion anterior se registren sin esperar a la
+     * siguiente venta. Se llama despues del login; si no, lo hace la
+     * primera venta. Las siguientes llamadas no hacen nada.
+     */
+    public static void iniciar() {
+        if (iniciado) {
+            return;
+        }
+        synchronized (candado) {
+            if (!iniciado) {
+                abrirDiario();
+                iniciado = true;
+            }
+        }
+    }
+
+    private static void abrirDiario() {
+        boolean activo = true;
+        String archivo = Paths.get(System.getProperty("user.home"), ".vistaalmar", "diario-ventas.dat").toString();
+        int tamanoMb = TAMANO_MB_POR_DEFECTO;
+        boolean forzar = false;
+        boolean sinStock = false;
+        try {
+            ConfiguracionBD cfg = ConexionBD.getConfiguracion();
+            activo = cfg.booleano("diario.activo", activo);
+            archivo = cfg.texto("diario.archivo", archivo);
+            tamanoMb = cfg.entero("diario.tamanoMb", tamanoMb);
+            forzar = cfg.booleano("diario.forzarDisco", forzar);
+            sinStock = cfg.booleano("diario.stockSinConexion", sinStock);
+        } catch (SQLException | IllegalArgumentException e) {
+            logger.log(Level.WARNING, "Se usa la configuracion del diario de ventas por defecto", e);
+        }
+        MappedByteBuffer abierto = null;
+        if (activo) {
+            try {
+                abierto = abrir(Paths.get(archivo), tamanoMb * 1024L * 1024L);
+            } catch (IOException | RuntimeException e) {
+                logger.log(Level.SEVERE, "No se pudo abrir el diario de ventas; las boletas van directo a la base de datos", e);
+            }
+        }
+        if (abierto == null) {
+            return;
+        }
+        mapa = abierto;
+        archivoDetenidas = Paths.get(archivo).resolveSibling("diario-detenidas.dat");
+        archivoDanadas = Paths.get(archivo).resolveSibling("diario-danadas.dat");
+        forzarDisco = forzar;
+        stockSinConexion = sinStock;
+        pendientes = contarPendientes();
+        cargarDetenidas();
+        if (pendientes > 0) {
+            logger.info(pendientes + " ventas del diario local pendientes de registrar");
+        }
+        if (!detenidas.isEmpty()) {
+            logger.warning(detenidas.size() + " ventas detenidas en " + archivoDetenidas + " esperan poder registrarse");
+        }
+        replicador = new Thread(DiarioVentas::replicar, "diario-ventas");
+        replicador.setDaemon(true);
+        replicador.start();
+        ConexionBD.registrarAntesDeCerrar(DiarioVentas::terminar);
+    }
+
+    /**
+     * Confirma la boleta en el diario local y vuelve de inmediato. El
+     * observador recibe en el EDT el id de la boleta cuando queda en MySQL,
+     * o el error si MySQL la rechaza; mientras no haya conexion recibe
+     * avisos de progreso.
+     * @param nombre descripcion corta para el registro y los avisos
+     * @param boleta datos de la boleta
+     * @param observador destinatario de los avisos
+     */
+    public static void enviar(String nombre, EscritorBoletas.Boleta boleta,
+                              EjecutorTransacciones.Observador<EscritorBoletas.Resultado> observador) {
+        iniciar();
+        if (mapa != null) {
+            UUID clave = UUID.randomUUID();
+            observadores.put(clave, observador);
+            Medicion anotar = Metricas.medir("diario.anotar");
+            try {
+                agregar(clave, boleta, sinConexion);
+                return;
+            } catch (IOException | RuntimeException e) {
+                anotar.fallo();
+                observadores.remove(clave);
+                Metricas.contar("diario.fallidas");
+                logger.log(Level.WARNING, nombre + " no se pudo guardar en el diario local; se registra directo", e);
+            } finally {
+                anotar.close();
+            }
+        }
+        EjecutorTransacciones.enviar(nombre, (conn, progreso) -> new EscritorBoletas().registrar(conn, boleta),
+                observador);
+    }
+
+    /**
+     * Ventas confirmadas en el diario que aun no estan en MySQL, detenidas
+     * incluidas, mas las que esperan en {@link EjecutorTransacciones}
+     * @return cantidad de ventas pendientes
+     */
+    public static int pendientes() {
+        synchronized (candado) {
+            return pendientes + detenidas.size() + EjecutorTransacciones.pendientes();
+        }
+    }
+
+    private static MappedByteBuffer abrir(Path archivo, long tamano) throws IOException {
+        Path carpeta = archivo.toAbsolutePath().getParent();
+        if (carpeta != null) {
+            Files.createDirectories(carpeta);
+        }
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            boolean nuevo = canal.size() < CABECERA;
+            // Un diario mas grande que el configurado se abre completo para no perder entradas
+            MappedByteBuffer buffer = canal.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(tamano, canal.size()));
+            long aplicado;
+            long escrito;
+            if (nuevo || buffer.getInt(0) == 0) {
+                buffer.putInt(0, MAGICO);
+                aplicado = CABECERA;
+                escrito = CABECERA;
+            } else if (buffer.getInt(0) != MAGICO) {
+                throw new IOException(archivo + " no es un diario de ventas valido");
+            } else if (buffer.getInt(4) == VERSION_1) {
+                aplicado = buffer.getLong(POS_POSICIONES);
+                escrito = buffer.getLong(POS_ESCRITO_1);
+            } else if (buffer.getInt(4) == VERSION) {
+                long posiciones = buffer.getLong(POS_POSICIONES);
+                aplicado = posiciones >>> 32;
+                escrito = posiciones & 0xFFFFFFFFL;
+            } else {
+                throw new IOException(archivo + " es de una version desconocida: " + buffer.getInt(4));
+            }
+            if (aplicado < CABECERA || aplicado > buffer.capacity() || escrito > buffer.capacity()) {
+                throw new IOException(archivo + " tiene una cabecera danada (aplicado=" + aplicado
+                        + ", escrito=" + escrito + ")");
+            }
+            if (escrito < aplicado) {
+                // Version 1 que se cayo al volver al principio: ya no quedaba nada pendiente
+                logger.warning(archivo + " quedo a medio volver al principio; se toma como vacio");
+                aplicado = CABECERA;
+                escrito = CABECERA;
+            }
+            buffer.putInt(4, VERSION);
+            buffer.putLong(POS_POSICIONES, aplicado << 32 | escrito);
+            buffer.force();
+            return buffer;
+        }
+    }
+
+    // Solo con el candado tomado
+    private static int contarPendientes() {
+        int n = 0;
+        int pos = aplicado();
+        while (pos < escrito()) {
+            int largo = largoValido(pos);
+            if (largo < 0) {
+                pos = siguienteValida(pos);
+            } else {
+                n++;
+                pos += PREFIJO + largo;
+            }
+        }
+        return n;
+    }
+
+    private static int aplicado() {
+        return (int) (mapa.getLong(POS_POSICIONES) >>> 32);
+    }
+
+    private static int escrito() {
+        return (int) mapa.getLong(POS_POSICIONES);
+    }
+
+    private static void posiciones(int aplicado, int escrito) {
+        mapa.putLong(POS_POSICIONES, (long) aplicado << 32 | (escrito & 0xFFFFFFFFL));
+        if (forzarDisco) {
+            mapa.force(0, CABECERA);
+        }
+    }
+
+    private static void agregar(UUID clave, EscritorBoletas.Boleta boleta, boolean confirmadaSinConexion)
+            throws IOException {
+        byte[] datos = codificar(clave, boleta, confirmadaSinConexion);
+        CRC32 crc = new CRC32();
+        crc.update(datos);
+        synchronized (candado) {
+            if (cerrando) {
+                throw new IOException("El diario de ventas se esta cerrando");
+            }
+            int tamano = PREFIJO + datos.length;
+            if (escrito() + tamano > mapa.capacity()) {
+                compactar();
+                if (escrito() + tamano > mapa.capacity()) {
+                    throw new IOException("Diario de ventas lleno: " + pendientes + " ventas sin registrar");
+                }
+            }
+            int pos = escrito();
+            mapa.putInt(pos, datos.length);
+            mapa.putInt(pos + 4, (int) crc.getValue());
+            mapa.put(pos + PREFIJO, datos);
+            if (forzarDisco) {
+                mapa.force(pos, tamano);
+            }
+            // La entrada queda visible solo despues de escrita completa
+            posiciones(aplicado(), pos + tamano);
+            pendientes++;
+            candado.notifyAll();
+        }
+    }
+
+    /**
+     * Corre lo pendiente al principio del archivo. Solo se llama con el
+     * candado tomado, cuando no queda espacio al final.
+     * <p>
+     * La copia solo se hace si cabe entera antes de lo pendiente, asi no
+     * pisa los bytes que la cabecera sigue apuntando: si la aplicacion o el
+     * equipo se caen antes de escribir la cabecera nueva, el diario se abre
+     * con la copia original intacta. La copia llega al disco antes que la
+     * cabecera. Si lo pendiente ocupa mas de la mitad del archivo no se
+     * compacta y la venta va directo a la base de datos.
+     */
+    private static void compactar() {
+        int aplicado = aplicado();
+        int largo = escrito() - aplicado;
+        if (aplicado == CABECERA || CABECERA + largo > aplicado) {
+            return;
+        }
+        byte[] resto = new byte[largo];
+        mapa.get(aplicado, resto);
+        mapa.put(CABECERA, resto);
+        mapa.force(CABECERA, largo);
+        posiciones(CABECERA, CABECERA + largo);
+        mapa.force(0, CABECERA);
+    }
+
+    /**
+     * Largo de los datos de la entrada que empieza en pos, o -1 si ahi no
+     * hay una entrada completa con su CRC correcto
+     */
+    private static int largoValido(int pos) {
+        int fin = escrito();
+        if (pos + PREFIJO > fin) {
+            return -1;
+        }
+        int largo = mapa.getInt(pos);
+        if (largo <= 0 || largo > fin - pos - PREFIJO) {
+            return -1;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(mapa.slice(pos + PREFIJO, largo));
+        return (int) crc.getValue() == mapa.getInt(pos + 4) ? largo : -1;
+    }
+
+    /**
+     * Primera entrada valida despues de pos, o el fin de lo escrito si no
+     * hay. Con un CRC de 32 bits es muy improbable tomar por entrada algo
+     * que no lo es.
+     */
+    private static int siguienteValida(int pos) {
+        for (int p = pos + 1; p + PREFIJO <= escrito(); p++) {
+            if (largoValido(p) > 0) {
+                return p;
+            }
+        }
+        return escrito();
+    }
+
+    /**
+     * Lee la entrada que empieza en pos, o null si esta danada
+     */
+    private static Entrada leer(int pos) {
+        int largo = largoValido(pos);
+        if (largo < 0) {
+            return null;
+        }
+        byte[] datos = new byte[largo];
+        mapa.get(pos + PREFIJO, datos);
+        try {
+            return decodificar(datos, PREFIJO + largo);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Entrada del diario de ventas ilegible en la posicion " + pos, e);
+            return null;
+        }
+    }
+
+    /**
+     * Aparta la zona danada que empieza en pos: la copia a
+     * diario-danadas.dat y deja el diario en la siguiente entrada valida.
+     * Solo con el candado tomado.
+     */
+    private static void apartarDanada(int pos) {
+        int siguiente = siguienteValida(pos);
+        byte[] danada = new byte[siguiente - pos];
+        mapa.get(pos, danada);
+        logger.severe("Entrada del diario de ventas danada entre las posiciones " + pos + " y " + siguiente
+                + "; se copia a " + archivoDanadas + " y se sigue con la siguiente");
+        Metricas.contar("diario.danadas");
+        try {
+            Files.write(archivoDanadas, danada, StandardOpenOption.CREATE, StandardOpenOption.APPEND,
+                    StandardOpenOption.DSYNC);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "No se pudo guardar la entrada danada del diario", e);
+        }
+        if (siguiente == escrito()) {
+            posiciones(CABECERA, CABECERA);
+        } else {
+            posiciones(siguiente, escrito());
+        }
+        pendientes = contarPendientes();
+    }
+
+    private static byte[] codificar(UUID clave, EscritorBoletas.Boleta boleta, boolean confirmadaSinConexion)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128 + 64 * boleta.lineas().size());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(clave.getMostSignificantBits());
+            out.writeLong(clave.getLeastSignificantBits());
+            out.writeUTF(boleta.rutUsuario());
+            out.writeLong(boleta.fecha().getTime());
+            out.writeUTF(boleta.medioPago());
+            out.writeDouble(boleta.totalPagado());
+            out.writeDouble(boleta.totalFiado());
+            out.writeBoolean(boleta.rutDeudor() != null);
+            if (boleta.rutDeudor() != null) {
+                out.writeUTF(boleta.rutDeudor());
+            }
+            out.writeInt(boleta.lineas().size());
+            for (EscritorBoletas.Linea linea : boleta.lineas()) {
+                out.writeInt(linea.codProducto());
+                out.writeInt(linea.cantidad());
+                out.writeInt(linea.cantidadFiado());
+                out.writeDouble(linea.precioUnitario());
+                out.writeDouble(linea.descuento());
+                out.writeDouble(linea.totalPago());
+                out.writeDouble(linea.totalFiado());
+                out.writeUTF(linea.tipoTransaccion());
+            }
+            out.writeBoolean(confirmadaSinConexion);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Entrada decodificar(byte[] datos, int tamano) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(datos))) {
+            UUID clave = new UUID(in.readLong(), in.readLong());
+            String rutUsuario = in.readUTF();
+            Timestamp fecha = new Timestamp(in.readLong());
+            String medioPago = in.readUTF();
+            double totalPagado = in.readDouble();
+            double totalFiado = in.readDouble();
+            String rutDeudor = in.readBoolean() ? in.readUTF() : null;
+            int n = in.readInt();
+            List<EscritorBoletas.Linea> lineas = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                lineas.add(new EscritorBoletas.Linea(in.readInt(), in.readInt(), in.readInt(), in.readDouble(),
+                        in.readDouble(), in.readDouble(), in.readDouble(), in.readUTF()));
+            }
+            // Las entradas anteriores a esta marca se tratan como confirmadas con conexion
+            boolean confirmadaSinConexion = in.available() > 0 && in.readBoolean();
+            return new Entrada(clave, new EscritorBoletas.Boleta(rutUsuario, fecha, medioPago,
+                    totalPagado, totalFiado, lineas, rutDeudor), confirmadaSinConexion, datos, tamano);
+        }
+    }
+
+    private static void replicar() {
+        long reintentarDetenidas = 0;
+        while (true) {
+            Entrada entrada;
+            synchronized (candado) {
+                try {
+                    while (aplicado() == escrito()) {
+                        if (cerrando) {
+                            return;
+                        }
+                        if (detenidas.isEmpty()) {
+                            candado.wait();
+                        } else if (System.currentTimeMillis() >= reintentarDetenidas) {
+                            break;
+                        } else {
+                            candado.wait(reintentarDetenidas - System.currentTimeMillis());
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (aplicado() == escrito()) {
+                    entrada = null;
+                } else {
+                    entrada = leer(aplicado());
+                    if (entrada == null) {
+                        apartarDanada(aplicado());
+                        continue;
+                    }
+                }
+            }
+            if (entrada == null) {
+                // Nada nuevo que aplicar: turno de las detenidas
+                reintentarDetenidas = System.currentTimeMillis() + ESPERA_DETENIDAS_MS;
+                reintentarDetenidas();
+                continue;
+            }
+            EjecutorTransacciones.Observador<EscritorBoletas.Resultado> observador = observadores.get(entrada.clave());
+            Medicion aplicacion = Metricas.medir("diario.aplicar");
+            try {
+                EscritorBoletas.Resultado resultado = aplicar(entrada);
+                aplicacion.close();
+                avanzar(entrada);
+                if (sinConexion) {
+                    logger.info("Conexion recuperada; se registran las ventas del diario local");
+                    sinConexion = false;
+                }
+                if (observador != null) {
+                    observadores.remove(entrada.clave());
+                    avisar(() -> observador.exito(resultado));
+                }
+            } catch (SQLException e) {
+                aplicacion.fallo();
+                aplicacion.close();
+                if (esDeDatos(e)) {
+                    detener(entrada, e);
+                    continue;
+                }
+                if (!sinConexion) {
+                    logger.log(Level.WARNING, "Sin conexion con la base de datos; las ventas quedan en el diario local", e);
+                    sinConexion = true;
+                }
+                String aviso = "Sin conexión: " + pendientes() + " ventas guardadas en la caja";
+                for (EjecutorTransacciones.Observador<EscritorBoletas.Resultado> o : observadores.values()) {
+                    avisar(() -> o.progreso(aviso));
+                }
+                synchronized (candado) {
+                    if (cerrando) {
+                        logger.warning(pendientes() + " ventas quedan en el diario local para la proxima sesion");
+                        return;
+                    }
+                    try {
+                        candado.wait(ESPERA_REINTENTO_MS);
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private static EscritorBoletas.Resultado aplicar(Entrada entrada) throws SQLException {
+        preparar();
+        try (Connection conn = ConexionBD.getConnection()) {
+            try (PreparedStatement pstmt = BUSCAR.preparar(conn)) {
+                pstmt.setString(1, entrada.clave().toString());
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        // Se registro antes de una caida, pero no alcanzo a marcarse en el diario
+                        int idBoleta = rs.getInt(1);
+                        logger.info("Venta " + entrada.clave() + " ya registrada como boleta #" + idBoleta);
+                        return new EscritorBoletas.Resultado(idBoleta,
+                                new EscritorBoletas.Tiempos(entrada.boleta().lineas().size(), 0, 0, 0, 0, 0));
+                    }
+                }
+            }
+            boolean exigirStock = !(entrada.sinConexion() && stockSinConexion);
+            return new EscritorBoletas().registrar(conn, entrada.boleta(), entrada.clave(), exigirStock);
+        }
+    }
+
+    /**
+     * Guarda la clave de la venta en la transaccion que registra su boleta
+     * @param conn conexion de la transaccion
+     * @param clave clave de idempotencia de la entrada del diario
+     * @param idBoleta boleta generada
+     * @throws SQLException si falla el INSERT; la transaccion debe revertirse
+     */
+    static void marcarAplicada(Connection conn, UUID clave, int idBoleta) throws SQLException {
+        try (PreparedStatement pstmt = MARCAR.preparar(conn)) {
+            pstmt.setString(1, clave.toString());
+            pstmt.setInt(2, idBoleta);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Errores por los datos de la boleta o por falta de stock, que no se
+     * arreglan reintentando enseguida: la venta se detiene hasta que alguien
+     * corrija la base o ingrese stock
+     */
+    private static boolean esDeDatos(SQLException e) {
+        return e instanceof StockInsuficienteException
+                || e instanceof SQLIntegrityConstraintViolationException
+                || e instanceof SQLDataException
+                || e instanceof SQLSyntaxErrorException;
+    }
+
+    private static void avanzar(Entrada entrada) {
+        synchronized (candado) {
+            int aplicado = aplicado() + entrada.tamano();
+            if (aplicado == escrito()) {
+                // Sin pendientes: se vuelve al principio y el archivo no crece
+                posiciones(CABECERA, CABECERA);
+            } else {
+                posiciones(aplicado, escrito());
+            }
+            pendientes--;
+        }
+    }
+
+    /**
+     * Pasa una venta rechazada por MySQL de la cabeza del diario a las
+     * detenidas. Primero se guarda en diario-detenidas.dat y despues se
+     * avanza el diario: si la aplicacion se cae entre medio, la venta se
+     * vuelve a aplicar y a detener, pero no se pierde.
+     */
+    private static void detener(Entrada entrada, SQLException e) {
+        logger.log(Level.SEVERE, "La base de datos rechazo la venta " + entrada.clave() + " " + entrada.boleta()
+                + "; queda detenida en " + archivoDetenidas + " y se reintentara", e);
+        Metricas.contar("diario.detenidas");
+        try {
+            Files.write(archivoDetenidas, enmarcar(entrada.datos()), StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND, StandardOpenOption.DSYNC);
+        } catch (IOException ex) {
+            // Sin donde guardarla se deja en la cabeza del diario; se reintenta como si no hubiera conexion
+            logger.log(Level.SEVERE, "No se pudo guardar la venta detenida; sigue en el diario", ex);
+            synchronized (candado) {
+                try {
+                    candado.wait(ESPERA_REINTENTO_MS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return;
+        }
+        synchronized (candado) {
+            detenidas.add(entrada);
+        }
+        avanzar(entrada);
+        EjecutorTransacciones.Observador<EscritorBoletas.Resultado> observador = observadores.get(entrada.clave());
+        if (observador != null) {
+            avisar(() -> observador.progreso("Venta detenida: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Intenta registrar las ventas detenidas. Las que entran se sacan del
+     * archivo; si no hay conexion se deja para la proxima vuelta.
+     */
+    private static void reintentarDetenidas() {
+        List<Entrada> copia;
+        synchronized (candado) {
+            copia = new ArrayList<>(detenidas);
+        }
+        for (Entrada entrada : copia) {
+            EscritorBoletas.Resultado resultado;
+            try {
+                resultado = aplicar(entrada);
+            } catch (SQLException e) {
+                if (!esDeDatos(e)) {
+                    return;
+                }
+                logger.fine(() -> "La venta detenida " + entrada.clave() + " sigue sin poder registrarse: " + e.getMessage());
+                continue;
+            }
+            logger.info("Venta detenida " + entrada.clave() + " registrada como boleta #" + resultado.idBoleta());
+            synchronized (candado) {
+                detenidas.remove(entrada);
+                guardarDetenidas();
+            }
+            EjecutorTransacciones.Observador<EscritorBoletas.Resultado> observador = observadores.remove(entrada.clave());
+            if (observador != null) {
+                avisar(() -> observador.exito(resultado));
+            }
+        }
+    }
+
+    // Solo con el candado tomado
+    private static void cargarDetenidas() {
+        if (!Files.isRegularFile(archivoDetenidas)) {
+            return;
+        }
+        try {
+            byte[] contenido = Files.readAllBytes(archivoDetenidas);
+            ByteBuffer buffer = ByteBuffer.wrap(contenido);
+            while (buffer.remaining() >= PREFIJO) {
+                int largo = buffer.getInt();
+                int crcGuardado = buffer.getInt();
+                if (largo <= 0 || largo > buffer.remaining()) {
+                    // Ultima escritura cortada: esa venta sigue en el diario
+                    logger.warning("Se ignora el final cortado de " + archivoDetenidas);
+                    break;
+                }
+                byte[] datos = new byte[largo];
+                buffer.get(datos);
+                CRC32 crc = new CRC32();
+                crc.update(datos);
+                if ((int) crc.getValue() != crcGuardado) {
+                    logger.severe("CRC invalido en una venta de " + archivoDetenidas + "; se ignora");
+                    continue;
+                }
+                detenidas.add(decodificar(datos, PREFIJO + largo));
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "No se pudieron leer las ventas detenidas de " + archivoDetenidas, e);
+        }
+    }
+
+    /**
+     * Reescribe diario-detenidas.dat con las que quedan. Se escribe aparte
+     * y se mueve, para que un corte no deje el archivo a medias. Solo con
+     * el candado tomado.
+     */
+    private static void guardarDetenidas() {
+        try {
+            if (detenidas.isEmpty()) {
+                Files.deleteIfExists(archivoDetenidas);
+                return;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            for (Entrada entrada : detenidas) {
+                bytes.write(enmarcar(entrada.datos()));
+            }
+            Path temporal = archivoDetenidas.resolveSibling(archivoDetenidas.getFileName() + ".tmp");
+            Files.write(temporal, bytes.toByteArray(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.DSYNC);
+            Files.move(temporal, archivoDetenidas, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Las ya registradas que queden en el archivo se reconocen por su clave al reintentarlas
+            logger.log(Level.WARNING, "No se pudo actualizar " + archivoDetenidas, e);
+        }
+    }
+
+    // Largo, CRC y datos, como en el diario
+    private static byte[] enmarcar(byte[] datos) {
+        CRC32 crc = new CRC32();
+        crc.update(datos);
+        return ByteBuffer.allocate(PREFIJO + datos.length)
+                .putInt(datos.length).putInt((int) crc.getValue()).put(datos).array();
+    }
+
+    /**
+     * Crea la tabla de claves aplicadas si no existe y borra las de mas de
+     * {@value #DIAS_CLAVES} dias. Usa una conexion propia porque el DDL
+     * confirmaria cualquier transaccion abierta.
+     */
+    private static void preparar() throws SQLException {
+        if (preparada) {
+            return;
+        }
+        synchronized (DiarioVentas.class) {
+            if (preparada) {
+                return;
+            }
+            try (Connection conn = ConexionBD.getConnection();
+                 Statement st = conn.createStatement()) {
+                st.executeUpdate(SQL_CREAR);
+                st.executeUpdate("DELETE FROM ventasDiario WHERE fechaAplicada < NOW() - INTERVAL " + DIAS_CLAVES + " DAY");
+            }
+            preparada = true;
+        }
+    }
+
+    private static void avisar(Runnable aviso) {
+        SwingUtilities.invokeLater(() -> {
+            try {
+                aviso.run();
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Error en aviso del diario de ventas", e);
+            }
+        });
+    }
+
+    /**
+     * Deja de aceptar ventas y espera a que el replicador registre lo que
+     * pueda. Lo que no alcance queda en el archivo para la proxima sesion.
+     */
+    private static void terminar() {
+        synchronized (candado) {
+            cerrando = true;
+            candado.notifyAll();
+        }
+        try {
+            replicador.join(TimeUnit.SECONDS.toMillis(ESPERA_CIERRE_SEG));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (candado) {
+            mapa.force();
+        }
+    }
+}
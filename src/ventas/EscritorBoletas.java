@@ -0,0 +1,325 @@
+package ventas;
+
+import catalogo.CatalogoProductos;
+import datos.Consulta;
+import datos.Consultas;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.logging.Logger;
+import metricas.Metricas;
+
+/**
+ * Escribe una boleta completa (cabecera, detalle, stock y deuda) en una
+ * sola transaccion usando lotes JDBC.
+ * <p>
+ * El detalle se inserta con un unico PreparedStatement en lote y el stock
+ * se descuenta con un solo UPDATE ... CASE para todos los productos, asi
+ * una boleta de 40 lineas cuesta unas pocas idas y vueltas al servidor en
+ * vez de 80. Si la boleta es fiada, el saldo del deudor se actualiza en la
+ * misma transaccion con {@link SaldosDeudores}.
+ *
+ * @author franc
+ */
+public class EscritorBoletas {
+
+    private static final Logger logger = Logger.getLogger(EscritorBoletas.class.getName());
+
+    // Tope de productos por UPDATE consolidado, para no armar sentencias gigantes
+    private static final int MAXIMO_PRODUCTOS_POR_UPDATE = 500;
+
+    private static final Consulta BOLETA = Consultas.registrar("boletas.insertar",
+            "INSERT INTO boletas (rutUsuario, fechaTramite, medioPago, totalPagados, totalFiado) " +
+            "VALUES (?, ?, ?, ?, ?)", true);
+
+    private static final Consulta DETALLE = Consultas.registrar("boletas.insertarDetalle",
+            "INSERT INTO detalleboletaproductos " +
+            "(idBoleta, codProducto, cantidad, cantidadFiado, precioUnitario, " +
+            "descuento, totalPago, totalFiado, tipoTransaccion) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+
+    private static final Consulta DEUDA = Consultas.registrar("deudas.insertar",
+            "INSERT INTO deudas (rutDeudor, idBoleta, fechaDeuda, estaPagado, montoPagado) " +
+            "VALUES (?, ?, ?, false, 0)");
+
+    /**
+     * Linea de detalle de una boleta
+     */
+    public record Linea(int codProducto, int cantidad, int cantidadFiado, double precioUnitario,
+                        double descuento, double totalPago, double totalFiado, String tipoTransaccion) {
+    }
+
+    /**
+     * Boleta a registrar. rutDeudor es null cuando no hay deuda asociada.
+     */
+    public record Boleta(String rutUsuario, Timestamp fecha, String medioPago,
+                         double totalPagado, double totalFiado, List<Linea> lineas, String rutDeudor) {
+    }
+
+    /**
+     * Tiempos de cada etapa de la transaccion, en nanosegundos
+     */
+    public record Tiempos(int lineas, long cabecera, long detalle, long stock, long deuda, long commit) {
+
+        public long total() {
+            return cabecera + detalle + stock + deuda + commit;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d líneas: cabecera=%.2fms detalle=%.2fms stock=%.2fms deuda=%.2fms commit=%.2fms total=%.2fms",
+                    lineas, ms(cabecera), ms(detalle), ms(stock), ms(deuda), ms(commit), ms(total()));
+        }
+
+        private static double ms(long nanos) {
+            return nanos / 1_000_000.0;
+        }
+    }
+
+    public record Resultado(int idBoleta, Tiempos tiempos) {
+    }
+
+    /**
+     * Registra la boleta en una transaccion. La conexion queda en auto-commit
+     * al terminar, haya exito o error.
+     * @param conn conexion a usar
+     * @param boleta datos de la boleta
+     * @return Resultado con el id generado y el desglose de tiempos
+     * @throws SQLException si falla cualquier etapa; la transaccion se revierte
+     */
+    public Resultado registrar(Connection conn, Boleta boleta) throws SQLException {
+        return registrar(conn, boleta, null, true);
+    }
+
+    /**
+     * Registra una boleta del {@link DiarioVentas}: la clave de la entrada se
+     * guarda en la misma transaccion, para no aplicarla dos veces
+     * @param conn conexion a usar
+     * @param boleta datos de la boleta
+     * @param clave clave de idempotencia, o null si la boleta no viene del diario
+     * @param exigirStock false solo para una venta confirmada sin conexion,
+     *        si diario.stockSinConexion lo permite: el stock se descuenta
+     *        aunque no alcance y lo que quede negativo se anota en el registro
+     * @return Resultado con el id generado y el desglose de tiempos
+     * @throws SQLException si falla cualquier etapa; la transaccion se revierte
+     */
+    Resultado registrar(Connection conn, Boleta boleta, UUID clave, boolean exigirStock) throws SQLException {
+        if (boleta.rutDeudor() != null) {
+            // Antes de abrir la transaccion: la primera vez crea y llena saldoDeudores
+            SaldosDeudores.preparar();
+        }
+        boolean autoCommitPrevio = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        Resultado resultado;
+        Set<Integer> productos;
+        try {
+            long t0 = System.nanoTime();
+            int idBoleta = insertarCabecera(conn, boleta);
+            long t1 = System.nanoTime();
+            insertarDetalle(conn, idBoleta, boleta.lineas());
+            long t2 = System.nanoTime();
+            productos = descontarStock(conn, boleta.lineas(), exigirStock);
+            if (!exigirStock) {
+                avisarStockNegativo(conn, productos);
+            }
+            long t3 = System.nanoTime();
+            if (boleta.rutDeudor() != null) {
+                insertarDeuda(conn, idBoleta, boleta);
+            }
+            if (clave != null) {
+                DiarioVentas.marcarAplicada(conn, clave, idBoleta);
+            }
+            long t4 = System.nanoTime();
+            conn.commit();
+            long t5 = System.nanoTime();
+
+            Tiempos tiempos = new Tiempos(boleta.lineas().size(), t1 - t0, t2 - t1, t3 - t2, t4 - t3, t5 - t4);
+            logger.info("Boleta #" + idBoleta + " " + tiempos);
+            resultado = new Resultado(idBoleta, tiempos);
+        } catch (SQLException e) {
+            revertir(conn, e);
+            if (e instanceof StockInsuficienteException faltante) {
+                faltante.completar(conn);
+                CatalogoProductos.refrescarStock(conn, faltante.getFaltantes().keySet());
+            }
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommitPrevio);
+        }
+        // Ya confirmada: el catalogo en memoria toma el stock nuevo
+        CatalogoProductos.refrescarStock(conn, productos);
+        return resultado;
+    }
+
+    static void revertir(Connection conn, SQLException causa) {
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            causa.addSuppressed(e);
+        }
+    }
+
+    private int insertarCabecera(Connection conn, Boleta boleta) throws SQLException {
+        try (PreparedStatement pstmt = BOLETA.preparar(conn)) {
+            pstmt.setString(1, boleta.rutUsuario());
+            pstmt.setTimestamp(2, boleta.fecha());
+            pstmt.setString(3, boleta.medioPago());
+            pstmt.setDouble(4, boleta.totalPagado());
+            pstmt.setDouble(5, boleta.totalFiado());
+            pstmt.executeUpdate();
+
+            try (ResultSet rs = pstmt.getGeneratedKeys()) {
+                if (!rs.next()) {
+                    throw new SQLException("No se obtuvo el id de la boleta");
+                }
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    private void insertarDetalle(Connection conn, int idBoleta, List<Linea> lineas) throws SQLException {
+        try (PreparedStatement pstmt = DETALLE.preparar(conn)) {
+            for (Linea linea : lineas) {
+                pstmt.setInt(1, idBoleta);
+                pstmt.setInt(2, linea.codProducto());
+                pstmt.setInt(3, linea.cantidad());
+                pstmt.setInt(4, linea.cantidadFiado());
+                pstmt.setDouble(5, linea.precioUnitario());
+                pstmt.setDouble(6, linea.descuento());
+                pstmt.setDouble(7, linea.totalPago());
+                pstmt.setDouble(8, linea.totalFiado());
+                pstmt.setString(9, linea.tipoTransaccion());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    private Set<Integer> descontarStock(Connection conn, List<Linea> lineas, boolean exigirStock) throws SQLException {
+        // Agrupar por producto y ordenar por codigo: todas las cajas bloquean filas en el mismo orden
+        Map<Integer, Integer> porProducto = new TreeMap<>();
+        for (Linea linea : lineas) {
+            porProducto.merge(linea.codProducto(), linea.cantidad(), Integer::sum);
+        }
+        ajustarStock(conn, porProducto, -1, exigirStock);
+        return porProducto.keySet();
+    }
+
+    /**
+     * Anota en el registro los productos que quedaron con stock negativo
+     * al aplicar una venta confirmada sin conexion, para que alguien los revise
+     */
+    private void avisarStockNegativo(Connection conn, Set<Integer> productos) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT codProducto, stock FROM productos WHERE stock < 0 AND codProducto IN (");
+        for (int i = 0; i < productos.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(')');
+        try (PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+            int p = 1;
+            for (int codigo : productos) {
+                pstmt.setInt(p++, codigo);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    logger.warning("Stock negativo al registrar una venta confirmada sin conexion: producto "
+                            + rs.getInt("codProducto") + " queda en " + rs.getInt("stock"));
+                    Metricas.contar("diario.stockNegativo");
+                }
+            }
+        }
+    }
+
+    /**
+     * Aplica un ajuste de stock a varios productos con un UPDATE ... CASE por
+     * cada bloque de hasta 500 productos. Al descontar, cada fila solo se
+     * actualiza si su stock alcanza ("stock >= cantidad"); si alguna no
+     * alcanza se lanza {@link StockInsuficienteException} y el llamador
+     * revierte la transaccion. Asi dos cajas no venden las mismas unidades
+     * sin necesidad de SELECT ... FOR UPDATE.
+     * @param conn conexion (dentro de la transaccion del llamador)
+     * @param cantidades cantidad por codProducto, idealmente ordenado por codigo
+     * @param signo -1 para descontar, 1 para sumar
+     * @throws SQLException si falla el UPDATE o falta stock al descontar
+     */
+    public static void ajustarStock(Connection conn, Map<Integer, Integer> cantidades, int signo) throws SQLException {
+        ajustarStock(conn, cantidades, signo, true);
+    }
+
+    /**
+     * Como {@link #ajustarStock(Connection, Map, int)}, pero al descontar
+     * sin la condicion "stock &gt;= cantidad" si exigirStock es false
+     */
+    static void ajustarStock(Connection conn, Map<Integer, Integer> cantidades, int signo,
+                             boolean exigirStock) throws SQLException {
+        if (cantidades.isEmpty()) {
+            return;
+        }
+        boolean descontar = signo < 0;
+        boolean condicional = descontar && exigirStock;
+        Integer[] codigos = cantidades.keySet().toArray(new Integer[0]);
+        for (int desde = 0; desde < codigos.length; desde += MAXIMO_PRODUCTOS_POR_UPDATE) {
+            int hasta = Math.min(codigos.length, desde + MAXIMO_PRODUCTOS_POR_UPDATE);
+            int n = hasta - desde;
+
+            StringBuilder caso = new StringBuilder("CASE codProducto");
+            for (int i = 0; i < n; i++) {
+                caso.append(" WHEN ? THEN ?");
+            }
+            caso.append(" END");
+            StringBuilder sql = new StringBuilder("UPDATE productos SET stock = stock ")
+                    .append(descontar ? '-' : '+').append(' ').append(caso)
+                    .append(" WHERE codProducto IN (");
+            for (int i = 0; i < n; i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(')');
+            if (condicional) {
+                sql.append(" AND stock >= ").append(caso);
+            }
+
+            try (PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+                int p = 1;
+                p = fijarCaso(pstmt, p, codigos, desde, hasta, cantidades);
+                for (int i = desde; i < hasta; i++) {
+                    pstmt.setInt(p++, codigos[i]);
+                }
+                if (condicional) {
+                    fijarCaso(pstmt, p, codigos, desde, hasta, cantidades);
+                }
+                int actualizadas = pstmt.executeUpdate();
+                if (condicional && actualizadas < n) {
+                    throw new StockInsuficienteException(cantidades);
+                }
+            }
+        }
+    }
+
+    private static int fijarCaso(PreparedStatement pstmt, int p, Integer[] codigos, int desde, int hasta,
+                                 Map<Integer, Integer> cantidades) throws SQLException {
+        for (int i = desde; i < hasta; i++) {
+            pstmt.setInt(p++, codigos[i]);
+            pstmt.setInt(p++, cantidades.get(codigos[i]));
+        }
+        return p;
+    }
+
+    private void insertarDeuda(Connection conn, int idBoleta, Boleta boleta) throws SQLException {
+        try (PreparedStatement pstmt = DEUDA.preparar(conn)) {
+            pstmt.setString(1, boleta.rutDeudor());
+            pstmt.setInt(2, idBoleta);
+            pstmt.setTimestamp(3, boleta.fecha());
+            pstmt.executeUpdate();
+        }
+        SaldosDeudores.sumarDeuda(conn, Integer.parseInt(boleta.rutDeudor().trim()),
+                (int) Math.round(boleta.totalFiado()), Date.valueOf(boleta.fecha().toLocalDateTime().toLocalDate()));
+    }
+}
@@ -0,0 +1,155 @@
+package ventas;
+
+import catalogo.CatalogoProductos;
+import datos.Consulta;
+import datos.Consultas;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * Escribe una factura de proveedor completa (cabecera, detalle y stock) en
+ * una sola transaccion usando lotes JDBC.
+ * <p>
+ * Igual que {@link EscritorBoletas}: el detalle va en un unico lote de
+ * PreparedStatement y el stock se suma con un UPDATE ... CASE por cada
+ * bloque de productos, asi una entrega de cientos de lineas mantiene los
+ * bloqueos de filas el menor tiempo posible.
+ *
+ * @author franc
+ */
+public class EscritorFacturas {
+
+    private static final Logger logger = Logger.getLogger(EscritorFacturas.class.getName());
+
+    private static final Consulta FACTURA = Consultas.registrar("facturas.insertar",
+            "INSERT INTO facturaProveedores VALUES (?, ?, ?, ?, ?, ?, ?)");
+
+    private static final Consulta DETALLE = Consultas.registrar("facturas.insertarDetalle",
+            "INSERT INTO detalleFacturaProductos VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+
+    private static final float IVA = 0.19f;
+
+    /**
+     * Linea de detalle: cantidadCaja paquetes de cantidadUnidad unidades cada uno
+     */
+    public record Linea(int codProducto, LocalDate vencimiento, int cantidadUnidad, int cantidadCaja,
+                        int precioCaja, int precioTotal) {
+
+        public int unidades() {
+            return cantidadUnidad * cantidadCaja;
+        }
+    }
+
+    public record Factura(int numFactura, int rutProveedor, int rutUsuario, LocalDate fechaCompra,
+                          LocalDate fechaVencimiento, String medioPago, int total, List<Linea> lineas) {
+    }
+
+    /**
+     * Tiempos de cada etapa de la transaccion, en nanosegundos
+     */
+    public record Tiempos(int lineas, long cabecera, long detalle, long stock, long commit) {
+
+        public long total() {
+            return cabecera + detalle + stock + commit;
+        }
+
+        /**
+         * Filas de detalle escritas por segundo, contando toda la transaccion
+         */
+        public double filasPorSegundo() {
+            return total() == 0 ? 0 : lineas * 1_000_000_000.0 / total();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d líneas: cabecera=%.2fms detalle=%.2fms stock=%.2fms commit=%.2fms total=%.2fms (%.0f filas/s)",
+                    lineas, ms(cabecera), ms(detalle), ms(stock), ms(commit), ms(total()), filasPorSegundo());
+        }
+
+        private static double ms(long nanos) {
+            return nanos / 1_000_000.0;
+        }
+    }
+
+    /**
+     * Registra la factura en una transaccion. La conexion queda en auto-commit
+     * al terminar, haya exito o error.
+     * @param conn conexion a usar
+     * @param factura datos de la factura
+     * @return Tiempos con el desglose y las filas por segundo
+     * @throws SQLException si falla cualquier etapa; la transaccion se revierte
+     */
+    public Tiempos registrar(Connection conn, Factura factura) throws SQLException {
+        // Antes de abrir la transaccion: la primera vez crea el resumen y lo llena desde facturaProveedores
+        ResumenFacturas.preparar();
+        boolean autoCommitPrevio = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        Tiempos tiempos;
+        Map<Integer, Integer> porProducto;
+        try {
+            long t0 = System.nanoTime();
+            insertarCabecera(conn, factura);
+            ResumenFacturas.sumar(conn, factura.rutProveedor(), factura.fechaCompra(), factura.total());
+            long t1 = System.nanoTime();
+            insertarDetalle(conn, factura);
+            long t2 = System.nanoTime();
+            // Ordenado por codigo para bloquear las filas siempre en el mismo orden
+            porProducto = new TreeMap<>();
+            for (Linea linea : factura.lineas()) {
+                porProducto.merge(linea.codProducto(), linea.unidades(), Integer::sum);
+            }
+            EscritorBoletas.ajustarStock(conn, porProducto, 1);
+            long t3 = System.nanoTime();
+            conn.commit();
+            long t4 = System.nanoTime();
+
+            tiempos = new Tiempos(factura.lineas().size(), t1 - t0, t2 - t1, t3 - t2, t4 - t3);
+            logger.info("Factura #" + factura.numFactura() + " " + tiempos);
+        } catch (SQLException e) {
+            EscritorBoletas.revertir(conn, e);
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommitPrevio);
+        }
+        CatalogoProductos.refrescarStock(conn, porProducto.keySet());
+        return tiempos;
+    }
+
+    private void insertarCabecera(Connection conn, Factura factura) throws SQLException {
+        try (PreparedStatement pstmt = FACTURA.preparar(conn)) {
+            pstmt.setInt(1, factura.numFactura());
+            pstmt.setInt(2, factura.rutProveedor());
+            pstmt.setInt(3, factura.rutUsuario());
+            pstmt.setDate(4, Date.valueOf(factura.fechaCompra()));
+            pstmt.setDate(5, Date.valueOf(factura.fechaVencimiento()));
+            pstmt.setString(6, factura.medioPago());
+            pstmt.setInt(7, factura.total());
+            pstmt.executeUpdate();
+        }
+    }
+
+    private void insertarDetalle(Connection conn, Factura factura) throws SQLException {
+        try (PreparedStatement pstmt = DETALLE.preparar(conn)) {
+            for (Linea linea : factura.lineas()) {
+                pstmt.setInt(1, factura.numFactura());
+                pstmt.setInt(2, linea.codProducto());
+                pstmt.setDate(3, Date.valueOf(linea.vencimiento()));
+                pstmt.setBoolean(4, false);
+                pstmt.setInt(5, linea.cantidadCaja());
+                pstmt.setInt(6, linea.cantidadUnidad());
+                pstmt.setInt(7, linea.precioCaja());
+                pstmt.setFloat(8, IVA);
+                pstmt.setInt(9, linea.precioTotal());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package ventas;
+
+import datos.Consulta;
+import datos.Consultas;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Reparte un pago entre las deudas abiertas de un deudor, de la mas antigua
+ * a la mas nueva.
+ * <p>
+ * Las deudas se leen con un solo SELECT ... FOR UPDATE (asi dos cajas no
+ * abonan la misma deuda a la vez), el reparto se calcula en una pasada en
+ * memoria y los abonos se escriben con un unico lote de UPDATE. Pagar
+ * cientos de boletas chicas cuesta las mismas idas y vueltas que pagar una.
+ * <p>
+ * {@link #pagar} registra el pago completo en su propia transaccion;
+ * {@link #liquidar} debe llamarse dentro de la transaccion que registra el pago.
+ *
+ * @author franc
+ */
+public final class LiquidadorDeudas {
+
+    private static final Logger logger = Logger.getLogger(LiquidadorDeudas.class.getName());
+
+    // La boleta preferida (si hay) va primero; despues el orden FIFO de siempre
+    private static final Consulta ABIERTAS = Consultas.registrar("deudas.abiertasParaPago",
+            "SELECT d.deudaId, d.idBoleta, b.totalFiado, d.montoPagado " +
+            "FROM deudas d INNER JOIN boletas b ON d.idBoleta = b.idBoleta " +
+            "WHERE d.rutDeudor = ? AND d.estaPagado = 0 AND b.totalFiado - d.montoPagado > 0 " +
+            "ORDER BY d.idBoleta = ? DESC, d.fechaDeuda ASC, d.deudaId ASC " +
+            "FOR UPDATE");
+
+    private static final Consulta ABONAR = Consultas.registrar("deudas.abonar",
+            "UPDATE deudas SET montoPagado = ?, estaPagado = ? WHERE deudaId = ?");
+
+    private static final Consulta EXISTE_USUARIO = Consultas.registrar("usuarios.existe",
+            "SELECT 1 FROM usuarios WHERE rutUsuario = ?");
+
+    private static final Consulta PAGO = Consultas.registrar("pagos.insertar",
+            "INSERT INTO pagoDeudas (rutDeudor, rutUsuario, fechaTramite, totalPagado) VALUES (?, ?, ?, ?)");
+
+    /**
+     * Parte del pago aplicada a una deuda
+     * @param saldoAnterior lo que se debia antes del pago
+     * @param monto lo que se abono
+     * @param cerrada si la deuda quedo pagada por completo
+     */
+    public record Abono(int deudaId, int idBoleta, int saldoAnterior, int monto, boolean cerrada) {
+
+        public int saldoRestante() {
+            return saldoAnterior - monto;
+        }
+    }
+
+    /**
+     * Comprobante de un pago repartido
+     * @param sobrante parte del pago que no alcanzo a aplicarse porque ya no
+     *        quedaban deudas abiertas
+     */
+    public record Recibo(int rutDeudor, int montoRecibido, List<Abono> abonos, int sobrante) {
+
+        public int aplicado() {
+            return montoRecibido - sobrante;
+        }
+
+        public List<Abono> cerradas() {
+            List<Abono> cerradas = new ArrayList<>();
+            for (Abono abono : abonos) {
+                if (abono.cerrada()) {
+                    cerradas.add(abono);
+                }
+            }
+            return cerradas;
+        }
+    }
+
+    private LiquidadorDeudas() {
+    }
+
+    /**
+     * Registra un pago completo en una transaccion: la fila de pagoDeudas,
+     * el reparto entre las deudas y el saldo del deudor. La conexion queda
+     * en auto-commit al terminar.
+     * @param conn conexion a usar
+     * @param rutDeudor deudor que paga
+     * @param rutUsuario cajero que recibe el pago
+     * @param monto monto pagado, mayor que cero
+     * @param idBoletaPreferida boleta a saldar primero, o -1
+     * @return Recibo con cada abono, o null si el cajero no existe (no se registra nada)
+     * @throws SQLException si falla cualquier etapa; la transaccion se revierte
+     */
+    public static Recibo pagar(Connection conn, int rutDeudor, int rutUsuario, int monto, int idBoletaPreferida)
+            throws SQLException {
+        // Antes de abrir la transaccion: la primera vez crea y llena saldoDeudores
+        SaldosDeudores.preparar();
+        conn.setAutoCommit(false);
+        try {
+            if (!existeUsuario(conn, rutUsuario)) {
+                conn.rollback();
+                return null;
+            }
+            try (PreparedStatement pstmt = PAGO.preparar(conn)) {
+                pstmt.setInt(1, rutDeudor);
+                pstmt.setInt(2, rutUsuario);
+                pstmt.setTimestamp(3, Timestamp.valueOf(LocalDateTime.now()));
+                pstmt.setInt(4, monto);
+                pstmt.executeUpdate();
+            }
+            Recibo recibo = liquidar(conn, rutDeudor, monto, idBoletaPreferida);
+            SaldosDeudores.recalcular(conn, rutDeudor);
+            conn.commit();
+            return recibo;
+        } catch (SQLException e) {
+            EscritorBoletas.revertir(conn, e);
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private static boolean existeUsuario(Connection conn, int rutUsuario) throws SQLException {
+        try (PreparedStatement pstmt = EXISTE_USUARIO.preparar(conn)) {
+            pstmt.setInt(1, rutUsuario);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /**
+     * Aplica el pago a las deudas abiertas del deudor
+     * @param conn conexion de la transaccion del pago
+     * @param rutDeudor deudor
+     * @param monto monto pagado, mayor que cero
+     * @param idBoletaPreferida boleta a saldar antes que las demas, o -1 para
+     *        seguir solo el orden por fecha
+     * @return Recibo con cada abono
+     * @throws SQLException si falla la lectura o el lote; la transaccion debe revertirse
+     */
+    public static Recibo liquidar(Connection conn, int rutDeudor, int monto, int idBoletaPreferida) throws SQLException {
+        List<Abono> abonos = new ArrayList<>();
+        // Monto pagado acumulado de cada abono, en el mismo orden
+        List<Integer> pagados = new ArrayList<>();
+        int restante = monto;
+
+        try (PreparedStatement pstmt = ABIERTAS.preparar(conn)) {
+            pstmt.setInt(1, rutDeudor);
+            pstmt.setInt(2, idBoletaPreferida);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (restante > 0 && rs.next()) {
+                    int totalFiado = rs.getInt("totalFiado");
+                    int montoPagado = rs.getInt("montoPagado");
+                    int saldo = totalFiado - montoPagado;
+                    int abono = Math.min(restante, saldo);
+                    abonos.add(new Abono(rs.getInt("deudaId"), rs.getInt("idBoleta"), saldo, abono, abono == saldo));
+                    pagados.add(montoPagado + abono);
+                    restante -= abono;
+                }
+            }
+        }
+
+        if (!abonos.isEmpty()) {
+            try (PreparedStatement pstmt = ABONAR.preparar(conn)) {
+                for (int i = 0; i < abonos.size(); i++) {
+                    Abono abono = abonos.get(i);
+                    pstmt.setInt(1, pagados.get(i));
+                    pstmt.setBoolean(2, abono.cerrada());
+                    pstmt.setInt(3, abono.deudaId());
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+        }
+
+        Recibo recibo = new Recibo(rutDeudor, monto, Collections.unmodifiableList(abonos), restante);
+        logger.info("Pago de deudor " + rutDeudor + ": $" + recibo.aplicado() + " en " + abonos.size()
+                + " deudas, " + recibo.cerradas().size() + " cerradas, sobrante $" + restante);
+        return recibo;
+    }
+}
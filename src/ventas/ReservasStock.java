@@ -0,0 +1,212 @@
+package ventas;
+
+import catalogo.CatalogoProductos;
+import catalogo.Producto;
+import datos.ConexionBD;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reservas de stock para los carros abiertos de esta caja.
+ * <p>
+ * Cuando un producto entra al carro se reserva su cantidad contra el stock
+ * del catalogo menos lo que ya reservaron los demas carros, asi dos ventanas
+ * no venden las mismas ultimas unidades. Cada producto se protege con uno de
+ * {@value #FRANJAS} candados segun su codigo, de modo que carros con
+ * productos distintos no se esperan entre si. Las reservas vencen si el
+ * carro no se toca durante reservas.ttlSeg segundos, salvo las de un carro
+ * ya cobrado que espera su boleta ({@link #fijar}).
+ * <p>
+ * Entre cajas distintas la garantia la da la base de datos: al confirmar,
+ * {@link EscritorBoletas#ajustarStock} descuenta con "stock >= cantidad"
+ * y la transaccion se revierte si algun producto no alcanza, sin SELECT ...
+ * FOR UPDATE ni bloqueos globales. Una venta del {@link DiarioVentas} que
+ * no alcanza queda detenida hasta que haya stock. La unica excepcion son
+ * las ventas confirmadas sin conexion con diario.stockSinConexion=true,
+ * que se descuentan aunque el stock quede negativo.
+ *
+ * @author franc
+ */
+public final class ReservasStock {
+
+    private static final Logger logger = Logger.getLogger(ReservasStock.class.getName());
+
+    private static final int FRANJAS = 64;
+    private static final long TTL_POR_DEFECTO_SEG = 15 * 60;
+
+    /**
+     * Productos reservados por un carro y el momento en que vence
+     */
+    private static final class Carro {
+        final Map<Integer, Integer> cantidades = new ConcurrentHashMap<>();
+        volatile long vence;
+        volatile boolean fijo;
+    }
+
+    private static final ReentrantLock[] candados = new ReentrantLock[FRANJAS];
+    // Total reservado por producto, sumando todos los carros
+    private static final Map<Integer, Integer> reservado = new ConcurrentHashMap<>();
+    private static final Map<Long, Carro> carros = new ConcurrentHashMap<>();
+    private static final AtomicLong siguienteCarro = new AtomicLong();
+    private static final long ttlMs;
+
+    static {
+        for (int i = 0; i < FRANJAS; i++) {
+            candados[i] = new ReentrantLock();
+        }
+        long ttl = TTL_POR_DEFECTO_SEG;
+        try {
+            ttl = ConexionBD.getConfiguracion().largo("reservas.ttlSeg", TTL_POR_DEFECTO_SEG);
+        } catch (SQLException | IllegalArgumentException e) {
+            logger.log(Level.WARNING, "Se usa el TTL de reservas por defecto", e);
+        }
+        ttlMs = ttl * 1000;
+        ScheduledExecutorService limpieza = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "vencimiento-reservas");
+            t.setDaemon(true);
+            return t;
+        });
+        limpieza.scheduleWithFixedDelay(ReservasStock::vencer, 30, 30, TimeUnit.SECONDS);
+    }
+
+    private ReservasStock() {
+    }
+
+    /**
+     * Abre un carro nuevo, sin reservas
+     * @return identificador del carro
+     */
+    public static long nuevoCarro() {
+        long id = siguienteCarro.incrementAndGet();
+        Carro carro = new Carro();
+        carro.vence = System.currentTimeMillis() + ttlMs;
+        carros.put(id, carro);
+        return id;
+    }
+
+    /**
+     * Fija la cantidad reservada de un producto en el carro (no la suma)
+     * @param idCarro carro obtenido con {@link #nuevoCarro()}
+     * @param codProducto producto
+     * @param cantidad cantidad total que el carro necesita
+     * @return disponible para reservar antes de este pedido: si es menor que
+     *         cantidad la reserva no se hizo y el carro conserva la anterior
+     * @throws SQLException si el catalogo no se pudo cargar
+     */
+    public static int reservar(long idCarro, int codProducto, int cantidad) throws SQLException {
+        Producto producto = CatalogoProductos.buscar(codProducto);
+        int stock = producto == null ? 0 : producto.stock();
+        ReentrantLock candado = candado(codProducto);
+        while (true) {
+            Carro carro = carros.computeIfAbsent(idCarro, id -> new Carro());
+            candado.lock();
+            try {
+                if (carros.get(idCarro) != carro) {
+                    // El carro vencio mientras se esperaba el candado
+                    continue;
+                }
+                int propia = carro.cantidades.getOrDefault(codProducto, 0);
+                int disponible = stock - reservado.getOrDefault(codProducto, 0) + propia;
+                if (cantidad <= disponible) {
+                    carro.cantidades.put(codProducto, cantidad);
+                    reservado.merge(codProducto, cantidad - propia, Integer::sum);
+                    reservado.remove(codProducto, 0);
+                }
+                carro.vence = System.currentTimeMillis() + ttlMs;
+                return disponible;
+            } finally {
+                candado.unlock();
+            }
+        }
+    }
+
+    /**
+     * Mantiene las reservas del carro hasta {@link #cerrarCarro}, sin
+     * vencer. Se llama al cobrar: la venta puede quedar horas en el
+     * {@link DiarioVentas} si no hay conexion, y mientras tanto otro carro
+     * no debe vender esas unidades.
+     * @param idCarro carro cobrado
+     */
+    public static void fijar(long idCarro) {
+        Carro carro = carros.get(idCarro);
+        if (carro != null) {
+            carro.fijo = true;
+        }
+    }
+
+    /**
+     * Devuelve la reserva de un producto, por ejemplo al quitarlo del carro
+     * @param idCarro carro
+     * @param codProducto producto
+     */
+    public static void liberar(long idCarro, int codProducto) {
+        Carro carro = carros.get(idCarro);
+        if (carro != null) {
+            liberar(carro, codProducto);
+        }
+    }
+
+    /**
+     * Cierra el carro y devuelve todas sus reservas. Se llama despues del
+     * commit (el stock real ya bajo), al fallar, o al cerrar la pantalla.
+     * @param idCarro carro
+     */
+    public static void cerrarCarro(long idCarro) {
+        Carro carro = carros.remove(idCarro);
+        if (carro != null) {
+            for (Integer codProducto : carro.cantidades.keySet()) {
+                liberar(carro, codProducto);
+            }
+        }
+    }
+
+    /**
+     * Cantidad reservada por todos los carros abiertos
+     * @param codProducto producto
+     * @return unidades reservadas
+     */
+    public static int reservadas(int codProducto) {
+        return reservado.getOrDefault(codProducto, 0);
+    }
+
+    private static void liberar(Carro carro, int codProducto) {
+        ReentrantLock candado = candado(codProducto);
+        candado.lock();
+        try {
+            Integer propia = carro.cantidades.remove(codProducto);
+            if (propia != null) {
+                reservado.merge(codProducto, -propia, Integer::sum);
+                reservado.remove(codProducto, 0);
+            }
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    private static void vencer() {
+        long ahora = System.currentTimeMillis();
+        for (Map.Entry<Long, Carro> e : carros.entrySet()) {
+            // Si la pantalla sigue abierta, el proximo reservar() abre el carro de nuevo
+            if (!e.getValue().fijo && e.getValue().vence < ahora && carros.remove(e.getKey(), e.getValue())) {
+                if (!e.getValue().cantidades.isEmpty()) {
+                    logger.info("Reservas del carro " + e.getKey() + " vencidas");
+                }
+                for (Integer codProducto : e.getValue().cantidades.keySet()) {
+                    liberar(e.getValue(), codProducto);
+                }
+            }
+        }
+    }
+
+    private static ReentrantLock candado(int codProducto) {
+        return candados[Math.floorMod(Integer.hashCode(codProducto) * 0x9E3779B9, FRANJAS)];
+    }
+}
@@ -0,0 +1,188 @@
+package ventas;
+
+import datos.ConexionBD;
+import datos.Consulta;
+import datos.Consultas;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cantidad y total de facturas por semestre y proveedor, guardados en la
+ * tabla resumenFacturas y mantenidos por la misma transaccion que registra
+ * cada factura.
+ * <p>
+ * El historial de facturas arma el combo de semestres y los totales desde
+ * este resumen en vez de recorrer facturaProveedores. Al crear la tabla se
+ * agregan tambien los indices que usa el historial para traer cada pagina
+ * ya ordenada por fecha:
+ * <ul>
+ * <li>{@value #INDICE_FECHA}: (fechaTramite, idFactura)</li>
+ * <li>{@value #INDICE_EMPRESA}: (rutEmpresa, fechaTramite, idFactura)</li>
+ * </ul>
+ * La tabla se crea y se llena desde facturaProveedores con {@link #preparar},
+ * que corre despues del login ({@link #programar}) y siempre fuera de una
+ * transaccion: el DDL y la carga inicial leen facturaProveedores desde otra
+ * conexion y esperarian los bloqueos de la transaccion que la llamara.
+ * {@link #sumar} y {@link #cambiarProveedor} dan la tabla por creada.
+ *
+ * @author franc
+ */
+public final class ResumenFacturas {
+
+    private static final Logger logger = Logger.getLogger(ResumenFacturas.class.getName());
+
+    private static final String INDICE_FECHA = "idxFacturasFecha";
+    private static final String INDICE_EMPRESA = "idxFacturasEmpresaFecha";
+
+    private static final String SQL_CREAR =
+            "CREATE TABLE IF NOT EXISTS resumenFacturas (" +
+            "anio SMALLINT NOT NULL, " +
+            "semestre TINYINT NOT NULL, " +
+            "rutEmpresa INT NOT NULL, " +
+            "facturas INT NOT NULL DEFAULT 0, " +
+            "total BIGINT NOT NULL DEFAULT 0, " +
+            "PRIMARY KEY (anio, semestre, rutEmpresa))";
+
+    private static final String SQL_RECALCULAR_TODOS =
+            "REPLACE INTO resumenFacturas (anio, semestre, rutEmpresa, facturas, total) " +
+            "SELECT YEAR(fechaTramite), IF(MONTH(fechaTramite) <= 6, 1, 2), rutEmpresa, COUNT(*), SUM(total) " +
+            "FROM facturaProveedores GROUP BY 1, 2, 3";
+
+    private static final Consulta SUMAR = Consultas.registrar("facturas.sumarResumen",
+            "INSERT INTO resumenFacturas (anio, semestre, rutEmpresa, facturas, total) VALUES (?, ?, ?, 1, ?) " +
+            "ON DUPLICATE KEY UPDATE facturas = facturas + 1, total = total + VALUES(total)");
+
+    private static final Consulta MOVER = Consultas.registrar("facturas.moverResumen",
+            "INSERT INTO resumenFacturas (anio, semestre, rutEmpresa, facturas, total) " +
+            "SELECT r.anio, r.semestre, ?, r.facturas, r.total FROM resumenFacturas r WHERE r.rutEmpresa = ? " +
+            "ON DUPLICATE KEY UPDATE facturas = resumenFacturas.facturas + VALUES(facturas), " +
+            "total = resumenFacturas.total + VALUES(total)");
+
+    private static final Consulta BORRAR = Consultas.registrar("facturas.borrarResumen",
+            "DELETE FROM resumenFacturas WHERE rutEmpresa = ?");
+
+    private static volatile boolean preparada;
+
+    private ResumenFacturas() {
+    }
+
+    /**
+     * Semestre de una fecha: 1 de enero a junio, 2 de julio a diciembre
+     * @param fecha fecha de la factura
+     * @return 1 o 2
+     */
+    public static int semestre(LocalDate fecha) {
+        return fecha.getMonthValue() <= 6 ? 1 : 2;
+    }
+
+    /**
+     * Prepara la tabla en un hilo virtual. Se llama despues del login, asi
+     * la primera factura o el historial no esperan la carga inicial.
+     */
+    public static void programar() {
+        Thread.ofVirtual().name("resumen-facturas").start(() -> {
+            try {
+                preparar();
+            } catch (SQLException | RuntimeException e) {
+                logger.log(Level.WARNING, "No se pudo preparar el resumen de facturas", e);
+            }
+        });
+    }
+
+    /**
+     * Crea la tabla y los indices si no existen y, si la tabla es nueva, la
+     * llena desde las facturas actuales. Usa una conexion propia porque el
+     * DDL confirmaria cualquier transaccion abierta. No debe llamarse con una
+     * transaccion abierta sobre facturaProveedores.
+     * @throws SQLException si falla la creacion o la carga inicial
+     */
+    public static void preparar() throws SQLException {
+        if (preparada) {
+            return;
+        }
+        synchronized (ResumenFacturas.class) {
+            if (preparada) {
+                return;
+            }
+            try (Connection conn = ConexionBD.getConnection();
+                 Statement st = conn.createStatement()) {
+                DatabaseMetaData meta = conn.getMetaData();
+                boolean nueva;
+                try (ResultSet rs = meta.getTables(conn.getCatalog(), null, "resumenFacturas", null)) {
+                    nueva = !rs.next();
+                }
+                Set<String> indices = new HashSet<>();
+                try (ResultSet rs = meta.getIndexInfo(conn.getCatalog(), null, "facturaProveedores", false, true)) {
+                    while (rs.next()) {
+                        if (rs.getString("INDEX_NAME") != null) {
+                            indices.add(rs.getString("INDEX_NAME").toLowerCase());
+                        }
+                    }
+                }
+                if (!indices.contains(INDICE_FECHA.toLowerCase())) {
+                    st.executeUpdate("CREATE INDEX " + INDICE_FECHA + " ON facturaProveedores (fechaTramite, idFactura)");
+                }
+                if (!indices.contains(INDICE_EMPRESA.toLowerCase())) {
+                    st.executeUpdate("CREATE INDEX " + INDICE_EMPRESA + " ON facturaProveedores (rutEmpresa, fechaTramite, idFactura)");
+                }
+                st.executeUpdate(SQL_CREAR);
+                if (nueva) {
+                    int filas = st.executeUpdate(SQL_RECALCULAR_TODOS);
+                    logger.info("Tabla resumenFacturas creada con " + filas + " filas");
+                }
+            }
+            preparada = true;
+        }
+    }
+
+    /**
+     * Suma una factura nueva al resumen de su semestre y proveedor. La
+     * tabla ya debe existir: se llama a {@link #preparar} antes de abrir la
+     * transaccion.
+     * @param conn conexion de la transaccion que inserta la factura
+     * @param rutEmpresa proveedor
+     * @param fecha fechaTramite de la factura
+     * @param total total de la factura
+     * @throws SQLException si falla el INSERT; la transaccion debe revertirse
+     */
+    public static void sumar(Connection conn, int rutEmpresa, LocalDate fecha, int total) throws SQLException {
+        try (PreparedStatement pstmt = SUMAR.preparar(conn)) {
+            pstmt.setInt(1, fecha.getYear());
+            pstmt.setInt(2, semestre(fecha));
+            pstmt.setInt(3, rutEmpresa);
+            pstmt.setInt(4, total);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Pasa el resumen de un proveedor a otro rut, sumandolo a lo que ya
+     * tuviera el rut nuevo, y borra las filas del anterior. Se llama en la
+     * transaccion que mueve las facturas del proveedor al rut nuevo, con la
+     * tabla ya creada por {@link #preparar}.
+     * @param conn conexion de la transaccion que mueve las facturas
+     * @param rutAnterior rut que deja de existir
+     * @param rutNuevo rut que recibe las facturas
+     * @throws SQLException si falla; la transaccion debe revertirse
+     */
+    public static void cambiarProveedor(Connection conn, int rutAnterior, int rutNuevo) throws SQLException {
+        try (PreparedStatement pstmt = MOVER.preparar(conn)) {
+            pstmt.setInt(1, rutNuevo);
+            pstmt.setInt(2, rutAnterior);
+            pstmt.executeUpdate();
+        }
+        try (PreparedStatement pstmt = BORRAR.preparar(conn)) {
+            pstmt.setInt(1, rutAnterior);
+            pstmt.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package ventas;
+
+import datos.ConexionBD;
+import datos.Consulta;
+import datos.Consultas;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Saldo de cada deudor, guardado en la tabla saldoDeudores y mantenido al
+ * dia por las mismas transacciones que cambian las deudas.
+ * <p>
+ * Antes, la lista de clientes sumaba todas las deudas y boletas en cada
+ * apertura. Ahora cada deudor tiene una fila con su deuda pendiente, la
+ * fecha de su deuda abierta mas antigua y cuantas deudas tiene abiertas:
+ * <ul>
+ * <li>una boleta fiada suma su monto con {@link #sumarDeuda}, sin consultas</li>
+ * <li>un pago o el borrado de una boleta recalcula la fila del deudor con
+ * {@link #recalcular}, que solo lee las deudas de ese deudor</li>
+ * </ul>
+ * Ambas se llaman con la conexion de la transaccion, antes del commit, asi
+ * el saldo nunca queda distinto de las deudas, y dan la tabla por creada.
+ * <p>
+ * La tabla se crea y se llena desde deudas con {@link #preparar}, que corre
+ * despues del login ({@link #programar}) y siempre fuera de una transaccion:
+ * la carga inicial lee deudas y boletas desde otra conexion y esperaria las
+ * filas sin confirmar de la transaccion que la llamara. Quien abre una
+ * transaccion que cambia deudas llama antes a preparar.
+ *
+ * @author franc
+ */
+public final class SaldosDeudores {
+
+    private static final Logger logger = Logger.getLogger(SaldosDeudores.class.getName());
+
+    private static final String SQL_CREAR =
+            "CREATE TABLE IF NOT EXISTS saldoDeudores (" +
+            "rutDeudor INT NOT NULL PRIMARY KEY, " +
+            "saldo INT NOT NULL DEFAULT 0, " +
+            "deudasAbiertas INT NOT NULL DEFAULT 0, " +
+            "deudaMasAntigua DATE NULL)";
+
+    private static final String SQL_RECALCULAR_TODOS =
+            "REPLACE INTO saldoDeudores (rutDeudor, saldo, deudasAbiertas, deudaMasAntigua) " +
+            "SELECT d.rutDeudor, SUM(b.totalFiado - d.montoPagado), COUNT(*), MIN(d.fechaDeuda) " +
+            "FROM deudas d INNER JOIN boletas b ON d.idBoleta = b.idBoleta " +
+            "WHERE d.estaPagado = 0 GROUP BY d.rutDeudor";
+
+    private static final Consulta SUMAR = Consultas.registrar("deudores.sumarDeuda",
+            "INSERT INTO saldoDeudores (rutDeudor, saldo, deudasAbiertas, deudaMasAntigua) VALUES (?, ?, 1, ?) " +
+            "ON DUPLICATE KEY UPDATE saldo = saldo + VALUES(saldo), deudasAbiertas = deudasAbiertas + 1, " +
+            "deudaMasAntigua = LEAST(COALESCE(deudaMasAntigua, VALUES(deudaMasAntigua)), VALUES(deudaMasAntigua))");
+
+    private static final Consulta RECALCULAR = Consultas.registrar("deudores.recalcular",
+            "INSERT INTO saldoDeudores (rutDeudor, saldo, deudasAbiertas, deudaMasAntigua) " +
+            "SELECT ?, COALESCE(SUM(b.totalFiado - d.montoPagado), 0), COUNT(d.deudaId), MIN(d.fechaDeuda) " +
+            "FROM deudas d INNER JOIN boletas b ON d.idBoleta = b.idBoleta " +
+            "WHERE d.rutDeudor = ? AND d.estaPagado = 0 " +
+            "ON DUPLICATE KEY UPDATE saldo = VALUES(saldo), deudasAbiertas = VALUES(deudasAbiertas), " +
+            "deudaMasAntigua = VALUES(deudaMasAntigua)");
+
+    private static final Consulta SALDO = Consultas.registrar("deudores.saldo",
+            "SELECT saldo FROM saldoDeudores WHERE rutDeudor = ?");
+
+    private static final Consulta LISTAR = Consultas.registrar("deudores.listar",
+            "SELECT d.rutDeudor, d.nomDeudor, d.telefono, s.deudaMasAntigua, COALESCE(s.saldo, 0) AS saldo " +
+            "FROM deudores d LEFT JOIN saldoDeudores s ON d.rutDeudor = s.rutDeudor " +
+            "ORDER BY d.nomDeudor");
+
+    /**
+     * Fila de la lista de clientes
+     * @param deudaMasAntigua fecha de la deuda abierta mas antigua, o null si no debe nada
+     */
+    public record Deudor(int rutDeudor, String nombre, int telefono, Date deudaMasAntigua, int saldo) {
+    }
+
+    private static volatile boolean preparada;
+
+    private SaldosDeudores() {
+    }
+
+    /**
+     * Prepara la tabla en un hilo virtual. Se llama despues del login, asi
+     * la primera venta fiada o el primer pago no esperan la carga inicial.
+     */
+    public static void programar() {
+        Thread.ofVirtual().name("saldos-deudores").start(() -> {
+            try {
+                preparar();
+            } catch (SQLException | RuntimeException e) {
+                logger.log(Level.WARNING, "No se pudo preparar la tabla de saldos de deudores", e);
+            }
+        });
+    }
+
+    /**
+     * Crea la tabla si no existe y, en ese caso, la llena a partir de las
+     * deudas actuales. Usa una conexion propia: el CREATE TABLE confirmaria
+     * cualquier transaccion abierta en la conexion que lo ejecute. No debe
+     * llamarse con una transaccion abierta sobre deudas o boletas.
+     * @throws SQLException si falla la creacion o la carga inicial
+     */
+    public static void preparar() throws SQLException {
+        if (preparada) {
+            return;
+        }
+        synchronized (SaldosDeudores.class) {
+            if (preparada) {
+                return;
+            }
+            try (Connection conn = ConexionBD.getConnection();
+                 Statement st = conn.createStatement()) {
+                boolean nueva;
+                try (ResultSet rs = conn.getMetaData().getTables(conn.getCatalog(), null, "saldoDeudores", null)) {
+                    nueva = !rs.next();
+                }
+                st.executeUpdate(SQL_CREAR);
+                if (nueva) {
+                    int filas = st.executeUpdate(SQL_RECALCULAR_TODOS);
+                    logger.info("Tabla saldoDeudores creada con " + filas + " deudores");
+                }
+            }
+            preparada = true;
+        }
+    }
+
+    /**
+     * Suma una deuda nueva al saldo del deudor. La tabla ya debe existir:
+     * se llama a {@link #preparar} antes de abrir la transaccion.
+     * @param conn conexion de la transaccion que inserta la deuda
+     * @param rutDeudor deudor
+     * @param monto monto fiado de la boleta
+     * @param fecha fecha de la deuda
+     * @throws SQLException si falla el UPDATE; la transaccion debe revertirse
+     */
+    public static void sumarDeuda(Connection conn, int rutDeudor, int monto, Date fecha) throws SQLException {
+        try (PreparedStatement pstmt = SUMAR.preparar(conn)) {
+            pstmt.setInt(1, rutDeudor);
+            pstmt.setInt(2, monto);
+            pstmt.setDate(3, fecha);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Recalcula la fila del deudor desde sus deudas abiertas. Se usa cuando
+     * cambia algo que no se puede sumar, como la deuda abierta mas antigua
+     * despues de un pago. La tabla ya debe existir, como en {@link #sumarDeuda}.
+     * @param conn conexion de la transaccion que modifico las deudas
+     * @param rutDeudor deudor
+     * @throws SQLException si falla la consulta; la transaccion debe revertirse
+     */
+    public static void recalcular(Connection conn, int rutDeudor) throws SQLException {
+        try (PreparedStatement pstmt = RECALCULAR.preparar(conn)) {
+            pstmt.setInt(1, rutDeudor);
+            pstmt.setInt(2, rutDeudor);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Deuda pendiente del deudor
+     * @param conn conexion a usar
+     * @param rutDeudor deudor
+     * @return saldo, 0 si no tiene deudas
+     * @throws SQLException si falla la consulta
+     */
+    public static int saldo(Connection conn, int rutDeudor) throws SQLException {
+        preparar();
+        try (PreparedStatement pstmt = SALDO.preparar(conn)) {
+            pstmt.setInt(1, rutDeudor);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Todos los deudores con su saldo, ordenados por nombre. El saldo sale
+     * de saldoDeudores; no se suman las deudas.
+     * @param conn conexion a usar
+     * @return lista de Deudor
+     * @throws SQLException si falla la consulta
+     */
+    public static List<Deudor> listar(Connection conn) throws SQLException {
+        preparar();
+        List<Deudor> deudores = new ArrayList<>();
+        try (PreparedStatement pstmt = LISTAR.preparar(conn);
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                deudores.add(new Deudor(rs.getInt("rutDeudor"), rs.getString("nomDeudor"), rs.getInt("telefono"),
+                        rs.getDate("deudaMasAntigua"), rs.getInt("saldo")));
+            }
+        }
+        return deudores;
+    }
+}
@@ -0,0 +1,85 @@
+package ventas;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Al confirmar una venta, algun producto ya no tenia stock suficiente
+ * (otra caja vendio esas unidades primero). La transaccion se revierte.
+ *
+ * @author franc
+ */
+public class StockInsuficienteException extends SQLException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final TreeMap<Integer, Integer> pedidas;
+    // codProducto -> stock disponible, solo de los que no alcanzan
+    private final TreeMap<Integer, Integer> faltantes = new TreeMap<>();
+
+    StockInsuficienteException(Map<Integer, Integer> pedidas) {
+        super("Stock insuficiente", "45000");
+        this.pedidas = new TreeMap<>(pedidas);
+    }
+
+    /**
+     * Lee el stock actual para saber que productos no alcanzaron. Debe
+     * llamarse despues del rollback, si no se verian los descuentos parciales.
+     * @param conn conexion de la transaccion revertida
+     */
+    void completar(Connection conn) {
+        StringBuilder sql = new StringBuilder("SELECT codProducto, stock FROM productos WHERE codProducto IN (");
+        for (int i = 0; i < pedidas.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(')');
+        Map<Integer, Integer> stock = new TreeMap<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+            int p = 1;
+            for (int codigo : pedidas.keySet()) {
+                pstmt.setInt(p++, codigo);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    stock.put(rs.getInt("codProducto"), rs.getInt("stock"));
+                }
+            }
+        } catch (SQLException e) {
+            addSuppressed(e);
+            return;
+        }
+        for (Map.Entry<Integer, Integer> pedida : pedidas.entrySet()) {
+            int disponible = stock.getOrDefault(pedida.getKey(), 0);
+            if (disponible < pedida.getValue()) {
+                faltantes.put(pedida.getKey(), disponible);
+            }
+        }
+    }
+
+    /**
+     * Productos que no alcanzaron y su stock disponible
+     * @return mapa codProducto -> stock; vacio si no se pudo consultar
+     */
+    public Map<Integer, Integer> getFaltantes() {
+        return Collections.unmodifiableMap(faltantes);
+    }
+
+    @Override
+    public String getMessage() {
+        if (faltantes.isEmpty()) {
+            return super.getMessage();
+        }
+        StringBuilder mensaje = new StringBuilder("Stock insuficiente:");
+        for (Map.Entry<Integer, Integer> faltante : faltantes.entrySet()) {
+            mensaje.append("\n  Producto ").append(faltante.getKey())
+                    .append(": pedido ").append(pedidas.get(faltante.getKey()))
+                    .append(", disponible ").append(faltante.getValue());
+        }
+        return mensaje.toString();
+    }
+}